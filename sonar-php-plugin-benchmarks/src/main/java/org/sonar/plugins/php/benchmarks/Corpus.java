@@ -0,0 +1,291 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic corpus of generated PHP sources and tool reports: the same seed, file count and file size always give the same
+ * files, so that the results of two runs of the benchmarks can be compared.
+ */
+public final class Corpus {
+
+  private static final long SEED = 0x5043504cL;
+  private static final String[] KEYWORDS = {"if", "foreach", "while", "return", "echo", "new", "array", "static", "null", "true"};
+  private static final String[] OPERATORS = {"=", "+", "-", "*", ".", "==", "===", "!=", "&&", "||", "->", "=>", "::", "<=", "+="};
+
+  private final File directory;
+  private final List<File> files = Lists.newArrayList();
+  private final List<String> sources = Lists.newArrayList();
+  private long size;
+
+  private Corpus(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Generates the PHP sources of the corpus in a new temporary directory.
+   *
+   * @param fileCount
+   *          the number of files
+   * @param fileSize
+   *          the approximate size of each file, in characters
+   */
+  public static Corpus generate(int fileCount, int fileSize) throws IOException {
+    File directory = File.createTempFile("php-benchmarks", "");
+    FileUtils.forceDelete(directory);
+    FileUtils.forceMkdir(directory);
+    Corpus corpus = new Corpus(directory);
+    Random random = new Random(SEED);
+    for (int i = 0; i < fileCount; i++) {
+      String source = generateSource(random, "Generated" + i, fileSize);
+      File file = new File(directory, "src/Generated" + i + ".php");
+      FileUtils.writeStringToFile(file, source, Charsets.UTF_8.name());
+      corpus.files.add(file);
+      corpus.sources.add(source);
+      corpus.size += file.length();
+    }
+    return corpus;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public File getSourceDirectory() {
+    return new File(directory, "src");
+  }
+
+  public File getTestDirectory() {
+    return new File(directory, "tests");
+  }
+
+  public List<File> getFiles() {
+    return Collections.unmodifiableList(files);
+  }
+
+  public List<String> getSources() {
+    return Collections.unmodifiableList(sources);
+  }
+
+  /**
+   * @return the total size of the sources, in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Writes a PHPUnit JUnit report with one test suite per source, as if each source had its own test class.
+   */
+  public File writePhpUnitReport() throws IOException {
+    Random random = new Random(SEED);
+    StringBuilder report = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuites>\n");
+    for (int i = 0; i < files.size(); i++) {
+      String test = new File(getTestDirectory(), "Generated" + i + "Test.php").getPath();
+      int tests = 1 + random.nextInt(10);
+      report.append("  <testsuite name=\"Generated").append(i).append("Test\" file=\"").append(test).append("\" tests=\"").append(tests)
+          .append("\" assertions=\"").append(tests).append("\" failures=\"1\" errors=\"0\" time=\"0.1\">\n");
+      for (int j = 0; j < tests; j++) {
+        report.append("    <testcase name=\"test").append(j).append("\" class=\"Generated").append(i).append("Test\" file=\"").append(test)
+            .append("\" line=\"").append(10 * j + 1).append("\" assertions=\"1\" time=\"0.01\"");
+        if (j == 0) {
+          report.append(">\n      <failure type=\"PHPUnit_Framework_ExpectationFailedException\">Failed asserting that 1 is 2.\n")
+              .append(test).append(':').append(10 * j + 2).append("</failure>\n    </testcase>\n");
+        } else {
+          report.append("/>\n");
+        }
+      }
+      report.append("  </testsuite>\n");
+    }
+    return writeReport("phpunit.xml", report.append("</testsuites>\n"));
+  }
+
+  /**
+   * Writes a PHPUnit Clover coverage report covering every line of every source.
+   */
+  public File writeCoverageReport() throws IOException {
+    Random random = new Random(SEED);
+    StringBuilder report = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<coverage generated=\"1\">\n")
+        .append("  <project timestamp=\"1\">\n");
+    for (int i = 0; i < files.size(); i++) {
+      int lines = countLines(sources.get(i));
+      int covered = 0;
+      report.append("    <file name=\"").append(files.get(i).getPath()).append("\">\n");
+      for (int line = 1; line <= lines; line++) {
+        int count = random.nextInt(3);
+        covered += count > 0 ? 1 : 0;
+        report.append("      <line num=\"").append(line).append("\" type=\"stmt\" count=\"").append(count).append("\"/>\n");
+      }
+      report.append("      <metrics loc=\"").append(lines).append("\" ncloc=\"").append(lines).append("\" classes=\"1\" methods=\"1\"")
+          .append(" coveredmethods=\"1\" statements=\"").append(lines).append("\" coveredstatements=\"").append(covered)
+          .append("\" elements=\"").append(lines).append("\" coveredelements=\"").append(covered).append("\"/>\n    </file>\n");
+    }
+    return writeReport("phpunit.coverage.xml", report.append("  </project>\n</coverage>\n"));
+  }
+
+  /**
+   * Writes a PHP Depend summary report with one class per source.
+   */
+  public File writePhpDependReport() throws IOException {
+    Random random = new Random(SEED);
+    StringBuilder report = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metrics generated=\"2013-01-01T00:00:00\">\n")
+        .append("  <files>\n");
+    for (File file : files) {
+      report.append("    <file name=\"").append(file.getPath()).append("\" cloc=\"10\" eloc=\"100\" lloc=\"50\" loc=\"120\" ncloc=\"110\"/>\n");
+    }
+    report.append("  </files>\n  <package name=\"Generated\">\n");
+    for (int i = 0; i < files.size(); i++) {
+      report.append("    <class name=\"Generated").append(i).append("\" dit=\"0\" nocc=\"0\" wmc=\"").append(1 + random.nextInt(30))
+          .append("\">\n      <file name=\"").append(files.get(i).getPath()).append("\"/>\n");
+      int methods = 1 + random.nextInt(10);
+      for (int j = 0; j < methods; j++) {
+        report.append("      <method name=\"method").append(j).append("\" ccn2=\"").append(1 + random.nextInt(12)).append("\"/>\n");
+      }
+      report.append("    </class>\n");
+    }
+    return writeReport("pdepend.xml", report.append("  </package>\n</metrics>\n"));
+  }
+
+  /**
+   * Writes a PHPMD report with a few violations per source.
+   */
+  public File writePhpmdReport() throws IOException {
+    Random random = new Random(SEED);
+    StringBuilder report = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<pmd version=\"1.4.1\" timestamp=\"1\">\n");
+    for (File file : files) {
+      report.append("  <file name=\"").append(file.getPath()).append("\">\n");
+      int violations = random.nextInt(6);
+      for (int i = 0; i < violations; i++) {
+        int line = 1 + random.nextInt(100);
+        report.append("    <violation beginline=\"").append(line).append("\" endline=\"").append(line + 2)
+            .append("\" rule=\"UnusedFormalParameter\" ruleset=\"Unused Code Rules\" priority=\"3\">")
+            .append("Avoid unused parameters such as '$b'.</violation>\n");
+      }
+      report.append("  </file>\n");
+    }
+    return writeReport("phpmd.xml", report.append("</pmd>\n"));
+  }
+
+  /**
+   * Writes a PHP_CodeSniffer checkstyle report with a few violations per source.
+   */
+  public File writeCodeSnifferReport() throws IOException {
+    Random random = new Random(SEED);
+    StringBuilder report = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<checkstyle version=\"1.5.0\">\n");
+    for (File file : files) {
+      report.append("<file name=\"").append(file.getPath()).append("\">\n");
+      int violations = random.nextInt(6);
+      for (int i = 0; i < violations; i++) {
+        report.append(" <error line=\"").append(1 + random.nextInt(100)).append("\" column=\"").append(1 + random.nextInt(80))
+            .append("\" severity=\"warning\" message=\"Line exceeds 85 characters\" source=\"Generic.Files.LineLength.TooLong\"/>\n");
+      }
+      report.append("</file>\n");
+    }
+    return writeReport("phpcs.xml", report.append("</checkstyle>\n"));
+  }
+
+  private File writeReport(String name, CharSequence content) throws IOException {
+    File report = new File(directory, "reports/" + name);
+    FileUtils.writeStringToFile(report, content.toString(), Charsets.UTF_8.name());
+    return report;
+  }
+
+  private static int countLines(String source) {
+    int lines = 1;
+    for (int i = 0; i < source.length(); i++) {
+      if (source.charAt(i) == '\n') {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  public void delete() {
+    FileUtils.deleteQuietly(directory);
+  }
+
+  private static String generateSource(Random random, String className, int size) {
+    StringBuilder source = new StringBuilder(size + 256);
+    source.append("<?php\n/**\n * Generated class ").append(className).append(".\n */\nclass ").append(className).append(" {\n");
+    int method = 0;
+    while (source.length() < size) {
+      source.append("\n  /** Method ").append(method).append(" */\n  public function method").append(method).append("($a, $b = 1) {\n");
+      int statements = 3 + random.nextInt(8);
+      for (int i = 0; i < statements; i++) {
+        appendStatement(random, source);
+      }
+      source.append("    return $a;\n  }\n");
+      method++;
+    }
+    return source.append("}\n").toString();
+  }
+
+  private static void appendStatement(Random random, StringBuilder source) {
+    source.append("    ");
+    switch (random.nextInt(8)) {
+      case 0:
+        source.append("// ").append(KEYWORDS[random.nextInt(KEYWORDS.length)]).append(" comment\n");
+        return;
+      case 1:
+        source.append("# $a = ").append(random.nextInt(100)).append(";\n");
+        return;
+      case 2:
+        source.append("/* block\n     comment */\n");
+        return;
+      case 3:
+        source.append("$s = <<<EOT\n  heredoc ").append(random.nextInt(1000)).append(" {$a}\nEOT;\n");
+        return;
+      default:
+        source.append("$v").append(random.nextInt(10)).append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+        appendOperand(random, source);
+        source.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+        appendOperand(random, source);
+        source.append(";\n");
+    }
+  }
+
+  private static void appendOperand(Random random, StringBuilder source) {
+    switch (random.nextInt(5)) {
+      case 0:
+        source.append('\'').append("single ").append(random.nextInt(100)).append("\\'s'");
+        break;
+      case 1:
+        source.append("\"double $a ").append(random.nextInt(100)).append("\\n\"");
+        break;
+      case 2:
+        source.append(random.nextInt(10000)).append('.').append(random.nextInt(100));
+        break;
+      case 3:
+        source.append("0x").append(Integer.toHexString(random.nextInt()));
+        break;
+      default:
+        source.append("$this->call").append(random.nextInt(10)).append("($b)");
+    }
+  }
+}
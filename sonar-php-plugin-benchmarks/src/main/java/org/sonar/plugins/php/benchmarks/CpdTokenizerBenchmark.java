@@ -0,0 +1,103 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.benchmarks;
+
+import com.google.common.base.Charsets;
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.Tokenizer;
+import net.sourceforge.pmd.cpd.Tokens;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.php.core.PhpSourceCache;
+import org.sonar.plugins.php.core.PhpTokenPass;
+import org.sonar.plugins.php.duplications.PhpCPDMapping;
+import org.sonar.plugins.php.duplications.PhpTokenProducer;
+import org.sonar.plugins.php.duplications.internal.TokenChunker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuts the whole corpus into the tokens of the copy-paste detection: with the regular expressions of {@link PhpTokenProducer}, and
+ * with {@link PhpCPDMapping}, which reads the files and runs the token pass before handing the tokens over to CPD.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CpdTokenizerBenchmark {
+
+  @Param({"100", "1000"})
+  public int fileCount;
+
+  @Param({"4096", "65536"})
+  public int fileSize;
+
+  private Corpus corpus;
+  private TokenChunker chunker;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    corpus = Corpus.generate(fileCount, fileSize);
+    chunker = PhpTokenProducer.build();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    corpus.delete();
+  }
+
+  @Benchmark
+  public void tokenChunker(Throughput throughput, Blackhole blackhole) {
+    for (String source : corpus.getSources()) {
+      blackhole.consume(chunker.chunk(source));
+    }
+    throughput.add(corpus);
+  }
+
+  @Benchmark
+  public void cpdMapping(Throughput throughput, Blackhole blackhole) {
+    Settings settings = new Settings();
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 0), settings);
+    Tokenizer tokenizer = new PhpCPDMapping(null, tokenPass, settings).getTokenizer();
+    for (File file : corpus.getFiles()) {
+      Tokens tokens = new Tokens();
+      tokenizer.tokenize(new SourceCode(new SourceCode.FileCodeLoader(file, Charsets.UTF_8.name())), tokens);
+      blackhole.consume(tokens);
+    }
+    throughput.add(corpus);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.impl.Lexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.php.core.PhpLexer;
+import org.sonar.plugins.php.core.PhpParserConfiguration;
+import org.sonar.plugins.php.core.PhpSourceCache;
+import org.sonar.plugins.php.core.PhpTokenPass;
+import org.sonar.plugins.php.core.PhpTokenizer;
+import org.sonar.plugins.php.core.PhpTokens;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes the whole corpus: with the SSLR lexer, with the hand-written tokenizer, and through the token pass which also reads
+ * and decodes the files and computes the metrics of the sensors. A score of 1 op/s means the corpus is tokenized once per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LexerBenchmark {
+
+  @Param({"100", "1000"})
+  public int fileCount;
+
+  @Param({"4096", "65536"})
+  public int fileSize;
+
+  private Corpus corpus;
+  private Lexer lexer;
+  private final PhpTokenizer tokenizer = new PhpTokenizer();
+  private final PhpTokens tokens = new PhpTokens();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    corpus = Corpus.generate(fileCount, fileSize);
+    lexer = PhpLexer.create(PhpParserConfiguration.builder().setCharset(Charsets.UTF_8).build());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    corpus.delete();
+  }
+
+  @Benchmark
+  public void sslrLexer(Throughput throughput, Blackhole blackhole) {
+    for (String source : corpus.getSources()) {
+      blackhole.consume(lexer.lex(source));
+    }
+    throughput.add(corpus);
+  }
+
+  @Benchmark
+  public void tokenizer(Throughput throughput, Blackhole blackhole) {
+    for (String source : corpus.getSources()) {
+      tokenizer.tokenize(source, tokens);
+      blackhole.consume(tokens.size());
+    }
+    throughput.add(corpus);
+  }
+
+  @Benchmark
+  public void tokenPass(Throughput throughput, Blackhole blackhole) {
+    // Sources are not cached, so that they are read and decoded
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 0), new Settings());
+    tokenPass.analyse(corpus.getFiles());
+    blackhole.consume(tokenPass);
+    throughput.add(corpus);
+  }
+}
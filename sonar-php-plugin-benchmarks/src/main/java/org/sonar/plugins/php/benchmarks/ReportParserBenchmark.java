@@ -0,0 +1,147 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.plugins.php.codesniffer.PhpCodeSnifferViolationsXmlParser;
+import org.sonar.plugins.php.phpdepend.PhpDependSummaryReportParser;
+import org.sonar.plugins.php.phpunit.PhpUnitCoverageResultParser;
+import org.sonar.plugins.php.phpunit.PhpUnitResultParser;
+import org.sonar.plugins.php.pmd.PhpmdViolationsXmlParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Parses the reports of the external tools on the corpus. The measures are saved to a sensor context which drops them; the files
+ * of the secondary results are the source files described by each report.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportParserBenchmark {
+
+  @Param({"100", "1000"})
+  public int fileCount;
+
+  @Param({"4096", "65536"})
+  public int fileSize;
+
+  private Corpus corpus;
+  private Project project;
+  private SensorContext context;
+  private File phpUnitReport;
+  private File coverageReport;
+  private File phpDependReport;
+  private File phpmdReport;
+  private File codeSnifferReport;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    corpus = Corpus.generate(fileCount, fileSize);
+    phpUnitReport = corpus.writePhpUnitReport();
+    coverageReport = corpus.writeCoverageReport();
+    phpDependReport = corpus.writePhpDependReport();
+    phpmdReport = corpus.writePhpmdReport();
+    codeSnifferReport = corpus.writeCodeSnifferReport();
+
+    // Stub-only mocks do not record the invocations, which would otherwise pile up during the measurements
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class, withSettings().stubOnly());
+    when(fileSystem.getSourceDirs()).thenReturn(Arrays.asList(corpus.getSourceDirectory()));
+    when(fileSystem.getTestDirs()).thenReturn(Arrays.asList(corpus.getTestDirectory()));
+    project = mock(Project.class, withSettings().stubOnly());
+    when(project.getFileSystem()).thenReturn(fileSystem);
+    context = mock(SensorContext.class, withSettings().stubOnly());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    corpus.delete();
+  }
+
+  @Benchmark
+  public void phpUnitResultParser(Throughput throughput) {
+    new JUnitReportParser(project, context).parseReport(phpUnitReport);
+    throughput.add(fileCount, phpUnitReport.length());
+  }
+
+  @Benchmark
+  public void phpUnitCoverageResultParser(Throughput throughput) {
+    new PhpUnitCoverageResultParser(project, context).parse(coverageReport, false);
+    throughput.add(fileCount, coverageReport.length());
+  }
+
+  @Benchmark
+  public void phpDependSummaryReportParser(Throughput throughput) {
+    new PhpDependSummaryReportParser(project, context).parse(phpDependReport);
+    throughput.add(fileCount, phpDependReport.length());
+  }
+
+  @Benchmark
+  public void phpmdViolationsXmlParser(Throughput throughput, Blackhole blackhole) {
+    blackhole.consume(new PhpmdViolationsXmlParser(phpmdReport).getViolations());
+    throughput.add(fileCount, phpmdReport.length());
+  }
+
+  @Benchmark
+  public void codeSnifferViolationsXmlParser(Throughput throughput, Blackhole blackhole) {
+    blackhole.consume(new PhpCodeSnifferViolationsXmlParser().getViolations(codeSnifferReport));
+    throughput.add(fileCount, codeSnifferReport.length());
+  }
+
+  /**
+   * Exposes the parsing of a report, which the sensor triggers.
+   */
+  private static class JUnitReportParser extends PhpUnitResultParser {
+
+    JUnitReportParser(Project project, SensorContext context) {
+      super(project, context);
+    }
+
+    void parseReport(File report) {
+      parse(report);
+    }
+  }
+}
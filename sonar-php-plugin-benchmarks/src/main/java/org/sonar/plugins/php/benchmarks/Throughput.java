@@ -0,0 +1,60 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results of the benchmarks which go through a corpus: JMH reports them as rates next to the primary score, that is
+ * files/s and MB/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+  private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+  public long files;
+  private long bytes;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    files = 0;
+    bytes = 0;
+  }
+
+  public void add(Corpus corpus) {
+    files += corpus.getFiles().size();
+    bytes += corpus.getSize();
+  }
+
+  public void add(long fileCount, long size) {
+    files += fileCount;
+    bytes += size;
+  }
+
+  public double megabytes() {
+    return bytes / BYTES_PER_MEGABYTE;
+  }
+}
@@ -20,6 +20,9 @@
 package org.sonar.plugins.php;
 
 import org.sonar.api.Extension;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
 import org.sonar.plugins.php.api.Php;
 import org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration;
@@ -30,17 +33,26 @@ import org.sonar.plugins.php.codesniffer.PhpCodeSnifferProfileImporter;
 import org.sonar.plugins.php.codesniffer.PhpCodeSnifferRuleRepository;
 import org.sonar.plugins.php.codesniffer.PhpCodeSnifferSensor;
 import org.sonar.plugins.php.codesniffer.PhpCodeSnifferViolationsXmlParser;
+import org.sonar.plugins.php.core.AbstractPhpConfiguration;
 import org.sonar.plugins.php.core.NoSonarAndCommentedOutLocSensor;
 import org.sonar.plugins.php.core.PhpCommonRulesEngineProvider;
 import org.sonar.plugins.php.core.PhpLexerSensor;
+import org.sonar.plugins.php.core.PhpRuntimeProfile;
+import org.sonar.plugins.php.core.PhpSourceCache;
 import org.sonar.plugins.php.core.PhpSourceCodeColorizer;
 import org.sonar.plugins.php.core.PhpSourceImporter;
+import org.sonar.plugins.php.core.PhpTokenPass;
+import org.sonar.plugins.php.core.PhpToolsMetrics;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
+import org.sonar.plugins.php.core.PhpToolsTelemetrySensor;
+import org.sonar.plugins.php.core.PhpUserCache;
 import org.sonar.plugins.php.core.profiles.AllPhpCSProfile;
 import org.sonar.plugins.php.core.profiles.AllPhpmdProfile;
 import org.sonar.plugins.php.core.profiles.PearProfile;
 import org.sonar.plugins.php.core.profiles.SonarWayProfile;
 import org.sonar.plugins.php.core.profiles.ZendProfile;
 import org.sonar.plugins.php.duplications.PhpCPDMapping;
+import org.sonar.plugins.php.duplications.PhpDuplicationsSensor;
 import org.sonar.plugins.php.phpdepend.PhpDependConfiguration;
 import org.sonar.plugins.php.phpdepend.PhpDependExecutor;
 import org.sonar.plugins.php.phpdepend.PhpDependParserSelector;
@@ -67,8 +79,54 @@ import java.util.List;
 /**
  * This class is the sonar entry point of this plugin. It declares all the extension that can be launched with this plugin.
  */
+@Properties({
+  @Property(key = PhpUserCache.CACHE_PATH_KEY, defaultValue = "", name = "Cache directory", project = false, global = true,
+    description = "Directory shared by all the analyses of the host, where the plugin caches data such as the embedded PHAR archives. "
+      + "Defaults to ~/.sonar/php.", category = PhpPlugin.CATEGORY_PHP),
+  @Property(key = AbstractPhpConfiguration.INCREMENTAL_KEY, defaultValue = "false", name = "Incremental analysis", project = true,
+    global = true, description = "If set to true, PHPMD and PHP_CodeSniffer only analyse the files changed since the previous analysis, "
+      + "as long as the version of the tools and their rules did not change. Violations of the other files are taken from the previous report.",
+    category = PhpPlugin.CATEGORY_PHP, type = PropertyType.BOOLEAN),
+  @Property(key = AbstractPhpConfiguration.PIPED_REPORTS_KEY, defaultValue = "false", name = "Piped reports", project = true,
+    global = true, description = "If set to true, PHPMD and PHP_CodeSniffer print their report on the standard output, where it is parsed "
+      + "while they run instead of being written to a file. The report is decoded with the platform encoding. "
+      + "Ignored when the tools are sharded or the analysis is incremental, which both need report files.",
+    category = PhpPlugin.CATEGORY_PHP, type = PropertyType.BOOLEAN),
+  @Property(key = PhpRuntimeProfile.TUNING_KEY, defaultValue = "true", name = "PHP runtime tuning", project = true, global = true,
+    description = "If set to true, the PHP tools run with Xdebug turned off (except for code coverage) and with the opcode cache enabled, "
+      + "backed by a file cache in the cache directory. Applies to the embedded tools and to the external tools launched by a PHP shebang line.",
+    category = PhpPlugin.CATEGORY_PHP, type = PropertyType.BOOLEAN),
+  @Property(key = PhpRuntimeProfile.MEMORY_LIMIT_KEY, defaultValue = "", name = "PHP memory limit", project = true, global = true,
+    description = "Value of the memory_limit PHP setting of the tools, for instance 1G or -1. Defaults to the one of the php.ini file.",
+    category = PhpPlugin.CATEGORY_PHP),
+  @Property(key = PhpSourceCache.CACHE_SIZE_KEY, defaultValue = "" + PhpSourceCache.DEFAULT_CACHE_SIZE, name = "Source cache size",
+    project = true, global = true, description = "Memory (in MB) used to keep the decoded PHP sources between the sensors which read them.",
+    category = PhpPlugin.CATEGORY_PHP, type = PropertyType.INTEGER),
+  @Property(key = PhpTokenPass.THREADS_KEY, defaultValue = "" + PhpTokenPass.DEFAULT_THREADS, name = "Lexer threads",
+    project = true, global = true, description = "Number of threads which tokenize the PHP sources to compute the lines, NOSONAR and commented-out code "
+      + "metrics and the duplications tokens. The metrics are still saved one file after the other.", category = PhpPlugin.CATEGORY_PHP, type = PropertyType.INTEGER),
+  @Property(key = PhpTokenPass.STORE_KEY, defaultValue = "true", name = "Lexer metrics store", project = true, global = true,
+    description = "If set to true, the lines, NOSONAR and commented-out code metrics of each file are kept in the working directory, and the files "
+      + "whose content did not change since the previous analysis are not tokenized again, except for the duplications.",
+    category = PhpPlugin.CATEGORY_PHP, type = PropertyType.BOOLEAN),
+  @Property(key = PhpTokenPass.TIMEOUT_KEY, defaultValue = "" + PhpTokenPass.DEFAULT_TIMEOUT, name = "Lexer timeout", project = true, global = true,
+    description = "Time (in seconds) allowed to tokenize a PHP source, 0 for no limit. Beyond this time, or when the source has too many unterminated "
+      + "strings or comments, its lines are approximated, it is ignored by the duplications and it is counted in the \"PHP approximated files\" measure.",
+    category = PhpPlugin.CATEGORY_PHP, type = PropertyType.INTEGER),
+  @Property(key = PhpDuplicationsSensor.ENGINE_KEY, defaultValue = PhpDuplicationsSensor.SONAR_ENGINE, name = "Duplications engine", project = true,
+    global = true, description = "Engine which computes the duplications of the PHP files: \"sonar\" for the copy-paste detection of Sonar, or \"php\" "
+      + "for the engine of the plugin, which keeps the hashes of the blocks of tokens of each file in the working directory and only hashes again "
+      + "the files changed since the previous analysis. Both honour sonar.cpd.php.minimumTokens and sonar.cpd.php.skip.",
+    category = PhpPlugin.CATEGORY_PHP),
+  @Property(key = PhpDuplicationsSensor.SHARED_INDEX_KEY, defaultValue = "", name = "Shared duplications index", project = true, global = true,
+    description = "Path of a duplications index on a local disk, shared by the analyses of several projects to find the duplications between "
+      + "them. Requires the \"php\" duplications engine, and the same minimum number of tokens for all the projects of the index.",
+    category = PhpPlugin.CATEGORY_PHP)
+})
 public class PhpPlugin extends SonarPlugin {
 
+  public static final String CATEGORY_PHP = "PHP";
+
   /**
    * Gets the extensions.
    * 
@@ -81,10 +139,15 @@ public class PhpPlugin extends SonarPlugin {
     extensions.add(Php.class);
 
     // Core extensions
+    extensions.add(PhpSourceCache.class);
+    extensions.add(PhpTokenPass.class);
     extensions.add(PhpSourceImporter.class);
     extensions.add(PhpLexerSensor.class);
     extensions.add(PhpSourceCodeColorizer.class);
     extensions.add(NoSonarAndCommentedOutLocSensor.class);
+    extensions.add(PhpToolsScheduler.class);
+    extensions.add(PhpToolsMetrics.class);
+    extensions.add(PhpToolsTelemetrySensor.class);
 
     // Common rules
     extensions.add(PhpCommonRulesEngineProvider.class);
@@ -98,6 +161,7 @@ public class PhpPlugin extends SonarPlugin {
 
     // Duplications
     extensions.add(PhpCPDMapping.class);
+    extensions.add(PhpDuplicationsSensor.class);
 
     // PhpDepend
     extensions.add(PhpDependExecutor.class);
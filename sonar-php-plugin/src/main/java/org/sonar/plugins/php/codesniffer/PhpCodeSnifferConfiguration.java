@@ -85,6 +85,7 @@ public class PhpCodeSnifferConfiguration extends AbstractPhpConfiguration {
   public static final String PHPCS_SEVERITY_KEY = "sonar.phpCodesniffer.levelArgument";
   public static final String PHPCS_ARGUMENT_LINE_KEY = "sonar.phpCodesniffer.argumentLine";
   public static final String PHPCS_TIMEOUT_KEY = "sonar.phpCodesniffer.timeout";
+  public static final String PHPCS_SHARDS_KEY = "sonar.phpCodesniffer.shards";
 
   /**
    * since 1.2
@@ -217,6 +218,14 @@ public class PhpCodeSnifferConfiguration extends AbstractPhpConfiguration {
     return PHPCS_COMMAND_LINE;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String getShardsKey() {
+    return PHPCS_SHARDS_KEY;
+  }
+
   /**
    * {@inheritDoc}
    */
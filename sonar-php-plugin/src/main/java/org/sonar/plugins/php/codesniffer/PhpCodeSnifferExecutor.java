@@ -26,8 +26,10 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.profiles.RulesProfile;
 import org.sonar.plugins.php.api.Php;
 import org.sonar.plugins.php.core.AbstractPhpExecutor;
+import org.sonar.plugins.php.core.PipeableExecutor;
 
 import java.io.File;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -36,11 +38,12 @@ import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPC
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_REPORT_FILE_MODIFIER;
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_REPORT_MODIFIER;
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_STANDARD_MODIFIER;
+import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferRuleRepository.PHPCS_REPOSITORY_KEY;
 
 /**
  * The Class PhpCheckstyleExecutor.
  */
-public class PhpCodeSnifferExecutor extends AbstractPhpExecutor {
+public class PhpCodeSnifferExecutor extends AbstractPhpExecutor implements PipeableExecutor {
 
   private static final String EXCLUSION_PATTERN_SEPARATOR = ",";
 
@@ -49,6 +52,7 @@ public class PhpCodeSnifferExecutor extends AbstractPhpExecutor {
   private PhpCodeSnifferConfiguration configuration;
   private PhpCodeSnifferProfileExporter exporter;
   private RulesProfile profile;
+  private volatile List<PhpCodeSnifferViolation> pipedViolations;
 
   /**
    * https://github.com/squizlabs/PHP_CodeSniffer/blob/master/scripts/phpcs <br/>
@@ -70,13 +74,63 @@ public class PhpCodeSnifferExecutor extends AbstractPhpExecutor {
     this.profile = profile;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isEnabled() {
+    return super.isEnabled() && !profile.getActiveRulesByRepository(PHPCS_REPOSITORY_KEY).isEmpty();
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   protected List<String> getCommandLineArguments() {
+    return getCommandLineArguments(configuration.getSourceDirectories(), configuration.getReportFile());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public List<String> getPipedCommandLineArguments() {
+    return getCommandLineArguments(configuration.getSourceDirectories(), null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void parsePipedReport(Reader report) {
+    pipedViolations = new PhpCodeSnifferViolationsXmlParser().getViolations(report);
+  }
+
+  /**
+   * Gets the violations parsed while PHP_CodeSniffer was running with a piped report.
+   *
+   * @return the violations, or null if the report has been written to the report file
+   */
+  public List<PhpCodeSnifferViolation> getPipedViolations() {
+    return pipedViolations;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isShardable() {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<String> getCommandLineArguments(List<File> files, File reportFile) {
     List<String> result = new ArrayList<String>();
-    result.add(PHPCS_REPORT_FILE_MODIFIER + configuration.getReportFile());
+    // Without report file, the report is printed on the standard output
+    if (reportFile != null) {
+      result.add(PHPCS_REPORT_FILE_MODIFIER + reportFile);
+    }
     result.add(PHPCS_REPORT_MODIFIER);
 
     // default level is no level, but can be overriden if set.
@@ -101,13 +155,23 @@ public class PhpCodeSnifferExecutor extends AbstractPhpExecutor {
     }
 
     // Do not use the StringUtils.join() method here, because all the path will be treated as a single one
-    for (File file : configuration.getSourceDirectories()) {
+    for (File file : files) {
       result.add(file.getAbsolutePath());
     }
     LOG.debug("Command line " + result);
     return result;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String getAnalysisSettings() {
+    String ruleset = configuration.getStandard() == null ? getRulesetKey(profile, exporter) : configuration.getStandard();
+    return StringUtils.join(new Object[] {ruleset, configuration.getSeverityModifier(), configuration.getLevel(), configuration.getArgumentLine(),
+      StringUtils.join(getPhpLanguage().getFileSuffixes(), EXCLUSION_PATTERN_SEPARATOR)}, '\n');
+  }
+
   /**
    * {@inheritDoc}
    */
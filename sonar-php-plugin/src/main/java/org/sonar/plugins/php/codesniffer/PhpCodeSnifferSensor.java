@@ -33,6 +33,7 @@ import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.rules.Violation;
 import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -51,6 +52,7 @@ import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPC
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_SEVERITY_KEY;
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_SEVERITY_OR_LEVEL_MODIFIER_KEY;
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_SKIP_KEY;
+import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_SHARDS_KEY;
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferConfiguration.PHPCS_TIMEOUT_KEY;
 import static org.sonar.plugins.php.codesniffer.PhpCodeSnifferRuleRepository.PHPCS_REPOSITORY_KEY;
 import static org.sonar.plugins.php.core.AbstractPhpConfiguration.DEFAULT_TIMEOUT;
@@ -92,6 +94,9 @@ import static org.sonar.plugins.php.core.AbstractPhpConfiguration.DEFAULT_TIMEOU
     description = "Additionnal parameters that can be passed to PHP CodeSniffer.", category = PhpCodeSnifferSensor.CATEGORY_PHP_CODE_SNIFFER),
   @Property(key = PHPCS_TIMEOUT_KEY, defaultValue = "" + DEFAULT_TIMEOUT, name = "Timeout", project = true, global = true,
     description = "Execution of PHP CodeSniffer will be stopped after this amount of time (in minutes).", category = PhpCodeSnifferSensor.CATEGORY_PHP_CODE_SNIFFER),
+  @Property(key = PHPCS_SHARDS_KEY, defaultValue = "1", name = "Shards", project = true, global = true,
+    description = "Number of PHP CodeSniffer processes executed in parallel, each one on a share of the files of similar size.",
+    category = PhpCodeSnifferSensor.CATEGORY_PHP_CODE_SNIFFER, type = PropertyType.INTEGER),
   @Property(key = PHPCS_CUSTOM_RULES_PROP_KEY,
     defaultValue = "", name = "PHP CodeSniffer custom rules",
     description = "XML description of PHP CodeSniffer custom rules", type = PropertyType.TEXT,
@@ -105,6 +110,7 @@ public class PhpCodeSnifferSensor implements Sensor {
 
   private PhpCodeSnifferConfiguration configuration;
   private PhpCodeSnifferExecutor executor;
+  private PhpToolsScheduler scheduler;
   private PhpCodeSnifferViolationsXmlParser parser;
   private RulesProfile profile;
   private RuleFinder ruleFinder;
@@ -113,11 +119,12 @@ public class PhpCodeSnifferSensor implements Sensor {
   /**
    * Instantiates a new php codesniffer sensor.
    */
-  public PhpCodeSnifferSensor(PhpCodeSnifferConfiguration conf, PhpCodeSnifferExecutor executor, RulesProfile profile,
-      PhpCodeSnifferViolationsXmlParser parser, RuleFinder ruleFinder, ProjectFileSystem filesystem) {
+  public PhpCodeSnifferSensor(PhpCodeSnifferConfiguration conf, PhpCodeSnifferExecutor executor, PhpToolsScheduler scheduler,
+      RulesProfile profile, PhpCodeSnifferViolationsXmlParser parser, RuleFinder ruleFinder, ProjectFileSystem filesystem) {
     super();
     this.configuration = conf;
     this.executor = executor;
+    this.scheduler = scheduler;
     this.parser = parser;
     this.profile = profile;
     this.ruleFinder = ruleFinder;
@@ -131,10 +138,13 @@ public class PhpCodeSnifferSensor implements Sensor {
     configuration.createWorkingDirectory();
 
     if (!configuration.isAnalyseOnly()) {
-      executor.execute();
+      scheduler.execute(executor);
+    }
+    List<PhpCodeSnifferViolation> violations = configuration.isAnalyseOnly() ? null : executor.getPipedViolations();
+    if (violations == null) {
+      File report = configuration.getReportFile();
+      violations = parser.getViolations(report);
     }
-    File report = configuration.getReportFile();
-    List<PhpCodeSnifferViolation> violations = parser.getViolations(report);
 
     List<Violation> contextViolations = new ArrayList<Violation>();
     Set<String> unfoundViolations = new HashSet<String>();
@@ -31,6 +31,7 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 
 import java.io.File;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -61,12 +62,38 @@ public class PhpCodeSnifferViolationsXmlParser implements BatchExtension {
     }
     String reportPath = reportFile.getAbsolutePath();
     LOG.debug("Getting violations form report file");
-    List<PhpCodeSnifferViolation> violations = new ArrayList<PhpCodeSnifferViolation>();
     try {
       // <checkstyle>
       SMInputFactory inputFactory = new SMInputFactory(XMLInputFactory.newInstance());
+      return getViolations(inputFactory.rootElementCursor(reportFile), reportPath);
+    } catch (XMLStreamException e) {
+      throw new XmlParserException("Unable to parse the  XML Report '" + reportPath + "'", e);
+    }
+  }
+
+  /**
+   * Parses the report as it is read, for instance while PHP_CodeSniffer is still printing it.
+   *
+   * @param report
+   *          the report
+   * @return the violations
+   */
+  public List<PhpCodeSnifferViolation> getViolations(Reader report) {
+    LOG.debug("Getting violations form piped report");
+    try {
+      // <checkstyle>
+      SMInputFactory inputFactory = new SMInputFactory(XMLInputFactory.newInstance());
+      return getViolations(inputFactory.rootElementCursor(report), "piped report");
+    } catch (XMLStreamException e) {
+      throw new XmlParserException("Unable to parse the piped XML Report", e);
+    }
+  }
+
+  private List<PhpCodeSnifferViolation> getViolations(SMInputCursor rootCursor, String reportPath) {
+    List<PhpCodeSnifferViolation> violations = new ArrayList<PhpCodeSnifferViolation>();
+    try {
       // <file>
-      SMInputCursor rootNodeCursor = inputFactory.rootElementCursor(reportFile).advance();
+      SMInputCursor rootNodeCursor = rootCursor.advance();
 
       SMInputCursor fileNodeCursor = rootNodeCursor.childElementCursor(FILE_NODE_NAME).advance();
       while (fileNodeCursor.asEvent() != null) {
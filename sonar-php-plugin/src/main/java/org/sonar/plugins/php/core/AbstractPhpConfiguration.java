@@ -41,6 +41,16 @@ public abstract class AbstractPhpConfiguration implements BatchExtension {
    */
   public static final int DEFAULT_TIMEOUT = 30;
 
+  /**
+   * Whether external tools only analyse the files changed since the previous analysis
+   */
+  public static final String INCREMENTAL_KEY = "sonar.php.incremental";
+
+  /**
+   * Whether external tools print their report on the standard output, where it is parsed as soon as it is printed
+   */
+  public static final String PIPED_REPORTS_KEY = "sonar.php.pipedReports";
+
   /** The logger. */
   private static final Logger LOG = LoggerFactory.getLogger(AbstractPhpConfiguration.class);
 
@@ -157,6 +167,39 @@ public abstract class AbstractPhpConfiguration implements BatchExtension {
     return timeout;
   }
 
+  /**
+   * The number of processes among which the analysed files are split, 1 if the tool is not sharded.
+   *
+   * @return the number of shards
+   */
+  public int getShards() {
+    String shardsKey = getShardsKey();
+    int shards = 1;
+    if (shardsKey != null && settings.hasKey(shardsKey)) {
+      shards = settings.getInt(shardsKey);
+    }
+    return Math.max(shards, 1);
+  }
+
+  /**
+   * Tells whether the tool only has to analyse the files changed since the previous analysis, the violations of the other
+   * files being taken from the previous report.
+   *
+   * @return true if the analysis is incremental
+   */
+  public boolean isIncremental() {
+    return getBooleanFromSettings(INCREMENTAL_KEY);
+  }
+
+  /**
+   * Tells whether the report of the tool is parsed from its standard output while it runs, rather than written to a file.
+   *
+   * @return true if the report is piped
+   */
+  public boolean isPipedReports() {
+    return getBooleanFromSettings(PIPED_REPORTS_KEY);
+  }
+
   /**
    * Checks if is analyze only.
    * 
@@ -346,6 +389,15 @@ public abstract class AbstractPhpConfiguration implements BatchExtension {
    */
   protected abstract String getTimeoutKey();
 
+  /**
+   * Get the parameter that gives the number of shards for the tool
+   *
+   * @return the parameter name, or null if the tool can not be sharded
+   */
+  protected String getShardsKey() {
+    return null;
+  }
+
   /**
    * Gets the should run key.
    * 
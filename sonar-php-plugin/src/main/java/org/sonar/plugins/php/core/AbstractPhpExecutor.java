@@ -21,17 +21,23 @@ package org.sonar.plugins.php.core;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.profiles.ProfileExporter;
 import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.resources.InputFile;
 import org.sonar.api.utils.SonarException;
 import org.sonar.api.utils.command.Command;
 import org.sonar.api.utils.command.CommandExecutor;
+import org.sonar.api.utils.command.StreamConsumer;
 import org.sonar.plugins.php.api.Php;
+import org.sonar.plugins.php.api.PhpConstants;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -40,9 +46,19 @@ import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Abstract php plugin executor. This class handles common executor needs such as running the process, reading its common and error output
@@ -55,12 +71,28 @@ public abstract class AbstractPhpExecutor implements BatchExtension {
   private static final long MINUTES_TO_MILLISECONDS = 60000;
   private static final String RULESET_PREFIX = "ruleset";
   private static final String XML_SUFFIX = ".xml";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
   private static final String PHP_COMMAND_LINE = "php";
+  private static final String PHAR_CACHE_DIRECTORY = "phar";
+  private static final String SHARD_SUFFIX = ".shard";
+  private static final String PREVIOUS_SUFFIX = ".previous";
+  private static final String CHANGES_SUFFIX = ".changes";
+  private static final String MANIFEST_SUFFIX = "-manifest.properties";
+  private static final String SETTINGS_SEPARATOR = "\n";
+  // Under the 32K characters of a command line on Windows and the 128K of a single argument on Linux
+  private static final int MAX_FILES_COMMAND_LINE_LENGTH = 30000;
+  private static final String PROBE_CACHE_DIRECTORY = "probes";
+  private static final String PROBE_CACHE_FILE = "tools.properties";
+  private static final String PATH_VARIABLE = "PATH";
+  private static final Pattern VERSION_PATTERN = Pattern.compile("\\d++(?:\\.\\d++)++(?:-?+[a-zA-Z]++\\d*+)?+");
 
   private Php php;
   private AbstractPhpConfiguration configuration;
   private Collection<Integer> acceptedExitCodes;
-  private boolean embeddedMode = false;
+  private volatile boolean embeddedMode = false;
+  private volatile String detectedVersion;
+  private final List<ToolExecution> executions = Collections.synchronizedList(Lists.<ToolExecution>newArrayList());
+  private volatile ToolExecution currentExecution;
 
   protected AbstractPhpExecutor(Php php, AbstractPhpConfiguration configuration) {
     this(php, configuration, Lists.newArrayList(0));
@@ -80,57 +112,325 @@ public abstract class AbstractPhpExecutor implements BatchExtension {
     return embeddedMode;
   }
 
+  /**
+   * Whether the tool has to be executed during this analysis, i.e. it is neither skipped nor
+   * restricted to the analysis of an existing report.
+   */
+  public boolean isEnabled() {
+    return !configuration.isSkip() && !configuration.isAnalyseOnly();
+  }
+
   /**
    * Executes the external tool.
    */
   public void execute() {
-    if (verifyExternalTool()) {
-      executeExternalTool();
-    }
-    else if (getPHARName() != null) {
-      embeddedMode = true;
-      executePhar();
+    ToolExecution execution = new ToolExecution(getExecutedTool());
+    currentExecution = execution;
+    long start = System.currentTimeMillis();
+    File report = configuration.getReportFile();
+    long previousReportModified = report == null ? 0L : report.lastModified();
+    boolean succeeded = false;
+    try {
+      // The tools may be started by the scheduler before the sensors, which create the working directory too
+      configuration.createWorkingDirectory();
+      if (verifyExternalTool()) {
+        executeExternalTool();
+      }
+      else if (getPHARName() != null) {
+        embeddedMode = true;
+        executePhar();
+      }
+      else {
+        throw new SonarException("Unable to find " + getExecutedTool());
+      }
+      succeeded = true;
+    } finally {
+      execution.finish(embeddedMode, getToolVersion(), succeeded, System.currentTimeMillis() - start,
+          getWrittenLength(report, previousReportModified));
+      executions.add(execution);
+      currentExecution = null;
     }
-    else {
-      throw new SonarException("Unable to find " + getExecutedTool());
+  }
+
+  /**
+   * The report of a previous analysis is left in place by a failed execution, or by an execution whose report is piped: it is only
+   * measured if the execution modified it.
+   *
+   * @return the length of the report, or -1 if the execution did not write it
+   */
+  private static long getWrittenLength(File report, long previousModified) {
+    return report != null && report.isFile() && report.lastModified() != previousModified ? report.length() : -1;
+  }
+
+  /**
+   * Gets the telemetry of the executions of the tool during this analysis.
+   *
+   * @return the executions, in the order they ended
+   */
+  public List<ToolExecution> getExecutions() {
+    synchronized (executions) {
+      return Lists.newArrayList(executions);
     }
   }
 
   private void executeExternalTool() {
-    List<String> commandLine = new LinkedList<String>();
-    commandLine.add(configuration.getOsDependentToolScriptName());
+    List<String> toolCommand = new LinkedList<String>();
+    String script = configuration.getOsDependentToolScriptName();
+    List<String> scriptCommand = getRuntimeProfile().getScriptCommand(script, isCoverageRun());
+    if (scriptCommand != null) {
+      toolCommand.addAll(scriptCommand);
+    } else {
+      toolCommand.add(script);
+    }
+    run(toolCommand, "");
+  }
+
+  private void executePhar() {
+    try {
+      File pharFile = getPharFile(getPHAREmbeddedURL());
+
+      List<String> toolCommand = new LinkedList<String>();
+      toolCommand.add(PHP_COMMAND_LINE);
+      toolCommand.addAll(getRuntimeProfile().getIniArguments(isCoverageRun()));
+      toolCommand.add(pharFile.getAbsolutePath());
+      run(toolCommand, "embedded ");
+    } catch (Exception e) {
+      throw new SonarException("Error during execution of embedded " + getExecutedTool(), e);
+    }
+  }
+
+  private void run(List<String> toolCommand, String mode) {
+    String analysisSettings = configuration.isIncremental() && isShardable() ? getAnalysisSettings() : null;
+    if (analysisSettings != null) {
+      runIncremental(toolCommand, analysisSettings, mode);
+    } else if (configuration.isPipedReports() && configuration.getShards() == 1 && this instanceof PipeableExecutor) {
+      runPiped((PipeableExecutor) this, toolCommand, mode);
+    } else {
+      runAll(toolCommand, mode);
+    }
+  }
+
+  private void runAll(List<String> toolCommand, String mode) {
+    if (configuration.getShards() > 1 && isShardable()) {
+      List<File> files = getShardableFiles();
+      if (!files.isEmpty() && runShards(toolCommand, files, mode)) {
+        return;
+      }
+    }
+    List<String> commandLine = new LinkedList<String>(toolCommand);
     commandLine.addAll(getCommandLineArguments());
-    LOG.debug("Executing " + getExecutedTool() + " with command '{}'", prettyPrint(commandLine));
+    LOG.debug("Executing " + mode + getExecutedTool() + " with command '{}'", prettyPrint(commandLine));
 
     doExecute(commandLine);
   }
 
-  private void executePhar() {
-    File pharFile = null;
+  /**
+   * Runs the tool with its report printed on the standard output, which is parsed in another thread as it is printed.
+   */
+  private void runPiped(final PipeableExecutor pipeable, List<String> toolCommand, String mode) {
+    List<String> commandLine = new LinkedList<String>(toolCommand);
+    commandLine.addAll(pipeable.getPipedCommandLineArguments());
+    LOG.debug("Executing " + mode + getExecutedTool() + " with piped report and command '{}'", prettyPrint(commandLine));
+
+    final ReportPipe pipe = new ReportPipe();
+    ExecutorService parser = Executors.newSingleThreadExecutor();
+    Future<?> parsing = parser.submit(new Runnable() {
+      public void run() {
+        try {
+          pipeable.parsePipedReport(pipe);
+        } finally {
+          pipe.close();
+        }
+      }
+    });
+    int exitCode;
     try {
-      URL pharURL = getPHAREmbeddedURL();
+      exitCode = invoke(commandLine, pipe, new StreamConsumer() {
+        public void consumeLine(String line) {
+          LOG.info(line);
+        }
+      });
+    } finally {
+      pipe.finish();
+      parser.shutdown();
+    }
+    checkExitCode(exitCode);
+    try {
+      parsing.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while parsing the report of " + getExecutedTool(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new SonarException("Unable to parse the report of " + getExecutedTool(), e.getCause());
+    }
+  }
 
-      File workDir = configuration.getFileSystem().getSonarWorkingDirectory();
-      pharFile = new File(workDir, getPHARName());
-      extractPhar(pharURL, pharFile);
+  /**
+   * Runs the tool on the given files only, split into several processes if configured so.
+   *
+   * @return false if the tool has not been run, as the files do not fit on its command line
+   */
+  private boolean runFiles(List<String> toolCommand, List<File> files, String mode) {
+    if (configuration.getShards() > 1) {
+      return runShards(toolCommand, files, mode);
+    }
+    List<String> commandLine = new LinkedList<String>(toolCommand);
+    commandLine.addAll(getCommandLineArguments(files, configuration.getReportFile()));
+    if (isTooLong(commandLine)) {
+      LOG.info("Too many files to execute " + getExecutedTool() + " on a list of files, its source directories are analysed instead");
+      return false;
+    }
+    LOG.debug("Executing " + mode + getExecutedTool() + " with command '{}'", prettyPrint(commandLine));
+    doExecute(commandLine);
+    return true;
+  }
 
-      List<String> commandLine = new LinkedList<String>();
-      commandLine.add(PHP_COMMAND_LINE);
-      commandLine.add(pharFile.getAbsolutePath());
-      commandLine.addAll(getCommandLineArguments());
-      LOG.debug("Executing embedded " + getExecutedTool() + " with command '{}'", prettyPrint(commandLine));
+  /**
+   * @return false if the tool has not been run, as the files of a shard do not fit on its command line
+   */
+  private boolean runShards(List<String> toolCommand, List<File> files, String mode) {
+    int shardCount = configuration.getShards();
+    FileShards.Weigher weigher = getShardWeigher();
+    List<List<File>> shards = weigher == null ? FileShards.split(files, shardCount) : FileShards.split(files, shardCount, weigher);
+    List<List<String>> commandLines = Lists.newArrayList();
+    for (int i = 0; i < shards.size(); i++) {
+      List<String> commandLine = new LinkedList<String>(toolCommand);
+      commandLine.addAll(getShardCommandLineArguments(shards.get(i), i));
+      if (isTooLong(commandLine)) {
+        LOG.info("Too many files to split " + getExecutedTool() + " into shards, its source directories are analysed instead");
+        deleteShardFiles(shards.size());
+        return false;
+      }
+      commandLines.add(commandLine);
+    }
+    executeShards(commandLines, shards, mode);
+    return true;
+  }
 
-      doExecute(commandLine);
-    } catch (Exception e) {
-      throw new SonarException("Error during execution of embedded " + getExecutedTool(), e);
+  private static boolean isTooLong(List<String> commandLine) {
+    int length = 0;
+    for (String argument : commandLine) {
+      length += argument.length() + 1;
+    }
+    return length > MAX_FILES_COMMAND_LINE_LENGTH;
+  }
+
+  /**
+   * Runs the tool on the files changed since the previous analysis only, provided that the settings of the tool did not
+   * change and the previous report is still there. Violations of the unchanged files are then taken from the previous
+   * report, so that the report parsed by the sensor is the same as after a full analysis.
+   */
+  private void runIncremental(List<String> toolCommand, String analysisSettings, String mode) {
+    List<File> files = getShardableFiles();
+    String settingsDigest = PhpDigest.sha256Hex(StringUtils.defaultString(getToolVersion()) + SETTINGS_SEPARATOR + analysisSettings);
+    FileManifest manifest = new FileManifest(new File(configuration.createWorkingDirectory(), getExecutedTool().toLowerCase(Locale.ENGLISH)
+      + MANIFEST_SUFFIX));
+    Map<String, String> previousDigests = configuration.getReportFile().isFile() ? manifest.load(settingsDigest) : null;
+    // Until the report is complete again, the next analysis has to be a full one
+    manifest.delete();
+
+    Map<String, String> digests;
+    try {
+      digests = FileManifest.digest(files);
+    } catch (IOException e) {
+      throw new SonarException("Unable to compute the digests of the files analysed by " + getExecutedTool(), e);
+    }
+    List<File> changedFiles = Lists.newArrayList();
+    Set<String> unchangedFiles = Sets.newHashSet();
+    if (previousDigests != null) {
+      for (File file : files) {
+        String path = file.getAbsolutePath();
+        if (digests.get(path).equals(previousDigests.get(path))) {
+          unchangedFiles.add(path);
+        } else {
+          changedFiles.add(file);
+        }
+      }
+    }
+
+    if (unchangedFiles.isEmpty()) {
+      runAll(toolCommand, mode);
+    } else {
+      LOG.info("{} file(s) out of {} changed since the previous analysis of " + getExecutedTool(), changedFiles.size(), files.size());
+      updateReport(toolCommand, changedFiles, unchangedFiles, mode);
+    }
+    manifest.save(settingsDigest, digests);
+  }
+
+  /**
+   * Analyses the changed files, and merges their violations with the violations of the unchanged files in the previous report.
+   */
+  private void updateReport(List<String> toolCommand, List<File> changedFiles, Set<String> unchangedFiles, String mode) {
+    File report = configuration.getReportFile();
+    File previousReport = getSiblingFile(report, PREVIOUS_SUFFIX);
+    File changesReport = getSiblingFile(report, CHANGES_SUFFIX);
+    try {
+      FileUtils.deleteQuietly(previousReport);
+      FileUtils.deleteQuietly(changesReport);
+      FileUtils.moveFile(report, previousReport);
+      List<File> reports = Lists.newArrayList(previousReport);
+      if (!changedFiles.isEmpty()) {
+        if (!runFiles(toolCommand, changedFiles, mode)) {
+          runAll(toolCommand, mode);
+          return;
+        }
+        FileUtils.moveFile(report, changesReport);
+        reports.add(changesReport);
+      }
+      new XmlReportMerger().merge(reports, report, previousReport, unchangedFiles);
+    } catch (IOException e) {
+      throw new SonarException("Unable to update report " + report, e);
     } finally {
-      FileUtils.deleteQuietly(pharFile);
+      FileUtils.deleteQuietly(previousReport);
+      FileUtils.deleteQuietly(changesReport);
     }
   }
 
+  /**
+   * Runs one process per shard in parallel, then merges the reports of the shards into the expected report files.
+   */
+  private void executeShards(List<List<String>> commandLines, List<List<File>> shards, String mode) {
+    List<Future<?>> futures = Lists.newArrayList();
+    ExecutorService pool = Executors.newFixedThreadPool(shards.size());
+    LOG.info("Executing " + mode + getExecutedTool() + " on {} shards", shards.size());
+    try {
+      for (int i = 0; i < shards.size(); i++) {
+        final List<String> commandLine = commandLines.get(i);
+        LOG.debug("Executing shard " + i + " of " + getExecutedTool() + " on {} files", shards.get(i).size());
+        futures.add(pool.submit(new Runnable() {
+          public void run() {
+            doExecute(commandLine);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      mergeShardReports(shards.size());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while executing " + getExecutedTool(), e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new SonarException("Error during execution of " + getExecutedTool(), e.getCause());
+    } finally {
+      // Remaining shards are useless once one of them has failed
+      pool.shutdownNow();
+      deleteShardFiles(shards.size());
+    }
+  }
+
+  /**
+   * Returns the embedded PHAR archive, extracted once in the user cache and shared by all the analyses of the host.
+   */
   @VisibleForTesting
-  public void extractPhar(URL pharURL, File dest) throws IOException {
-    FileUtils.copyURLToFile(pharURL, dest);
+  public File getPharFile(URL pharURL) throws IOException {
+    return new PharCache(PhpUserCache.getDirectory(configuration.getSettings(), PHAR_CACHE_DIRECTORY)).get(pharURL, getPHARName());
   }
 
   @VisibleForTesting
@@ -143,13 +443,37 @@ public abstract class AbstractPhpExecutor implements BatchExtension {
   }
 
   private void doExecute(List<String> commandLine) {
-    Iterator<String> commandLineIterator = commandLine.iterator();
-    Command command = Command.create(commandLineIterator.next());
-    command.setDirectory(configuration.getFileSystem().getBasedir());
-    while (commandLineIterator.hasNext()) {
-      command.addArgument(commandLineIterator.next());
+    checkExitCode(invoke(commandLine, null, null));
+  }
+
+  /**
+   * Launches a process of the tool, recording its resource usage in the current execution.
+   *
+   * @param stdOut
+   *          the consumer of the standard output, or null to log it
+   * @param stdErr
+   *          the consumer of the error output, or null to log it
+   * @return the exit code
+   */
+  private int invoke(List<String> commandLine, StreamConsumer stdOut, StreamConsumer stdErr) {
+    Command command = createCommand(commandLine);
+    ProcessMonitor monitor = ProcessMonitor.start(commandLine);
+    long start = System.currentTimeMillis();
+    int exitCode = -1;
+    try {
+      exitCode = stdOut == null ? doExecute(command) : doExecute(command, stdOut, stdErr);
+      return exitCode;
+    } finally {
+      monitor.stop();
+      ToolExecution execution = currentExecution;
+      if (execution != null) {
+        execution.addInvocation(new ToolExecution.Invocation(System.currentTimeMillis() - start, exitCode, monitor.getCpuUserTime(),
+          monitor.getCpuSystemTime(), monitor.getPeakRss()));
+      }
     }
-    int exitCode = doExecute(command);
+  }
+
+  private void checkExitCode(int exitCode) {
     if (!acceptedExitCodes.contains(exitCode)) {
       throw new SonarException(getExecutedTool() + " execution failed with returned code '" + exitCode
         + "'. Please check the documentation of " + getExecutedTool() + " to know more about this failure.");
@@ -158,49 +482,158 @@ public abstract class AbstractPhpExecutor implements BatchExtension {
     }
   }
 
+  private Command createCommand(List<String> commandLine) {
+    Iterator<String> commandLineIterator = commandLine.iterator();
+    Command command = Command.create(commandLineIterator.next());
+    command.setDirectory(configuration.getFileSystem().getBasedir());
+    while (commandLineIterator.hasNext()) {
+      command.addArgument(commandLineIterator.next());
+    }
+    return command;
+  }
+
   @VisibleForTesting
   public int doExecute(Command command) {
     return CommandExecutor.create().execute(command, configuration.getTimeout() * MINUTES_TO_MILLISECONDS);
   }
 
+  @VisibleForTesting
+  public int doExecute(Command command, StreamConsumer stdOut, StreamConsumer stdErr) {
+    return CommandExecutor.create().execute(command, stdOut, stdErr, configuration.getTimeout() * MINUTES_TO_MILLISECONDS);
+  }
+
+  private PhpRuntimeProfile getRuntimeProfile() {
+    return new PhpRuntimeProfile(configuration.getSettings());
+  }
+
   /**
-   * Test presence of external tool .
+   * Test presence of external tool. The result of the probe is cached by {@link ToolProbeCache} as long as the
+   * executable and the <code>PATH</code> do not change.
    */
   public boolean verifyExternalTool() {
     List<String> commandLine = getTestCommandLine();
-    LOG.debug("Testing " + getExecutedTool() + " with command '{}'", prettyPrint(commandLine));
+    String key = ToolProbeCache.getKey(getExecutedTool(), commandLine.get(0), configuration.getFileSystem().getBasedir(),
+        System.getenv(PATH_VARIABLE));
+    ToolProbeCache cache = new ToolProbeCache(new File(PhpUserCache.getDirectory(configuration.getSettings(), PROBE_CACHE_DIRECTORY),
+        PROBE_CACHE_FILE));
 
-    Iterator<String> commandLineIterator = commandLine.iterator();
-    Command command = Command.create(commandLineIterator.next());
-    command.setDirectory(configuration.getFileSystem().getBasedir());
-    while (commandLineIterator.hasNext()) {
-      command.addArgument(commandLineIterator.next());
+    ToolProbeCache.Probe probe = key == null ? null : cache.get(key);
+    if (probe != null) {
+      LOG.debug("Reusing previous test of " + getExecutedTool() + ", version '{}'", probe.getVersion());
+    } else {
+      probe = probe(commandLine);
+      // Failures are not remembered, as they may be transient
+      if (key != null && probe.isAvailable()) {
+        cache.put(key, probe);
+      }
     }
+    detectedVersion = probe.getVersion();
+    return probe.isAvailable();
+  }
+
+  @VisibleForTesting
+  public ToolProbeCache.Probe probe(List<String> commandLine) {
+    LOG.debug("Testing " + getExecutedTool() + " with command '{}'", prettyPrint(commandLine));
+    final StringBuilder output = new StringBuilder();
+    StreamConsumer consumer = new StreamConsumer() {
+      public void consumeLine(String line) {
+        synchronized (output) {
+          output.append(line).append('\n');
+        }
+      }
+    };
     try {
-      int exitCode = doExecute(command);
+      int exitCode = CommandExecutor.create().execute(createCommand(commandLine), consumer, consumer,
+          configuration.getTimeout() * MINUTES_TO_MILLISECONDS);
       LOG.debug(getExecutedTool() + " test succeeded with returned code '{}'.", exitCode);
-      return exitCode == 0;
+      return new ToolProbeCache.Probe(exitCode == 0, extractVersion(output.toString()));
     } catch (Exception e) {
       LOG.debug(getExecutedTool() + " test failed");
-      return false;
+      return new ToolProbeCache.Probe(false, null);
     }
   }
 
-  protected File getRuleset(AbstractPhpConfiguration configuration, RulesProfile profile, ProfileExporter exporter) {
+  /**
+   * Version of the executed tool, as reported by the external tool or deduced from the name of the embedded PHAR archive.
+   *
+   * @return the version, or null if it is unknown
+   */
+  public String getToolVersion() {
+    if (embeddedMode) {
+      return extractVersion(getPHARName());
+    }
+    return detectedVersion;
+  }
+
+  @VisibleForTesting
+  static String extractVersion(String text) {
+    if (text == null) {
+      return null;
+    }
+    Matcher matcher = VERSION_PATTERN.matcher(text);
+    return matcher.find() ? matcher.group() : null;
+  }
+
+  /**
+   * Gets the key of the ruleset exported from the given profile, which changes whenever the ruleset changes.
+   *
+   * @return the key
+   */
+  protected String getRulesetKey(RulesProfile profile, ProfileExporter exporter) {
+    return RulesetDigest.digest(profile, exporter);
+  }
+
+  /**
+   * Exports the given profile as a ruleset of the tool, in the working directory. The file is named after the key of the ruleset,
+   * so it is exported once and reused by the following executions and analyses as long as the profile does not change.
+   *
+   * @return the ruleset, or null if it could not be exported or is empty
+   */
+  protected synchronized File getRuleset(AbstractPhpConfiguration configuration, RulesProfile profile, ProfileExporter exporter) {
     File workingDir = configuration.createWorkingDirectory();
-    File ruleset = null;
+    String prefix = getExecutedTool().toLowerCase(Locale.ENGLISH) + "-" + RULESET_PREFIX + "-";
+    File ruleset = new File(workingDir, prefix + getRulesetKey(profile, exporter) + XML_SUFFIX);
+    if (ruleset.isFile() && ruleset.length() > 0) {
+      LOG.debug("Reusing ruleset {}", ruleset);
+      return ruleset;
+    }
+    deleteRulesets(workingDir, prefix);
+    File exported = null;
     Writer writer = null;
     try {
-      ruleset = File.createTempFile(RULESET_PREFIX, XML_SUFFIX, workingDir);
-      writer = new FileWriter(ruleset);
+      exported = File.createTempFile(prefix, TEMPORARY_SUFFIX, workingDir);
+      writer = new FileWriter(exported);
       exporter.exportProfile(profile, writer);
+      writer.close();
+      if (exported.length() == 0) {
+        return null;
+      }
+      FileUtils.moveFile(exported, ruleset);
+      return ruleset;
     } catch (IOException e) {
-      String msg = "Error while creating temporary ruleset from profile: " + profile + " to file : " + ruleset + " in dir " + workingDir;
+      String msg = "Error while creating ruleset from profile: " + profile + " to file : " + ruleset + " in dir " + workingDir;
       LOG.error(msg);
+      return null;
     } finally {
       IOUtils.closeQuietly(writer);
+      FileUtils.deleteQuietly(exported);
+    }
+  }
+
+  /**
+   * Deletes the rulesets of previous profiles, as well as the temporary ones of the former versions of the plugin.
+   */
+  private static void deleteRulesets(File workingDir, String prefix) {
+    File[] files = workingDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(XML_SUFFIX) && (name.startsWith(prefix) || name.matches(RULESET_PREFIX + "\\d+\\" + XML_SUFFIX))) {
+        FileUtils.deleteQuietly(file);
+      }
     }
-    return (ruleset != null && ruleset.length() > 0) ? ruleset : null;
   }
 
   /**
@@ -243,6 +676,116 @@ public abstract class AbstractPhpExecutor implements BatchExtension {
     return result;
   }
 
+  /**
+   * Whether the tool can be split into several processes, each one executed on a list of files with a report of its own.
+   *
+   * @return true if the reports of several processes can be merged
+   */
+  protected boolean isShardable() {
+    return false;
+  }
+
+  /**
+   * Gets the command line analysing the given files only and writing the given report.
+   *
+   * @param files
+   *          the files to analyse
+   * @param reportFile
+   *          the report file
+   * @return the command line
+   */
+  protected abstract List<String> getCommandLineArguments(List<File> files, File reportFile);
+
+  /**
+   * Gets everything but the analysed files which may change the violations reported by the tool, such as the ruleset and
+   * the options. The files changed since the previous analysis are the only ones analysed again as long as these settings
+   * and the version of the tool do not change.
+   *
+   * @return the settings, or null if the tool does not support incremental analysis
+   */
+  protected String getAnalysisSettings() {
+    return null;
+  }
+
+  /**
+   * Gets the files to split among the shards, by default the main PHP files.
+   *
+   * @return the files
+   */
+  protected List<File> getShardableFiles() {
+    List<File> files = Lists.newArrayList();
+    for (InputFile inputFile : configuration.getFileSystem().mainFiles(PhpConstants.LANGUAGE_KEY)) {
+      files.add(inputFile.getFile());
+    }
+    return files;
+  }
+
+  /**
+   * Gets the weight of the files when balancing the shards.
+   *
+   * @return the weigher, or null to balance the shards by file size
+   */
+  protected FileShards.Weigher getShardWeigher() {
+    return null;
+  }
+
+  /**
+   * Gets the command line of the given shard, which by default writes its own report file.
+   *
+   * @param files
+   *          the files of the shard
+   * @param shard
+   *          the index of the shard
+   * @return the command line
+   */
+  protected List<String> getShardCommandLineArguments(List<File> files, int shard) {
+    return getCommandLineArguments(files, getShardFile(configuration.getReportFile(), shard));
+  }
+
+  /**
+   * Merges the reports written by the shards into the report expected by the sensor.
+   *
+   * @param shardCount
+   *          the number of shards
+   */
+  protected void mergeShardReports(int shardCount) {
+    new XmlReportMerger().merge(getShardFiles(configuration.getReportFile(), shardCount), configuration.getReportFile());
+  }
+
+  /**
+   * Deletes the temporary files of the shards.
+   *
+   * @param shardCount
+   *          the number of shards
+   */
+  protected void deleteShardFiles(int shardCount) {
+    for (File file : getShardFiles(configuration.getReportFile(), shardCount)) {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+
+  /**
+   * @return the file used by the given shard in place of the given file, in the same directory
+   */
+  protected static File getShardFile(File file, int shard) {
+    return getSiblingFile(file, SHARD_SUFFIX + shard);
+  }
+
+  private static File getSiblingFile(File file, String suffix) {
+    return new File(file.getParentFile(), FilenameUtils.getBaseName(file.getName()) + suffix + "." + FilenameUtils.getExtension(file.getName()));
+  }
+
+  /**
+   * @return the files used by the shards in place of the given file
+   */
+  protected static List<File> getShardFiles(File file, int shardCount) {
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < shardCount; i++) {
+      files.add(getShardFile(file, i));
+    }
+    return files;
+  }
+
   /**
    * Gets the executed tool.
    * 
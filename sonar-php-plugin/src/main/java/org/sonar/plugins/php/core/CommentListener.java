@@ -0,0 +1,96 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * NOSONAR lines and commented-out code lines. As squid did, the comments of a line are joined before looking for code, and
+ * the lines of documentation comments are never considered as code.
+ */
+final class CommentListener implements PhpTokenListener {
+
+  private static final double CODE_RECOGNIZER_SENSITIVITY = 0.9;
+  private static final String NOSONAR_TAG = "NOSONAR";
+
+  private final PhpCodeRecognizer codeRecognizer = new PhpCodeRecognizer(CODE_RECOGNIZER_SENSITIVITY);
+  // Comments of the current line
+  private final StringBuilder comment = new StringBuilder();
+  private PhpSource source;
+  private PhpFileMetrics metrics;
+  private int line;
+  private boolean docComment;
+
+  public void startFile(PhpSource phpSource, PhpFileMetrics fileMetrics) {
+    this.source = phpSource;
+    this.metrics = fileMetrics;
+    this.line = 0;
+  }
+
+  public void visitToken(PhpTokens tokens, int index) {
+    if (!tokens.getKind(index).isComment()) {
+      return;
+    }
+    int start = tokens.getOffset(index);
+    int end = start + tokens.getLength(index);
+    boolean doc = end - start >= 3 && source.charAt(start) == '/' && source.charAt(start + 1) == '*' && source.charAt(start + 2) == '*';
+    int currentLine = tokens.getLine(index);
+    int lineStart = start;
+    for (int i = start; i < end; i++) {
+      char c = source.charAt(i);
+      if (c == '\n' || c == '\r') {
+        append(currentLine, lineStart, i, doc);
+        if (c == '\r' && i + 1 < end && source.charAt(i + 1) == '\n') {
+          i++;
+        }
+        currentLine++;
+        lineStart = i + 1;
+      }
+    }
+    append(currentLine, lineStart, end, doc);
+  }
+
+  private void append(int commentLine, int start, int end, boolean doc) {
+    if (commentLine != line) {
+      flush();
+      line = commentLine;
+      docComment = false;
+    }
+    comment.append(source, start, end);
+    docComment |= doc;
+  }
+
+  private void flush() {
+    if (line > 0) {
+      String text = comment.toString();
+      if (text.contains(NOSONAR_TAG)) {
+        metrics.addNoSonarLine(line);
+      }
+      if (!docComment && codeRecognizer.isLineOfCode(text)) {
+        metrics.addCommentedOutCodeLine();
+      }
+    }
+    comment.setLength(0);
+  }
+
+  public void endFile() {
+    flush();
+    source = null;
+    metrics = null;
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * Tokens of the copy-paste detection, normalized as {@link org.sonar.plugins.php.duplications.PhpTokenProducer} does: comments
+ * are dropped, strings and numbers are replaced by <code>$CHARS</code> and <code>$NUMBER</code>, a sign directly followed by a
+ * number is part of it, names are single tokens and every other character is a token. The <code>use</code> directives are
+ * skipped.
+ * <p>
+ * The comments and strings are the ones found by {@link PhpTokenizer}, which follows PHP where the regular expressions of the
+ * producer do not:
+ * <ul>
+ * <li>single quoted strings may span several lines;</li>
+ * <li>heredoc strings end on a line holding nothing but their label, optionally followed by a semicolon;</li>
+ * <li><code>//</code> and <code>#</code> comments end before the closing tag <code>?&gt;</code>;</li>
+ * <li>numbers may contain <code>_</code> separators, and binary numbers may start with <code>0B</code>;</li>
+ * <li>every character above ASCII is a name character, as PHP reads the bytes of UTF-8 characters as such, whereas the producer
+ * only accepts the ones up to U+00FF;</li>
+ * <li>the byte order mark is skipped.</li>
+ * </ul>
+ * <p>
+ * The values of the tokens are interned in the {@link PhpSymbolTable} of the analysis. The tokens are added to the metrics of the
+ * file, or pushed to a {@link PhpCpdTokenVisitor} for the files too large to keep them.
+ */
+final class CpdTokenListener implements PhpTokenListener {
+
+  private static final String USE_KEYWORD = "use";
+  private static final int ASCII = 128;
+
+  private final PhpSymbolTable.Cache symbols;
+  private final int[] asciiSymbols = new int[ASCII];
+  private final int semiColonSymbol;
+  private PhpSource source;
+  private PhpFileMetrics metrics;
+  private PhpCpdTokenVisitor visitor;
+  private boolean useDirective;
+  // Sign which may be the one of the next number
+  private int signOffset;
+  private int signLine;
+
+  CpdTokenListener(PhpSymbolTable symbolTable) {
+    this.symbols = new PhpSymbolTable.Cache(symbolTable);
+    for (char c = 0; c < ASCII; c++) {
+      asciiSymbols[c] = symbolTable.intern(String.valueOf(c));
+    }
+    this.semiColonSymbol = asciiSymbols[';'];
+  }
+
+  public void startFile(PhpSource phpSource, PhpFileMetrics fileMetrics) {
+    start(phpSource, fileMetrics, null);
+  }
+
+  /**
+   * Starts a file whose tokens are pushed to the given visitor instead of being added to its metrics.
+   */
+  void startFile(PhpSource phpSource, PhpCpdTokenVisitor tokenVisitor) {
+    start(phpSource, null, tokenVisitor);
+  }
+
+  private void start(PhpSource phpSource, PhpFileMetrics fileMetrics, PhpCpdTokenVisitor tokenVisitor) {
+    this.source = phpSource;
+    this.metrics = fileMetrics;
+    this.visitor = tokenVisitor;
+    this.useDirective = false;
+    this.signOffset = -1;
+  }
+
+  public void visitToken(PhpTokens tokens, int index) {
+    PhpTokenKind kind = tokens.getKind(index);
+    if (kind.isComment()) {
+      return;
+    }
+    int start = tokens.getOffset(index);
+    int end = start + tokens.getLength(index);
+    int line = tokens.getLine(index);
+    if (kind == PhpTokenKind.T_LNUMBER || kind == PhpTokenKind.T_DNUMBER) {
+      if (signOffset >= 0 && signOffset + 1 == start) {
+        line = signLine;
+      } else {
+        flushSign();
+      }
+      signOffset = -1;
+      add(PhpSymbolTable.NUMERIC_LITERAL, line);
+      return;
+    }
+    flushSign();
+    if (kind.getLexerType() == PhpLexerType.STRING) {
+      add(PhpSymbolTable.CHARACTER_LITERAL, line);
+      return;
+    }
+    int position = start;
+    while (position < end) {
+      char c = source.charAt(position);
+      int next;
+      flushSign();
+      if (isNameCharacter(c)) {
+        next = position + 1;
+        while (next < end && isNameCharacter(source.charAt(next))) {
+          next++;
+        }
+        if (isUseKeyword(position, next)) {
+          useDirective = true;
+        } else {
+          add(symbols.intern(source, position, next), line);
+        }
+      } else if (c == '+' || c == '-') {
+        next = position + 1;
+        signOffset = position;
+        signLine = line;
+      } else {
+        next = position + Character.charCount(Character.codePointAt(source, position));
+        add(c < ASCII ? asciiSymbols[c] : symbols.intern(source, position, next), line);
+      }
+      position = next;
+    }
+  }
+
+  /**
+   * Compares the name with the <code>use</code> keyword as {@link String#equalsIgnoreCase(String)} does.
+   */
+  private boolean isUseKeyword(int start, int end) {
+    if (end - start != USE_KEYWORD.length()) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      char upperCase = Character.toUpperCase(source.charAt(i));
+      char keywordUpperCase = Character.toUpperCase(USE_KEYWORD.charAt(i - start));
+      if (upperCase != keywordUpperCase && Character.toLowerCase(upperCase) != Character.toLowerCase(keywordUpperCase)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isNameCharacter(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c >= '\u007f';
+  }
+
+  private void flushSign() {
+    if (signOffset >= 0) {
+      add(asciiSymbols[source.charAt(signOffset)], signLine);
+      signOffset = -1;
+    }
+  }
+
+  private void add(int symbol, int line) {
+    if (useDirective) {
+      // The use directives are ignored
+      if (symbol == semiColonSymbol) {
+        useDirective = false;
+      }
+    } else if (visitor != null) {
+      visitor.visitCpdToken(symbol, line);
+    } else {
+      metrics.addCpdToken(symbol, line);
+    }
+  }
+
+  public void endFile() {
+    flushSign();
+    source = null;
+    metrics = null;
+    visitor = null;
+  }
+}
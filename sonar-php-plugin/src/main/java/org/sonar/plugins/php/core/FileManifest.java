@@ -0,0 +1,123 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Content hashes of the files analysed by an external tool during the previous analysis, along with a digest of the
+ * settings of the tool (version, ruleset, options). It tells which files changed since the previous analysis, as long
+ * as the settings did not change in the meantime.
+ * <p>
+ * Contents are always hashed again, as the modification time of a file may not change when it is saved twice within
+ * the resolution of the file system clock.
+ */
+public class FileManifest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileManifest.class);
+  // Can not clash with the absolute path of a file
+  private static final String SETTINGS_KEY = "settings";
+
+  private final File file;
+
+  public FileManifest(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the digests of the files of the previous analysis.
+   *
+   * @param settingsDigest
+   *          the digest of the current settings of the tool
+   * @return the digests by absolute path, or null if there is no manifest or if it was written with other settings
+   */
+  public Map<String, String> load(String settingsDigest) {
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      properties.load(input);
+    } catch (IOException e) {
+      LOG.debug("Unable to read file manifest " + file, e);
+      return null;
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+    if (!settingsDigest.equals(properties.getProperty(SETTINGS_KEY))) {
+      return null;
+    }
+    properties.remove(SETTINGS_KEY);
+    Map<String, String> digests = Maps.newHashMap();
+    for (String path : properties.stringPropertyNames()) {
+      digests.put(path, properties.getProperty(path));
+    }
+    return digests;
+  }
+
+  /**
+   * Computes the digests of the given files.
+   *
+   * @return the digests by absolute path
+   */
+  public static Map<String, String> digest(List<File> files) throws IOException {
+    Map<String, String> digests = Maps.newHashMap();
+    for (File file : files) {
+      digests.put(file.getAbsolutePath(), PhpDigest.sha256Hex(file));
+    }
+    return digests;
+  }
+
+  public void save(String settingsDigest, Map<String, String> digests) {
+    Properties properties = new Properties();
+    properties.putAll(digests);
+    properties.setProperty(SETTINGS_KEY, settingsDigest);
+    OutputStream output = null;
+    try {
+      FileUtils.forceMkdir(file.getParentFile());
+      output = new FileOutputStream(file);
+      properties.store(output, null);
+    } catch (IOException e) {
+      LOG.debug("Unable to save file manifest " + file, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  public void delete() {
+    FileUtils.deleteQuietly(file);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Splits files into shards of similar total weight, the weight of a file being its size unless stated otherwise.
+ */
+public final class FileShards {
+
+  private FileShards() {
+  }
+
+  /**
+   * Splits the files by byte size.
+   */
+  public static List<List<File>> split(List<File> files, int count) {
+    return split(files, count, new Weigher() {
+      public long weigh(File file) {
+        return file.length();
+      }
+    });
+  }
+
+  /**
+   * Greedy balancing: heaviest files first, each one in the lightest shard so far. Empty shards are dropped and
+   * the files of each shard keep their original order.
+   */
+  public static List<List<File>> split(final List<File> files, int count, final Weigher weigher) {
+    List<Integer> indexes = Lists.newArrayList();
+    final long[] weights = new long[files.size()];
+    for (int i = 0; i < files.size(); i++) {
+      indexes.add(i);
+      weights[i] = weigher.weigh(files.get(i));
+    }
+    Collections.sort(indexes, new Comparator<Integer>() {
+      public int compare(Integer left, Integer right) {
+        return weights[left] > weights[right] ? -1 : (weights[left] == weights[right] ? left.compareTo(right) : 1);
+      }
+    });
+
+    int shardCount = Math.max(1, Math.min(count, files.size()));
+    PriorityQueue<Shard> queue = new PriorityQueue<Shard>(shardCount);
+    List<Shard> shards = Lists.newArrayList();
+    for (int i = 0; i < shardCount; i++) {
+      Shard shard = new Shard(i);
+      shards.add(shard);
+      queue.add(shard);
+    }
+    for (Integer index : indexes) {
+      Shard lightest = queue.poll();
+      lightest.indexes.add(index);
+      lightest.weight += weights[index];
+      queue.add(lightest);
+    }
+
+    List<List<File>> result = Lists.newArrayList();
+    for (Shard shard : shards) {
+      if (!shard.indexes.isEmpty()) {
+        Collections.sort(shard.indexes);
+        List<File> shardFiles = Lists.newArrayListWithCapacity(shard.indexes.size());
+        for (Integer index : shard.indexes) {
+          shardFiles.add(files.get(index));
+        }
+        result.add(shardFiles);
+      }
+    }
+    return result;
+  }
+
+  public interface Weigher {
+    long weigh(File file);
+  }
+
+  private static final class Shard implements Comparable<Shard> {
+    private final int id;
+    private final List<Integer> indexes = Lists.newArrayList();
+    private long weight;
+
+    Shard(int id) {
+      this.id = id;
+    }
+
+    public int compareTo(Shard other) {
+      if (weight != other.weight) {
+        return weight < other.weight ? -1 : 1;
+      }
+      return id < other.id ? -1 : (id == other.id ? 0 : 1);
+    }
+  }
+}
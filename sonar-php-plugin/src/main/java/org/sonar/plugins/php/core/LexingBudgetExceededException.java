@@ -0,0 +1,48 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.sonar.api.utils.SonarException;
+
+/**
+ * Thrown by {@link PhpTokenizer} when a source takes more steps or more time to tokenize than its budget.
+ */
+public class LexingBudgetExceededException extends SonarException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final boolean timeout;
+
+  /**
+   * @param timeout
+   *          true if the budget of time is exceeded, false if the budget of steps is
+   */
+  public LexingBudgetExceededException(String message, boolean timeout) {
+    super(message);
+    this.timeout = timeout;
+  }
+
+  /**
+   * @return true if the budget of time is exceeded, which unlike the budget of steps depends on the load of the host
+   */
+  public boolean isTimeout() {
+    return timeout;
+  }
+}
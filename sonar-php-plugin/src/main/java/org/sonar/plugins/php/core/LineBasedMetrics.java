@@ -0,0 +1,82 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * Linear approximation of the lines metrics of a source which could not be tokenized within its budget. Comments are found line
+ * after line without looking for strings, so that comment markers within strings are taken for comments. NOSONAR is looked for
+ * in the comments, and commented-out code is not looked for.
+ */
+final class LineBasedMetrics {
+
+  private static final String NOSONAR = "NOSONAR";
+
+  private LineBasedMetrics() {
+  }
+
+  static PhpFileMetrics compute(PhpSource source) {
+    PhpFileMetrics metrics = new PhpFileMetrics(source.getFile(), source.getLineCount(), false);
+    metrics.setApproximated();
+    int length = source.length();
+    int line = 1;
+    boolean blockComment = false;
+    boolean lineComment = false;
+    for (int i = 0; i < length; i++) {
+      char c = source.charAt(i);
+      char next = i + 1 < length ? source.charAt(i + 1) : 0;
+      if (c == '\n' || c == '\r' && next != '\n') {
+        line++;
+        lineComment = false;
+      } else if (c == '\r') {
+        continue;
+      } else if (blockComment || lineComment) {
+        metrics.getLinesOfComments().set(line);
+        if (blockComment && c == '*' && next == '/') {
+          blockComment = false;
+          i++;
+        } else if (c == 'N' && startsWith(source, i, NOSONAR)) {
+          metrics.addNoSonarLine(line);
+        }
+      } else if (c == '#' || c == '/' && next == '/') {
+        lineComment = true;
+        metrics.getLinesOfComments().set(line);
+      } else if (c == '/' && next == '*') {
+        blockComment = true;
+        metrics.getLinesOfComments().set(line);
+        i++;
+      } else if (!Character.isWhitespace(c)) {
+        metrics.getLinesOfCode().set(line);
+      }
+    }
+    return metrics;
+  }
+
+  private static boolean startsWith(CharSequence source, int start, String prefix) {
+    if (start + prefix.length() > source.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (source.charAt(start + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import java.util.Arrays;
+
+/**
+ * Lines of code and comment lines. As with the SSLR lexer, the comments which follow the last token of the file are not
+ * counted.
+ */
+final class LinesListener implements PhpTokenListener {
+
+  private PhpSource source;
+  private PhpFileMetrics metrics;
+  // Lines of the comments waiting for the next token, as pairs of first line and line after the comment: the tokens are only
+  // visited one at a time
+  private int[] pendingComments = new int[16];
+  private int pendingCount;
+
+  public void startFile(PhpSource phpSource, PhpFileMetrics fileMetrics) {
+    this.source = phpSource;
+    this.metrics = fileMetrics;
+    this.pendingCount = 0;
+  }
+
+  public void visitToken(PhpTokens tokens, int index) {
+    if (tokens.getKind(index).isComment()) {
+      if (pendingCount == pendingComments.length) {
+        pendingComments = Arrays.copyOf(pendingComments, pendingCount * 2);
+      }
+      int firstLine = tokens.getLine(index);
+      pendingComments[pendingCount++] = firstLine;
+      pendingComments[pendingCount++] = firstLine + countLines(source, tokens.getOffset(index), tokens.getOffset(index)
+        + tokens.getLength(index));
+      return;
+    }
+    for (int i = 0; i < pendingCount; i += 2) {
+      metrics.getLinesOfComments().set(pendingComments[i], pendingComments[i + 1]);
+    }
+    pendingCount = 0;
+    metrics.getLinesOfCode().set(tokens.getLine(index));
+  }
+
+  public void endFile() {
+    source = null;
+    metrics = null;
+  }
+
+  /**
+   * @return the number of lines of the text, in which <code>\r\n</code> is a single line terminator
+   */
+  private static int countLines(CharSequence text, int start, int end) {
+    int count = 1;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r' && (i + 1 >= end || text.charAt(i + 1) != '\n')) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -20,50 +20,33 @@
 package org.sonar.plugins.php.core;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.commons.io.IOUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Phase;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.checks.NoSonarFilter;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
+import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.api.utils.SonarException;
-import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.plugins.php.api.PhpConstants;
-import org.sonar.squid.measures.Metric;
-import org.sonar.squid.recognizer.CamelCaseDetector;
-import org.sonar.squid.recognizer.CodeRecognizer;
-import org.sonar.squid.recognizer.ContainsDetector;
-import org.sonar.squid.recognizer.Detector;
-import org.sonar.squid.recognizer.EndWithDetector;
-import org.sonar.squid.recognizer.KeywordsDetector;
-import org.sonar.squid.recognizer.LanguageFootprint;
-import org.sonar.squid.text.Source;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.HashSet;
+import java.io.IOException;
 import java.util.List;
-import java.util.Set;
 
 @Phase(name = Phase.Name.PRE)
 // The NoSonarFilter must be fed before launching the violation engines
 public class NoSonarAndCommentedOutLocSensor implements Sensor {
 
-  private static final double CODE_RECOGNIZER_SENSITIVITY = 0.9;
-
-  private static final Logger LOG = LoggerFactory.getLogger(NoSonarAndCommentedOutLocSensor.class);
-
   private final NoSonarFilter filter;
   private final ModuleFileSystem filesystem;
+  private final PhpTokenPass tokenPass;
 
-  public NoSonarAndCommentedOutLocSensor(ModuleFileSystem filesystem, NoSonarFilter noSonarFilter) {
+  public NoSonarAndCommentedOutLocSensor(ModuleFileSystem filesystem, NoSonarFilter noSonarFilter, PhpTokenPass tokenPass) {
     this.filter = noSonarFilter;
     this.filesystem = filesystem;
+    this.tokenPass = tokenPass;
   }
 
   /**
@@ -71,15 +54,14 @@ public class NoSonarAndCommentedOutLocSensor implements Sensor {
    */
   public void analyse(Project project, SensorContext context) {
     List<File> sourceFiles = filesystem.files(FileQuery.onSource().onLanguage(PhpConstants.LANGUAGE_KEY));
+    // As the first sensor to need the tokens, tokenizes all the files for the others
+    tokenPass.analyse(sourceFiles);
     for (File file : sourceFiles) {
       org.sonar.api.resources.File phpFile = getSonarResource(project, file);
       if (phpFile != null) {
-        Source source = analyseSourceCode(file);
-        if (source != null) {
-          filter.addResource(phpFile, source.getNoSonarTagLines());
-          double measure = source.getMeasure(Metric.COMMENTED_OUT_CODE_LINES);
-          context.saveMeasure(phpFile, CoreMetrics.COMMENTED_OUT_CODE_LINES, measure);
-        }
+        PhpFileMetrics metrics = getMetrics(file);
+        filter.addResource(phpFile, metrics.getNoSonarLines());
+        context.saveMeasure(phpFile, CoreMetrics.COMMENTED_OUT_CODE_LINES, (double) metrics.getCommentedOutCodeLines());
       }
     }
   }
@@ -89,21 +71,12 @@ public class NoSonarAndCommentedOutLocSensor implements Sensor {
     return org.sonar.api.resources.File.fromIOFile(file, project);
   }
 
-  protected static Source analyseSourceCode(File file) {
-    Source result = null;
-    FileReader reader = null;
+  private PhpFileMetrics getMetrics(File file) {
     try {
-      reader = new FileReader(file);
-      result = new Source(reader, new CodeRecognizer(CODE_RECOGNIZER_SENSITIVITY, new PhpLanguageFootprint()));
-    } catch (FileNotFoundException e) {
+      return tokenPass.get(file);
+    } catch (IOException e) {
       throw new SonarException("Unable to open file '" + file.getAbsolutePath() + "'", e);
-    } catch (RuntimeException rEx) {
-      LOG.error("Error while parsing file '" + file.getAbsolutePath() + "'", rEx);
-    } finally {
-      IOUtils.closeQuietly(reader);
     }
-
-    return result;
   }
 
   /**
@@ -120,29 +93,4 @@ public class NoSonarAndCommentedOutLocSensor implements Sensor {
   public String toString() {
     return "NoSonar and Commented out LOC Sensor";
   }
-
-  private static class PhpLanguageFootprint implements LanguageFootprint {
-
-    private static final double CAMEL_CASE_PROBABILITY = 0.5;
-    private static final double CONDITIONAL_PROBABILITY = 0.95;
-    private static final double PHP_KEYWORDS_PROBABILITY = 0.3;
-    private static final double BOOLEAN_OPERATOR_PROBABILITY = 0.7;
-    private static final double END_WITH_DETECTOR_PROBABILITY = 0.95;
-    private final Set<Detector> detectors = new HashSet<Detector>();
-
-    public PhpLanguageFootprint() {
-      detectors.add(new EndWithDetector(END_WITH_DETECTOR_PROBABILITY, '}', ';', '{'));
-      detectors.add(new KeywordsDetector(BOOLEAN_OPERATOR_PROBABILITY, "||", "&&"));
-      detectors.add(new KeywordsDetector(PHP_KEYWORDS_PROBABILITY, PhpConstants.PHP_KEYWORDS_ARRAY));
-      detectors.add(new ContainsDetector(CONDITIONAL_PROBABILITY, "++", "for(", "if(", "while(", "catch(", "switch(", "try{", "else{"));
-      detectors.add(new CamelCaseDetector(CAMEL_CASE_PROBABILITY));
-    }
-
-    /**
-     * @see org.sonar.squid.recognizer.LanguageFootprint#getDetectors()
-     */
-    public Set<Detector> getDetectors() {
-      return detectors;
-    }
-  }
 }
@@ -0,0 +1,153 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.SonarException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.util.Map;
+
+/**
+ * Content addressed cache of the PHAR archives embedded in the plugin. Each archive is extracted once in
+ * <code>&lt;directory&gt;/&lt;sha256 of the archive&gt;/&lt;name&gt;</code> and then reused by all the analyses of the host.
+ * <p>
+ * The extraction goes through a temporary file of the same directory which is renamed once complete, so concurrent analyses
+ * never see a partially written archive. The integrity of a cached archive is checked before its first use in the JVM.
+ * </p>
+ */
+public class PharCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PharCache.class);
+
+  /** Digests of the embedded archives, by URL: they can not change while the plugin is loaded */
+  private static final Map<String, String> EMBEDDED_DIGESTS = Maps.newHashMap();
+
+  /** Cached archives already verified by this JVM, with the timestamp they had when verified */
+  private static final Map<File, Long> VERIFIED_FILES = Maps.newHashMap();
+
+  private final File directory;
+
+  public PharCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the cached copy of the given embedded archive, extracting it first if needed.
+   */
+  public File get(URL pharURL, String pharName) throws IOException {
+    String digest = getEmbeddedDigest(pharURL);
+    File pharDirectory = new File(directory, digest);
+    File pharFile = new File(pharDirectory, pharName);
+
+    if (isValid(pharFile, digest)) {
+      return pharFile;
+    }
+    FileUtils.forceMkdir(pharDirectory);
+    File tmpFile = File.createTempFile(pharName, ".tmp", pharDirectory);
+    try {
+      String extractedDigest = copy(pharURL, tmpFile);
+      if (!digest.equals(extractedDigest)) {
+        throw new SonarException("Embedded PHAR archive " + pharName + " has changed during its extraction");
+      }
+      if (!tmpFile.renameTo(pharFile)) {
+        // Either another analysis has just extracted the same archive, or the target is corrupted and could not be replaced
+        if (!isValid(pharFile, digest)) {
+          FileUtils.deleteQuietly(pharFile);
+          if (!tmpFile.renameTo(pharFile) && !isValid(pharFile, digest)) {
+            throw new SonarException("Unable to move " + tmpFile + " to " + pharFile);
+          }
+        }
+      } else {
+        LOG.debug("Extracted {} to {}", pharName, pharFile);
+      }
+    } finally {
+      FileUtils.deleteQuietly(tmpFile);
+    }
+    markVerified(pharFile);
+    return pharFile;
+  }
+
+  private static boolean isValid(File pharFile, String digest) throws IOException {
+    if (!pharFile.isFile()) {
+      return false;
+    }
+    synchronized (VERIFIED_FILES) {
+      Long timestamp = VERIFIED_FILES.get(pharFile);
+      if (timestamp != null && timestamp == pharFile.lastModified()) {
+        return true;
+      }
+    }
+    if (digest.equals(PhpDigest.sha256Hex(pharFile))) {
+      markVerified(pharFile);
+      return true;
+    }
+    LOG.warn("Cached PHAR archive {} is corrupted, it will be extracted again", pharFile);
+    return false;
+  }
+
+  private static void markVerified(File pharFile) {
+    synchronized (VERIFIED_FILES) {
+      VERIFIED_FILES.put(pharFile, pharFile.lastModified());
+    }
+  }
+
+  private static String getEmbeddedDigest(URL pharURL) throws IOException {
+    String key = pharURL.toExternalForm();
+    synchronized (EMBEDDED_DIGESTS) {
+      String digest = EMBEDDED_DIGESTS.get(key);
+      if (digest == null) {
+        InputStream input = pharURL.openStream();
+        try {
+          digest = PhpDigest.sha256Hex(input);
+        } finally {
+          IOUtils.closeQuietly(input);
+        }
+        EMBEDDED_DIGESTS.put(key, digest);
+      }
+      return digest;
+    }
+  }
+
+  /**
+   * Copies the archive and returns the digest of what has actually been written.
+   */
+  private static String copy(URL pharURL, File dest) throws IOException {
+    DigestInputStream input = new DigestInputStream(pharURL.openStream(), PhpDigest.newDigest());
+    OutputStream output = new FileOutputStream(dest);
+    try {
+      IOUtils.copyLarge(input, output);
+    } finally {
+      IOUtils.closeQuietly(input);
+      IOUtils.closeQuietly(output);
+    }
+    return PhpDigest.toHex(input.getMessageDigest().digest());
+  }
+}
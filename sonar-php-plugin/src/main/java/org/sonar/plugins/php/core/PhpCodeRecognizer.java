@@ -0,0 +1,244 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.sonar.plugins.php.api.PhpConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Recognizes the comment lines which are PHP code as {@link org.sonar.squid.recognizer.CodeRecognizer} does with
+ * {@link PhpLanguageFootprint}, but in a single scan of the line: the keywords, the boolean operators and the conditionals are all
+ * found by the same Aho-Corasick automaton, while the camel case and the end of the line are checked along the way.
+ * <p>
+ * As with the squid detectors, the keywords and the boolean operators must be whole words delimited by
+ * {@link #WORD_DELIMITERS}, and the conditionals are counted without overlap in the line stripped of its white spaces. A
+ * recognizer must not be shared between threads.
+ */
+final class PhpCodeRecognizer {
+
+  private static final String WORD_DELIMITERS = " \t(),{}";
+  private static final int ASCII = 128;
+  private static final int KEYWORD = 0;
+  private static final int BOOLEAN_OPERATOR = 1;
+  private static final int CONDITIONAL = 2;
+  private static final int[] NO_PATTERNS = new int[0];
+
+  // Group and length of each pattern
+  private static final int[] PATTERN_GROUPS;
+  private static final int[] PATTERN_LENGTHS;
+  // Transitions of the automaton on the ASCII characters, every other character leading back to the root
+  private static final int[][] TRANSITIONS;
+  // Whole word patterns and conditionals ending at each state, suffixes included
+  private static final int[][] WORD_OUTPUTS;
+  private static final int[][] CONDITIONAL_OUTPUTS;
+
+  static {
+    List<String> patterns = new ArrayList<String>();
+    List<Integer> groups = new ArrayList<Integer>();
+    addPatterns(patterns, groups, KEYWORD, PhpConstants.PHP_KEYWORDS_ARRAY);
+    addPatterns(patterns, groups, BOOLEAN_OPERATOR, PhpLanguageFootprint.BOOLEAN_OPERATORS);
+    addPatterns(patterns, groups, CONDITIONAL, PhpLanguageFootprint.CONDITIONALS);
+    PATTERN_GROUPS = new int[patterns.size()];
+    PATTERN_LENGTHS = new int[patterns.size()];
+    for (int i = 0; i < patterns.size(); i++) {
+      PATTERN_GROUPS[i] = groups.get(i);
+      PATTERN_LENGTHS[i] = patterns.get(i).length();
+    }
+
+    // Trie of the patterns
+    List<int[]> transitions = new ArrayList<int[]>();
+    List<int[]> outputs = new ArrayList<int[]>();
+    transitions.add(newState());
+    outputs.add(NO_PATTERNS);
+    for (int i = 0; i < patterns.size(); i++) {
+      int state = 0;
+      for (char c : patterns.get(i).toCharArray()) {
+        if (transitions.get(state)[c] <= 0) {
+          transitions.get(state)[c] = transitions.size();
+          transitions.add(newState());
+          outputs.add(NO_PATTERNS);
+        }
+        state = transitions.get(state)[c];
+      }
+      outputs.set(state, append(outputs.get(state), i));
+    }
+
+    // Breadth-first completion of the transitions with the failure links
+    int[] failures = new int[transitions.size()];
+    int[] queue = new int[transitions.size()];
+    int head = 0;
+    int tail = 0;
+    for (int c = 0; c < ASCII; c++) {
+      int next = transitions.get(0)[c];
+      if (next > 0) {
+        queue[tail++] = next;
+      } else {
+        transitions.get(0)[c] = 0;
+      }
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      for (int output : outputs.get(failures[state])) {
+        outputs.set(state, append(outputs.get(state), output));
+      }
+      for (int c = 0; c < ASCII; c++) {
+        int next = transitions.get(state)[c];
+        int fallback = transitions.get(failures[state])[c];
+        if (next > 0) {
+          failures[next] = fallback;
+          queue[tail++] = next;
+        } else {
+          transitions.get(state)[c] = fallback;
+        }
+      }
+    }
+
+    TRANSITIONS = transitions.toArray(new int[transitions.size()][]);
+    WORD_OUTPUTS = new int[TRANSITIONS.length][];
+    CONDITIONAL_OUTPUTS = new int[TRANSITIONS.length][];
+    for (int state = 0; state < TRANSITIONS.length; state++) {
+      WORD_OUTPUTS[state] = NO_PATTERNS;
+      CONDITIONAL_OUTPUTS[state] = NO_PATTERNS;
+      for (int pattern : outputs.get(state)) {
+        if (PATTERN_GROUPS[pattern] == CONDITIONAL) {
+          CONDITIONAL_OUTPUTS[state] = append(CONDITIONAL_OUTPUTS[state], pattern);
+        } else {
+          WORD_OUTPUTS[state] = append(WORD_OUTPUTS[state], pattern);
+        }
+      }
+    }
+  }
+
+  private final double threshold;
+  // End of the last counted occurrence of each conditional, in the line without white spaces
+  private final int[] conditionalEnds = new int[PATTERN_GROUPS.length];
+
+  PhpCodeRecognizer(double threshold) {
+    this.threshold = threshold;
+  }
+
+  private static void addPatterns(List<String> patterns, List<Integer> groups, int group, String... values) {
+    Set<String> unique = new LinkedHashSet<String>(Arrays.asList(values));
+    for (String value : unique) {
+      patterns.add(value);
+      groups.add(group);
+    }
+  }
+
+  private static int[] newState() {
+    int[] state = new int[ASCII];
+    Arrays.fill(state, -1);
+    return state;
+  }
+
+  private static int[] append(int[] array, int value) {
+    int[] result = Arrays.copyOf(array, array.length + 1);
+    result[array.length] = value;
+    return result;
+  }
+
+  boolean isLineOfCode(String line) {
+    return recognition(line) - threshold > 0;
+  }
+
+  /**
+   * @return the probability that the line is code
+   */
+  double recognition(String line) {
+    int keywords = 0;
+    int booleanOperators = 0;
+    int conditionals = 0;
+    boolean camelCase = false;
+    char lastSignificant = 0;
+    char previous = ' ';
+    int state = 0;
+    int compactState = 0;
+    int compactLength = 0;
+    Arrays.fill(conditionalEnds, 0);
+    int length = line.length();
+    for (int i = 0; i < length; i++) {
+      char c = line.charAt(i);
+      camelCase |= Character.getType(previous) == Character.LOWERCASE_LETTER && Character.getType(c) == Character.UPPERCASE_LETTER;
+      previous = c;
+      boolean whitespace = Character.isWhitespace(c);
+      if (!whitespace && c != '*' && c != '/') {
+        lastSignificant = c;
+      }
+
+      state = c < ASCII ? TRANSITIONS[state][c] : 0;
+      for (int pattern : WORD_OUTPUTS[state]) {
+        if (isWord(line, i + 1 - PATTERN_LENGTHS[pattern], i + 1)) {
+          if (PATTERN_GROUPS[pattern] == KEYWORD) {
+            keywords++;
+          } else {
+            booleanOperators++;
+          }
+        }
+      }
+
+      if (!whitespace) {
+        compactState = c < ASCII ? TRANSITIONS[compactState][c] : 0;
+        compactLength++;
+        for (int pattern : CONDITIONAL_OUTPUTS[compactState]) {
+          if (compactLength - PATTERN_LENGTHS[pattern] >= conditionalEnds[pattern]) {
+            conditionalEnds[pattern] = compactLength;
+            conditionals++;
+          }
+        }
+      }
+    }
+
+    double probability = 0;
+    probability = combine(probability, PhpLanguageFootprint.END_WITH_DETECTOR_PROBABILITY, isEndOfLine(lastSignificant) ? 1 : 0);
+    probability = combine(probability, PhpLanguageFootprint.BOOLEAN_OPERATOR_PROBABILITY, booleanOperators);
+    probability = combine(probability, PhpLanguageFootprint.PHP_KEYWORDS_PROBABILITY, keywords);
+    probability = combine(probability, PhpLanguageFootprint.CONDITIONAL_PROBABILITY, conditionals);
+    return combine(probability, PhpLanguageFootprint.CAMEL_CASE_PROBABILITY, camelCase ? 1 : 0);
+  }
+
+  private static boolean isWord(String line, int start, int end) {
+    return (start == 0 || WORD_DELIMITERS.indexOf(line.charAt(start - 1)) >= 0)
+      && (end == line.length() || WORD_DELIMITERS.indexOf(line.charAt(end)) >= 0);
+  }
+
+  private static boolean isEndOfLine(char c) {
+    for (char endOfLine : PhpLanguageFootprint.END_OF_LINES) {
+      if (c == endOfLine) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Combines the probability with the one of a detector, as the squid code recognizer does.
+   */
+  private static double combine(double probability, double detectorProbability, int matches) {
+    if (matches == 0) {
+      return probability;
+    }
+    return 1 - (1 - probability) * Math.pow(1 - detectorProbability, matches);
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * Receives the normalized tokens of the copy-paste detection of a file one after the other, see
+ * {@link PhpTokenPass#visitCpdTokens(java.io.File, PhpCpdTokenVisitor)}.
+ */
+public interface PhpCpdTokenVisitor {
+
+  /**
+   * @param symbol
+   *          the id of the normalized value of the token in the {@link PhpSymbolTable} of the analysis
+   * @param line
+   *          the line of the token, starting at 1
+   */
+  void visitCpdToken(int symbol, int line);
+}
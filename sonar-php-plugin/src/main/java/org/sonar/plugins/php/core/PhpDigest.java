@@ -0,0 +1,106 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.utils.SonarException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers used to key the caches of the plugin.
+ */
+public final class PhpDigest {
+
+  private static final String ALGORITHM = "SHA-256";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final char FIELD_SEPARATOR = '\t';
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private PhpDigest() {
+  }
+
+  public static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new SonarException(ALGORITHM + " is not supported by this JVM", e);
+    }
+  }
+
+  public static String sha256Hex(String value) {
+    try {
+      return toHex(newDigest().digest(value.getBytes("UTF-8")));
+    } catch (UnsupportedEncodingException e) {
+      throw new SonarException(e);
+    }
+  }
+
+  public static String sha256Hex(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      return sha256Hex(input);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Digests the remaining content of the stream, which is not closed.
+   */
+  public static String sha256Hex(InputStream input) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+    }
+    return toHex(digest.digest());
+  }
+
+  public static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * The installed plugin is identified by its version and the location of its jar, which Sonar names after its checksum.
+   *
+   * @param pluginClass
+   *          any class of the plugin
+   */
+  public static String getPluginVersion(Class<?> pluginClass) {
+    String version = StringUtils.defaultString(pluginClass.getPackage() == null ? null : pluginClass.getPackage().getImplementationVersion());
+    CodeSource codeSource = pluginClass.getProtectionDomain().getCodeSource();
+    return codeSource == null || codeSource.getLocation() == null ? version : version + FIELD_SEPARATOR + codeSource.getLocation();
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Metrics of a file computed by {@link PhpTokenPass}: code and comment lines, NOSONAR lines, commented-out code lines and the
+ * normalized tokens of the copy-paste detection.
+ */
+public final class PhpFileMetrics {
+
+  private static final int INITIAL_CPD_CAPACITY = 64;
+
+  private final File file;
+  private final int lineCount;
+  private boolean tokenized;
+  private boolean approximated;
+  private boolean timedOut;
+  private final BitSet linesOfCode = new BitSet();
+  private final BitSet linesOfComments = new BitSet();
+  private final Set<Integer> noSonarLines = new HashSet<Integer>();
+  private int commentedOutCodeLines;
+  private int[] cpdSymbols = new int[INITIAL_CPD_CAPACITY];
+  private int[] cpdLines = new int[INITIAL_CPD_CAPACITY];
+  private int cpdTokenCount;
+
+  PhpFileMetrics(File file, int lineCount) {
+    this(file, lineCount, true);
+  }
+
+  PhpFileMetrics(File file, int lineCount, boolean tokenized) {
+    this.file = file;
+    this.lineCount = lineCount;
+    this.tokenized = tokenized;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int getLineCount() {
+    return lineCount;
+  }
+
+  /**
+   * @return the lines (starting at 1) which contain code, not to be modified
+   */
+  public BitSet getLinesOfCode() {
+    return linesOfCode;
+  }
+
+  /**
+   * @return the lines (starting at 1) which contain comments, not to be modified
+   */
+  public BitSet getLinesOfComments() {
+    return linesOfComments;
+  }
+
+  public Set<Integer> getNoSonarLines() {
+    return Collections.unmodifiableSet(noSonarLines);
+  }
+
+  public int getCommentedOutCodeLines() {
+    return commentedOutCodeLines;
+  }
+
+  /**
+   * @return false if the tokens of the copy-paste detection have not been kept along with the metrics, because they have been
+   *         restored from the store of a previous analysis, because the file is too large or because they have been released
+   */
+  public boolean isTokenized() {
+    return tokenized;
+  }
+
+  /**
+   * @return true if the file could not be tokenized within its budget, in which case the lines and the NOSONAR lines are
+   *         approximated, commented-out code is not counted and there are no tokens for the copy-paste detection
+   */
+  public boolean isApproximated() {
+    return approximated;
+  }
+
+  void setApproximated() {
+    approximated = true;
+  }
+
+  /**
+   * @return true if the file is approximated because it took too long to tokenize, which depends on the load of the host: its
+   *         metrics are not kept in the store, so that it is tokenized again by the next analysis
+   */
+  boolean isTimedOut() {
+    return timedOut;
+  }
+
+  void setTimedOut() {
+    approximated = true;
+    timedOut = true;
+  }
+
+  public int getCpdTokenCount() {
+    return cpdTokenCount;
+  }
+
+  /**
+   * @return the id of the value of the token in the {@link PhpSymbolTable} of the analysis
+   */
+  public int getCpdSymbol(int index) {
+    return cpdSymbols[index];
+  }
+
+  public int getCpdLine(int index) {
+    return cpdLines[index];
+  }
+
+  /**
+   * Forgets the tokens of the copy-paste detection, once they have been handed over to it.
+   */
+  public void releaseCpdTokens() {
+    cpdSymbols = new int[0];
+    cpdLines = new int[0];
+    cpdTokenCount = 0;
+    tokenized = false;
+  }
+
+  /**
+   * Keeps the tokens of the copy-paste detection added to metrics which did not keep them, trimmed to their count.
+   */
+  void setTokenized() {
+    cpdSymbols = Arrays.copyOf(cpdSymbols, cpdTokenCount);
+    cpdLines = Arrays.copyOf(cpdLines, cpdTokenCount);
+    tokenized = true;
+  }
+
+  void addNoSonarLine(int line) {
+    noSonarLines.add(line);
+  }
+
+  void addCommentedOutCodeLine() {
+    commentedOutCodeLines++;
+  }
+
+  void addCpdToken(int symbol, int line) {
+    if (cpdTokenCount == cpdSymbols.length) {
+      int capacity = Math.max(INITIAL_CPD_CAPACITY, cpdTokenCount * 2);
+      cpdSymbols = Arrays.copyOf(cpdSymbols, capacity);
+      cpdLines = Arrays.copyOf(cpdLines, capacity);
+    }
+    cpdSymbols[cpdTokenCount] = symbol;
+    cpdLines[cpdTokenCount] = line;
+    cpdTokenCount++;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.squid.recognizer.CamelCaseDetector;
+import org.sonar.squid.recognizer.ContainsDetector;
+import org.sonar.squid.recognizer.Detector;
+import org.sonar.squid.recognizer.EndWithDetector;
+import org.sonar.squid.recognizer.KeywordsDetector;
+import org.sonar.squid.recognizer.LanguageFootprint;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Clues that a comment line is PHP code. {@link PhpCodeRecognizer} looks for the same clues in a single scan of the line.
+ */
+class PhpLanguageFootprint implements LanguageFootprint {
+
+  static final double CAMEL_CASE_PROBABILITY = 0.5;
+  static final double CONDITIONAL_PROBABILITY = 0.95;
+  static final double PHP_KEYWORDS_PROBABILITY = 0.3;
+  static final double BOOLEAN_OPERATOR_PROBABILITY = 0.7;
+  static final double END_WITH_DETECTOR_PROBABILITY = 0.95;
+  static final char[] END_OF_LINES = {'}', ';', '{'};
+  static final String[] BOOLEAN_OPERATORS = {"||", "&&"};
+  static final String[] CONDITIONALS = {"++", "for(", "if(", "while(", "catch(", "switch(", "try{", "else{"};
+  private final Set<Detector> detectors = new HashSet<Detector>();
+
+  public PhpLanguageFootprint() {
+    detectors.add(new EndWithDetector(END_WITH_DETECTOR_PROBABILITY, END_OF_LINES));
+    detectors.add(new KeywordsDetector(BOOLEAN_OPERATOR_PROBABILITY, BOOLEAN_OPERATORS));
+    detectors.add(new KeywordsDetector(PHP_KEYWORDS_PROBABILITY, PhpConstants.PHP_KEYWORDS_ARRAY));
+    detectors.add(new ContainsDetector(CONDITIONAL_PROBABILITY, CONDITIONALS));
+    detectors.add(new CamelCaseDetector(CAMEL_CASE_PROBABILITY));
+  }
+
+  /**
+   * @see org.sonar.squid.recognizer.LanguageFootprint#getDetectors()
+   */
+  public Set<Detector> getDetectors() {
+    return detectors;
+  }
+}
@@ -19,13 +19,7 @@
  */
 package org.sonar.plugins.php.core;
 
-import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Sets;
-import com.sonar.sslr.api.GenericTokenType;
-import com.sonar.sslr.api.Token;
-import com.sonar.sslr.api.Trivia;
-import com.sonar.sslr.impl.Lexer;
-import org.apache.commons.io.FileUtils;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.Sensor;
@@ -40,20 +34,18 @@ import org.sonar.plugins.php.api.PhpConstants;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 public class PhpLexerSensor implements Sensor {
 
   private static final Logger LOG = LoggerFactory.getLogger(PhpLexerSensor.class);
   private FileLinesContextFactory fileLinesContextFactory;
+  private PhpTokenPass tokenPass;
 
-  /**
-   * @param noSonarFilter
-   */
-  public PhpLexerSensor(FileLinesContextFactory fileLinesContextFactory) {
+  public PhpLexerSensor(FileLinesContextFactory fileLinesContextFactory, PhpTokenPass tokenPass) {
     this.fileLinesContextFactory = fileLinesContextFactory;
+    this.tokenPass = tokenPass;
   }
 
   /**
@@ -62,6 +54,12 @@ public class PhpLexerSensor implements Sensor {
   public void analyse(Project project, SensorContext context) {
     ProjectFileSystem fileSystem = project.getFileSystem();
     List<InputFile> sourceFiles = fileSystem.mainFiles(PhpConstants.LANGUAGE_KEY);
+    List<File> files = Lists.newArrayList();
+    for (InputFile file : sourceFiles) {
+      files.add(file.getFile());
+    }
+    // Usually done already by the NoSonar sensor
+    tokenPass.analyse(files);
     for (InputFile file : sourceFiles) {
       org.sonar.api.resources.File phpFile = org.sonar.api.resources.File.fromIOFile(file.getFile(), project);
       if (phpFile != null) {
@@ -75,53 +73,26 @@ public class PhpLexerSensor implements Sensor {
   }
 
   protected void analyseSourceCode(Project project, org.sonar.api.resources.File phpFile, File file, SensorContext context) throws IOException {
-    Charset sourceCharset = project.getFileSystem().getSourceCharset();
+    PhpFileMetrics metrics = tokenPass.get(file);
 
-    int fileLength = FileUtils.readLines(file, sourceCharset.name()).size();
+    int fileLength = metrics.getLineCount();
     context.saveMeasure(phpFile, CoreMetrics.LINES, Double.valueOf(fileLength));
     context.saveMeasure(phpFile, CoreMetrics.FILES, 1.0);
     FileLinesContext fileLinesContext = fileLinesContextFactory.createFor(phpFile);
 
-    final Set<Integer> linesOfCode = Sets.newHashSet();
-    final Set<Integer> linesOfComments = Sets.newHashSet();
-
-    computePerLineMetrics(file, sourceCharset, fileLength, fileLinesContext, linesOfCode, linesOfComments);
-
-    context.saveMeasure(phpFile, CoreMetrics.NCLOC, Double.valueOf(linesOfCode.size()));
-    context.saveMeasure(phpFile, CoreMetrics.COMMENT_LINES, Double.valueOf(linesOfComments.size()));
-
-  }
-
-  @VisibleForTesting
-  void computePerLineMetrics(File file, Charset sourceCharset, int fileLength, FileLinesContext fileLinesContext,
-      final Set<Integer> linesOfCode, final Set<Integer> linesOfComments) {
-    PhpParserConfiguration config = PhpParserConfiguration.builder().setCharset(sourceCharset).build();
-    Lexer lexer = PhpLexer.create(config);
-
-    List<Token> tokens = lexer.lex(file);
-    for (Token token : tokens) {
-      if (token.getType().equals(GenericTokenType.EOF)) {
-        break;
-      }
-
-      linesOfCode.add(token.getLine());
-      List<Trivia> trivias = token.getTrivia();
-      for (Trivia trivia : trivias) {
-        if (trivia.isComment()) {
-          int firstLine = trivia.getToken().getLine();
-          int lineCount = trivia.getToken().getValue().split("(\r)?\n|\r", -1).length;
-          for (int i = firstLine; i < lineCount + firstLine; i++) {
-            linesOfComments.add(i);
-          }
-        }
-      }
-    }
-
+    BitSet linesOfCode = metrics.getLinesOfCode();
+    BitSet linesOfComments = metrics.getLinesOfComments();
     for (int line = 1; line <= fileLength; line++) {
-      fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, line, linesOfCode.contains(line) ? 1 : 0);
-      fileLinesContext.setIntValue(CoreMetrics.COMMENT_LINES_DATA_KEY, line, linesOfComments.contains(line) ? 1 : 0);
+      fileLinesContext.setIntValue(CoreMetrics.NCLOC_DATA_KEY, line, linesOfCode.get(line) ? 1 : 0);
+      fileLinesContext.setIntValue(CoreMetrics.COMMENT_LINES_DATA_KEY, line, linesOfComments.get(line) ? 1 : 0);
     }
     fileLinesContext.save();
+
+    context.saveMeasure(phpFile, CoreMetrics.NCLOC, Double.valueOf(linesOfCode.cardinality()));
+    context.saveMeasure(phpFile, CoreMetrics.COMMENT_LINES, Double.valueOf(linesOfComments.cardinality()));
+    if (metrics.isApproximated()) {
+      context.saveMeasure(phpFile, PhpToolsMetrics.APPROXIMATED_FILES, 1.0);
+    }
   }
 
   /**
@@ -0,0 +1,282 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary store of the metrics computed by {@link PhpTokenPass} during the previous analysis, keyed by the content hash of the
+ * files. The data file holds one record per file; the index tells where the record of each hash starts, along with its
+ * checksum, and is itself checksummed. A store written by another version of the plugin, or for another source encoding, is
+ * ignored, as is an index which does not match its checksum; a record which does not match its checksum is a miss. Either way
+ * the file is tokenized again.
+ * <p>
+ * The tokens of the copy-paste detection are not stored.
+ */
+class PhpMetricsStore {
+
+  static final String INDEX_FILE_NAME = "php-file-metrics.idx";
+  static final String DATA_FILE_NAME = "php-file-metrics.dat";
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpMetricsStore.class);
+  private static final int MAGIC = 0x50484d53;
+  private static final int FORMAT_VERSION = 2;
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private final File indexFile;
+  private final File dataFile;
+  private final String version;
+  // Entries of the index by content hash, loaded on first use
+  private Map<String, Entry> entries;
+  private RandomAccessFile data;
+
+  /**
+   * @param directory
+   *          the directory of the store, usually the working directory of the module
+   * @param version
+   *          identifies everything the stored metrics depend on, such as the version of the plugin and the source encoding
+   */
+  PhpMetricsStore(File directory, String version) {
+    this.indexFile = new File(directory, INDEX_FILE_NAME);
+    this.dataFile = new File(directory, DATA_FILE_NAME);
+    this.version = version;
+  }
+
+  /**
+   * Restores the metrics of a file from the store.
+   *
+   * @return the metrics, or null if the store does not hold valid metrics for the given hash
+   */
+  synchronized PhpFileMetrics get(File file, String hash) {
+    if (entries == null) {
+      entries = loadIndex();
+    }
+    Entry entry = entries.get(hash);
+    if (entry == null) {
+      return null;
+    }
+    try {
+      if (data == null) {
+        data = new RandomAccessFile(dataFile, "r");
+      }
+      byte[] record = new byte[entry.length];
+      data.seek(entry.offset);
+      data.readFully(record);
+      if (checksum(record) != entry.checksum) {
+        LOG.debug("Ignoring the corrupted metrics of {} in the store", file);
+        return null;
+      }
+      return readRecord(file, new DataInputStream(new ByteArrayInputStream(record)));
+    } catch (IOException e) {
+      LOG.debug("Unable to read the metrics of " + file + " from the store", e);
+      return null;
+    }
+  }
+
+  private Map<String, Entry> loadIndex() {
+    Map<String, Entry> result = Maps.newHashMap();
+    if (!indexFile.isFile() || !dataFile.isFile()) {
+      return result;
+    }
+    CheckedInputStream checked = null;
+    try {
+      checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(indexFile)), new CRC32());
+      DataInputStream input = new DataInputStream(checked);
+      if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !version.equals(input.readUTF())) {
+        LOG.debug("Ignoring the metrics store {}, written by another version", indexFile);
+        return result;
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        result.put(input.readUTF(), new Entry(input.readLong(), input.readInt(), input.readLong()));
+      }
+      long computed = checked.getChecksum().getValue();
+      if (input.readLong() != computed) {
+        LOG.debug("Ignoring the corrupted metrics store {}", indexFile);
+        result.clear();
+      }
+    } catch (IOException e) {
+      LOG.debug("Ignoring the unreadable metrics store " + indexFile, e);
+      result.clear();
+    } finally {
+      IOUtils.closeQuietly(checked);
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the content of the store with the given metrics. Failures are logged, as the store is only an optimization.
+   *
+   * @param metrics
+   *          the metrics of the analysis by content hash
+   */
+  synchronized void save(Map<String, PhpFileMetrics> metrics) {
+    close();
+    File temporaryIndex = new File(indexFile.getPath() + TEMPORARY_SUFFIX);
+    File temporaryData = new File(dataFile.getPath() + TEMPORARY_SUFFIX);
+    DataOutputStream index = null;
+    DataOutputStream records = null;
+    try {
+      FileUtils.forceMkdir(indexFile.getParentFile());
+      CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryIndex)), new CRC32());
+      index = new DataOutputStream(checked);
+      records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryData)));
+      index.writeInt(MAGIC);
+      index.writeInt(FORMAT_VERSION);
+      index.writeUTF(version);
+      index.writeInt(metrics.size());
+      ByteArrayOutputStream record = new ByteArrayOutputStream();
+      long offset = 0;
+      for (Map.Entry<String, PhpFileMetrics> entry : metrics.entrySet()) {
+        record.reset();
+        writeRecord(entry.getValue(), new DataOutputStream(record));
+        byte[] bytes = record.toByteArray();
+        records.write(bytes);
+        index.writeUTF(entry.getKey());
+        index.writeLong(offset);
+        index.writeInt(bytes.length);
+        index.writeLong(checksum(bytes));
+        offset += bytes.length;
+      }
+      index.writeLong(checked.getChecksum().getValue());
+      index.close();
+      records.close();
+      // The index is replaced last: until then, the records it points to fail their checksum at worst
+      replace(temporaryData, dataFile);
+      replace(temporaryIndex, indexFile);
+    } catch (IOException e) {
+      LOG.debug("Unable to save the metrics store " + indexFile, e);
+    } finally {
+      IOUtils.closeQuietly(index);
+      IOUtils.closeQuietly(records);
+      FileUtils.deleteQuietly(temporaryIndex);
+      FileUtils.deleteQuietly(temporaryData);
+    }
+  }
+
+  private static void replace(File source, File target) throws IOException {
+    FileUtils.deleteQuietly(target);
+    if (!source.renameTo(target)) {
+      throw new IOException("Unable to rename " + source + " to " + target);
+    }
+  }
+
+  /**
+   * Closes the data file, which is opened again when needed.
+   */
+  synchronized void close() {
+    IOUtils.closeQuietly(data);
+    data = null;
+    entries = null;
+  }
+
+  private static long checksum(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
+  private static void writeRecord(PhpFileMetrics metrics, DataOutputStream output) throws IOException {
+    output.writeInt(metrics.getLineCount());
+    writeLines(metrics.getLinesOfCode(), output);
+    writeLines(metrics.getLinesOfComments(), output);
+    output.writeInt(metrics.getNoSonarLines().size());
+    for (int line : metrics.getNoSonarLines()) {
+      output.writeInt(line);
+    }
+    output.writeInt(metrics.getCommentedOutCodeLines());
+    // Only files over their budget of steps, as the ones over their budget of time are not stored
+    output.writeBoolean(metrics.isApproximated());
+  }
+
+  private static PhpFileMetrics readRecord(File file, DataInputStream input) throws IOException {
+    PhpFileMetrics metrics = new PhpFileMetrics(file, input.readInt(), false);
+    readLines(input, metrics.getLinesOfCode());
+    readLines(input, metrics.getLinesOfComments());
+    int noSonarLines = input.readInt();
+    for (int i = 0; i < noSonarLines; i++) {
+      metrics.addNoSonarLine(input.readInt());
+    }
+    int commentedOutCodeLines = input.readInt();
+    for (int i = 0; i < commentedOutCodeLines; i++) {
+      metrics.addCommentedOutCodeLine();
+    }
+    if (input.readBoolean()) {
+      metrics.setApproximated();
+    }
+    return metrics;
+  }
+
+  /**
+   * Lines are written as ranges, as code and comments mostly span consecutive lines.
+   */
+  private static void writeLines(BitSet lines, DataOutputStream output) throws IOException {
+    int ranges = 0;
+    for (int start = lines.nextSetBit(0); start >= 0; start = lines.nextSetBit(lines.nextClearBit(start))) {
+      ranges++;
+    }
+    output.writeInt(ranges);
+    for (int start = lines.nextSetBit(0); start >= 0; start = lines.nextSetBit(lines.nextClearBit(start))) {
+      output.writeInt(start);
+      output.writeInt(lines.nextClearBit(start));
+    }
+  }
+
+  private static void readLines(DataInputStream input, BitSet lines) throws IOException {
+    int ranges = input.readInt();
+    for (int i = 0; i < ranges; i++) {
+      int start = input.readInt();
+      lines.set(start, input.readInt());
+    }
+  }
+
+  private static final class Entry {
+    private final long offset;
+    private final int length;
+    private final long checksum;
+
+    private Entry(long offset, int length, long checksum) {
+      this.offset = offset;
+      this.length = length;
+      this.checksum = checksum;
+    }
+  }
+}
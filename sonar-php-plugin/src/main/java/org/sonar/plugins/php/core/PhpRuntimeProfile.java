@@ -0,0 +1,183 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tunes the PHP runtime of the external tools with <code>-d</code> overrides of the host <code>php.ini</code>:
+ * <ul>
+ * <li>Xdebug is turned off, except for code coverage, as it slows down the tools a lot;</li>
+ * <li>the opcode cache is enabled for the command line, with a file cache shared by all the analyses of the host, so that the
+ * compiled tools are reused from an analysis to the other;</li>
+ * <li>the memory limit can be overridden.</li>
+ * </ul>
+ * The overrides are passed to the <code>php</code> command launching the embedded PHAR archives, and to the interpreter named by
+ * the shebang line of the external tools, which are then launched through it. Windows batch scripts can not be tuned.
+ */
+public class PhpRuntimeProfile {
+
+  public static final String TUNING_KEY = "sonar.php.runtime.tuning";
+  public static final String MEMORY_LIMIT_KEY = "sonar.php.runtime.memoryLimit";
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpRuntimeProfile.class);
+  private static final String INI_OPTION = "-d";
+  private static final String OPCACHE_DIRECTORY = "opcache";
+  private static final String SHEBANG = "#!";
+  private static final String ENV_COMMAND = "env";
+  private static final String PHP_COMMAND = "php";
+  private static final String PATH_VARIABLE = "PATH";
+
+  private final Settings settings;
+
+  public PhpRuntimeProfile(Settings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * @return true unless the tuning has been disabled
+   */
+  public boolean isEnabled() {
+    return settings == null || !settings.hasKey(TUNING_KEY) || settings.getBoolean(TUNING_KEY);
+  }
+
+  /**
+   * Gets the <code>-d</code> options to pass to the PHP interpreter.
+   *
+   * @param coverage
+   *          true if the tool collects code coverage, which needs Xdebug
+   * @return the options, empty if the tuning is disabled
+   */
+  public List<String> getIniArguments(boolean coverage) {
+    List<String> result = Lists.newArrayList();
+    if (!isEnabled()) {
+      return result;
+    }
+    if (coverage) {
+      // Xdebug 3 only collects coverage in this mode
+      addIni(result, "xdebug.mode", "coverage");
+    } else {
+      // Xdebug 3, then Xdebug 2 which can not be turned off as a whole
+      addIni(result, "xdebug.mode", "off");
+      addIni(result, "xdebug.default_enable", "0");
+      addIni(result, "xdebug.remote_enable", "0");
+      addIni(result, "xdebug.profiler_enable", "0");
+      addIni(result, "xdebug.coverage_enable", "0");
+    }
+    File opcache = PhpUserCache.getDirectory(settings, OPCACHE_DIRECTORY);
+    if (opcache.isDirectory() || opcache.mkdirs()) {
+      addIni(result, "opcache.enable_cli", "1");
+      addIni(result, "opcache.file_cache", opcache.getAbsolutePath());
+    } else {
+      LOG.warn("Unable to create the opcode cache directory " + opcache);
+    }
+    String memoryLimit = settings == null ? null : settings.getString(MEMORY_LIMIT_KEY);
+    if (StringUtils.isNotBlank(memoryLimit)) {
+      addIni(result, "memory_limit", memoryLimit.trim());
+    }
+    return result;
+  }
+
+  private static void addIni(List<String> arguments, String name, String value) {
+    arguments.add(INI_OPTION);
+    arguments.add(name + "=" + value);
+  }
+
+  /**
+   * Gets the command launching the given external tool through its PHP interpreter with the overrides.
+   *
+   * @param script
+   *          the name or path of the script of the tool
+   * @return the command, or null if the script is not a PHP script which can be launched this way
+   */
+  public List<String> getScriptCommand(String script, boolean coverage) {
+    if (!isEnabled()) {
+      return null;
+    }
+    File file = resolve(script, System.getenv(PATH_VARIABLE));
+    List<String> interpreter = file == null ? null : readInterpreter(file);
+    if (interpreter == null) {
+      return null;
+    }
+    List<String> result = Lists.newArrayList(interpreter);
+    result.addAll(getIniArguments(coverage));
+    result.add(file.getAbsolutePath());
+    return result;
+  }
+
+  @VisibleForTesting
+  static File resolve(String script, String path) {
+    File file = new File(script);
+    if (file.getParentFile() != null || path == null) {
+      return file.isFile() ? file : null;
+    }
+    for (String directory : StringUtils.split(path, File.pathSeparatorChar)) {
+      File candidate = new File(directory, script);
+      if (candidate.isFile()) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads the interpreter of a script from its shebang line.
+   *
+   * @return the interpreter and its arguments, or null if the script is not run by PHP
+   */
+  @VisibleForTesting
+  static List<String> readInterpreter(File script) {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(script), "ISO-8859-1"));
+      String line = reader.readLine();
+      if (line == null || !line.startsWith(SHEBANG)) {
+        return null;
+      }
+      List<String> interpreter = Lists.newArrayList(Arrays.asList(StringUtils.split(line.substring(SHEBANG.length()))));
+      if (!interpreter.isEmpty() && ENV_COMMAND.equals(new File(interpreter.get(0)).getName())) {
+        interpreter.remove(0);
+      }
+      if (interpreter.isEmpty() || !new File(interpreter.get(0)).getName().startsWith(PHP_COMMAND)) {
+        return null;
+      }
+      return interpreter;
+    } catch (IOException e) {
+      LOG.debug("Unable to read the interpreter of " + script, e);
+      return null;
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Decoded content of a source file, with the index of its lines. Lines end with <code>\n</code>, <code>\r</code> or
+ * <code>\r\n</code>, and are counted as {@link java.io.BufferedReader#readLine()} does: a terminator at the end of the file does
+ * not start a new line.
+ */
+public final class PhpSource implements CharSequence {
+
+  private final File file;
+  private final char[] chars;
+  private final int[] lineStarts;
+
+  PhpSource(File file, char[] chars) {
+    this.file = file;
+    this.chars = chars;
+    this.lineStarts = indexLines(chars);
+  }
+
+  private static int[] indexLines(char[] chars) {
+    int[] starts = new int[16];
+    int count = 0;
+    int i = 0;
+    while (i < chars.length) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+      }
+      starts[count++] = i;
+      while (i < chars.length && chars[i] != '\n' && chars[i] != '\r') {
+        i++;
+      }
+      if (i < chars.length && chars[i] == '\r' && i + 1 < chars.length && chars[i + 1] == '\n') {
+        i++;
+      }
+      i++;
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return a new reader of the content
+   */
+  public Reader newReader() {
+    return new CharArrayReader(chars);
+  }
+
+  public int getLineCount() {
+    return lineStarts.length;
+  }
+
+  /**
+   * @param line
+   *          the line, starting at 1
+   * @return the offset of the first character of the line
+   */
+  public int getLineStart(int line) {
+    return lineStarts[line - 1];
+  }
+
+  /**
+   * @param line
+   *          the line, starting at 1
+   * @return the content of the line, without its terminator
+   */
+  public String getLine(int line) {
+    int start = lineStarts[line - 1];
+    int end = start;
+    while (end < chars.length && chars[end] != '\n' && chars[end] != '\r') {
+      end++;
+    }
+    return new String(chars, start, end - start);
+  }
+
+  /**
+   * @return the content, which must not be modified
+   */
+  char[] getChars() {
+    return chars;
+  }
+
+  /**
+   * @return the approximate memory used by the content and the index, in bytes
+   */
+  long getFootprint() {
+    return 2L * chars.length + 4L * lineStarts.length;
+  }
+
+  public int length() {
+    return chars.length;
+  }
+
+  public char charAt(int index) {
+    return chars[index];
+  }
+
+  public CharSequence subSequence(int start, int end) {
+    return CharBuffer.wrap(chars, start, end - start);
+  }
+
+  /**
+   * @return a copy of the content, which is not kept so that the footprint of the cached source does not change
+   */
+  @Override
+  public String toString() {
+    return new String(chars);
+  }
+}
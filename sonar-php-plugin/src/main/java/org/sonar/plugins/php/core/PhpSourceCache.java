@@ -0,0 +1,150 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.ProjectFileSystem;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+
+/**
+ * Decodes the source files of the module once for all the sensors which read them, with the source encoding of the project.
+ * <p>
+ * The sources are kept in the order they are first read, until their total size reaches the configured limit: the following ones
+ * are decoded on each read. As each sensor reads the files in the same order, a least recently used policy would drop each source
+ * just before the next sensor reads it again, whereas the first sources of the module stay cached for all the sensors.
+ */
+public class PhpSourceCache implements BatchExtension {
+
+  public static final String CACHE_SIZE_KEY = "sonar.php.sourceCache.size";
+  public static final int DEFAULT_CACHE_SIZE = 64;
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpSourceCache.class);
+  private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+  // Smaller files are read at once, larger ones are mapped
+  private static final long MAPPING_THRESHOLD = BYTES_PER_MEGABYTE;
+
+  private final Charset charset;
+  private final long maxSize;
+  private final Map<File, PhpSource> sources = Maps.newHashMap();
+  private long size;
+
+  public PhpSourceCache(ProjectFileSystem fileSystem, Settings settings) {
+    this(fileSystem.getSourceCharset(), getMaxSize(settings));
+  }
+
+  @VisibleForTesting
+  public PhpSourceCache(Charset charset, long maxSize) {
+    this.charset = charset;
+    this.maxSize = maxSize;
+  }
+
+  private static long getMaxSize(Settings settings) {
+    int megabytes = settings.hasKey(CACHE_SIZE_KEY) ? settings.getInt(CACHE_SIZE_KEY) : DEFAULT_CACHE_SIZE;
+    return Math.max(0, megabytes) * BYTES_PER_MEGABYTE;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Gets the decoded source of the given file, reading it if it is not cached.
+   *
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public PhpSource get(File file) throws IOException {
+    File key = file.getAbsoluteFile();
+    synchronized (this) {
+      PhpSource source = sources.get(key);
+      if (source != null) {
+        return source;
+      }
+    }
+    PhpSource source = new PhpSource(key, read(key, charset));
+    synchronized (this) {
+      if (size + source.getFootprint() <= maxSize && !sources.containsKey(key)) {
+        sources.put(key, source);
+        size += source.getFootprint();
+      }
+    }
+    return source;
+  }
+
+  /**
+   * Drops all the cached sources.
+   */
+  public synchronized void clear() {
+    sources.clear();
+    size = 0;
+  }
+
+  @VisibleForTesting
+  synchronized long getSize() {
+    return size;
+  }
+
+  @VisibleForTesting
+  static char[] read(File file, Charset charset) throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      long length = channel.size();
+      ByteBuffer bytes;
+      if (length > MAPPING_THRESHOLD) {
+        LOG.debug("Mapping {} to decode it", file);
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      } else {
+        bytes = ByteBuffer.allocate((int) length);
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+          // Reads until the end of the file
+        }
+        bytes.flip();
+      }
+      // Invalid input is replaced, as readers do
+      CharBuffer chars = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE).decode(bytes);
+      if (chars.hasArray() && chars.arrayOffset() == 0 && chars.position() == 0 && chars.array().length == chars.limit()) {
+        return chars.array();
+      }
+      // Trims the buffer, which the decoder allocates for the worst case
+      char[] result = new char[chars.remaining()];
+      chars.get(result);
+      return result;
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+}
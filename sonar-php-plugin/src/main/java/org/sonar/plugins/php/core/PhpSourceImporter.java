@@ -21,19 +21,54 @@ package org.sonar.plugins.php.core;
 
 import org.sonar.api.batch.AbstractSourceImporter;
 import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.php.api.Php;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
 /**
  * Simple source code importer for PHP projects.
  */
 @Phase(name = Phase.Name.PRE)
 public class PhpSourceImporter extends AbstractSourceImporter {
 
+  private final PhpSourceCache sourceCache;
+
   /**
    * Instantiates a new php source importer.
    */
-  public PhpSourceImporter(Php php) {
+  public PhpSourceImporter(Php php, PhpSourceCache sourceCache) {
     super(php);
+    this.sourceCache = sourceCache;
+  }
+
+  /**
+   * Imports the sources decoded by the {@link PhpSourceCache}, so that the other sensors do not decode them again.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  protected void parseDirs(SensorContext context, List<File> files, List<File> sourceDirs, boolean unitTest, Charset sourcesEncoding) {
+    if (!sourcesEncoding.equals(sourceCache.getCharset())) {
+      super.parseDirs(context, files, sourceDirs, unitTest, sourcesEncoding);
+      return;
+    }
+    for (File file : files) {
+      Resource resource = createResource(file, sourceDirs, unitTest);
+      if (resource != null) {
+        try {
+          context.saveSource(resource, sourceCache.get(file).toString());
+        } catch (IOException e) {
+          throw new SonarException("Unable to read and import the source file : '" + file.getAbsolutePath() + "' with the charset : '"
+            + sourcesEncoding.name() + "'.", e);
+        }
+      }
+    }
   }
 
   /**
@@ -0,0 +1,174 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.sonar.plugins.php.api.PhpConstants;
+
+import java.util.Arrays;
+
+/**
+ * Values of the tokens of the copy-paste detection, interned into dense ids for the whole analysis so that each value is only
+ * allocated once. The table is seeded with the normalized literals, the PHP keywords and the ASCII characters, which are the
+ * operators of the copy-paste detection.
+ * <p>
+ * The table is shared by the threads of the token pass: each thread looks the values up in its own {@link Cache} first.
+ */
+public final class PhpSymbolTable {
+
+  public static final String NORMALIZED_CHARACTER_LITERAL = "$CHARS";
+  public static final String NORMALIZED_NUMERIC_LITERAL = "$NUMBER";
+  public static final int CHARACTER_LITERAL = 0;
+  public static final int NUMERIC_LITERAL = 1;
+
+  private static final int ASCII = 128;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private String[] symbols = new String[INITIAL_CAPACITY];
+  private int[] hashes = new int[INITIAL_CAPACITY];
+  private int size;
+  // Open addressing table of the ids plus one, 0 for the free slots
+  private int[] slots = new int[2 * INITIAL_CAPACITY];
+
+  public PhpSymbolTable() {
+    intern(NORMALIZED_CHARACTER_LITERAL);
+    intern(NORMALIZED_NUMERIC_LITERAL);
+    for (String keyword : PhpConstants.PHP_KEYWORDS_ARRAY) {
+      intern(keyword);
+    }
+    for (char c = 0; c < ASCII; c++) {
+      intern(String.valueOf(c));
+    }
+  }
+
+  public int intern(String value) {
+    return intern(value, 0, value.length(), hash(value, 0, value.length()));
+  }
+
+  /**
+   * @return the id of the characters of the text from <code>start</code> to <code>end</code>, which are only copied into a new
+   *         symbol the first time
+   */
+  public int intern(CharSequence text, int start, int end) {
+    return intern(text, start, end, hash(text, start, end));
+  }
+
+  private synchronized int intern(CharSequence text, int start, int end, int hash) {
+    int mask = slots.length - 1;
+    for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+      int id = slots[slot] - 1;
+      if (id < 0) {
+        return add(text.subSequence(start, end).toString(), hash, slot);
+      }
+      if (hashes[id] == hash && matches(symbols[id], text, start, end)) {
+        return id;
+      }
+    }
+  }
+
+  private int add(String symbol, int hash, int slot) {
+    if (size == symbols.length) {
+      symbols = Arrays.copyOf(symbols, size * 2);
+      hashes = Arrays.copyOf(hashes, size * 2);
+    }
+    int id = size++;
+    symbols[id] = symbol;
+    hashes[id] = hash;
+    slots[slot] = id + 1;
+    if (2 * size > slots.length / 2) {
+      rehash();
+    }
+    return id;
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    int mask = slots.length - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = hashes[id] & mask;
+      while (slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = id + 1;
+    }
+  }
+
+  /**
+   * @return the value of the given id
+   */
+  public synchronized String getSymbol(int id) {
+    return symbols[id];
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  private static int hash(CharSequence text, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + text.charAt(i);
+    }
+    return hash;
+  }
+
+  private static boolean matches(String symbol, CharSequence text, int start, int end) {
+    if (symbol.length() != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (symbol.charAt(i - start) != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Unsynchronized cache of the latest symbols of a thread in front of the table, in which each symbol has a single possible slot.
+   */
+  public static final class Cache {
+
+    private static final int CACHE_SIZE = 4096;
+
+    private final PhpSymbolTable table;
+    private final String[] symbols = new String[CACHE_SIZE];
+    private final int[] ids = new int[CACHE_SIZE];
+
+    public Cache(PhpSymbolTable table) {
+      this.table = table;
+    }
+
+    /**
+     * @see PhpSymbolTable#intern(CharSequence, int, int)
+     */
+    public int intern(CharSequence text, int start, int end) {
+      int hash = hash(text, start, end);
+      int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+      String symbol = symbols[slot];
+      if (symbol != null && matches(symbol, text, start, end)) {
+        return ids[slot];
+      }
+      int id = table.intern(text, start, end, hash);
+      symbols[slot] = table.getSymbol(id);
+      ids[slot] = id;
+      return id;
+    }
+  }
+}
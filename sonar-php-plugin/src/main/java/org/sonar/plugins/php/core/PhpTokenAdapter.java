@@ -0,0 +1,86 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Lists;
+import com.sonar.sslr.api.GenericTokenType;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.TokenType;
+import com.sonar.sslr.api.Trivia;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Converts the tokens of {@link PhpTokenizer} to the SSLR tokens {@link PhpLexer} produces for the same source: comments are
+ * trivia of the next token, strings are {@link PhpLexerType#STRING} tokens, every other character is a
+ * {@link PhpLexerType#OTHER} token, and the list ends with an EOF token.
+ */
+public final class PhpTokenAdapter {
+
+  private PhpTokenAdapter() {
+  }
+
+  public static List<Token> toSslrTokens(CharSequence source, PhpTokens tokens, URI uri) {
+    List<Token> result = Lists.newArrayListWithExpectedSize(tokens.size() * 2);
+    List<Trivia> trivia = Lists.newArrayList();
+    for (int i = 0; i < tokens.size(); i++) {
+      PhpTokenKind kind = tokens.getKind(i);
+      int offset = tokens.getOffset(i);
+      int end = offset + tokens.getLength(i);
+      if (kind.isComment()) {
+        Token comment = newToken(GenericTokenType.COMMENT, source, offset, end, tokens.getLine(i), tokens.getColumn(i), uri).build();
+        trivia.add(Trivia.createComment(comment));
+      } else if (kind.getLexerType() == PhpLexerType.STRING) {
+        result.add(newToken(PhpLexerType.STRING, source, offset, end, tokens.getLine(i), tokens.getColumn(i), uri).setTrivia(trivia).build());
+        trivia = Lists.newArrayList();
+      } else {
+        // The other tokens never span several lines
+        int column = tokens.getColumn(i);
+        int position = offset;
+        while (position < end) {
+          int next = position + Character.charCount(Character.codePointAt(source, position));
+          result.add(newToken(PhpLexerType.OTHER, source, position, next, tokens.getLine(i), column, uri).setTrivia(trivia).build());
+          trivia = Lists.newArrayList();
+          column += next - position;
+          position = next;
+        }
+      }
+    }
+    result.add(Token.builder()
+        .setType(GenericTokenType.EOF)
+        .setValueAndOriginalValue("EOF")
+        .setURI(uri)
+        .setLine(tokens.getEndLine())
+        .setColumn(tokens.getEndColumn())
+        .setTrivia(trivia)
+        .build());
+    return result;
+  }
+
+  private static Token.Builder newToken(TokenType type, CharSequence source, int start, int end, int line, int column, URI uri) {
+    return Token.builder()
+        .setType(type)
+        .setValueAndOriginalValue(source.subSequence(start, end).toString())
+        .setURI(uri)
+        .setLine(line)
+        .setColumn(column);
+  }
+}
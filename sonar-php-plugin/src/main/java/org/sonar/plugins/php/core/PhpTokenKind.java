@@ -0,0 +1,82 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * Kinds of the tokens produced by {@link PhpTokenizer}, named after the token constants of PHP (<code>token_get_all()</code>).
+ * Unlike PHP, heredoc and nowdoc strings are single tokens, single characters which PHP returns as plain strings are
+ * {@link #T_CHARACTER} tokens, and white spaces are skipped.
+ */
+public enum PhpTokenKind {
+
+  // Tags
+  T_OPEN_TAG, T_OPEN_TAG_WITH_ECHO, T_CLOSE_TAG,
+
+  // Comments
+  T_COMMENT(null), T_DOC_COMMENT(null),
+
+  // Literals
+  T_CONSTANT_ENCAPSED_STRING(PhpLexerType.STRING), T_HEREDOC(PhpLexerType.STRING), T_NOWDOC(PhpLexerType.STRING),
+  T_LNUMBER, T_DNUMBER,
+
+  // Names
+  T_VARIABLE, T_STRING,
+
+  // Keywords
+  T_ABSTRACT, T_ARRAY, T_AS, T_BREAK, T_CALLABLE, T_CASE, T_CATCH, T_CLASS, T_CLONE, T_CONST, T_CONTINUE, T_DECLARE, T_DEFAULT,
+  T_DO, T_ECHO, T_ELSE, T_ELSEIF, T_EMPTY, T_ENDDECLARE, T_ENDFOR, T_ENDFOREACH, T_ENDIF, T_ENDSWITCH, T_ENDWHILE, T_EVAL, T_EXIT,
+  T_EXTENDS, T_FINAL, T_FINALLY, T_FN, T_FOR, T_FOREACH, T_FUNCTION, T_GLOBAL, T_GOTO, T_HALT_COMPILER, T_IF, T_IMPLEMENTS,
+  T_INCLUDE, T_INCLUDE_ONCE, T_INSTANCEOF, T_INSTEADOF, T_INTERFACE, T_ISSET, T_LIST, T_LOGICAL_AND, T_LOGICAL_OR, T_LOGICAL_XOR,
+  T_MATCH, T_NAMESPACE, T_NEW, T_PRINT, T_PRIVATE, T_PROTECTED, T_PUBLIC, T_READONLY, T_REQUIRE, T_REQUIRE_ONCE, T_RETURN,
+  T_STATIC, T_SWITCH, T_THROW, T_TRAIT, T_TRY, T_UNSET, T_USE, T_VAR, T_WHILE, T_YIELD,
+
+  // Magic constants
+  T_CLASS_C, T_DIR, T_FILE, T_FUNC_C, T_LINE, T_METHOD_C, T_NS_C, T_TRAIT_C,
+
+  // Operators
+  T_AND_EQUAL, T_BOOLEAN_AND, T_BOOLEAN_OR, T_COALESCE, T_COALESCE_EQUAL, T_CONCAT_EQUAL, T_DEC, T_DIV_EQUAL, T_DOUBLE_ARROW,
+  T_DOUBLE_COLON, T_ELLIPSIS, T_INC, T_IS_EQUAL, T_IS_GREATER_OR_EQUAL, T_IS_IDENTICAL, T_IS_NOT_EQUAL, T_IS_NOT_IDENTICAL,
+  T_IS_SMALLER_OR_EQUAL, T_MINUS_EQUAL, T_MOD_EQUAL, T_MUL_EQUAL, T_NS_SEPARATOR, T_NULLSAFE_OBJECT_OPERATOR, T_OBJECT_OPERATOR,
+  T_OR_EQUAL, T_PLUS_EQUAL, T_POW, T_POW_EQUAL, T_SL, T_SL_EQUAL, T_SPACESHIP, T_SR, T_SR_EQUAL, T_XOR_EQUAL,
+
+  // Other characters
+  T_CHARACTER, T_BAD_CHARACTER;
+
+  private final PhpLexerType lexerType;
+
+  private PhpTokenKind() {
+    this(PhpLexerType.OTHER);
+  }
+
+  private PhpTokenKind(PhpLexerType lexerType) {
+    this.lexerType = lexerType;
+  }
+
+  /**
+   * @return the type of the tokens of this kind in {@link PhpLexer}, or null for comments
+   */
+  public PhpLexerType getLexerType() {
+    return lexerType;
+  }
+
+  public boolean isComment() {
+    return lexerType == null;
+  }
+}
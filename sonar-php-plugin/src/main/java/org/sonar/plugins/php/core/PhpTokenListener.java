@@ -0,0 +1,38 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * Computes some of the {@link PhpFileMetrics} of the files from their tokens, during the single token pass of
+ * {@link PhpTokenPass}. A listener is used by one thread at a time, for one file after the other, and only sees the tokens one at a
+ * time.
+ */
+interface PhpTokenListener extends PhpTokenVisitor {
+
+  /**
+   * Called before the first token of the file.
+   */
+  void startFile(PhpSource source, PhpFileMetrics metrics);
+
+  /**
+   * Called after the last token of the file.
+   */
+  void endFile();
+}
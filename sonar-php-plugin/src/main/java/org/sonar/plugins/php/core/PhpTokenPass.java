@@ -0,0 +1,504 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.utils.SonarException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tokenizes each PHP source once for all the sensors which need its tokens: the lines metrics, the NOSONAR lines, the
+ * commented-out code lines and the tokens of the copy-paste detection are all computed by listeners of the same token pass.
+ * The files can be tokenized in several threads, each one with its own tokenizer and listeners.
+ * <p>
+ * The metrics are saved in a store of the working directory, keyed by the content hash of the files, so that the files which did not
+ * change since the previous analysis are not tokenized again, except for the copy-paste detection.
+ * <p>
+ * A source which can not be tokenized within its budget of time and steps gets approximated lines metrics, and no tokens for the
+ * copy-paste detection.
+ * <p>
+ * The tokens are handed over to the listeners one at a time, so that only the decoded source and a window of its tokens are kept in
+ * memory. The tokens of the copy-paste detection of the largest sources are not kept either: they are tokenized again when the
+ * copy-paste detection visits them, without budget as they have been tokenized within theirs already, and streamed to it. The tokens of the copy-paste detection of the files restored from the store can be computed in
+ * parallel before it visits them.
+ */
+public class PhpTokenPass implements BatchExtension {
+
+  public static final String THREADS_KEY = "sonar.php.lexer.threads";
+  public static final int DEFAULT_THREADS = 1;
+  public static final String STORE_KEY = "sonar.php.lexer.store";
+  public static final String TIMEOUT_KEY = "sonar.php.lexer.timeout";
+  public static final int DEFAULT_TIMEOUT = 10;
+  // Far more than the few unterminated strings or comments of a regular source
+  static final int STEPS_PER_CHARACTER = 64;
+  private static final long MILLISECONDS_PER_SECOND = 1000L;
+  // Length of the largest sources which keep their tokens of the copy-paste detection until it visits them
+  static final int MAX_CPD_RETAINED_LENGTH = 1024 * 1024;
+  // Tokens of the copy-paste detection kept for all the files until it visits them, of 8 bytes each
+  static final long MAX_RETAINED_CPD_TOKENS = 16L * 1024 * 1024;
+  // Files tokenized ahead of the one whose result is handed over, per thread
+  private static final int FILES_AHEAD_PER_THREAD = 16;
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpTokenPass.class);
+
+  private final PhpSourceCache sourceCache;
+  private final Settings settings;
+  private final Map<File, PhpFileMetrics> metrics = Maps.newHashMap();
+  private final PhpSymbolTable symbols = new PhpSymbolTable();
+  private final AtomicLong retainedCpdTokens = new AtomicLong();
+  // Content hash of the files, only when the store is enabled
+  private final Map<File, String> hashes = Maps.newHashMap();
+  private final PhpMetricsStore store;
+  private boolean storeChanged;
+  // Tokenizer and listeners of the calling thread
+  private Worker worker;
+
+  public PhpTokenPass(PhpSourceCache sourceCache, ProjectFileSystem fileSystem, Settings settings) {
+    this(sourceCache, settings, isStoreEnabled(settings) ? fileSystem.getSonarWorkingDirectory() : null);
+  }
+
+  public PhpTokenPass(PhpSourceCache sourceCache, Settings settings) {
+    this(sourceCache, settings, null);
+  }
+
+  /**
+   * @param storeDirectory
+   *          the directory of the metrics store, or null to always tokenize the files
+   */
+  @VisibleForTesting
+  PhpTokenPass(PhpSourceCache sourceCache, Settings settings, File storeDirectory) {
+    this.sourceCache = sourceCache;
+    this.settings = settings;
+    this.store = storeDirectory == null ? null : new PhpMetricsStore(storeDirectory, PhpDigest.getPluginVersion(PhpTokenPass.class)
+      + '\n' + sourceCache.getCharset().name());
+  }
+
+  private static boolean isStoreEnabled(Settings settings) {
+    return !settings.hasKey(STORE_KEY) || settings.getBoolean(STORE_KEY);
+  }
+
+  /**
+   * Computes the metrics of the given files which have not been computed yet, in parallel if several threads are configured.
+   * Files which can not be read are logged and left to {@link #get(File)}.
+   */
+  public void analyse(List<File> files) {
+    List<File> remaining = Lists.newArrayList();
+    synchronized (this) {
+      for (File file : files) {
+        if (!metrics.containsKey(file.getAbsoluteFile())) {
+          remaining.add(file.getAbsoluteFile());
+        }
+      }
+    }
+    int threads = Math.min(getThreads(), remaining.size());
+    if (threads <= 1) {
+      for (File file : remaining) {
+        try {
+          get(file);
+        } catch (IOException e) {
+          LOG.error("Unable to tokenize file " + file, e);
+        }
+      }
+    } else {
+      analyseInParallel(remaining, threads);
+    }
+    saveStore();
+  }
+
+  /**
+   * Saves the metrics of all the files analysed so far, if some of them were not in the store yet. The metrics of the files which
+   * are no longer analysed are dropped.
+   */
+  private synchronized void saveStore() {
+    if (store == null || !storeChanged) {
+      return;
+    }
+    Map<String, PhpFileMetrics> stored = Maps.newHashMap();
+    for (Map.Entry<File, String> entry : hashes.entrySet()) {
+      PhpFileMetrics fileMetrics = metrics.get(entry.getKey());
+      if (fileMetrics == null) {
+        // Forgotten once visited by the copy-paste detection
+        fileMetrics = store.get(entry.getKey(), entry.getValue());
+      }
+      if (fileMetrics != null && !fileMetrics.isTimedOut()) {
+        stored.put(entry.getValue(), fileMetrics);
+      }
+    }
+    store.save(stored);
+    storeChanged = false;
+  }
+
+  private int getThreads() {
+    return settings.hasKey(THREADS_KEY) ? settings.getInt(THREADS_KEY) : DEFAULT_THREADS;
+  }
+
+  private long getTimeoutMillis() {
+    int seconds = settings.hasKey(TIMEOUT_KEY) ? settings.getInt(TIMEOUT_KEY) : DEFAULT_TIMEOUT;
+    return Math.max(0, seconds) * MILLISECONDS_PER_SECOND;
+  }
+
+  private void analyseInParallel(List<File> files, int threads) {
+    LOG.info("Tokenizing {} PHP files with {} threads", files.size(), threads);
+    runInParallel(files, threads, new FileTask<PhpFileMetrics>() {
+      public PhpFileMetrics run(File file, Worker fileWorker) throws IOException {
+        return compute(file, fileWorker);
+      }
+
+      public void done(File file, PhpFileMetrics result) {
+        if (result != null) {
+          synchronized (PhpTokenPass.this) {
+            metrics.put(file, result);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Tokenizes in parallel, if several threads are configured, the files whose tokens of the copy-paste detection have not been kept
+   * along with their metrics, so that visiting their tokens then only copies them. The tokens of the largest sources are still not
+   * kept, and are tokenized when visited.
+   */
+  public void prepareCpdTokens(List<File> files) {
+    analyse(files);
+    final List<File> remaining = Lists.newArrayList();
+    final Map<File, PhpFileMetrics> remainingMetrics = Maps.newHashMap();
+    synchronized (this) {
+      for (File file : files) {
+        PhpFileMetrics fileMetrics = metrics.get(file.getAbsoluteFile());
+        if (fileMetrics != null && !fileMetrics.isApproximated() && !fileMetrics.isTokenized()) {
+          remaining.add(fileMetrics.getFile());
+          remainingMetrics.put(fileMetrics.getFile(), fileMetrics);
+        }
+      }
+    }
+    int threads = Math.min(getThreads(), remaining.size());
+    if (threads <= 1) {
+      // Tokenized one after the other when visited
+      return;
+    }
+    LOG.info("Tokenizing {} PHP files for the copy-paste detection with {} threads", remaining.size(), threads);
+    runInParallel(remaining, threads, new FileTask<Void>() {
+      public Void run(File file, Worker fileWorker) throws IOException {
+        if (retainedCpdTokens.get() >= MAX_RETAINED_CPD_TOKENS) {
+          // Tokenized when visited
+          return null;
+        }
+        PhpSource source = sourceCache.get(file);
+        if (source.length() <= MAX_CPD_RETAINED_LENGTH) {
+          PhpFileMetrics fileMetrics = remainingMetrics.get(file);
+          fileWorker.retainCpdTokens(source, fileMetrics);
+          retainWithinBudget(fileMetrics);
+        }
+        return null;
+      }
+
+      public void done(File file, Void result) {
+        // The tokens are kept along with the metrics
+      }
+    });
+  }
+
+  /**
+   * Releases the tokens of the copy-paste detection kept along with the given metrics if they go over the budget of all the files,
+   * in which case the file is tokenized again when visited.
+   */
+  private void retainWithinBudget(PhpFileMetrics fileMetrics) {
+    if (fileMetrics.isTokenized() && retainedCpdTokens.addAndGet(fileMetrics.getCpdTokenCount()) > MAX_RETAINED_CPD_TOKENS) {
+      retainedCpdTokens.addAndGet(-fileMetrics.getCpdTokenCount());
+      fileMetrics.releaseCpdTokens();
+    }
+  }
+
+  /**
+   * Runs the given task on each file in a pool of threads, each one with its own tokenizer and listeners. The results are handed over
+   * in the calling thread, in the order of the files, and only a few files per thread are submitted ahead of the one whose result is
+   * handed over, so that the pending results stay bounded.
+   */
+  private <T> void runInParallel(List<File> files, int threads, final FileTask<T> task) {
+    ExecutorService pool = Executors.newFixedThreadPool(threads, new LexerThreadFactory());
+    final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+      @Override
+      protected Worker initialValue() {
+        return new Worker(getTimeoutMillis(), symbols);
+      }
+    };
+    try {
+      Queue<Future<T>> pending = new LinkedList<Future<T>>();
+      int done = 0;
+      for (final File file : files) {
+        pending.add(pool.submit(new Callable<T>() {
+          public T call() throws IOException {
+            return task.run(file, workers.get());
+          }
+        }));
+        if (pending.size() >= threads * FILES_AHEAD_PER_THREAD) {
+          task.done(files.get(done), waitFor(pending.remove(), files.get(done)));
+          done++;
+        }
+      }
+      while (!pending.isEmpty()) {
+        task.done(files.get(done), waitFor(pending.remove(), files.get(done)));
+        done++;
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static <T> T waitFor(Future<T> future, File file) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while tokenizing the PHP files", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        LOG.error("Unable to tokenize file " + file, cause);
+        return null;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SonarException("Unable to tokenize file " + file, cause);
+    }
+  }
+
+  /**
+   * Gets the metrics of the given file, tokenizing it in the calling thread if it has not been yet.
+   *
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public synchronized PhpFileMetrics get(File file) throws IOException {
+    File key = file.getAbsoluteFile();
+    PhpFileMetrics result = metrics.get(key);
+    if (result == null) {
+      result = compute(key, worker());
+      metrics.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the table of the values of the tokens of the copy-paste detection
+   */
+  public PhpSymbolTable getSymbols() {
+    return symbols;
+  }
+
+  /**
+   * Pushes the tokens of the copy-paste detection of the given file to the given visitor, and forgets them. The file is tokenized
+   * again if its tokens have not been kept, because its metrics have been restored from the store, because it is too large or
+   * because they have been visited already. The approximated files, which could not be tokenized within their budget, have no
+   * token: the other ones are tokenized again without budget, and their tokens are streamed to the visitor.
+   * <p>
+   * The copy-paste detection comes last, so the metrics of the file are forgotten as well: they are restored or computed again if
+   * needed.
+   *
+   * @throws IOException
+   *           if the file can not be read
+   */
+  public synchronized void visitCpdTokens(File file, PhpCpdTokenVisitor visitor) throws IOException {
+    PhpFileMetrics fileMetrics = get(file);
+    metrics.remove(fileMetrics.getFile());
+    if (fileMetrics.isApproximated()) {
+      return;
+    }
+    if (fileMetrics.isTokenized()) {
+      for (int i = 0; i < fileMetrics.getCpdTokenCount(); i++) {
+        visitor.visitCpdToken(fileMetrics.getCpdSymbol(i), fileMetrics.getCpdLine(i));
+      }
+      retainedCpdTokens.addAndGet(-fileMetrics.getCpdTokenCount());
+      fileMetrics.releaseCpdTokens();
+    } else {
+      worker().visitCpdTokens(sourceCache.get(fileMetrics.getFile()), visitor);
+    }
+  }
+
+  private Worker worker() {
+    if (worker == null) {
+      worker = new Worker(getTimeoutMillis(), symbols);
+    }
+    return worker;
+  }
+
+  /**
+   * Restores the metrics of the file from the store if its content did not change, tokenizes it otherwise.
+   */
+  private PhpFileMetrics compute(File file, Worker fileWorker) throws IOException {
+    if (store == null) {
+      PhpFileMetrics result = fileWorker.analyse(sourceCache.get(file));
+      retainWithinBudget(result);
+      return result;
+    }
+    String hash = PhpDigest.sha256Hex(file);
+    PhpFileMetrics result = store.get(file, hash);
+    boolean restored = result != null;
+    if (!restored) {
+      result = fileWorker.analyse(sourceCache.get(file));
+      retainWithinBudget(result);
+    }
+    synchronized (this) {
+      if (result.isTimedOut()) {
+        hashes.remove(file);
+      } else {
+        hashes.put(file, hash);
+        storeChanged |= !restored;
+      }
+    }
+    return result;
+  }
+
+  private interface FileTask<T> {
+    T run(File file, Worker fileWorker) throws IOException;
+
+    /**
+     * Called in the thread which runs the tasks, in the order of the files.
+     *
+     * @param result
+     *          the result of the task, null if the file can not be read
+     */
+    void done(File file, T result);
+  }
+
+  /**
+   * Tokenizer and listeners of a thread.
+   */
+  private static final class Worker implements PhpTokenVisitor {
+    private final PhpTokenizer tokenizer = new PhpTokenizer();
+    // Without budget, for the sources already tokenized within theirs
+    private final PhpTokenizer replayTokenizer = new PhpTokenizer();
+    private final PhpTokens window = new PhpTokens();
+    private final LinesListener linesListener = new LinesListener();
+    private final CommentListener commentListener = new CommentListener();
+    private final CpdTokenListener cpdListener;
+    private final PhpTokenListener[] allListeners;
+    private final PhpTokenListener[] metricsListeners = {linesListener, commentListener};
+    // Listeners of the current source
+    private PhpTokenListener[] listeners;
+
+    private Worker(long timeoutMillis, PhpSymbolTable symbols) {
+      tokenizer.setBudget(STEPS_PER_CHARACTER, timeoutMillis);
+      cpdListener = new CpdTokenListener(symbols);
+      allListeners = new PhpTokenListener[] {linesListener, commentListener, cpdListener};
+    }
+
+    private PhpFileMetrics analyse(PhpSource source) {
+      boolean retainCpdTokens = source.length() <= MAX_CPD_RETAINED_LENGTH;
+      PhpFileMetrics result = new PhpFileMetrics(source.getFile(), source.getLineCount(), retainCpdTokens);
+      listeners = retainCpdTokens ? allListeners : metricsListeners;
+      for (PhpTokenListener listener : listeners) {
+        listener.startFile(source, result);
+      }
+      try {
+        tokenizer.tokenize(source, window, this);
+      } catch (LexingBudgetExceededException e) {
+        LOG.warn("Unable to tokenize file {} within its budget ({}): its lines are approximated and it is ignored by the "
+          + "copy-paste detection", source.getFile(), e.getMessage());
+        PhpFileMetrics approximated = LineBasedMetrics.compute(source);
+        if (e.isTimeout()) {
+          approximated.setTimedOut();
+        }
+        return approximated;
+      }
+      for (PhpTokenListener listener : listeners) {
+        listener.endFile();
+      }
+      return result;
+    }
+
+    public void visitToken(PhpTokens tokens, int index) {
+      for (PhpTokenListener listener : listeners) {
+        listener.visitToken(tokens, index);
+      }
+    }
+
+    /**
+     * Adds the tokens of the copy-paste detection of the source to its metrics. A source which can not be tokenized within its
+     * budget keeps no token, and is approximated.
+     */
+    private void retainCpdTokens(PhpSource source, PhpFileMetrics fileMetrics) {
+      cpdListener.startFile(source, fileMetrics);
+      try {
+        tokenizer.tokenize(source, window, cpdListener);
+      } catch (LexingBudgetExceededException e) {
+        LOG.warn("Unable to tokenize file {} within its budget ({}): it is ignored by the copy-paste detection", source.getFile(),
+          e.getMessage());
+        cpdListener.endFile();
+        fileMetrics.releaseCpdTokens();
+        if (e.isTimeout()) {
+          fileMetrics.setTimedOut();
+        } else {
+          fileMetrics.setApproximated();
+        }
+        return;
+      }
+      cpdListener.endFile();
+      fileMetrics.setTokenized();
+    }
+
+    /**
+     * Streams the tokens of a source which is not approximated: it has already been tokenized within its budget, and scans the
+     * same characters again, so it is tokenized again without budget. The visitor thus never gets a truncated stream, and the
+     * tokens of the largest sources are never all kept in memory.
+     */
+    private void visitCpdTokens(PhpSource source, PhpCpdTokenVisitor visitor) {
+      cpdListener.startFile(source, visitor);
+      try {
+        replayTokenizer.tokenize(source, window, cpdListener);
+      } finally {
+        cpdListener.endFile();
+      }
+    }
+  }
+
+  private static class LexerThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "php-lexer-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
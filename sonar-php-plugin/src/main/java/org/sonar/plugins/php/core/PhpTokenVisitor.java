@@ -0,0 +1,38 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+/**
+ * Receives the tokens of a source one after the other while it is tokenized by
+ * {@link PhpTokenizer#tokenize(CharSequence, PhpTokens, PhpTokenVisitor)}, so that the tokens of a source never have to be
+ * kept all together.
+ */
+public interface PhpTokenVisitor {
+
+  /**
+   * Called for each token of the source in order, comments included.
+   *
+   * @param tokens
+   *          a window of the latest tokens of the source, which is only valid during the call
+   * @param index
+   *          the index of the token in the window
+   */
+  void visitToken(PhpTokens tokens, int index);
+}
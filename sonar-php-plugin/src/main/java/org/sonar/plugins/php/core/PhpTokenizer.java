@@ -0,0 +1,691 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written PHP tokenizer, which finds the same comments and strings as {@link PhpLexer} and classifies the rest of the
+ * code into PHP tokens, without allocating anything but the arrays of {@link PhpTokens}. As {@link PhpLexer}, it does not
+ * distinguish the PHP code from the text outside of the PHP tags. A tokenizer must not be shared between threads.
+ * <p>
+ * Unterminated comments and strings are scanned up to the end of the source before the tokenizer falls back to a single
+ * character, which may take a time quadratic in the size of the source. A budget of steps, counted in scanned characters, and of
+ * time can be set to give up on such sources.
+ * <p>
+ * The tokens are either all kept in {@link PhpTokens}, or pushed to a {@link PhpTokenVisitor} through a window of constant size,
+ * for the sources too large to keep their tokens.
+ */
+public final class PhpTokenizer {
+
+  private static final char BOM = '\uFEFF';
+  private static final int ASCII = 128;
+  // The clock is read once every so many tokens
+  private static final int TOKENS_PER_CLOCK_CHECK = 1024;
+  private static final long NANOS_PER_MILLISECOND = 1000000L;
+  // Number of tokens of the window handed over to the visitors
+  static final int WINDOW_SIZE = 1024;
+  private static final Entry[][] KEYWORDS = new Entry[16][];
+  private static final Entry[][] OPERATORS = new Entry[ASCII][];
+
+  static {
+    List<Entry> keywords = new ArrayList<Entry>();
+    keyword(keywords, "abstract", PhpTokenKind.T_ABSTRACT);
+    keyword(keywords, "and", PhpTokenKind.T_LOGICAL_AND);
+    keyword(keywords, "array", PhpTokenKind.T_ARRAY);
+    keyword(keywords, "as", PhpTokenKind.T_AS);
+    keyword(keywords, "break", PhpTokenKind.T_BREAK);
+    keyword(keywords, "callable", PhpTokenKind.T_CALLABLE);
+    keyword(keywords, "case", PhpTokenKind.T_CASE);
+    keyword(keywords, "catch", PhpTokenKind.T_CATCH);
+    keyword(keywords, "class", PhpTokenKind.T_CLASS);
+    keyword(keywords, "clone", PhpTokenKind.T_CLONE);
+    keyword(keywords, "const", PhpTokenKind.T_CONST);
+    keyword(keywords, "continue", PhpTokenKind.T_CONTINUE);
+    keyword(keywords, "declare", PhpTokenKind.T_DECLARE);
+    keyword(keywords, "default", PhpTokenKind.T_DEFAULT);
+    keyword(keywords, "die", PhpTokenKind.T_EXIT);
+    keyword(keywords, "do", PhpTokenKind.T_DO);
+    keyword(keywords, "echo", PhpTokenKind.T_ECHO);
+    keyword(keywords, "else", PhpTokenKind.T_ELSE);
+    keyword(keywords, "elseif", PhpTokenKind.T_ELSEIF);
+    keyword(keywords, "empty", PhpTokenKind.T_EMPTY);
+    keyword(keywords, "enddeclare", PhpTokenKind.T_ENDDECLARE);
+    keyword(keywords, "endfor", PhpTokenKind.T_ENDFOR);
+    keyword(keywords, "endforeach", PhpTokenKind.T_ENDFOREACH);
+    keyword(keywords, "endif", PhpTokenKind.T_ENDIF);
+    keyword(keywords, "endswitch", PhpTokenKind.T_ENDSWITCH);
+    keyword(keywords, "endwhile", PhpTokenKind.T_ENDWHILE);
+    keyword(keywords, "eval", PhpTokenKind.T_EVAL);
+    keyword(keywords, "exit", PhpTokenKind.T_EXIT);
+    keyword(keywords, "extends", PhpTokenKind.T_EXTENDS);
+    keyword(keywords, "final", PhpTokenKind.T_FINAL);
+    keyword(keywords, "finally", PhpTokenKind.T_FINALLY);
+    keyword(keywords, "fn", PhpTokenKind.T_FN);
+    keyword(keywords, "for", PhpTokenKind.T_FOR);
+    keyword(keywords, "foreach", PhpTokenKind.T_FOREACH);
+    keyword(keywords, "function", PhpTokenKind.T_FUNCTION);
+    keyword(keywords, "global", PhpTokenKind.T_GLOBAL);
+    keyword(keywords, "goto", PhpTokenKind.T_GOTO);
+    keyword(keywords, "__halt_compiler", PhpTokenKind.T_HALT_COMPILER);
+    keyword(keywords, "if", PhpTokenKind.T_IF);
+    keyword(keywords, "implements", PhpTokenKind.T_IMPLEMENTS);
+    keyword(keywords, "include", PhpTokenKind.T_INCLUDE);
+    keyword(keywords, "include_once", PhpTokenKind.T_INCLUDE_ONCE);
+    keyword(keywords, "instanceof", PhpTokenKind.T_INSTANCEOF);
+    keyword(keywords, "insteadof", PhpTokenKind.T_INSTEADOF);
+    keyword(keywords, "interface", PhpTokenKind.T_INTERFACE);
+    keyword(keywords, "isset", PhpTokenKind.T_ISSET);
+    keyword(keywords, "list", PhpTokenKind.T_LIST);
+    keyword(keywords, "match", PhpTokenKind.T_MATCH);
+    keyword(keywords, "namespace", PhpTokenKind.T_NAMESPACE);
+    keyword(keywords, "new", PhpTokenKind.T_NEW);
+    keyword(keywords, "or", PhpTokenKind.T_LOGICAL_OR);
+    keyword(keywords, "print", PhpTokenKind.T_PRINT);
+    keyword(keywords, "private", PhpTokenKind.T_PRIVATE);
+    keyword(keywords, "protected", PhpTokenKind.T_PROTECTED);
+    keyword(keywords, "public", PhpTokenKind.T_PUBLIC);
+    keyword(keywords, "readonly", PhpTokenKind.T_READONLY);
+    keyword(keywords, "require", PhpTokenKind.T_REQUIRE);
+    keyword(keywords, "require_once", PhpTokenKind.T_REQUIRE_ONCE);
+    keyword(keywords, "return", PhpTokenKind.T_RETURN);
+    keyword(keywords, "static", PhpTokenKind.T_STATIC);
+    keyword(keywords, "switch", PhpTokenKind.T_SWITCH);
+    keyword(keywords, "throw", PhpTokenKind.T_THROW);
+    keyword(keywords, "trait", PhpTokenKind.T_TRAIT);
+    keyword(keywords, "try", PhpTokenKind.T_TRY);
+    keyword(keywords, "unset", PhpTokenKind.T_UNSET);
+    keyword(keywords, "use", PhpTokenKind.T_USE);
+    keyword(keywords, "var", PhpTokenKind.T_VAR);
+    keyword(keywords, "while", PhpTokenKind.T_WHILE);
+    keyword(keywords, "xor", PhpTokenKind.T_LOGICAL_XOR);
+    keyword(keywords, "yield", PhpTokenKind.T_YIELD);
+    keyword(keywords, "__class__", PhpTokenKind.T_CLASS_C);
+    keyword(keywords, "__dir__", PhpTokenKind.T_DIR);
+    keyword(keywords, "__file__", PhpTokenKind.T_FILE);
+    keyword(keywords, "__function__", PhpTokenKind.T_FUNC_C);
+    keyword(keywords, "__line__", PhpTokenKind.T_LINE);
+    keyword(keywords, "__method__", PhpTokenKind.T_METHOD_C);
+    keyword(keywords, "__namespace__", PhpTokenKind.T_NS_C);
+    keyword(keywords, "__trait__", PhpTokenKind.T_TRAIT_C);
+    for (Entry entry : keywords) {
+      KEYWORDS[entry.text.length()] = append(KEYWORDS[entry.text.length()], entry);
+    }
+
+    // The longest operators first, as the first one which matches is taken
+    List<Entry> operators = new ArrayList<Entry>();
+    operators.add(new Entry("<<=", PhpTokenKind.T_SL_EQUAL));
+    operators.add(new Entry(">>=", PhpTokenKind.T_SR_EQUAL));
+    operators.add(new Entry("**=", PhpTokenKind.T_POW_EQUAL));
+    operators.add(new Entry("??=", PhpTokenKind.T_COALESCE_EQUAL));
+    operators.add(new Entry("===", PhpTokenKind.T_IS_IDENTICAL));
+    operators.add(new Entry("!==", PhpTokenKind.T_IS_NOT_IDENTICAL));
+    operators.add(new Entry("<=>", PhpTokenKind.T_SPACESHIP));
+    operators.add(new Entry("?->", PhpTokenKind.T_NULLSAFE_OBJECT_OPERATOR));
+    operators.add(new Entry("...", PhpTokenKind.T_ELLIPSIS));
+    operators.add(new Entry("&=", PhpTokenKind.T_AND_EQUAL));
+    operators.add(new Entry("&&", PhpTokenKind.T_BOOLEAN_AND));
+    operators.add(new Entry("||", PhpTokenKind.T_BOOLEAN_OR));
+    operators.add(new Entry("??", PhpTokenKind.T_COALESCE));
+    operators.add(new Entry(".=", PhpTokenKind.T_CONCAT_EQUAL));
+    operators.add(new Entry("--", PhpTokenKind.T_DEC));
+    operators.add(new Entry("/=", PhpTokenKind.T_DIV_EQUAL));
+    operators.add(new Entry("=>", PhpTokenKind.T_DOUBLE_ARROW));
+    operators.add(new Entry("::", PhpTokenKind.T_DOUBLE_COLON));
+    operators.add(new Entry("++", PhpTokenKind.T_INC));
+    operators.add(new Entry("==", PhpTokenKind.T_IS_EQUAL));
+    operators.add(new Entry(">=", PhpTokenKind.T_IS_GREATER_OR_EQUAL));
+    operators.add(new Entry("!=", PhpTokenKind.T_IS_NOT_EQUAL));
+    operators.add(new Entry("<>", PhpTokenKind.T_IS_NOT_EQUAL));
+    operators.add(new Entry("<=", PhpTokenKind.T_IS_SMALLER_OR_EQUAL));
+    operators.add(new Entry("-=", PhpTokenKind.T_MINUS_EQUAL));
+    operators.add(new Entry("%=", PhpTokenKind.T_MOD_EQUAL));
+    operators.add(new Entry("*=", PhpTokenKind.T_MUL_EQUAL));
+    operators.add(new Entry("->", PhpTokenKind.T_OBJECT_OPERATOR));
+    operators.add(new Entry("|=", PhpTokenKind.T_OR_EQUAL));
+    operators.add(new Entry("+=", PhpTokenKind.T_PLUS_EQUAL));
+    operators.add(new Entry("**", PhpTokenKind.T_POW));
+    operators.add(new Entry("<<", PhpTokenKind.T_SL));
+    operators.add(new Entry(">>", PhpTokenKind.T_SR));
+    operators.add(new Entry("^=", PhpTokenKind.T_XOR_EQUAL));
+    operators.add(new Entry("\\", PhpTokenKind.T_NS_SEPARATOR));
+    for (Entry entry : operators) {
+      char first = entry.text.charAt(0);
+      OPERATORS[first] = append(OPERATORS[first], entry);
+    }
+  }
+
+  private char[] chars;
+  private int length;
+  private int line;
+  private int column;
+  private long stepsPerCharacter;
+  private long timeoutMillis;
+  // Characters scanned so far, including the ones of the failed matches
+  private long steps;
+
+  /**
+   * Sets the budget of the following sources, beyond which {@link #tokenize(char[], int, PhpTokens)} throws a
+   * {@link LexingBudgetExceededException}. There is no budget by default.
+   *
+   * @param stepsPerCharacter
+   *          the number of characters which may be scanned per character of the source, or 0 for no limit
+   * @param timeoutMillis
+   *          the time allowed to tokenize a source, or 0 for no limit
+   */
+  public void setBudget(long stepsPerCharacter, long timeoutMillis) {
+    this.stepsPerCharacter = stepsPerCharacter;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Tokenizes the given source.
+   *
+   * @param source
+   *          the source
+   * @param tokens
+   *          the tokens, which are cleared first
+   */
+  public void tokenize(CharSequence source, PhpTokens tokens) {
+    tokenize(source, tokens, null);
+  }
+
+  /**
+   * Tokenizes the given source, pushing each token to the given visitor as soon as it is found. Only the latest tokens are kept.
+   *
+   * @param source
+   *          the source
+   * @param window
+   *          the window of the latest tokens, which is cleared first
+   * @param visitor
+   *          the visitor of the tokens, or null to keep all the tokens in the window
+   */
+  public void tokenize(CharSequence source, PhpTokens window, PhpTokenVisitor visitor) {
+    char[] content = source instanceof PhpSource ? ((PhpSource) source).getChars() : source.toString().toCharArray();
+    tokenize(content, source.length(), window, visitor);
+  }
+
+  /**
+   * Tokenizes the <code>length</code> first characters of the given array.
+   */
+  public void tokenize(char[] source, int sourceLength, PhpTokens tokens) {
+    tokenize(source, sourceLength, tokens, null);
+  }
+
+  /**
+   * Tokenizes the <code>length</code> first characters of the given array, pushing each token to the given visitor.
+   *
+   * @see #tokenize(CharSequence, PhpTokens, PhpTokenVisitor)
+   */
+  public void tokenize(char[] source, int sourceLength, PhpTokens tokens, PhpTokenVisitor visitor) {
+    this.chars = source;
+    this.length = sourceLength;
+    this.line = 1;
+    this.column = 0;
+    this.steps = 0;
+    tokens.clear();
+    long maxSteps = stepsPerCharacter > 0 ? Math.max(stepsPerCharacter * sourceLength, stepsPerCharacter) : Long.MAX_VALUE;
+    long deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * NANOS_PER_MILLISECOND : 0;
+    int tokenCount = 0;
+    try {
+      int position = 0;
+      while (position < length) {
+        char c = chars[position];
+        if (isWhitespace(c)) {
+          advance(position, position + 1);
+          position++;
+          continue;
+        }
+        if (c == BOM) {
+          advance(position, position + 1);
+          position++;
+          continue;
+        }
+        PhpTokenKind kind;
+        int end = matchComment(position);
+        if (end >= 0) {
+          kind = isDocComment(position, end) ? PhpTokenKind.T_DOC_COMMENT : PhpTokenKind.T_COMMENT;
+        } else if ((end = matchQuotedString(position)) >= 0) {
+          kind = PhpTokenKind.T_CONSTANT_ENCAPSED_STRING;
+        } else if ((end = matchHeredoc(position)) >= 0) {
+          kind = chars[position + 3] == '\'' ? PhpTokenKind.T_NOWDOC : PhpTokenKind.T_HEREDOC;
+        } else {
+          end = matchCode(position);
+          kind = codeKind;
+        }
+        if (visitor != null && tokens.size() == WINDOW_SIZE) {
+          tokens.clear();
+        }
+        tokens.add(kind, position, end - position, line, column);
+        if (visitor != null) {
+          visitor.visitToken(tokens, tokens.size() - 1);
+        }
+        advance(position, end);
+        steps += end - position;
+        position = end;
+        tokenCount++;
+        checkBudget(maxSteps, deadline, tokenCount);
+      }
+      tokens.end(line, column);
+    } finally {
+      this.chars = null;
+    }
+  }
+
+  private void checkBudget(long maxSteps, long deadline, int tokenCount) {
+    if (steps > maxSteps) {
+      throw new LexingBudgetExceededException("more than " + maxSteps + " characters scanned", false);
+    }
+    if (deadline != 0 && tokenCount % TOKENS_PER_CLOCK_CHECK == 0 && System.nanoTime() - deadline > 0) {
+      throw new LexingBudgetExceededException("more than " + timeoutMillis + " ms spent", true);
+    }
+  }
+
+  /**
+   * Updates the line and column as SSLR does: a line ends with <code>\n</code>, or <code>\r</code> when not followed by
+   * <code>\n</code>.
+   */
+  private void advance(int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = chars[i];
+      if (c == '\n' || c == '\r' && (i + 1 >= length || chars[i + 1] != '\n')) {
+        line++;
+        column = 0;
+      } else {
+        column++;
+      }
+    }
+  }
+
+  /**
+   * White spaces of the <code>\s</code> regular expression class.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r';
+  }
+
+  /**
+   * <code>#</code> and <code>//</code> comments end before the end of the line or the closing tag, and <code>/*</code> ones
+   * with <code>*&#47;</code>.
+   *
+   * @return the end of the comment starting at the given position, or -1
+   */
+  private int matchComment(int start) {
+    char c = chars[start];
+    int position;
+    if (c == '#') {
+      position = start + 1;
+    } else if (c == '/' && start + 1 < length && chars[start + 1] == '/') {
+      position = start + 2;
+    } else if (c == '/' && start + 1 < length && chars[start + 1] == '*') {
+      for (position = start + 2; position + 1 < length; position++) {
+        if (chars[position] == '*' && chars[position + 1] == '/') {
+          return position + 2;
+        }
+      }
+      steps += length - start;
+      return -1;
+    } else {
+      return -1;
+    }
+    while (position < length) {
+      char next = chars[position];
+      if (isLineTerminator(next) || next == '?' && position + 1 < length && chars[position + 1] == '>') {
+        break;
+      }
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * As PHP, only <code>/**</code> followed by a white space starts a documentation comment.
+   */
+  private boolean isDocComment(int start, int end) {
+    return end - start > 4 && chars[start] == '/' && chars[start + 1] == '*' && chars[start + 2] == '*' && isWhitespace(chars[start + 3]);
+  }
+
+  /**
+   * @return the end of the single or double quoted string starting at the given position, or -1 if it is not terminated
+   */
+  private int matchQuotedString(int start) {
+    char quote = chars[start];
+    if (quote != '\'' && quote != '"') {
+      return -1;
+    }
+    int position = start + 1;
+    while (position < length) {
+      char c = chars[position];
+      if (c == quote) {
+        return position + 1;
+      } else if (c == '\\') {
+        position += 2;
+      } else {
+        position++;
+      }
+    }
+    steps += length - start;
+    return -1;
+  }
+
+  /**
+   * The string ends with the first line which starts with its label, optionally followed by a semicolon, and ends there. The
+   * semicolon is not part of the string.
+   *
+   * @return the end of the heredoc or nowdoc string starting at the given position, or -1
+   */
+  private int matchHeredoc(int start) {
+    if (start + 3 >= length || chars[start] != '<' || chars[start + 1] != '<' || chars[start + 2] != '<') {
+      return -1;
+    }
+    int position = start + 3;
+    if (isQuote(chars[position])) {
+      position++;
+    }
+    int labelStart = position;
+    position = matchHeredocLabel(position);
+    if (position < 0) {
+      return -1;
+    }
+    int labelLength = position - labelStart;
+    if (position < length && isQuote(chars[position])) {
+      position++;
+    }
+    if (position >= length || !isLineTerminator(chars[position])) {
+      return -1;
+    }
+    for (; position < length; position++) {
+      if (isLineTerminator(chars[position]) && isHeredocEnd(position + 1, labelStart, labelLength)) {
+        return position + 1 + labelLength;
+      }
+    }
+    steps += length - start;
+    return -1;
+  }
+
+  private static boolean isQuote(char c) {
+    return c == '\'' || c == '"';
+  }
+
+  /**
+   * Labels start with an underscore or a letter, followed by underscores, ASCII digits or letters. Letters may be followed by
+   * combining marks.
+   *
+   * @return the end of the label, or -1
+   */
+  private int matchHeredocLabel(int start) {
+    int position = start;
+    while (position < length) {
+      char c = chars[position];
+      if (c == '_' || position > start && c >= '0' && c <= '9') {
+        position++;
+      } else {
+        int codePoint = Character.codePointAt(chars, position, length);
+        if (!Character.isLetter(codePoint)) {
+          break;
+        }
+        position += Character.charCount(codePoint);
+        while (position < length && isMark(Character.codePointAt(chars, position, length))) {
+          position += Character.charCount(Character.codePointAt(chars, position, length));
+        }
+      }
+    }
+    return position > start ? position : -1;
+  }
+
+  private static boolean isMark(int codePoint) {
+    int type = Character.getType(codePoint);
+    return type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.COMBINING_SPACING_MARK;
+  }
+
+  private boolean isHeredocEnd(int position, int labelStart, int labelLength) {
+    if (position + labelLength > length) {
+      return false;
+    }
+    for (int i = 0; i < labelLength; i++) {
+      if (chars[position + i] != chars[labelStart + i]) {
+        return false;
+      }
+    }
+    int end = position + labelLength;
+    if (end < length && chars[end] == ';') {
+      end++;
+    }
+    return end == length || isLineTerminator(chars[end]);
+  }
+
+  // Kind of the last token matched by matchCode(), to avoid allocating a result
+  private PhpTokenKind codeKind;
+
+  /**
+   * Matches the code which is neither a comment nor a string.
+   *
+   * @return the end of the token, whose kind is set in {@link #codeKind}
+   */
+  private int matchCode(int start) {
+    char c = chars[start];
+    if (c == '$' && start + 1 < length && isLabelStart(chars[start + 1])) {
+      codeKind = PhpTokenKind.T_VARIABLE;
+      return matchLabel(start + 1);
+    }
+    if (isLabelStart(c)) {
+      int end = matchLabel(start);
+      codeKind = keyword(start, end);
+      return end;
+    }
+    if (c >= '0' && c <= '9' || c == '.' && start + 1 < length && chars[start + 1] >= '0' && chars[start + 1] <= '9') {
+      return matchNumber(start);
+    }
+    if (c == '<' && start + 1 < length && chars[start + 1] == '?') {
+      return matchOpenTag(start);
+    }
+    if (c == '?' && start + 1 < length && chars[start + 1] == '>') {
+      codeKind = PhpTokenKind.T_CLOSE_TAG;
+      return start + 2;
+    }
+    if (c < ASCII && OPERATORS[c] != null) {
+      for (Entry operator : OPERATORS[c]) {
+        if (matches(start, operator.text)) {
+          codeKind = operator.kind;
+          return start + operator.text.length();
+        }
+      }
+    }
+    int codePoint = Character.codePointAt(chars, start, length);
+    codeKind = isBadCharacter(codePoint) ? PhpTokenKind.T_BAD_CHARACTER : PhpTokenKind.T_CHARACTER;
+    return start + Character.charCount(codePoint);
+  }
+
+  private static boolean isBadCharacter(int codePoint) {
+    return codePoint < ' ' || codePoint == 0x7F || codePoint == 0x85 || codePoint == 0x2028 || codePoint == 0x2029;
+  }
+
+  /**
+   * Labels are made of ASCII letters, digits, underscores and any character above ASCII, as PHP reads the bytes of UTF-8
+   * characters as such.
+   */
+  private static boolean isLabelStart(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c >= ASCII && !isBadCharacter(c) && c != BOM;
+  }
+
+  private static boolean isLabelPart(char c) {
+    return isLabelStart(c) || c >= '0' && c <= '9';
+  }
+
+  private int matchLabel(int start) {
+    int position = start;
+    while (position < length && isLabelPart(chars[position])) {
+      position++;
+    }
+    return position;
+  }
+
+  private PhpTokenKind keyword(int start, int end) {
+    int labelLength = end - start;
+    if (labelLength < KEYWORDS.length && KEYWORDS[labelLength] != null) {
+      for (Entry keyword : KEYWORDS[labelLength]) {
+        if (matchesIgnoreCase(start, keyword.text)) {
+          return keyword.kind;
+        }
+      }
+    }
+    return PhpTokenKind.T_STRING;
+  }
+
+  /**
+   * Decimal, hexadecimal, octal and binary integers, with underscore separators, and decimal floating point numbers.
+   */
+  private int matchNumber(int start) {
+    int position = start;
+    if (chars[start] == '0' && start + 2 < length && (chars[start + 1] | 0x20) == 'x' && isHexDigit(chars[start + 2])) {
+      position = start + 2;
+      while (position < length && (isHexDigit(chars[position]) || chars[position] == '_')) {
+        position++;
+      }
+      codeKind = PhpTokenKind.T_LNUMBER;
+      return position;
+    }
+    if (chars[start] == '0' && start + 2 < length && (chars[start + 1] | 0x20) == 'b' && isBinaryDigit(chars[start + 2])) {
+      position = start + 2;
+      while (position < length && (isBinaryDigit(chars[position]) || chars[position] == '_')) {
+        position++;
+      }
+      codeKind = PhpTokenKind.T_LNUMBER;
+      return position;
+    }
+    codeKind = PhpTokenKind.T_LNUMBER;
+    position = matchDigits(position);
+    if (position < length && chars[position] == '.' && !(position + 1 < length && chars[position + 1] == '.')) {
+      codeKind = PhpTokenKind.T_DNUMBER;
+      position = matchDigits(position + 1);
+    }
+    if (position < length && (chars[position] | 0x20) == 'e') {
+      int exponent = position + 1;
+      if (exponent < length && (chars[exponent] == '+' || chars[exponent] == '-')) {
+        exponent++;
+      }
+      if (exponent < length && isDigit(chars[exponent])) {
+        codeKind = PhpTokenKind.T_DNUMBER;
+        position = matchDigits(exponent);
+      }
+    }
+    return position;
+  }
+
+  private int matchDigits(int start) {
+    int position = start;
+    while (position < length && (isDigit(chars[position]) || chars[position] == '_')) {
+      position++;
+    }
+    return position;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isHexDigit(char c) {
+    return isDigit(c) || (c | 0x20) >= 'a' && (c | 0x20) <= 'f';
+  }
+
+  private static boolean isBinaryDigit(char c) {
+    return c == '0' || c == '1';
+  }
+
+  private int matchOpenTag(int start) {
+    if (matchesIgnoreCase(start, "<?php")) {
+      codeKind = PhpTokenKind.T_OPEN_TAG;
+      return start + 5;
+    }
+    if (start + 2 < length && chars[start + 2] == '=') {
+      codeKind = PhpTokenKind.T_OPEN_TAG_WITH_ECHO;
+      return start + 3;
+    }
+    codeKind = PhpTokenKind.T_OPEN_TAG;
+    return start + 2;
+  }
+
+  /**
+   * Checks that the text is at the given position, and that none of its characters but the first one starts a comment or a
+   * string, which would have precedence.
+   */
+  private boolean matches(int start, String text) {
+    if (start + text.length() > length) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (chars[start + i] != text.charAt(i)) {
+        return false;
+      }
+      if (i > 0 && (matchComment(start + i) >= 0 || matchQuotedString(start + i) >= 0 || matchHeredoc(start + i) >= 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares with a lower case ASCII text.
+   */
+  private boolean matchesIgnoreCase(int start, String text) {
+    if (start + text.length() > length) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      char c = chars[start + i];
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void keyword(List<Entry> keywords, String text, PhpTokenKind kind) {
+    keywords.add(new Entry(text, kind));
+  }
+
+  private static Entry[] append(Entry[] entries, Entry entry) {
+    if (entries == null) {
+      return new Entry[] {entry};
+    }
+    Entry[] result = new Entry[entries.length + 1];
+    System.arraycopy(entries, 0, result, 0, entries.length);
+    result[entries.length] = entry;
+    return result;
+  }
+
+  private static final class Entry {
+    private final String text;
+    private final PhpTokenKind kind;
+
+    private Entry(String text, PhpTokenKind kind) {
+      this.text = text;
+      this.kind = kind;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import java.util.Arrays;
+
+/**
+ * Tokens of a source, stored in primitive arrays which are reused from a source to the other: the kind, the offset and length
+ * in the source, and the line (starting at 1) and column (starting at 0) of the first character of each token.
+ */
+public final class PhpTokens {
+
+  private static final PhpTokenKind[] KINDS = PhpTokenKind.values();
+  private static final int INITIAL_CAPACITY = 256;
+
+  private int size;
+  private int[] kinds = new int[INITIAL_CAPACITY];
+  private int[] offsets = new int[INITIAL_CAPACITY];
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int[] lines = new int[INITIAL_CAPACITY];
+  private int[] columns = new int[INITIAL_CAPACITY];
+  private int endLine;
+  private int endColumn;
+
+  void add(PhpTokenKind kind, int offset, int length, int line, int column) {
+    if (size == kinds.length) {
+      int capacity = size * 2;
+      kinds = Arrays.copyOf(kinds, capacity);
+      offsets = Arrays.copyOf(offsets, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+      columns = Arrays.copyOf(columns, capacity);
+    }
+    kinds[size] = kind.ordinal();
+    offsets[size] = offset;
+    lengths[size] = length;
+    lines[size] = line;
+    columns[size] = column;
+    size++;
+  }
+
+  void end(int line, int column) {
+    this.endLine = line;
+    this.endColumn = column;
+  }
+
+  /**
+   * Forgets the tokens, keeping the arrays for the next source.
+   */
+  public void clear() {
+    size = 0;
+    endLine = 1;
+    endColumn = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public PhpTokenKind getKind(int index) {
+    return KINDS[kinds[index]];
+  }
+
+  public int getOffset(int index) {
+    return offsets[index];
+  }
+
+  public int getLength(int index) {
+    return lengths[index];
+  }
+
+  public int getLine(int index) {
+    return lines[index];
+  }
+
+  public int getColumn(int index) {
+    return columns[index];
+  }
+
+  /**
+   * @return the line of the end of the source
+   */
+  public int getEndLine() {
+    return endLine;
+  }
+
+  /**
+   * @return the column of the end of the source
+   */
+  public int getEndColumn() {
+    return endColumn;
+  }
+}
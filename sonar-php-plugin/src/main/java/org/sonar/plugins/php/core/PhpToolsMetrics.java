@@ -0,0 +1,82 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.ImmutableList;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.Metrics;
+import org.sonar.api.measures.SumChildValuesFormula;
+
+import java.util.List;
+
+/**
+ * Measures of the execution of the external tools on the project, used to find out which tool dominates the analysis time, and
+ * of the files the plugin itself could not analyse in time.
+ */
+public class PhpToolsMetrics implements Metrics {
+
+  public static final String TOOLS_WALL_TIME_KEY = "php_tools_wall_time";
+  public static final Metric TOOLS_WALL_TIME = new Metric.Builder(TOOLS_WALL_TIME_KEY, "PHP tools wall time", Metric.ValueType.MILLISEC)
+    .setDescription("Sum of the wall times of the external PHP tools")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(CoreMetrics.DOMAIN_GENERAL)
+    .create();
+
+  public static final String TOOLS_CPU_TIME_KEY = "php_tools_cpu_time";
+  public static final Metric TOOLS_CPU_TIME = new Metric.Builder(TOOLS_CPU_TIME_KEY, "PHP tools CPU time", Metric.ValueType.MILLISEC)
+    .setDescription("Sum of the user and system CPU times of the external PHP tools")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(CoreMetrics.DOMAIN_GENERAL)
+    .create();
+
+  public static final String TOOLS_PEAK_MEMORY_KEY = "php_tools_peak_memory";
+  public static final Metric TOOLS_PEAK_MEMORY = new Metric.Builder(TOOLS_PEAK_MEMORY_KEY, "PHP tools peak memory", Metric.ValueType.INT)
+    .setDescription("Highest peak resident set size of the external PHP tools, in kB")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(CoreMetrics.DOMAIN_GENERAL)
+    .create();
+
+  public static final String TOOLS_EXECUTIONS_KEY = "php_tools_executions";
+  public static final Metric TOOLS_EXECUTIONS = new Metric.Builder(TOOLS_EXECUTIONS_KEY, "PHP tools executions", Metric.ValueType.DATA)
+    .setDescription("Wall time, CPU times, peak memory, exit code and report size of each external PHP tool")
+    .setDirection(Metric.DIRECTION_NONE)
+    .setQualitative(false)
+    .setDomain(CoreMetrics.DOMAIN_GENERAL)
+    .setHidden(true)
+    .create();
+
+  public static final String APPROXIMATED_FILES_KEY = "php_approximated_files";
+  public static final Metric APPROXIMATED_FILES = new Metric.Builder(APPROXIMATED_FILES_KEY, "PHP approximated files", Metric.ValueType.INT)
+    .setDescription("Files which could not be tokenized within the lexer budget, whose lines are approximated and which are ignored by "
+      + "the copy-paste detection")
+    .setDirection(Metric.DIRECTION_WORST)
+    .setQualitative(false)
+    .setDomain(CoreMetrics.DOMAIN_GENERAL)
+    .setFormula(new SumChildValuesFormula(false))
+    .create();
+
+  public List<Metric> getMetrics() {
+    return ImmutableList.of(TOOLS_WALL_TIME, TOOLS_CPU_TIME, TOOLS_PEAK_MEMORY, TOOLS_EXECUTIONS, APPROXIMATED_FILES);
+  }
+}
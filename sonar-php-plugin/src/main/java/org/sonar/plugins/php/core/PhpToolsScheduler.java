@@ -0,0 +1,314 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
+import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.utils.SonarException;
+import org.sonar.plugins.php.PhpPlugin;
+import org.sonar.plugins.php.api.PhpConstants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Launches all the enabled external tools (PHPMD, PHP_CodeSniffer, PHP Depend, PHPUnit) in parallel at the very beginning
+ * of the analysis. Each tool sensor then only waits for its own tool through {@link #execute(AbstractPhpExecutor)} before
+ * parsing the report, so the analysis wall time is bound by the slowest tool rather than the sum of all of them.
+ */
+@Phase(name = Phase.Name.PRE)
+@Properties({
+  @Property(key = PhpToolsScheduler.PARALLELISM_KEY, defaultValue = "" + PhpToolsScheduler.DEFAULT_PARALLELISM,
+    name = "Concurrent external tools", project = true, global = true,
+    description = "Maximum number of external tools (PHPMD, PHP_CodeSniffer, PHP Depend, PHPUnit) executed at the same time. "
+      + "Set to 1 to run them one after the other.", category = PhpPlugin.CATEGORY_PHP, type = PropertyType.INTEGER)
+})
+public class PhpToolsScheduler implements Sensor {
+
+  public static final String PARALLELISM_KEY = "sonar.php.tools.parallelism";
+  public static final int DEFAULT_PARALLELISM = 4;
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpToolsScheduler.class);
+  private static final String DURATIONS_FILE_NAME = "php-tools-durations.properties";
+
+  private final AbstractPhpExecutor[] executors;
+  private final Settings settings;
+  private final ProjectFileSystem filesystem;
+
+  private final Map<AbstractPhpExecutor, Future<?>> scheduled = Maps.newHashMap();
+  private final Set<AbstractPhpExecutor> running = Sets.newHashSet();
+  private final java.util.Properties durations = new java.util.Properties();
+  private boolean started = false;
+  private volatile String failedTool;
+
+  public PhpToolsScheduler(AbstractPhpExecutor[] executors, Settings settings, ProjectFileSystem filesystem) {
+    this.executors = executors;
+    this.settings = settings;
+    this.filesystem = filesystem;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean shouldExecuteOnProject(Project project) {
+    return !filesystem.mainFiles(PhpConstants.LANGUAGE_KEY).isEmpty();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void analyse(Project project, SensorContext context) {
+    start();
+  }
+
+  /**
+   * Executes the given tool, or waits for its completion if it has already been launched in background.
+   * Any failure of the tool, or its cancellation because another tool failed before it started, is rethrown to the caller.
+   */
+  public void execute(AbstractPhpExecutor executor) {
+    Future<?> future;
+    synchronized (this) {
+      start();
+      future = scheduled.get(executor);
+    }
+    if (future == null) {
+      // Not considered as enabled when the analysis started: run it in the calling thread as before
+      executor.execute();
+      return;
+    }
+    try {
+      future.get();
+    } catch (CancellationException e) {
+      throw new SonarException(executor.getExecutedTool() + " has been cancelled because " + failedTool + " failed", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while waiting for " + executor.getExecutedTool(), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SonarException("Error during execution of " + executor.getExecutedTool(), cause);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized void start() {
+    if (started) {
+      return;
+    }
+    started = true;
+    List<AbstractPhpExecutor> enabled = Lists.newArrayList();
+    for (AbstractPhpExecutor executor : executors) {
+      if (executor.isEnabled()) {
+        enabled.add(executor);
+      }
+    }
+    if (enabled.isEmpty()) {
+      return;
+    }
+    loadDurations();
+    sortByPreviousDuration(enabled);
+
+    int parallelism = Math.max(1, Math.min(getParallelism(), enabled.size()));
+    LOG.info("Launching {} external tool(s) with a concurrency of {}", enabled.size(), parallelism);
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism, new ToolThreadFactory());
+    for (AbstractPhpExecutor executor : enabled) {
+      scheduled.put(executor, pool.submit(new ToolTask(executor)));
+    }
+    // Already submitted tasks still run, the threads just go away once the queue is drained
+    pool.shutdown();
+  }
+
+  private int getParallelism() {
+    return settings.hasKey(PARALLELISM_KEY) ? settings.getInt(PARALLELISM_KEY) : DEFAULT_PARALLELISM;
+  }
+
+  /**
+   * Longest tools first, so that they do not end up alone at the tail of the run. Tools never timed before come first.
+   */
+  private void sortByPreviousDuration(List<AbstractPhpExecutor> enabled) {
+    Collections.sort(enabled, new Comparator<AbstractPhpExecutor>() {
+      public int compare(AbstractPhpExecutor left, AbstractPhpExecutor right) {
+        long leftDuration = getPreviousDuration(left);
+        long rightDuration = getPreviousDuration(right);
+        return leftDuration > rightDuration ? -1 : (leftDuration == rightDuration ? 0 : 1);
+      }
+    });
+  }
+
+  private long getPreviousDuration(AbstractPhpExecutor executor) {
+    String duration = durations.getProperty(executor.getExecutedTool());
+    try {
+      return duration == null ? Long.MAX_VALUE : Long.parseLong(duration);
+    } catch (NumberFormatException e) {
+      return Long.MAX_VALUE;
+    }
+  }
+
+  /**
+   * Only the tools which have not started yet are cancelled: the process of a running tool can not be destroyed through the
+   * command executor of Sonar, and interrupting the thread waiting for it would leave the process running unattended.
+   */
+  private synchronized void cancelOthers(AbstractPhpExecutor failed) {
+    if (failedTool != null) {
+      return;
+    }
+    failedTool = failed.getExecutedTool();
+    for (Map.Entry<AbstractPhpExecutor, Future<?>> entry : scheduled.entrySet()) {
+      AbstractPhpExecutor executor = entry.getKey();
+      if (executor == failed) {
+        continue;
+      }
+      if (running.contains(executor)) {
+        LOG.warn("Waiting for running {} although {} failed", executor.getExecutedTool(), failedTool);
+      } else if (entry.getValue().cancel(false)) {
+        LOG.warn("Cancelling {} because {} failed", executor.getExecutedTool(), failedTool);
+      }
+    }
+  }
+
+  /**
+   * @return false if the tool must not start because another one failed
+   */
+  private synchronized boolean startRunning(AbstractPhpExecutor executor) {
+    if (failedTool != null) {
+      return false;
+    }
+    running.add(executor);
+    return true;
+  }
+
+  private synchronized void stopRunning(AbstractPhpExecutor executor) {
+    running.remove(executor);
+  }
+
+  @VisibleForTesting
+  File getDurationsFile() {
+    return new File(filesystem.getSonarWorkingDirectory(), DURATIONS_FILE_NAME);
+  }
+
+  private void loadDurations() {
+    File file = getDurationsFile();
+    if (!file.isFile()) {
+      return;
+    }
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      durations.load(input);
+    } catch (IOException e) {
+      LOG.debug("Unable to read previous tool durations from " + file, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private synchronized void saveDuration(AbstractPhpExecutor executor, long duration) {
+    durations.setProperty(executor.getExecutedTool(), Long.toString(duration));
+    File file = getDurationsFile();
+    OutputStream output = null;
+    try {
+      file.getParentFile().mkdirs();
+      output = new FileOutputStream(file);
+      durations.store(output, null);
+    } catch (IOException e) {
+      LOG.debug("Unable to save tool durations to " + file, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PHP Tools Scheduler";
+  }
+
+  private class ToolTask implements Runnable {
+
+    private final AbstractPhpExecutor executor;
+
+    ToolTask(AbstractPhpExecutor executor) {
+      this.executor = executor;
+    }
+
+    public void run() {
+      if (!startRunning(executor)) {
+        return;
+      }
+      long start = System.currentTimeMillis();
+      try {
+        executor.execute();
+      } catch (RuntimeException e) {
+        cancelOthers(executor);
+        throw e;
+      } finally {
+        stopRunning(executor);
+      }
+      long duration = System.currentTimeMillis() - start;
+      LOG.info("{} executed in {} ms", executor.getExecutedTool(), duration);
+      saveDuration(executor, duration);
+    }
+  }
+
+  private static class ToolThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "php-tool-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
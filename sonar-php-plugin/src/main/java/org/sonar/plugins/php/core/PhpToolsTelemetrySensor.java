@@ -0,0 +1,195 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.plugins.php.api.PhpConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Once all the external tools have been executed, writes their telemetry to <code>php-tools-timings.json</code> in the
+ * working directory and saves it as measures of the project.
+ */
+@Phase(name = Phase.Name.POST)
+public class PhpToolsTelemetrySensor implements Sensor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpToolsTelemetrySensor.class);
+  private static final String TIMINGS_FILE_NAME = "php-tools-timings.json";
+
+  private final AbstractPhpExecutor[] executors;
+  private final ProjectFileSystem filesystem;
+
+  public PhpToolsTelemetrySensor(AbstractPhpExecutor[] executors, ProjectFileSystem filesystem) {
+    this.executors = executors;
+    this.filesystem = filesystem;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean shouldExecuteOnProject(Project project) {
+    return !filesystem.mainFiles(PhpConstants.LANGUAGE_KEY).isEmpty();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void analyse(Project project, SensorContext context) {
+    List<ToolExecution> executions = Lists.newArrayList();
+    for (AbstractPhpExecutor executor : executors) {
+      executions.addAll(executor.getExecutions());
+    }
+    if (executions.isEmpty()) {
+      return;
+    }
+    File file = getTimingsFile();
+    try {
+      FileUtils.writeStringToFile(file, toJson(executions), "UTF-8");
+    } catch (IOException e) {
+      LOG.warn("Unable to write the telemetry of the PHP tools to " + file, e);
+    }
+    saveMeasures(executions, context);
+  }
+
+  private static void saveMeasures(List<ToolExecution> executions, SensorContext context) {
+    long wallTime = 0;
+    long cpuTime = -1;
+    long peakRss = -1;
+    StringBuilder data = new StringBuilder();
+    for (ToolExecution execution : executions) {
+      wallTime += execution.getWallTime();
+      cpuTime = sum(cpuTime, execution.getCpuUserTime());
+      cpuTime = sum(cpuTime, execution.getCpuSystemTime());
+      peakRss = Math.max(peakRss, execution.getPeakRss());
+      if (data.length() > 0) {
+        data.append(';');
+      }
+      data.append(execution.getTool()).append('=').append(execution.getWallTime()).append(',').append(execution.getCpuUserTime())
+          .append(',').append(execution.getCpuSystemTime()).append(',').append(execution.getPeakRss()).append(',')
+          .append(getExitCode(execution)).append(',').append(execution.getReportSize());
+    }
+    context.saveMeasure(PhpToolsMetrics.TOOLS_WALL_TIME, (double) wallTime);
+    if (cpuTime >= 0) {
+      context.saveMeasure(PhpToolsMetrics.TOOLS_CPU_TIME, (double) cpuTime);
+    }
+    if (peakRss >= 0) {
+      context.saveMeasure(PhpToolsMetrics.TOOLS_PEAK_MEMORY, (double) peakRss);
+    }
+    context.saveMeasure(new Measure(PhpToolsMetrics.TOOLS_EXECUTIONS, data.toString()));
+  }
+
+  private static long sum(long total, long value) {
+    if (value < 0) {
+      return total;
+    }
+    return total < 0 ? value : total + value;
+  }
+
+  /**
+   * @return the highest exit code of the processes of the execution, or -1 if none ended
+   */
+  private static int getExitCode(ToolExecution execution) {
+    int exitCode = -1;
+    for (ToolExecution.Invocation invocation : execution.getInvocations()) {
+      exitCode = Math.max(exitCode, invocation.getExitCode());
+    }
+    return exitCode;
+  }
+
+  @VisibleForTesting
+  File getTimingsFile() {
+    return new File(filesystem.getSonarWorkingDirectory(), TIMINGS_FILE_NAME);
+  }
+
+  @VisibleForTesting
+  static String toJson(List<ToolExecution> executions) {
+    StringBuilder json = new StringBuilder("{\n  \"tools\": [");
+    for (int i = 0; i < executions.size(); i++) {
+      ToolExecution execution = executions.get(i);
+      json.append(i == 0 ? "\n" : ",\n").append("    {");
+      appendString(json, "tool", execution.getTool()).append(", ");
+      appendString(json, "version", execution.getVersion()).append(", ");
+      json.append("\"embedded\": ").append(execution.isEmbedded()).append(", ");
+      json.append("\"succeeded\": ").append(execution.isSucceeded()).append(", ");
+      appendNumber(json, "wallTimeMs", execution.getWallTime()).append(", ");
+      appendNumber(json, "cpuUserMs", execution.getCpuUserTime()).append(", ");
+      appendNumber(json, "cpuSystemMs", execution.getCpuSystemTime()).append(", ");
+      appendNumber(json, "peakRssKb", execution.getPeakRss()).append(", ");
+      appendNumber(json, "reportSizeBytes", execution.getReportSize()).append(", ");
+      json.append("\"processes\": [");
+      List<ToolExecution.Invocation> invocations = execution.getInvocations();
+      for (int j = 0; j < invocations.size(); j++) {
+        ToolExecution.Invocation invocation = invocations.get(j);
+        json.append(j == 0 ? "" : ", ").append('{');
+        appendNumber(json, "wallTimeMs", invocation.getWallTime()).append(", ");
+        json.append("\"exitCode\": ").append(invocation.getExitCode()).append(", ");
+        appendNumber(json, "cpuUserMs", invocation.getCpuUserTime()).append(", ");
+        appendNumber(json, "cpuSystemMs", invocation.getCpuSystemTime()).append(", ");
+        appendNumber(json, "peakRssKb", invocation.getPeakRss()).append('}');
+      }
+      json.append("]}");
+    }
+    return json.append("\n  ]\n}\n").toString();
+  }
+
+  private static StringBuilder appendNumber(StringBuilder json, String name, long value) {
+    json.append('"').append(name).append("\": ");
+    return value < 0 ? json.append("null") : json.append(value);
+  }
+
+  private static StringBuilder appendString(StringBuilder json, String name, String value) {
+    json.append('"').append(name).append("\": ");
+    if (value == null) {
+      return json.append("null");
+    }
+    json.append('"');
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < ' ') {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"');
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PHP Tools Telemetry";
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+
+/**
+ * Locates the user level cache of the plugin, which is shared by all the analyses run on the host
+ * (by default <code>~/.sonar/php</code>).
+ */
+public final class PhpUserCache {
+
+  public static final String CACHE_PATH_KEY = "sonar.php.cache.path";
+
+  private static final String DEFAULT_CACHE_PATH = ".sonar" + File.separator + "php";
+
+  private PhpUserCache() {
+  }
+
+  /**
+   * Returns the given sub directory of the user cache. The directory is not created.
+   */
+  public static File getDirectory(Settings settings, String name) {
+    String path = settings == null ? null : settings.getString(CACHE_PATH_KEY);
+    File root = StringUtils.isNotBlank(path) ? new File(path) : new File(System.getProperty("user.home"), DEFAULT_CACHE_PATH);
+    return new File(root, name);
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Implemented by the {@link AbstractPhpExecutor executors} of the tools which can print their report on the standard output,
+ * to be parsed while the tool is running. The report is piped if enabled by the configuration and the analysis is not sharded.
+ */
+public interface PipeableExecutor {
+
+  /**
+   * Gets the command line printing the report on the standard output rather than in the report file.
+   *
+   * @return the command line
+   */
+  List<String> getPipedCommandLineArguments();
+
+  /**
+   * Parses the report printed on the standard output, while the tool is running. Called in a dedicated thread.
+   *
+   * @param report
+   *          the report, read as it is printed
+   */
+  void parsePipedReport(Reader report);
+}
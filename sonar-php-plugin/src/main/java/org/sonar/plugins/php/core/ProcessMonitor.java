@@ -0,0 +1,349 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Samples the CPU times and the peak resident set size of a process launched by the analysis, from the <code>/proc</code>
+ * file system. The process is identified among the children of the JVM, as listed by its threads, by its command line.
+ * The CPU times include the ones of the subprocesses the tool has waited for.
+ * <p>
+ * When the process is the only one monitored, the CPU times it accumulated since the last sample are recovered once it
+ * has been reaped, from the times of the reaped children of the JVM. When several processes are monitored at once, they
+ * cannot be told apart there: the CPU times are then the last sampled ones, which are lower bounds missing up to one
+ * sampling interval. Nothing is measured on systems without <code>/proc</code>.
+ */
+public class ProcessMonitor {
+
+  private static final File PROC = new File("/proc");
+  private static final long SAMPLING_INTERVAL_MS = 100;
+  // USER_HZ, which is 100 on all the architectures supported by Linux
+  private static final long MILLISECONDS_PER_TICK = 10;
+  private static final int PPID_FIELD = 1;
+  private static final int UTIME_FIELD = 11;
+  private static final int STIME_FIELD = 12;
+  private static final int CUTIME_FIELD = 13;
+  private static final int CSTIME_FIELD = 14;
+  private static final String PEAK_RSS_ENTRY = "VmHWM:";
+  private static final Set<Integer> MONITORED_PIDS = Sets.newHashSet();
+  private static final Set<ProcessMonitor> RUNNING_MONITORS = Sets.newHashSet();
+  private static final Integer SELF_PID = getSelfPid();
+
+  private final List<String> commandLine;
+  private final Thread thread;
+  private volatile boolean stopped = false;
+  private volatile int pid = -1;
+  private volatile long cpuUserTime = -1;
+  private volatile long cpuSystemTime = -1;
+  private volatile long peakRss = -1;
+  // Guarded by RUNNING_MONITORS
+  private boolean overlapped = false;
+  private long[] reapedTimesAtStart;
+
+  private ProcessMonitor(List<String> commandLine) {
+    this.commandLine = commandLine;
+    this.thread = new Thread(new Runnable() {
+      public void run() {
+        sample();
+      }
+    }, "php-tool-monitor");
+    thread.setDaemon(true);
+  }
+
+  /**
+   * Starts monitoring the process about to be launched with the given command line.
+   */
+  public static ProcessMonitor start(List<String> commandLine) {
+    ProcessMonitor monitor = new ProcessMonitor(commandLine);
+    if (SELF_PID != null) {
+      synchronized (RUNNING_MONITORS) {
+        for (ProcessMonitor other : RUNNING_MONITORS) {
+          other.overlapped = true;
+        }
+        monitor.overlapped = !RUNNING_MONITORS.isEmpty();
+        RUNNING_MONITORS.add(monitor);
+      }
+      monitor.reapedTimesAtStart = readReapedTimes();
+      monitor.thread.start();
+    }
+    return monitor;
+  }
+
+  /**
+   * Stops monitoring, once the process has ended.
+   */
+  public void stop() {
+    stopped = true;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (pid >= 0) {
+      synchronized (MONITORED_PIDS) {
+        MONITORED_PIDS.remove(pid);
+      }
+    }
+    if (SELF_PID != null) {
+      boolean alone;
+      synchronized (RUNNING_MONITORS) {
+        RUNNING_MONITORS.remove(this);
+        alone = !overlapped;
+      }
+      if (alone) {
+        addReapedTimes();
+      }
+    }
+  }
+
+  /**
+   * The times of a reaped process are added to the ones of the reaped children of its parent: when no other process was
+   * monitored meanwhile, the increase of the latter covers the whole life of the process, last interval included.
+   */
+  private void addReapedTimes() {
+    long[] reapedTimes = readReapedTimes();
+    if (reapedTimesAtStart == null || reapedTimes == null) {
+      return;
+    }
+    long reapedUserTime = reapedTimes[0] - reapedTimesAtStart[0];
+    long reapedSystemTime = reapedTimes[1] - reapedTimesAtStart[1];
+    if (pid >= 0 || reapedUserTime + reapedSystemTime > 0) {
+      cpuUserTime = Math.max(cpuUserTime, reapedUserTime);
+      cpuSystemTime = Math.max(cpuSystemTime, reapedSystemTime);
+    }
+  }
+
+  /**
+   * @return the user CPU time in milliseconds, subprocesses included, or -1 if unknown
+   */
+  public long getCpuUserTime() {
+    return cpuUserTime;
+  }
+
+  /**
+   * @return the system CPU time in milliseconds, subprocesses included, or -1 if unknown
+   */
+  public long getCpuSystemTime() {
+    return cpuSystemTime;
+  }
+
+  /**
+   * @return the peak resident set size in kB, or -1 if unknown
+   */
+  public long getPeakRss() {
+    return peakRss;
+  }
+
+  private void sample() {
+    while (!stopped) {
+      if (pid < 0) {
+        pid = findProcess();
+      }
+      if (pid >= 0 && !readUsage()) {
+        // The process has ended and has been reaped
+        return;
+      }
+      try {
+        Thread.sleep(SAMPLING_INTERVAL_MS);
+      } catch (InterruptedException e) {
+        // Stopped
+      }
+    }
+    if (pid >= 0) {
+      readUsage();
+    }
+  }
+
+  private int findProcess() {
+    for (int candidate : listChildren()) {
+      if (matches(commandLine, readCommandLine(candidate)) && claim(candidate)) {
+        return candidate;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Each thread of the JVM lists the children it has launched, which spares scanning all the processes of the system. The
+   * latter is only done on kernels that do not list the children.
+   */
+  private static List<Integer> listChildren() {
+    List<Integer> children = Lists.newArrayList();
+    boolean listed = false;
+    File[] tasks = new File(PROC, SELF_PID + "/task").listFiles();
+    if (tasks != null) {
+      for (File task : tasks) {
+        String content = read(new File(task, "children"));
+        if (content != null) {
+          listed = true;
+          for (String child : StringUtils.split(content)) {
+            children.add(Integer.valueOf(child));
+          }
+        }
+      }
+    }
+    if (!listed) {
+      String[] entries = PROC.list();
+      for (String entry : entries == null ? new String[0] : entries) {
+        if (StringUtils.isNumeric(entry)) {
+          String[] stat = readStat(Integer.parseInt(entry));
+          if (stat != null && SELF_PID.toString().equals(stat[PPID_FIELD])) {
+            children.add(Integer.valueOf(entry));
+          }
+        }
+      }
+    }
+    return children;
+  }
+
+  /**
+   * Scripts are executed by their interpreter, which shows up in front of the command line: only the tail of the command
+   * line is compared, and the executable by name.
+   */
+  @VisibleForTesting
+  static boolean matches(List<String> commandLine, List<String> processCommandLine) {
+    if (processCommandLine == null || processCommandLine.size() < commandLine.size()) {
+      return false;
+    }
+    int offset = processCommandLine.size() - commandLine.size();
+    return new File(processCommandLine.get(offset)).getName().equals(new File(commandLine.get(0)).getName())
+      && processCommandLine.subList(offset + 1, processCommandLine.size()).equals(commandLine.subList(1, commandLine.size()));
+  }
+
+  private static boolean claim(int candidate) {
+    synchronized (MONITORED_PIDS) {
+      return MONITORED_PIDS.add(candidate);
+    }
+  }
+
+  private boolean readUsage() {
+    String[] stat = readStat(pid);
+    if (stat == null) {
+      return false;
+    }
+    try {
+      cpuUserTime = (Long.parseLong(stat[UTIME_FIELD]) + Long.parseLong(stat[CUTIME_FIELD])) * MILLISECONDS_PER_TICK;
+      cpuSystemTime = (Long.parseLong(stat[STIME_FIELD]) + Long.parseLong(stat[CSTIME_FIELD])) * MILLISECONDS_PER_TICK;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    // Zombies do not report their memory anymore, hence the last known value is kept
+    long rss = readPeakRss(pid);
+    if (rss >= 0) {
+      peakRss = rss;
+    }
+    return true;
+  }
+
+  /**
+   * @return the fields of /proc/[pid]/stat following the name of the executable, or null if the process does not exist
+   */
+  private static String[] readStat(int pid) {
+    return parseStat(read(new File(PROC, pid + "/stat")));
+  }
+
+  /**
+   * The name of the executable is between parentheses, and may contain spaces and parentheses itself.
+   *
+   * @return the fields following the name of the executable, or null if the content is not the one of a process
+   */
+  @VisibleForTesting
+  static String[] parseStat(String stat) {
+    int endOfName = stat == null ? -1 : stat.lastIndexOf(')');
+    if (endOfName < 0 || endOfName + 2 >= stat.length()) {
+      return null;
+    }
+    String[] fields = StringUtils.split(stat.substring(endOfName + 2), ' ');
+    return fields.length > CSTIME_FIELD ? fields : null;
+  }
+
+  /**
+   * @return the user and system CPU times in milliseconds of the reaped children of the JVM, or null if unknown
+   */
+  private static long[] readReapedTimes() {
+    String[] stat = readStat(SELF_PID);
+    if (stat == null) {
+      return null;
+    }
+    try {
+      return new long[] {Long.parseLong(stat[CUTIME_FIELD]) * MILLISECONDS_PER_TICK, Long.parseLong(stat[CSTIME_FIELD]) * MILLISECONDS_PER_TICK};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static List<String> readCommandLine(int pid) {
+    String cmdline = read(new File(PROC, pid + "/cmdline"));
+    if (cmdline == null) {
+      return null;
+    }
+    return Arrays.asList(StringUtils.split(cmdline, '\0'));
+  }
+
+  private static long readPeakRss(int pid) {
+    return parsePeakRss(read(new File(PROC, pid + "/status")));
+  }
+
+  /**
+   * @return the peak resident set size in kB found in the content of /proc/[pid]/status, or -1 if there is none
+   */
+  @VisibleForTesting
+  static long parsePeakRss(String status) {
+    int index = status == null ? -1 : status.indexOf(PEAK_RSS_ENTRY);
+    if (index < 0) {
+      return -1;
+    }
+    String value = StringUtils.substringBefore(status.substring(index + PEAK_RSS_ENTRY.length()), "kB").trim();
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String read(File file) {
+    try {
+      return FileUtils.readFileToString(file);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static Integer getSelfPid() {
+    try {
+      String self = new File(PROC, "self").getCanonicalFile().getName();
+      return StringUtils.isNumeric(self) ? Integer.valueOf(self) : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
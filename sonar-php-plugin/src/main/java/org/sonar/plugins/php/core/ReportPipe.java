@@ -0,0 +1,107 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.sonar.api.utils.command.StreamConsumer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands over the lines printed by an external tool to a parser running in another thread, as they are printed. At most
+ * {@link #CAPACITY} lines are buffered: the tool is slowed down, rather than the memory filled, when the parser lags behind.
+ * <p>
+ * Unlike {@link java.io.PipedReader}, the pipe does not depend on the liveness of the thread which wrote the lines,
+ * which is owned by the command executor and goes away as soon as the process ends.
+ */
+public class ReportPipe extends Reader implements StreamConsumer {
+
+  static final int CAPACITY = 4096;
+  private static final long OFFER_TIMEOUT_MS = 100;
+  // Compared by identity
+  private static final String END_OF_STREAM = new String();
+
+  private final BlockingQueue<String> lines = new ArrayBlockingQueue<String>(CAPACITY);
+  private volatile boolean closed = false;
+  private String current = "";
+  private int position = 0;
+
+  /**
+   * Called by the command executor for each line printed by the tool.
+   */
+  public void consumeLine(String line) {
+    put(line + '\n');
+  }
+
+  /**
+   * Called once the tool has ended, whatever its outcome.
+   */
+  public void finish() {
+    put(END_OF_STREAM);
+  }
+
+  private void put(String line) {
+    try {
+      // Lines are dropped once the parser has given up, so that the tool is not blocked forever
+      boolean offered = false;
+      while (!offered && !closed) {
+        offered = lines.offer(line, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public int read(char[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (current == END_OF_STREAM) {
+      return -1;
+    }
+    while (position == current.length()) {
+      try {
+        current = lines.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the report");
+      }
+      position = 0;
+      if (current == END_OF_STREAM) {
+        return -1;
+      }
+    }
+    int count = Math.min(length, current.length() - position);
+    current.getChars(position, position + count, buffer, offset);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    lines.clear();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Lists;
+import org.sonar.api.profiles.ProfileExporter;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.rules.ActiveRule;
+import org.sonar.api.rules.ActiveRuleParam;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Identifies the ruleset a {@link ProfileExporter} produces for a quality profile without exporting it, from the active rules of
+ * the repository of the exporter, their severity and their parameters. It changes as well with the plugin, whose exporters may
+ * change their output.
+ */
+public final class RulesetDigest {
+
+  private static final char SEPARATOR = '\n';
+  private static final char FIELD_SEPARATOR = '\t';
+
+  private RulesetDigest() {
+  }
+
+  /**
+   * @return the SHA-256 digest of everything the exported ruleset depends on
+   */
+  public static String digest(RulesProfile profile, ProfileExporter exporter) {
+    StringBuilder content = new StringBuilder();
+    content.append(exporter.getClass().getName()).append(FIELD_SEPARATOR).append(PhpDigest.getPluginVersion(exporter.getClass())).append(SEPARATOR);
+    content.append(profile.getName()).append(SEPARATOR);
+    List<String> rules = Lists.newArrayList();
+    for (ActiveRule activeRule : profile.getActiveRulesByRepository(exporter.getKey())) {
+      rules.add(describe(activeRule));
+    }
+    // The order of the active rules does not matter to the tools
+    Collections.sort(rules);
+    for (String rule : rules) {
+      content.append(rule).append(SEPARATOR);
+    }
+    return PhpDigest.sha256Hex(content.toString());
+  }
+
+  private static String describe(ActiveRule activeRule) {
+    StringBuilder rule = new StringBuilder();
+    rule.append(activeRule.getRuleKey()).append(FIELD_SEPARATOR).append(activeRule.getConfigKey()).append(FIELD_SEPARATOR)
+        .append(activeRule.getSeverity());
+    List<String> params = Lists.newArrayList();
+    if (activeRule.getActiveRuleParams() != null) {
+      for (ActiveRuleParam param : activeRule.getActiveRuleParams()) {
+        params.add(param.getKey() + "=" + param.getValue());
+      }
+    }
+    Collections.sort(params);
+    for (String param : params) {
+      rule.append(FIELD_SEPARATOR).append(param);
+    }
+    return rule.toString();
+  }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Telemetry of one execution of an external tool: wall time and report size of the whole execution, and resource usage
+ * of each of the processes it launched. Unknown values are -1.
+ */
+public class ToolExecution {
+
+  private final String tool;
+  private final List<Invocation> invocations = Collections.synchronizedList(Lists.<Invocation>newArrayList());
+  private boolean embedded;
+  private String version;
+  private boolean succeeded;
+  private long wallTime = -1;
+  private long reportSize = -1;
+
+  public ToolExecution(String tool) {
+    this.tool = tool;
+  }
+
+  void addInvocation(Invocation invocation) {
+    invocations.add(invocation);
+  }
+
+  void finish(boolean embedded, String version, boolean succeeded, long wallTime, long reportSize) {
+    this.embedded = embedded;
+    this.version = version;
+    this.succeeded = succeeded;
+    this.wallTime = wallTime;
+    this.reportSize = reportSize;
+  }
+
+  public String getTool() {
+    return tool;
+  }
+
+  public boolean isEmbedded() {
+    return embedded;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public boolean isSucceeded() {
+    return succeeded;
+  }
+
+  public long getWallTime() {
+    return wallTime;
+  }
+
+  public long getReportSize() {
+    return reportSize;
+  }
+
+  public List<Invocation> getInvocations() {
+    synchronized (invocations) {
+      return Lists.newArrayList(invocations);
+    }
+  }
+
+  /**
+   * @return the user CPU time of all the processes, or -1 if unknown for all of them
+   */
+  public long getCpuUserTime() {
+    long total = -1;
+    for (Invocation invocation : getInvocations()) {
+      total = sum(total, invocation.getCpuUserTime());
+    }
+    return total;
+  }
+
+  /**
+   * @return the system CPU time of all the processes, or -1 if unknown for all of them
+   */
+  public long getCpuSystemTime() {
+    long total = -1;
+    for (Invocation invocation : getInvocations()) {
+      total = sum(total, invocation.getCpuSystemTime());
+    }
+    return total;
+  }
+
+  /**
+   * @return the highest peak resident set size of the processes, or -1 if unknown for all of them
+   */
+  public long getPeakRss() {
+    long peak = -1;
+    for (Invocation invocation : getInvocations()) {
+      peak = Math.max(peak, invocation.getPeakRss());
+    }
+    return peak;
+  }
+
+  private static long sum(long total, long value) {
+    if (value < 0) {
+      return total;
+    }
+    return total < 0 ? value : total + value;
+  }
+
+  /**
+   * One process launched by the tool execution.
+   */
+  public static final class Invocation {
+
+    private final long wallTime;
+    private final int exitCode;
+    private final long cpuUserTime;
+    private final long cpuSystemTime;
+    private final long peakRss;
+
+    public Invocation(long wallTime, int exitCode, long cpuUserTime, long cpuSystemTime, long peakRss) {
+      this.wallTime = wallTime;
+      this.exitCode = exitCode;
+      this.cpuUserTime = cpuUserTime;
+      this.cpuSystemTime = cpuSystemTime;
+      this.peakRss = peakRss;
+    }
+
+    /**
+     * @return the wall time in milliseconds
+     */
+    public long getWallTime() {
+      return wallTime;
+    }
+
+    /**
+     * @return the exit code, or -1 if the process could not be launched or timed out
+     */
+    public int getExitCode() {
+      return exitCode;
+    }
+
+    /**
+     * @return the user CPU time in milliseconds
+     */
+    public long getCpuUserTime() {
+      return cpuUserTime;
+    }
+
+    /**
+     * @return the system CPU time in milliseconds
+     */
+    public long getCpuSystemTime() {
+      return cpuSystemTime;
+    }
+
+    /**
+     * @return the peak resident set size in kB
+     */
+    public long getPeakRss() {
+      return peakRss;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Remembers the result of the <code>&lt;tool&gt; --version</code> probes, in memory for the current analysis and on disk for
+ * the following ones. A probe is keyed by the resolved path of the executable, its timestamp and the <code>PATH</code>, so
+ * installing or upgrading a tool invalidates its entry.
+ */
+public class ToolProbeCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ToolProbeCache.class);
+  private static final String SEPARATOR = "|";
+
+  private static final Map<String, Probe> PROBES = Maps.newHashMap();
+
+  private final File file;
+
+  public ToolProbeCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the cache key of an executable, or null when the executable can not be resolved to an actual file:
+   * such executables are probed every time.
+   */
+  public static String getKey(String tool, String command, File baseDir, String path) {
+    File executable = resolveExecutable(command, baseDir, path);
+    if (executable == null) {
+      return null;
+    }
+    return PhpDigest.sha256Hex(tool + SEPARATOR + executable.getAbsolutePath() + SEPARATOR + executable.lastModified()
+      + SEPARATOR + executable.length() + SEPARATOR + StringUtils.defaultString(path));
+  }
+
+  static File resolveExecutable(String command, File baseDir, String path) {
+    File file = new File(command);
+    if (file.isAbsolute()) {
+      return file.isFile() ? file : null;
+    }
+    if (command.indexOf('/') >= 0 || command.indexOf(File.separatorChar) >= 0) {
+      file = new File(baseDir, command);
+      return file.isFile() ? file.getAbsoluteFile() : null;
+    }
+    for (String dir : StringUtils.split(StringUtils.defaultString(path), File.pathSeparator)) {
+      File candidate = new File(dir, command);
+      if (candidate.isFile()) {
+        return candidate.getAbsoluteFile();
+      }
+    }
+    return null;
+  }
+
+  public Probe get(String key) {
+    synchronized (PROBES) {
+      Probe probe = PROBES.get(key);
+      if (probe == null) {
+        probe = Probe.parse(load().getProperty(key));
+        if (probe != null) {
+          PROBES.put(key, probe);
+        }
+      }
+      return probe;
+    }
+  }
+
+  public void put(String key, Probe probe) {
+    synchronized (PROBES) {
+      PROBES.put(key, probe);
+      Properties properties = load();
+      properties.setProperty(key, probe.format());
+      save(properties);
+    }
+  }
+
+  private Properties load() {
+    Properties properties = new Properties();
+    if (file.isFile()) {
+      InputStream input = null;
+      try {
+        input = new FileInputStream(file);
+        properties.load(input);
+      } catch (IOException e) {
+        LOG.debug("Unable to read tool probes from " + file, e);
+      } finally {
+        IOUtils.closeQuietly(input);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Concurrent analyses may overwrite the entries of each other, in which case the tool is simply probed again.
+   */
+  private void save(Properties properties) {
+    File tmpFile = null;
+    OutputStream output = null;
+    try {
+      FileUtils.forceMkdir(file.getParentFile());
+      tmpFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+      output = new FileOutputStream(tmpFile);
+      properties.store(output, null);
+      output.close();
+      if (!tmpFile.renameTo(file)) {
+        FileUtils.deleteQuietly(file);
+        tmpFile.renameTo(file);
+      }
+    } catch (IOException e) {
+      LOG.debug("Unable to save tool probes to " + file, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+      FileUtils.deleteQuietly(tmpFile);
+    }
+  }
+
+  /**
+   * Result of a tool probe: whether the tool could be launched, and the version it reported.
+   */
+  public static final class Probe {
+
+    private final boolean available;
+    private final String version;
+
+    public Probe(boolean available, String version) {
+      this.available = available;
+      this.version = version;
+    }
+
+    public boolean isAvailable() {
+      return available;
+    }
+
+    /**
+     * @return the version reported by the tool, or null if it could not be detected
+     */
+    public String getVersion() {
+      return version;
+    }
+
+    String format() {
+      return available + SEPARATOR + StringUtils.defaultString(version);
+    }
+
+    static Probe parse(String value) {
+      if (value == null) {
+        return null;
+      }
+      String available = StringUtils.substringBefore(value, SEPARATOR);
+      String version = StringUtils.substringAfter(value, SEPARATOR);
+      return new Probe(Boolean.parseBoolean(available), StringUtils.isEmpty(version) ? null : version);
+    }
+  }
+}
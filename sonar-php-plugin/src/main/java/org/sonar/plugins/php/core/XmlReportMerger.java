@@ -0,0 +1,185 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.utils.SonarException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges XML reports made of a root element and a list of children, such as the checkstyle reports of PHP_CodeSniffer
+ * or the XML reports of PHPMD. The root element of the first report is kept and the children of all the reports are
+ * copied one after the other. Reports are streamed, so their size is not bound by the available memory.
+ * <p>
+ * The children of one of the reports can be restricted to a set of files, identified by the <code>name</code> or
+ * <code>filename</code> attribute of the children.
+ */
+public class XmlReportMerger {
+
+  private static final String ENCODING = "UTF-8";
+  private static final QName[] FILE_ATTRIBUTES = {new QName("name"), new QName("filename")};
+
+  private final XMLInputFactory inputFactory;
+  private final XMLOutputFactory outputFactory;
+  private final XMLEventFactory eventFactory;
+
+  public XmlReportMerger() {
+    inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    outputFactory = XMLOutputFactory.newInstance();
+    eventFactory = XMLEventFactory.newInstance();
+  }
+
+  public void merge(List<File> reports, File target) {
+    merge(reports, target, null, null);
+  }
+
+  /**
+   * Merges the reports, leaving out the children of the filtered report which do not relate to one of the kept files.
+   *
+   * @param reports
+   *          the reports to merge
+   * @param target
+   *          the merged report
+   * @param filteredReport
+   *          the report to filter, among the reports to merge
+   * @param keptFiles
+   *          the files of the filtered report to keep
+   */
+  public void merge(List<File> reports, File target, File filteredReport, Set<String> keptFiles) {
+    if (reports.isEmpty()) {
+      throw new SonarException("No report to merge into " + target);
+    }
+    OutputStream output = null;
+    try {
+      output = new BufferedOutputStream(new FileOutputStream(target));
+      XMLEventWriter writer = outputFactory.createXMLEventWriter(output, ENCODING);
+      writer.add(eventFactory.createStartDocument(ENCODING, "1.0"));
+      StartElement root = null;
+      for (File report : reports) {
+        root = copy(report, writer, root, report.equals(filteredReport) ? keptFiles : null);
+      }
+      writer.add(eventFactory.createEndElement(root.getName().getPrefix(), root.getName().getNamespaceURI(), root.getName().getLocalPart()));
+      writer.add(eventFactory.createEndDocument());
+      writer.close();
+    } catch (XMLStreamException e) {
+      throw new SonarException("Unable to merge reports into " + target, e);
+    } catch (IOException e) {
+      throw new SonarException("Unable to merge reports into " + target, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  /**
+   * Copies the children of the root element of the report, and the root element itself if not written yet.
+   *
+   * @return the root element of the merged report
+   */
+  private StartElement copy(File report, XMLEventWriter writer, StartElement mergedRoot, Set<String> keptFiles) throws IOException,
+    XMLStreamException {
+    StartElement root = mergedRoot;
+    InputStream input = new BufferedInputStream(new FileInputStream(report));
+    XMLEventReader reader = null;
+    try {
+      reader = inputFactory.createXMLEventReader(input);
+      int depth = 0;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          depth++;
+          if (depth == 1) {
+            if (root == null) {
+              root = event.asStartElement();
+              writer.add(root);
+            }
+            continue;
+          }
+          if (depth == 2 && keptFiles != null && !isKept(event.asStartElement(), keptFiles)) {
+            skipElement(reader);
+            depth--;
+            continue;
+          }
+        } else if (event.isEndElement()) {
+          depth--;
+          if (depth == 0) {
+            continue;
+          }
+        }
+        if (depth > 0) {
+          writer.add(event);
+        }
+      }
+    } finally {
+      if (reader != null) {
+        reader.close();
+      }
+      IOUtils.closeQuietly(input);
+    }
+    if (root == null) {
+      throw new SonarException("Report " + report + " is empty");
+    }
+    return root;
+  }
+
+  private static boolean isKept(StartElement element, Set<String> keptFiles) {
+    for (QName name : FILE_ATTRIBUTES) {
+      Attribute attribute = element.getAttributeByName(name);
+      if (attribute != null) {
+        return keptFiles.contains(attribute.getValue());
+      }
+    }
+    return true;
+  }
+
+  private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      XMLEvent event = reader.nextEvent();
+      if (event.isStartElement()) {
+        depth++;
+      } else if (event.isEndElement()) {
+        depth--;
+      }
+    }
+  }
+}
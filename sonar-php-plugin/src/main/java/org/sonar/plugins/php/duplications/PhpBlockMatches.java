@@ -0,0 +1,136 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pairs of blocks with the same hash, grouped by pair of files and by diagonal, that is the difference between the indexes of the
+ * blocks: consecutive pairs of a diagonal make up a duplication.
+ */
+final class PhpBlockMatches {
+
+  private final int minimumTokens;
+  private final Map<Diagonal, Pairs> diagonals = Maps.newLinkedHashMap();
+
+  PhpBlockMatches(int minimumTokens) {
+    this.minimumTokens = minimumTokens;
+  }
+
+  void add(String firstPath, int firstBlock, int firstStart, int firstEnd, String secondPath, int secondBlock, int secondStart,
+      int secondEnd) {
+    int order = firstPath.compareTo(secondPath);
+    if (order > 0 || (order == 0 && firstBlock > secondBlock)) {
+      add(secondPath, secondBlock, secondStart, secondEnd, firstPath, firstBlock, firstStart, firstEnd);
+      return;
+    }
+    if (order == 0 && secondBlock - firstBlock < minimumTokens) {
+      // Overlapping blocks of a same file, as in a long run of identical tokens
+      return;
+    }
+    Diagonal diagonal = new Diagonal(firstPath, secondPath, secondBlock - firstBlock);
+    Pairs pairs = diagonals.get(diagonal);
+    if (pairs == null) {
+      pairs = new Pairs();
+      diagonals.put(diagonal, pairs);
+    }
+    pairs.add(firstBlock, firstStart, firstEnd, secondStart, secondEnd);
+  }
+
+  List<PhpClone> toClones() {
+    List<PhpClone> result = Lists.newArrayList();
+    for (Map.Entry<Diagonal, Pairs> entry : diagonals.entrySet()) {
+      Diagonal diagonal = entry.getKey();
+      int[] data = entry.getValue().data;
+      int count = entry.getValue().size / Pairs.STRIDE;
+      // Sorts the pairs by index of their first block, keeping track of their offset
+      long[] order = new long[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = ((long) data[i * Pairs.STRIDE] << 32) | (i * Pairs.STRIDE);
+      }
+      Arrays.sort(order);
+      int start = (int) order[0];
+      int end = start;
+      for (int i = 1; i <= count; i++) {
+        int offset = i < count ? (int) order[i] : -1;
+        if (offset >= 0 && data[offset] == data[end] + 1) {
+          end = offset;
+        } else {
+          result.add(new PhpClone(diagonal.firstPath, data[start + 1], data[end + 2], diagonal.secondPath, data[start + 3], data[end + 4]));
+          start = offset;
+          end = offset;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Pairs of blocks of a diagonal, each one as the index of its first block followed by the first and last lines of both blocks.
+   */
+  private static final class Pairs {
+    private static final int STRIDE = 5;
+    private int[] data = new int[STRIDE * 4];
+    private int size;
+
+    private void add(int firstBlock, int firstStart, int firstEnd, int secondStart, int secondEnd) {
+      if (size + STRIDE > data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[size] = firstBlock;
+      data[size + 1] = firstStart;
+      data[size + 2] = firstEnd;
+      data[size + 3] = secondStart;
+      data[size + 4] = secondEnd;
+      size += STRIDE;
+    }
+  }
+
+  private static final class Diagonal {
+    private final String firstPath;
+    private final String secondPath;
+    private final int offset;
+
+    private Diagonal(String firstPath, String secondPath, int offset) {
+      this.firstPath = firstPath;
+      this.secondPath = secondPath;
+      this.offset = offset;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof Diagonal)) {
+        return false;
+      }
+      Diagonal other = (Diagonal) object;
+      return offset == other.offset && firstPath.equals(other.firstPath) && secondPath.equals(other.secondPath);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * firstPath.hashCode() + secondPath.hashCode()) + offset;
+    }
+  }
+}
@@ -19,25 +19,26 @@
  */
 package org.sonar.plugins.php.duplications;
 
+import com.google.common.collect.Lists;
 import net.sourceforge.pmd.cpd.SourceCode;
 import net.sourceforge.pmd.cpd.TokenEntry;
 import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.cpd.Tokens;
-import org.apache.commons.io.IOUtils;
 import org.sonar.api.batch.AbstractCpdMapping;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.InputFile;
 import org.sonar.api.resources.Language;
-import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.php.api.Php;
-import org.sonar.plugins.php.duplications.internal.Token;
-import org.sonar.plugins.php.duplications.internal.TokenChunker;
-import org.sonar.plugins.php.duplications.internal.TokenQueue;
+import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpCpdTokenVisitor;
+import org.sonar.plugins.php.core.PhpSymbolTable;
+import org.sonar.plugins.php.core.PhpTokenPass;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * Temporary PHP CPD engine mapping class, used until we can migrate to Sonar CPD Engine.
@@ -46,17 +47,35 @@ import java.util.Iterator;
 public class PhpCPDMapping extends AbstractCpdMapping {
 
   private Php php;
-  private Project project;
+  private PhpTokenPass tokenPass;
+  private Settings settings;
+  private ProjectFileSystem fileSystem;
+  private boolean prepared;
 
   /**
    * Creates a {@link PhpCPDMapping} object
    * 
    * @param php
-   * @param project
+   * @param tokenPass
+   * @param settings
+   * @param fileSystem
    */
-  public PhpCPDMapping(Php php, Project project) {
+  public PhpCPDMapping(Php php, PhpTokenPass tokenPass, Settings settings, ProjectFileSystem fileSystem) {
     this.php = php;
-    this.project = project;
+    this.tokenPass = tokenPass;
+    this.settings = settings;
+    this.fileSystem = fileSystem;
+  }
+
+  /**
+   * Creates a {@link PhpCPDMapping} object which tokenizes the files one at a time
+   * 
+   * @param php
+   * @param tokenPass
+   * @param settings
+   */
+  public PhpCPDMapping(Php php, PhpTokenPass tokenPass, Settings settings) {
+    this(php, tokenPass, settings, null);
   }
 
   /**
@@ -74,53 +93,50 @@ public class PhpCPDMapping extends AbstractCpdMapping {
    * @return the tokenizer
    */
   public Tokenizer getTokenizer() {
+    prepareTokens();
     return new PHPCPDTokenizer();
   }
 
-  class PHPCPDTokenizer implements Tokenizer {
-
-    private TokenChunker tokenChunker;
-    private static final String USE_KEYWORD = "use";
-    private static final String SEMI_COLON = ";";
-
-    /**
-     * Creates a {@link {@link PHPCPDTokenizer}
-     */
-    public PHPCPDTokenizer() {
-      this.tokenChunker = PhpTokenProducer.build();
+  /**
+   * Tokenizes the PHP files of the project in parallel, if several lexer threads are configured, the first time CPD asks for the
+   * tokenizer.
+   */
+  private void prepareTokens() {
+    if (prepared || fileSystem == null || PhpDuplicationsSensor.isEnabled(settings)) {
+      return;
+    }
+    prepared = true;
+    List<File> files = Lists.newArrayList();
+    for (InputFile inputFile : fileSystem.mainFiles(PhpConstants.LANGUAGE_KEY)) {
+      files.add(inputFile.getFile());
     }
+    tokenPass.prepareCpdTokens(files);
+  }
+
+  /**
+   * Hands the tokens normalized during the token pass of the file over to CPD, unless the duplications are computed by
+   * {@link PhpDuplicationsSensor}: CPD then gets no token and finds no duplication.
+   */
+  class PHPCPDTokenizer implements Tokenizer {
 
     /**
      * Cuts the given source into a list of tokens.
      */
-    public final void tokenize(SourceCode source, Tokens cpdTokens) {
-      String fileName = source.getFileName();
-
-      Reader reader = null;
+    public final void tokenize(SourceCode source, final Tokens cpdTokens) {
+      if (PhpDuplicationsSensor.isEnabled(settings)) {
+        cpdTokens.add(TokenEntry.getEOF());
+        return;
+      }
+      final String fileName = source.getFileName();
+      final PhpSymbolTable symbols = tokenPass.getSymbols();
       try {
-        reader = new InputStreamReader(new FileInputStream(fileName), project.getFileSystem().getSourceCharset());
-        TokenQueue queue = tokenChunker.chunk(reader);
-
-        Iterator<Token> iterator = queue.iterator();
-        // we currently use this hack to remove "use" directives
-        boolean useDirective = false;
-        while (iterator.hasNext()) {
-          Token token = (Token) iterator.next();
-          if (token.getValue().equalsIgnoreCase(USE_KEYWORD)) {
-            useDirective = true;
-          } else if (useDirective) {
-            // We do nothing as we want to ignore "use" directives
-            if (token.getValue().equalsIgnoreCase(SEMI_COLON)) {
-              useDirective = false;
-            }
-          } else {
-            cpdTokens.add(new TokenEntry(token.getValue(), fileName, token.getLine()));
+        tokenPass.visitCpdTokens(new File(fileName), new PhpCpdTokenVisitor() {
+          public void visitCpdToken(int symbol, int line) {
+            cpdTokens.add(new TokenEntry(symbols.getSymbol(symbol), fileName, line));
           }
-        }
-      } catch (FileNotFoundException e) {
+        });
+      } catch (IOException e) {
         throw new SonarException(e);
-      } finally {
-        IOUtils.closeQuietly(reader);
       }
 
       cpdTokens.add(TokenEntry.getEOF());
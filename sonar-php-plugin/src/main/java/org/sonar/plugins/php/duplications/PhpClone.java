@@ -0,0 +1,91 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+/**
+ * Lines duplicated between two files, or between two places of the same file, as found by {@link PhpCloneDetector}.
+ */
+final class PhpClone {
+
+  private final String firstPath;
+  private final int firstStartLine;
+  private final int firstEndLine;
+  private final String secondPath;
+  private final int secondStartLine;
+  private final int secondEndLine;
+
+  PhpClone(String firstPath, int firstStartLine, int firstEndLine, String secondPath, int secondStartLine, int secondEndLine) {
+    this.firstPath = firstPath;
+    this.firstStartLine = firstStartLine;
+    this.firstEndLine = firstEndLine;
+    this.secondPath = secondPath;
+    this.secondStartLine = secondStartLine;
+    this.secondEndLine = secondEndLine;
+  }
+
+  String getFirstPath() {
+    return firstPath;
+  }
+
+  int getFirstStartLine() {
+    return firstStartLine;
+  }
+
+  int getFirstEndLine() {
+    return firstEndLine;
+  }
+
+  String getSecondPath() {
+    return secondPath;
+  }
+
+  int getSecondStartLine() {
+    return secondStartLine;
+  }
+
+  int getSecondEndLine() {
+    return secondEndLine;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (!(object instanceof PhpClone)) {
+      return false;
+    }
+    PhpClone other = (PhpClone) object;
+    return firstPath.equals(other.firstPath) && firstStartLine == other.firstStartLine && firstEndLine == other.firstEndLine
+      && secondPath.equals(other.secondPath) && secondStartLine == other.secondStartLine && secondEndLine == other.secondEndLine;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = firstPath.hashCode();
+    result = 31 * result + firstStartLine;
+    result = 31 * result + firstEndLine;
+    result = 31 * result + secondPath.hashCode();
+    result = 31 * result + secondStartLine;
+    return 31 * result + secondEndLine;
+  }
+
+  @Override
+  public String toString() {
+    return firstPath + ":" + firstStartLine + "-" + firstEndLine + " = " + secondPath + ":" + secondStartLine + "-" + secondEndLine;
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.plugins.php.core.PhpCpdTokenVisitor;
+import org.sonar.plugins.php.core.PhpDigest;
+import org.sonar.plugins.php.core.PhpSymbolTable;
+import org.sonar.plugins.php.core.PhpTokenPass;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Block-hash duplication engine. The normalized tokens of the copy-paste detection of each file are cut into overlapping blocks of
+ * the minimum number of tokens of a duplication, hashed with a rolling hash, and two places are duplicated where they share
+ * consecutive blocks.
+ * <p>
+ * Only the first {@link #MAX_GROUP_SIZE} blocks of a hash are matched with each other, and the periodic blocks of a file are not
+ * matched with each other, so that the repeated tokens of generated files do not make up a quadratic number of pairs.
+ * <p>
+ * Only the blocks of the files which changed since the previous analysis are computed and kept in memory. The blocks of the other
+ * files are streamed from the {@link PhpCloneIndex} to find their duplications with the changed files, and their duplications with
+ * each other are taken from the previous analysis.
+ */
+class PhpCloneDetector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpCloneDetector.class);
+  // Multiplier of the rolling hash, which is computed modulo 2^64
+  private static final long BASE = 1000003L;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final int INITIAL_CAPACITY = 256;
+  // Blocks matched per hash, as in the duplications engine of Sonar: the blocks of a hash beyond it are only indexed
+  static final int MAX_GROUP_SIZE = 100;
+
+  private final PhpTokenPass tokenPass;
+  private final int minimumTokens;
+  // BASE^minimumTokens, to remove the first token of a block from its hash
+  private final long power;
+  // Hash of the value of each symbol, which is stable across analyses unlike the symbol itself; 0 when not computed yet
+  private long[] symbolHashes = new long[INITIAL_CAPACITY];
+
+  /**
+   * @param minimumTokens
+   *          the minimum number of tokens of a duplication, which is the length of the blocks
+   */
+  PhpCloneDetector(PhpTokenPass tokenPass, int minimumTokens) {
+    this.tokenPass = tokenPass;
+    this.minimumTokens = minimumTokens;
+    long result = 1;
+    for (int i = 0; i < minimumTokens; i++) {
+      result *= BASE;
+    }
+    this.power = result;
+  }
+
+  /**
+   * Finds the duplications of the given files, and replaces the index with their blocks. Files which can not be read are logged and
+   * ignored.
+   *
+   * @return the duplications, each one once
+   */
+  List<PhpClone> detect(List<File> files, PhpCloneIndex index) {
+    index.load();
+    Set<String> unchanged = Sets.newHashSet();
+    List<PhpFileBlocks> changed = Lists.newArrayList();
+    for (File file : files) {
+      String path = file.getAbsolutePath();
+      try {
+        String contentHash = PhpDigest.sha256Hex(file);
+        if (contentHash.equals(index.getContentHash(path))) {
+          unchanged.add(path);
+        } else {
+          changed.add(computeBlocks(file, path, contentHash));
+        }
+      } catch (IOException e) {
+        LOG.error("Unable to compute the duplications of file " + file, e);
+      }
+    }
+    LOG.debug("{} PHP files changed since the previous duplications analysis, {} did not", changed.size(), unchanged.size());
+    try {
+      return detect(changed, unchanged, index);
+    } catch (IOException e) {
+      LOG.warn("Unable to read the clone index, the blocks of all the files are computed again", e);
+      for (String path : unchanged) {
+        try {
+          changed.add(computeBlocks(new File(path), path, index.getContentHash(path)));
+        } catch (IOException fileException) {
+          LOG.error("Unable to compute the duplications of file " + path, fileException);
+        }
+      }
+      try {
+        return detect(changed, Sets.<String> newHashSet(), index);
+      } catch (IOException unexpected) {
+        throw new IllegalStateException(unexpected);
+      }
+    }
+  }
+
+  /**
+   * @throws IOException
+   *           if the blocks of the unchanged files can not be read from the index
+   */
+  private List<PhpClone> detect(List<PhpFileBlocks> changed, Set<String> unchanged, PhpCloneIndex index) throws IOException {
+    BlockTable table = new BlockTable(changed);
+    PhpBlockMatches matches = new PhpBlockMatches(minimumTokens);
+    table.matchChanged(matches);
+    IndexUpdate update = new IndexUpdate(index);
+    try {
+      if (!unchanged.isEmpty()) {
+        index.readBlocks(unchanged, new UnchangedBlocksVisitor(table, matches, update));
+      }
+      for (PhpFileBlocks blocks : changed) {
+        update.writeFile(blocks);
+      }
+      List<PhpClone> clones = matches.toClones();
+      for (PhpClone clone : index.getClones()) {
+        if (unchanged.contains(clone.getFirstPath()) && unchanged.contains(clone.getSecondPath())) {
+          clones.add(clone);
+        }
+      }
+      update.commit(clones);
+      return clones;
+    } finally {
+      update.abort();
+    }
+  }
+
+  private PhpFileBlocks computeBlocks(File file, String path, String contentHash) throws IOException {
+    final TokenBuffer tokens = new TokenBuffer();
+    final PhpSymbolTable symbols = tokenPass.getSymbols();
+    tokenPass.visitCpdTokens(file, new PhpCpdTokenVisitor() {
+      public void visitCpdToken(int symbol, int line) {
+        tokens.add(symbolHash(symbols, symbol), line);
+      }
+    });
+    int count = Math.max(0, tokens.size - minimumTokens + 1);
+    long[] hashes = new long[count];
+    int[] firstLines = new int[count];
+    int[] lastLines = new int[count];
+    BitSet periodicBlocks = new BitSet();
+    Map<Long, Integer> lastBlocks = Maps.newHashMap();
+    long hash = 0;
+    for (int i = 0; i < tokens.size; i++) {
+      hash = hash * BASE + tokens.hashes[i];
+      if (i >= minimumTokens) {
+        hash -= tokens.hashes[i - minimumTokens] * power;
+      }
+      int block = i - minimumTokens + 1;
+      if (block >= 0) {
+        hashes[block] = hash;
+        firstLines[block] = tokens.lines[block];
+        lastLines[block] = tokens.lines[i];
+        Integer lastBlock = lastBlocks.put(hash, block);
+        if (lastBlock != null && block - lastBlock < minimumTokens) {
+          periodicBlocks.set(lastBlock);
+          periodicBlocks.set(block);
+        }
+      }
+    }
+    return new PhpFileBlocks(path, contentHash, hashes, firstLines, lastLines, periodicBlocks);
+  }
+
+  private long symbolHash(PhpSymbolTable symbols, int symbol) {
+    if (symbol >= symbolHashes.length) {
+      symbolHashes = Arrays.copyOf(symbolHashes, Math.max(symbolHashes.length * 2, symbol + 1));
+    }
+    long result = symbolHashes[symbol];
+    if (result == 0) {
+      // FNV-1a
+      result = FNV_OFFSET_BASIS;
+      String value = symbols.getSymbol(symbol);
+      for (int i = 0; i < value.length(); i++) {
+        result ^= value.charAt(i);
+        result *= FNV_PRIME;
+      }
+      symbolHashes[symbol] = result;
+    }
+    return result;
+  }
+
+  /**
+   * Hashes and lines of the tokens of a file.
+   */
+  private static final class TokenBuffer {
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private void add(long hash, int line) {
+      if (size == hashes.length) {
+        hashes = Arrays.copyOf(hashes, size * 2);
+        lines = Arrays.copyOf(lines, size * 2);
+      }
+      hashes[size] = hash;
+      lines[size] = line;
+      size++;
+    }
+  }
+
+  /**
+   * Hash table of the blocks of the changed files. Each block is referred to by its rank among all these blocks, and is chained to
+   * the blocks of lower rank which fall in the same slot. Only the first {@link #MAX_GROUP_SIZE} blocks of a hash are chained.
+   */
+  private static final class BlockTable {
+    private final List<PhpFileBlocks> files;
+    private final int[] fileOfBlock;
+    private final int[] indexOfBlock;
+    private final long[] hashes;
+    // Rank + 1 of the last block of each slot, 0 for none
+    private final int[] slots;
+    // Rank + 1 of the previous block of the same slot, 0 for none
+    private final int[] previous;
+    // Number of chained blocks of the same hash up to each chained block
+    private final int[] groupSizes;
+    private final int mask;
+
+    private BlockTable(List<PhpFileBlocks> files) {
+      this.files = files;
+      int count = 0;
+      for (PhpFileBlocks blocks : files) {
+        count += blocks.size();
+      }
+      fileOfBlock = new int[count];
+      indexOfBlock = new int[count];
+      hashes = new long[count];
+      previous = new int[count];
+      groupSizes = new int[count];
+      int capacity = 2;
+      while (capacity < count * 2) {
+        capacity <<= 1;
+      }
+      slots = new int[capacity];
+      mask = capacity - 1;
+      int rank = 0;
+      for (int file = 0; file < files.size(); file++) {
+        PhpFileBlocks blocks = files.get(file);
+        for (int i = 0; i < blocks.size(); i++) {
+          fileOfBlock[rank] = file;
+          indexOfBlock[rank] = i;
+          hashes[rank] = blocks.getHash(i);
+          int slot = slot(hashes[rank]);
+          int last = findFrom(slots[slot] - 1, hashes[rank]);
+          groupSizes[rank] = last < 0 ? 1 : groupSizes[last] + 1;
+          if (groupSizes[rank] <= MAX_GROUP_SIZE) {
+            previous[rank] = slots[slot];
+            slots[slot] = rank + 1;
+          }
+          rank++;
+        }
+      }
+    }
+
+    private int slot(long hash) {
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * @return the rank of the last block of the given hash, or -1 if there is none
+     */
+    private int find(long hash) {
+      return findFrom(slots[slot(hash)] - 1, hash);
+    }
+
+    /**
+     * @return the rank of the previous block of the same hash, or -1 if there is none
+     */
+    private int findPrevious(int rank) {
+      return findFrom(previous[rank] - 1, hashes[rank]);
+    }
+
+    private int findFrom(int start, long hash) {
+      int rank = start;
+      while (rank >= 0 && hashes[rank] != hash) {
+        rank = previous[rank] - 1;
+      }
+      return rank;
+    }
+
+    /**
+     * @return the number of chained blocks of the hash of the given chained block
+     */
+    private int getGroupSize(int rank) {
+      return groupSizes[rank];
+    }
+
+    private void matchChanged(PhpBlockMatches matches) {
+      for (int rank = 0; rank < hashes.length; rank++) {
+        if (groupSizes[rank] > MAX_GROUP_SIZE) {
+          continue;
+        }
+        for (int other = findPrevious(rank); other >= 0; other = findPrevious(other)) {
+          if (fileOfBlock[other] != fileOfBlock[rank] || !isPeriodic(other) || !isPeriodic(rank)) {
+            matches.add(getPath(other), indexOfBlock[other], getFirstLine(other), getLastLine(other), getPath(rank), indexOfBlock[rank],
+              getFirstLine(rank), getLastLine(rank));
+          }
+        }
+      }
+    }
+
+    private boolean isPeriodic(int rank) {
+      return files.get(fileOfBlock[rank]).isPeriodic(indexOfBlock[rank]);
+    }
+
+    private String getPath(int rank) {
+      return files.get(fileOfBlock[rank]).getPath();
+    }
+
+    private int getBlock(int rank) {
+      return indexOfBlock[rank];
+    }
+
+    private int getFirstLine(int rank) {
+      return files.get(fileOfBlock[rank]).getFirstLine(indexOfBlock[rank]);
+    }
+
+    private int getLastLine(int rank) {
+      return files.get(fileOfBlock[rank]).getLastLine(indexOfBlock[rank]);
+    }
+  }
+
+  /**
+   * Matches the blocks of the unchanged files, as they are read from the index, with the blocks of the changed files, and copies them
+   * to the new index.
+   */
+  private static final class UnchangedBlocksVisitor implements PhpCloneIndex.BlockVisitor {
+    private final BlockTable table;
+    private final PhpBlockMatches matches;
+    private final IndexUpdate update;
+    // Number of blocks of the unchanged files matched so far, by hash
+    private final Map<Long, int[]> matchedBlocks = Maps.newHashMap();
+    private String path;
+
+    private UnchangedBlocksVisitor(BlockTable table, PhpBlockMatches matches, IndexUpdate update) {
+      this.table = table;
+      this.matches = matches;
+      this.update = update;
+    }
+
+    public void visitFile(String filePath, String contentHash, int blockCount) {
+      this.path = filePath;
+      update.startFile(filePath, contentHash, blockCount);
+    }
+
+    public void visitBlock(int block, long hash, int firstLine, int lastLine) {
+      update.writeBlock(hash, firstLine, lastLine);
+      int last = table.find(hash);
+      if (last < 0) {
+        return;
+      }
+      int[] matched = matchedBlocks.get(hash);
+      if (matched == null) {
+        matched = new int[1];
+        matchedBlocks.put(hash, matched);
+      }
+      if (table.getGroupSize(last) + matched[0] >= MAX_GROUP_SIZE) {
+        return;
+      }
+      matched[0]++;
+      for (int rank = last; rank >= 0; rank = table.findPrevious(rank)) {
+        matches.add(path, block, firstLine, lastLine, table.getPath(rank), table.getBlock(rank), table.getFirstLine(rank),
+          table.getLastLine(rank));
+      }
+    }
+  }
+
+  /**
+   * Writes the new index, giving up on the first failure as the index is only an optimization.
+   */
+  private static final class IndexUpdate {
+    private PhpCloneIndex.Writer writer;
+
+    private IndexUpdate(PhpCloneIndex index) {
+      try {
+        writer = index.newWriter();
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+
+    private void startFile(String path, String contentHash, int blockCount) {
+      if (writer != null) {
+        try {
+          writer.startFile(path, contentHash, blockCount);
+        } catch (IOException e) {
+          fail(e);
+        }
+      }
+    }
+
+    private void writeBlock(long hash, int firstLine, int lastLine) {
+      if (writer != null) {
+        try {
+          writer.writeBlock(hash, firstLine, lastLine);
+        } catch (IOException e) {
+          fail(e);
+        }
+      }
+    }
+
+    private void writeFile(PhpFileBlocks blocks) {
+      if (writer != null) {
+        try {
+          writer.writeFile(blocks);
+        } catch (IOException e) {
+          fail(e);
+        }
+      }
+    }
+
+    private void commit(List<PhpClone> clones) {
+      if (writer != null) {
+        try {
+          writer.commit(clones);
+          writer = null;
+        } catch (IOException e) {
+          fail(e);
+        }
+      }
+    }
+
+    private void abort() {
+      if (writer != null) {
+        writer.abort();
+        writer = null;
+      }
+    }
+
+    private void fail(IOException e) {
+      LOG.debug("Unable to save the clone index", e);
+      abort();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the duplications into sets of parts which are all copies of each other: a block duplicated in three files is reported as
+ * three clones, which make up a single group of three parts.
+ */
+final class PhpCloneGroups {
+
+  private PhpCloneGroups() {
+  }
+
+  /**
+   * @return the groups of the given clones, each of them with its distinct parts in the order they were first met
+   */
+  static List<List<Part>> group(List<PhpClone> clones) {
+    Map<Part, Part> parents = Maps.newLinkedHashMap();
+    for (PhpClone clone : clones) {
+      Part first = find(parents, new Part(clone.getFirstPath(), clone.getFirstStartLine(), clone.getFirstEndLine()));
+      Part second = find(parents, new Part(clone.getSecondPath(), clone.getSecondStartLine(), clone.getSecondEndLine()));
+      if (!first.equals(second)) {
+        parents.put(second, first);
+      }
+    }
+    Map<Part, List<Part>> groups = Maps.newLinkedHashMap();
+    for (Part part : parents.keySet()) {
+      Part root = find(parents, part);
+      List<Part> group = groups.get(root);
+      if (group == null) {
+        group = Lists.newArrayList();
+        groups.put(root, group);
+      }
+      group.add(part);
+    }
+    return Lists.newArrayList(groups.values());
+  }
+
+  private static Part find(Map<Part, Part> parents, Part part) {
+    Part root = parents.get(part);
+    if (root == null) {
+      parents.put(part, part);
+      return part;
+    }
+    while (!root.equals(parents.get(root))) {
+      root = parents.get(root);
+    }
+    // Path compression
+    Part current = part;
+    while (!current.equals(root)) {
+      Part next = parents.get(current);
+      parents.put(current, root);
+      current = next;
+    }
+    return root;
+  }
+
+  /**
+   * Lines of a file which are part of a duplication.
+   */
+  static final class Part {
+
+    private final String path;
+    private final int startLine;
+    private final int endLine;
+
+    Part(String path, int startLine, int endLine) {
+      this.path = path;
+      this.startLine = startLine;
+      this.endLine = endLine;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    int getStartLine() {
+      return startLine;
+    }
+
+    int getEndLine() {
+      return endLine;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Part)) {
+        return false;
+      }
+      Part other = (Part) obj;
+      return startLine == other.startLine && endLine == other.endLine && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return (path.hashCode() * 31 + startLine) * 31 + endLine;
+    }
+
+    @Override
+    public String toString() {
+      return path + ':' + startLine + '-' + endLine;
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary index of the blocks of the files of the previous analysis, along with the clones found then, in the working directory.
+ * The index holds one entry per file, with its content hash and its blocks, followed by the clones, and is checksummed as a whole.
+ * <p>
+ * Only the content hashes and the clones are kept in memory: the blocks are streamed from the index, one file after the other, while
+ * the index of the current analysis is written. An index written by another version of the plugin or with other settings, or which
+ * does not match its checksum, is ignored, and all the files are hashed again.
+ */
+class PhpCloneIndex {
+
+  static final String FILE_NAME = "php-clones.dat";
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpCloneIndex.class);
+  private static final int MAGIC = 0x50484349;
+  private static final int FORMAT_VERSION = 1;
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  // Hash, first line and last line
+  private static final int BLOCK_LENGTH = 8 + 4 + 4;
+
+  private final File file;
+  private final String version;
+  private final Map<String, String> contentHashes = Maps.newHashMap();
+  private final List<PhpClone> clones = Lists.newArrayList();
+
+  /**
+   * @param directory
+   *          the directory of the index, usually the working directory of the module
+   * @param version
+   *          identifies everything the blocks depend on, such as the version of the plugin and the minimum number of tokens of a
+   *          duplication
+   */
+  PhpCloneIndex(File directory, String version) {
+    this.file = new File(directory, FILE_NAME);
+    this.version = version;
+  }
+
+  /**
+   * Reads the content hashes of the indexed files and the clones, and checks the whole index against its checksum.
+   */
+  void load() {
+    contentHashes.clear();
+    clones.clear();
+    if (!file.isFile()) {
+      return;
+    }
+    CheckedInputStream checked = null;
+    try {
+      checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+      DataInputStream input = new DataInputStream(checked);
+      if (!readHeader(input)) {
+        LOG.debug("Ignoring the clone index {}, written by another version", file);
+        return;
+      }
+      readEntries(input, Collections.<String> emptySet(), null);
+      readClones(input);
+      long computed = checked.getChecksum().getValue();
+      if (input.readLong() != computed) {
+        LOG.debug("Ignoring the corrupted clone index {}", file);
+        contentHashes.clear();
+        clones.clear();
+      }
+    } catch (IOException e) {
+      LOG.debug("Ignoring the unreadable clone index " + file, e);
+      contentHashes.clear();
+      clones.clear();
+    } finally {
+      IOUtils.closeQuietly(checked);
+    }
+  }
+
+  /**
+   * @return the content hash of the given file when it was indexed, or null if it was not
+   */
+  String getContentHash(String path) {
+    return contentHashes.get(path);
+  }
+
+  /**
+   * @return the clones found by the previous analysis
+   */
+  List<PhpClone> getClones() {
+    return clones;
+  }
+
+  /**
+   * Pushes the blocks of the given indexed files to the given visitor, in the order of the index. The other blocks are skipped.
+   *
+   * @throws IOException
+   *           if the index can not be read again
+   */
+  void readBlocks(Set<String> paths, BlockVisitor visitor) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (!readHeader(input)) {
+        throw new IOException("The clone index " + file + " has been replaced");
+      }
+      readEntries(input, paths, visitor);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private boolean readHeader(DataInputStream input) throws IOException {
+    return input.readInt() == MAGIC && input.readInt() == FORMAT_VERSION && version.equals(input.readUTF());
+  }
+
+  private void readEntries(DataInputStream input, Set<String> paths, BlockVisitor visitor) throws IOException {
+    while (input.readBoolean()) {
+      String path = input.readUTF();
+      String contentHash = input.readUTF();
+      int blockCount = input.readInt();
+      contentHashes.put(path, contentHash);
+      if (paths.contains(path)) {
+        visitor.visitFile(path, contentHash, blockCount);
+        for (int i = 0; i < blockCount; i++) {
+          visitor.visitBlock(i, input.readLong(), input.readInt(), input.readInt());
+        }
+      } else {
+        skipFully(input, (long) blockCount * BLOCK_LENGTH);
+      }
+    }
+  }
+
+  private static void skipFully(DataInputStream input, long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      int skipped = input.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private void readClones(DataInputStream input) throws IOException {
+    int count = input.readInt();
+    for (int i = 0; i < count; i++) {
+      clones.add(new PhpClone(input.readUTF(), input.readInt(), input.readInt(), input.readUTF(), input.readInt(), input.readInt()));
+    }
+  }
+
+  /**
+   * Starts the index of the current analysis, which replaces this one once committed.
+   */
+  Writer newWriter() throws IOException {
+    FileUtils.forceMkdir(file.getParentFile());
+    return new Writer(new File(file.getPath() + TEMPORARY_SUFFIX));
+  }
+
+  /**
+   * Receives the blocks of the indexed files.
+   */
+  interface BlockVisitor {
+
+    void visitFile(String path, String contentHash, int blockCount);
+
+    void visitBlock(int block, long hash, int firstLine, int lastLine);
+  }
+
+  /**
+   * Writes the index of the current analysis to a temporary file, which replaces the index on commit.
+   */
+  final class Writer {
+    private final File temporaryFile;
+    private final CheckedOutputStream checked;
+    private final DataOutputStream output;
+
+    private Writer(File temporaryFile) throws IOException {
+      this.temporaryFile = temporaryFile;
+      this.checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)), new CRC32());
+      this.output = new DataOutputStream(checked);
+      output.writeInt(MAGIC);
+      output.writeInt(FORMAT_VERSION);
+      output.writeUTF(version);
+    }
+
+    /**
+     * Starts the entry of a file, to be followed by exactly <code>blockCount</code> blocks.
+     */
+    void startFile(String path, String contentHash, int blockCount) throws IOException {
+      output.writeBoolean(true);
+      output.writeUTF(path);
+      output.writeUTF(contentHash);
+      output.writeInt(blockCount);
+    }
+
+    void writeBlock(long hash, int firstLine, int lastLine) throws IOException {
+      output.writeLong(hash);
+      output.writeInt(firstLine);
+      output.writeInt(lastLine);
+    }
+
+    void writeFile(PhpFileBlocks blocks) throws IOException {
+      startFile(blocks.getPath(), blocks.getContentHash(), blocks.size());
+      for (int i = 0; i < blocks.size(); i++) {
+        writeBlock(blocks.getHash(i), blocks.getFirstLine(i), blocks.getLastLine(i));
+      }
+    }
+
+    /**
+     * Writes the given clones and replaces the index with the one written so far.
+     */
+    void commit(List<PhpClone> allClones) throws IOException {
+      try {
+        output.writeBoolean(false);
+        output.writeInt(allClones.size());
+        for (PhpClone clone : allClones) {
+          output.writeUTF(clone.getFirstPath());
+          output.writeInt(clone.getFirstStartLine());
+          output.writeInt(clone.getFirstEndLine());
+          output.writeUTF(clone.getSecondPath());
+          output.writeInt(clone.getSecondStartLine());
+          output.writeInt(clone.getSecondEndLine());
+        }
+        output.writeLong(checked.getChecksum().getValue());
+        output.close();
+        FileUtils.deleteQuietly(file);
+        if (!temporaryFile.renameTo(file)) {
+          throw new IOException("Unable to rename " + temporaryFile + " to " + file);
+        }
+      } finally {
+        abort();
+      }
+    }
+
+    /**
+     * Drops the index written so far.
+     */
+    void abort() {
+      IOUtils.closeQuietly(output);
+      FileUtils.deleteQuietly(temporaryFile);
+    }
+  }
+}
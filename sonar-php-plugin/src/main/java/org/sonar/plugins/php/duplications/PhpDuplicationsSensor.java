@@ -0,0 +1,202 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.PersistenceMode;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.resources.Resource;
+import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpDigest;
+import org.sonar.plugins.php.core.PhpTokenPass;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the duplications of the PHP files with {@link PhpCloneDetector} instead of the copy-paste detection of Sonar, when the
+ * duplications engine of the plugin is selected. The blocks of the files are kept in an index of the working directory, so that only
+ * the files which changed since the previous analysis are hashed again. The duplications with other projects are found through a
+ * {@link PhpSharedCloneIndex}, if one is configured.
+ */
+public class PhpDuplicationsSensor implements Sensor {
+
+  public static final String ENGINE_KEY = "sonar.php.duplications.engine";
+  public static final String SONAR_ENGINE = "sonar";
+  public static final String PHP_ENGINE = "php";
+  public static final String MINIMUM_TOKENS_KEY = "sonar.cpd.php.minimumTokens";
+  public static final String DEFAULT_MINIMUM_TOKENS_KEY = "sonar.cpd.minimumTokens";
+  public static final int DEFAULT_MINIMUM_TOKENS = 100;
+  public static final String SKIP_KEY = "sonar.cpd.php.skip";
+  public static final String DEFAULT_SKIP_KEY = "sonar.cpd.skip";
+  public static final String SHARED_INDEX_KEY = "sonar.php.duplications.sharedIndex";
+
+  private final Settings settings;
+  private final PhpTokenPass tokenPass;
+
+  public PhpDuplicationsSensor(Settings settings, PhpTokenPass tokenPass) {
+    this.settings = settings;
+    this.tokenPass = tokenPass;
+  }
+
+  /**
+   * @return true if the duplications of the PHP files are computed by the plugin rather than by the copy-paste detection of Sonar
+   */
+  static boolean isEnabled(Settings settings) {
+    return PHP_ENGINE.equals(settings.getString(ENGINE_KEY));
+  }
+
+  private boolean isSkip() {
+    return settings.hasKey(SKIP_KEY) ? settings.getBoolean(SKIP_KEY) : settings.getBoolean(DEFAULT_SKIP_KEY);
+  }
+
+  int getMinimumTokens() {
+    int minimumTokens = DEFAULT_MINIMUM_TOKENS;
+    if (settings.hasKey(MINIMUM_TOKENS_KEY)) {
+      minimumTokens = settings.getInt(MINIMUM_TOKENS_KEY);
+    } else if (settings.hasKey(DEFAULT_MINIMUM_TOKENS_KEY)) {
+      minimumTokens = settings.getInt(DEFAULT_MINIMUM_TOKENS_KEY);
+    }
+    return Math.max(1, minimumTokens);
+  }
+
+  /**
+   * @see org.sonar.api.batch.Sensor#analyse(org.sonar.api.resources.Project, org.sonar.api.batch.SensorContext)
+   */
+  public void analyse(Project project, SensorContext context) {
+    ProjectFileSystem fileSystem = project.getFileSystem();
+    List<File> files = Lists.newArrayList();
+    Map<String, org.sonar.api.resources.File> resources = Maps.newHashMap();
+    Map<String, String> keys = Maps.newHashMap();
+    for (InputFile inputFile : fileSystem.mainFiles(PhpConstants.LANGUAGE_KEY)) {
+      org.sonar.api.resources.File phpFile = org.sonar.api.resources.File.fromIOFile(inputFile.getFile(), project);
+      if (phpFile != null) {
+        String path = inputFile.getFile().getAbsolutePath();
+        files.add(inputFile.getFile());
+        resources.put(path, phpFile);
+        Resource indexed = context.getResource(phpFile);
+        keys.put(path, indexed == null ? phpFile.getKey() : indexed.getEffectiveKey());
+      }
+    }
+    // Usually done already by the lexer sensor
+    tokenPass.analyse(files);
+    int minimumTokens = getMinimumTokens();
+    PhpCloneIndex index = new PhpCloneIndex(fileSystem.getSonarWorkingDirectory(), PhpDigest.getPluginVersion(PhpDuplicationsSensor.class)
+      + '\n' + minimumTokens + '\n' + fileSystem.getSourceCharset().name());
+    List<PhpClone> clones = new PhpCloneDetector(tokenPass, minimumTokens).detect(files, index);
+    String sharedIndex = settings.getString(SHARED_INDEX_KEY);
+    if (StringUtils.isNotBlank(sharedIndex)) {
+      index.load();
+      clones.addAll(new PhpSharedCloneIndex(new File(sharedIndex), minimumTokens).update(project.getKey(), index, keys));
+    }
+    saveMeasures(clones, resources, keys, context);
+  }
+
+  private static void saveMeasures(List<PhpClone> clones, Map<String, org.sonar.api.resources.File> resources, Map<String, String> keys,
+      SensorContext context) {
+    Map<String, List<List<PhpCloneGroups.Part>>> groupsByPath = Maps.newLinkedHashMap();
+    for (List<PhpCloneGroups.Part> group : PhpCloneGroups.group(clones)) {
+      for (PhpCloneGroups.Part part : group) {
+        List<List<PhpCloneGroups.Part>> pathGroups = groupsByPath.get(part.getPath());
+        if (pathGroups == null) {
+          pathGroups = Lists.newArrayList();
+          groupsByPath.put(part.getPath(), pathGroups);
+        }
+        if (pathGroups.isEmpty() || pathGroups.get(pathGroups.size() - 1) != group) {
+          pathGroups.add(group);
+        }
+      }
+    }
+    for (Map.Entry<String, List<List<PhpCloneGroups.Part>>> entry : groupsByPath.entrySet()) {
+      org.sonar.api.resources.File phpFile = resources.get(entry.getKey());
+      if (phpFile != null) {
+        saveMeasures(entry.getKey(), phpFile, entry.getValue(), keys, context);
+      }
+    }
+  }
+
+  /**
+   * Each part of the file counts as a duplicated block, and each group which the file is part of is reported once.
+   */
+  private static void saveMeasures(String path, org.sonar.api.resources.File phpFile, List<List<PhpCloneGroups.Part>> groups,
+      Map<String, String> keys, SensorContext context) {
+    BitSet duplicatedLines = new BitSet();
+    int duplicatedBlocks = 0;
+    StringBuilder xml = new StringBuilder("<duplications>");
+    for (List<PhpCloneGroups.Part> group : groups) {
+      xml.append("<g>");
+      for (PhpCloneGroups.Part part : group) {
+        if (part.getPath().equals(path)) {
+          duplicatedLines.set(part.getStartLine(), part.getEndLine() + 1);
+          duplicatedBlocks++;
+        }
+        appendBlock(xml, part.getStartLine(), part.getEndLine(), getKey(part.getPath(), keys));
+      }
+      xml.append("</g>");
+    }
+    xml.append("</duplications>");
+    context.saveMeasure(phpFile, CoreMetrics.DUPLICATED_FILES, 1.0);
+    context.saveMeasure(phpFile, CoreMetrics.DUPLICATED_LINES, Double.valueOf(duplicatedLines.cardinality()));
+    context.saveMeasure(phpFile, CoreMetrics.DUPLICATED_BLOCKS, Double.valueOf(duplicatedBlocks));
+    context.saveMeasure(phpFile, new Measure(CoreMetrics.DUPLICATIONS_DATA, xml.toString()).setPersistenceMode(PersistenceMode.DATABASE));
+  }
+
+  private static void appendBlock(StringBuilder xml, int startLine, int endLine, String key) {
+    xml.append("<b s=\"").append(startLine).append("\" l=\"").append(endLine - startLine + 1).append("\" r=\"")
+        .append(StringEscapeUtils.escapeXml(key)).append("\"/>");
+  }
+
+  /**
+   * The files of the other projects are already known by their resource key.
+   */
+  private static String getKey(String path, Map<String, String> keys) {
+    String key = keys.get(path);
+    return key == null ? path : key;
+  }
+
+  /**
+   * @see org.sonar.api.batch.CheckProject#shouldExecuteOnProject(org.sonar.api.resources.Project)
+   */
+  public boolean shouldExecuteOnProject(Project project) {
+    return isEnabled(settings)
+      && !isSkip()
+      && !project.getFileSystem().mainFiles(PhpConstants.LANGUAGE_KEY).isEmpty();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return "PHP Duplications Sensor";
+  }
+}
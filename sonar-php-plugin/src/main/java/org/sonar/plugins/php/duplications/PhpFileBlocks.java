@@ -0,0 +1,74 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import java.util.BitSet;
+
+/**
+ * Blocks of a file: the hash of each window of consecutive tokens of the copy-paste detection, with the first and last lines it spans.
+ * Block <code>i</code> starts at the token <code>i</code> of the file. A block is periodic when it overlaps another block of the file
+ * with the same hash, as in a long run of repeated tokens.
+ */
+final class PhpFileBlocks {
+
+  private final String path;
+  private final String contentHash;
+  private final long[] hashes;
+  private final int[] firstLines;
+  private final int[] lastLines;
+  private final BitSet periodicBlocks;
+
+  PhpFileBlocks(String path, String contentHash, long[] hashes, int[] firstLines, int[] lastLines, BitSet periodicBlocks) {
+    this.path = path;
+    this.contentHash = contentHash;
+    this.hashes = hashes;
+    this.firstLines = firstLines;
+    this.lastLines = lastLines;
+    this.periodicBlocks = periodicBlocks;
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  String getContentHash() {
+    return contentHash;
+  }
+
+  int size() {
+    return hashes.length;
+  }
+
+  long getHash(int block) {
+    return hashes[block];
+  }
+
+  int getFirstLine(int block) {
+    return firstLines[block];
+  }
+
+  int getLastLine(int block) {
+    return lastLines[block];
+  }
+
+  boolean isPeriodic(int block) {
+    return periodicBlocks.get(block);
+  }
+}
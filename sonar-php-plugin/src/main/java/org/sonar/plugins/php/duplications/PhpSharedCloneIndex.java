@@ -0,0 +1,631 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Duplication index shared by the analyses of several projects on the same host, to find the duplications between projects.
+ * <p>
+ * The blocks of all the projects are kept in an open-addressing hash table of a memory-mapped file. Each slot holds the hash of a
+ * block, the id of its file, its index and its lines. The project, resource key and content hash of each file are kept in the files
+ * table, at the path of the index, which is rewritten as a whole. A file id which is not in the files table is garbage, such as the ids
+ * of the files which changed since they were published. Garbage is dropped when the hash table is rebuilt, once it is half full.
+ * <p>
+ * The files table also holds the generation of the hash table, whose file is named after the index and its generation. A rebuild
+ * writes a new generation, so that a mapped file is never deleted nor renamed, which some platforms do not allow until it is garbage
+ * collected. The previous generations are deleted once the files table refers to the new one, or by a later writer if they are still
+ * mapped.
+ * <p>
+ * An analysis first looks up the blocks of its files in the hash table. Then it publishes the blocks of the files which changed since
+ * its previous publication. Readers hold a shared lock on a lock file next to the index, and the writer holds an exclusive one. The
+ * files table is replaced last: blocks inserted by a writer which did not finish have ids unknown to the files table, and the
+ * generation it was rebuilding is not referred to.
+ */
+class PhpSharedCloneIndex {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PhpSharedCloneIndex.class);
+  private static final int MAGIC = 0x50485358;
+  private static final int FORMAT_VERSION = 2;
+  private static final String LOCK_SUFFIX = ".lock";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  // Header of the hash table: magic, version, capacity, minimum tokens, entry count (long) and next file id
+  private static final int CAPACITY_OFFSET = 8;
+  private static final int MINIMUM_TOKENS_OFFSET = 12;
+  private static final int ENTRY_COUNT_OFFSET = 16;
+  private static final int NEXT_FILE_ID_OFFSET = 24;
+  private static final int HEADER_LENGTH = 32;
+  // Hash, file id, block index, first line and last line
+  private static final int SLOT_LENGTH = 8 + 4 + 4 + 4 + 4;
+  private static final int MIN_CAPACITY = 1 << 16;
+  // Keeps the hash table within a single mapped buffer
+  private static final int MAX_CAPACITY = 1 << 26;
+  // Hash of an empty slot
+  private static final long EMPTY = 0L;
+
+  private final File filesFile;
+  private final File lockFile;
+  private final int minimumTokens;
+
+  /**
+   * @param file
+   *          the files table, on a local disk, next to which the hash table and the lock file are kept
+   * @param minimumTokens
+   *          the minimum number of tokens of a duplication, which must be the same for all the projects of the index
+   */
+  PhpSharedCloneIndex(File file, int minimumTokens) {
+    this.filesFile = file;
+    this.lockFile = new File(file.getPath() + LOCK_SUFFIX);
+    this.minimumTokens = minimumTokens;
+  }
+
+  /**
+   * Finds the duplications of the files of the given project with the files of the other projects, then publishes the blocks of the
+   * files of the project. Failures are logged, as the shared index is optional.
+   *
+   * @param localIndex
+   *          the up-to-date index of the project, whose blocks are streamed
+   * @param keys
+   *          the resource key of each file of the project, by path
+   * @return the duplications, with the path of the file of the project first and the resource key of the other file second
+   */
+  List<PhpClone> update(String projectKey, PhpCloneIndex localIndex, Map<String, String> keys) {
+    // File locks are held by the whole JVM
+    synchronized (PhpSharedCloneIndex.class) {
+      List<PhpClone> clones = Collections.emptyList();
+      try {
+        FileUtils.forceMkdir(filesFile.getAbsoluteFile().getParentFile());
+        clones = query(projectKey, localIndex, keys.keySet());
+      } catch (IOException e) {
+        LOG.warn("Unable to read the shared duplication index " + filesFile, e);
+      }
+      try {
+        publish(projectKey, localIndex, keys);
+      } catch (IOException e) {
+        LOG.warn("Unable to update the shared duplication index " + filesFile, e);
+      }
+      return clones;
+    }
+  }
+
+  private List<PhpClone> query(final String projectKey, PhpCloneIndex localIndex, Set<String> paths) throws IOException {
+    if (!filesFile.isFile()) {
+      return Collections.emptyList();
+    }
+    FileLock lock = lock(true);
+    Table table = null;
+    try {
+      FilesTable filesTable = readFiles();
+      if (filesTable == null) {
+        return Collections.emptyList();
+      }
+      table = Table.open(getTableFile(filesTable.generation), false);
+      if (!hasSameMinimumTokens(table)) {
+        return Collections.emptyList();
+      }
+      final Table readTable = table;
+      final Map<Integer, FileRecord> files = filesTable.records;
+      final PhpBlockMatches matches = new PhpBlockMatches(minimumTokens);
+      localIndex.readBlocks(paths, new PhpCloneIndex.BlockVisitor() {
+        private final Map<Long, int[]> localBlocks = Maps.newHashMap();
+        private String path;
+
+        public void visitFile(String filePath, String contentHash, int blockCount) {
+          this.path = filePath;
+        }
+
+        public void visitBlock(int block, long hash, int firstLine, int lastLine) {
+          long key = toKey(hash);
+          if (count(localBlocks, key) > PhpCloneDetector.MAX_GROUP_SIZE) {
+            return;
+          }
+          int found = 0;
+          for (int slot = readTable.slot(key); readTable.getHash(slot) != EMPTY && found < PhpCloneDetector.MAX_GROUP_SIZE;
+              slot = readTable.nextSlot(slot)) {
+            if (readTable.getHash(slot) == key) {
+              found++;
+              FileRecord other = files.get(readTable.getFileId(slot));
+              if (other != null && !other.project.equals(projectKey)) {
+                matches.add(path, block, firstLine, lastLine, other.key, readTable.getBlock(slot), readTable.getFirstLine(slot),
+                  readTable.getLastLine(slot));
+              }
+            }
+          }
+        }
+      });
+      List<PhpClone> clones = Lists.newArrayList();
+      for (PhpClone clone : matches.toClones()) {
+        clones.add(paths.contains(clone.getFirstPath()) ? clone : new PhpClone(clone.getSecondPath(), clone.getSecondStartLine(),
+          clone.getSecondEndLine(), clone.getFirstPath(), clone.getFirstStartLine(), clone.getFirstEndLine()));
+      }
+      return clones;
+    } finally {
+      close(table);
+      release(lock);
+    }
+  }
+
+  private void publish(String projectKey, PhpCloneIndex localIndex, Map<String, String> keys) throws IOException {
+    FileLock lock = lock(false);
+    Table table = null;
+    try {
+      FilesTable filesTable = readFiles();
+      int generation = filesTable == null ? 0 : filesTable.generation;
+      table = filesTable == null ? null : openForUpdate(generation);
+      if (table != null && !hasSameMinimumTokens(table)) {
+        return;
+      }
+      // Without the hash table, the files table refers to blocks which no longer exist
+      Map<Integer, FileRecord> files = table != null ? filesTable.records : Maps.<Integer, FileRecord> newHashMap();
+      Map<String, FileRecord> published = Maps.newHashMap();
+      for (Iterator<FileRecord> it = files.values().iterator(); it.hasNext();) {
+        FileRecord record = it.next();
+        if (record.project.equals(projectKey)) {
+          published.put(record.key, record);
+          it.remove();
+        }
+      }
+      final Set<String> changed = Sets.newHashSet();
+      for (Map.Entry<String, String> entry : keys.entrySet()) {
+        String contentHash = localIndex.getContentHash(entry.getKey());
+        FileRecord record = published.get(entry.getValue());
+        if (record != null && record.contentHash.equals(contentHash)) {
+          files.put(record.id, record);
+        } else if (contentHash != null) {
+          changed.add(entry.getKey());
+        }
+      }
+      final long[] newEntries = new long[1];
+      localIndex.readBlocks(changed, new PhpCloneIndex.BlockVisitor() {
+        public void visitFile(String path, String contentHash, int blockCount) {
+          newEntries[0] += blockCount;
+        }
+
+        public void visitBlock(int block, long hash, int firstLine, int lastLine) {
+          // Only counted
+        }
+      });
+      long liveEntries = newEntries[0];
+      for (FileRecord record : files.values()) {
+        liveEntries += record.blockCount;
+      }
+      if (table == null || table.getEntryCount() + newEntries[0] > table.capacity / 2) {
+        generation = newGeneration(generation);
+        Table rebuilt = rebuild(table, files.keySet(), liveEntries, getTableFile(generation));
+        close(table);
+        table = rebuilt;
+      }
+      insert(table, projectKey, localIndex, keys, changed, files);
+      table.force();
+      close(table);
+      table = null;
+      writeFiles(generation, files);
+      deleteOtherGenerations(generation);
+    } finally {
+      close(table);
+      release(lock);
+    }
+  }
+
+  private void insert(final Table table, final String projectKey, PhpCloneIndex localIndex, final Map<String, String> keys,
+      Set<String> changed, final Map<Integer, FileRecord> files) throws IOException {
+    localIndex.readBlocks(changed, new PhpCloneIndex.BlockVisitor() {
+      private final Map<Long, int[]> insertedBlocks = Maps.newHashMap();
+      private int fileId;
+
+      public void visitFile(String path, String contentHash, int blockCount) {
+        fileId = table.getNextFileId();
+        table.setNextFileId(fileId + 1);
+        files.put(fileId, new FileRecord(fileId, projectKey, keys.get(path), contentHash, blockCount));
+      }
+
+      public void visitBlock(int block, long hash, int firstLine, int lastLine) {
+        long key = toKey(hash);
+        if (count(insertedBlocks, key) <= PhpCloneDetector.MAX_GROUP_SIZE) {
+          table.insert(key, fileId, block, firstLine, lastLine);
+        }
+      }
+    });
+  }
+
+  /**
+   * Only the first blocks of a hash of each project are published and looked up, so that repeated tokens neither fill the hash table
+   * with long probe sequences nor make up a quadratic number of pairs.
+   *
+   * @return the number of blocks of the given hash counted so far, this one included
+   */
+  private static int count(Map<Long, int[]> counts, long hash) {
+    int[] count = counts.get(hash);
+    if (count == null) {
+      count = new int[1];
+      counts.put(hash, count);
+    }
+    return ++count[0];
+  }
+
+  /**
+   * @return the hash table of the given generation, or null if there is none or if it is corrupted, in which case it is rebuilt
+   */
+  private Table openForUpdate(int generation) {
+    File tableFile = getTableFile(generation);
+    if (!tableFile.isFile()) {
+      return null;
+    }
+    try {
+      return Table.open(tableFile, true);
+    } catch (IOException e) {
+      LOG.warn("Rebuilding the unreadable shared duplication index " + tableFile, e);
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  File getTableFile(int generation) {
+    return new File(filesFile.getPath() + '.' + generation);
+  }
+
+  /**
+   * @return the first generation after the given one whose hash table does not exist, the tables left by the writers which did not
+   *         finish being deleted
+   */
+  private int newGeneration(int generation) {
+    int result = generation + 1;
+    while (getTableFile(result).exists() && !getTableFile(result).delete()) {
+      result++;
+    }
+    return result;
+  }
+
+  /**
+   * Deletes the hash tables of the other generations. A table still mapped by this JVM can not be deleted on some platforms: it is
+   * deleted by a later writer.
+   */
+  private void deleteOtherGenerations(int generation) {
+    File[] siblings = filesFile.getAbsoluteFile().getParentFile().listFiles();
+    if (siblings == null) {
+      return;
+    }
+    String prefix = filesFile.getName() + '.';
+    for (File sibling : siblings) {
+      String suffix = sibling.getName().startsWith(prefix) ? sibling.getName().substring(prefix.length()) : "";
+      if (StringUtils.isNotEmpty(suffix) && StringUtils.isNumeric(suffix) && !suffix.equals(String.valueOf(generation))
+        && !sibling.delete()) {
+        LOG.debug("Unable to delete the previous shared duplication index {}", sibling);
+      }
+    }
+  }
+
+  /**
+   * Copies the blocks of the given files to a new hash table in the given file, with room for the given number of entries.
+   */
+  private Table rebuild(Table table, Set<Integer> fileIds, long entries, File tableFile) throws IOException {
+    int capacity = MIN_CAPACITY;
+    while (capacity < entries * 4 && capacity < MAX_CAPACITY) {
+      capacity <<= 1;
+    }
+    if (entries * 2 > capacity) {
+      throw new IOException("Too many blocks in the shared duplication index: " + entries);
+    }
+    Table rebuilt = Table.create(tableFile, capacity, minimumTokens);
+    if (table != null) {
+      rebuilt.setNextFileId(table.getNextFileId());
+      for (int slot = 0; slot < table.capacity; slot++) {
+        long hash = table.getHash(slot);
+        if (hash != EMPTY && fileIds.contains(table.getFileId(slot))) {
+          rebuilt.insert(hash, table.getFileId(slot), table.getBlock(slot), table.getFirstLine(slot), table.getLastLine(slot));
+        }
+      }
+    }
+    return rebuilt;
+  }
+
+  private boolean hasSameMinimumTokens(Table table) {
+    if (table.getMinimumTokens() != minimumTokens) {
+      LOG.warn("The shared duplication index {} is built with {} minimum tokens instead of {}: ignored", new Object[] {filesFile,
+        table.getMinimumTokens(), minimumTokens});
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * The hash of an empty slot is never used by a block.
+   */
+  private static long toKey(long hash) {
+    return hash == EMPTY ? 1L : hash;
+  }
+
+  private FileLock lock(boolean shared) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+    try {
+      return file.getChannel().lock(0L, Long.MAX_VALUE, shared);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(file);
+      throw e;
+    }
+  }
+
+  private static void release(FileLock lock) {
+    try {
+      lock.release();
+    } catch (IOException e) {
+      LOG.debug("Unable to release the lock of the shared duplication index", e);
+    } finally {
+      IOUtils.closeQuietly(lock.channel());
+    }
+  }
+
+  private static void close(Table table) {
+    if (table != null) {
+      table.close();
+    }
+  }
+
+  /**
+   * @return the files table, or null if there is none or if it is corrupted, in which case the hash table is rebuilt
+   */
+  private FilesTable readFiles() {
+    if (!filesFile.isFile()) {
+      return null;
+    }
+    CheckedInputStream checked = null;
+    try {
+      checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(filesFile)), new CRC32());
+      DataInputStream input = new DataInputStream(checked);
+      if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+        return null;
+      }
+      FilesTable result = new FilesTable(input.readInt());
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        FileRecord record = new FileRecord(input.readInt(), input.readUTF(), input.readUTF(), input.readUTF(), input.readInt());
+        result.records.put(record.id, record);
+      }
+      long computed = checked.getChecksum().getValue();
+      if (input.readLong() != computed) {
+        LOG.debug("Ignoring the corrupted files of the shared duplication index {}", filesFile);
+        return null;
+      }
+      return result;
+    } catch (IOException e) {
+      LOG.debug("Ignoring the unreadable files of the shared duplication index " + filesFile, e);
+      return null;
+    } finally {
+      IOUtils.closeQuietly(checked);
+    }
+  }
+
+  private void writeFiles(int generation, Map<Integer, FileRecord> files) throws IOException {
+    File temporaryFile = new File(filesFile.getPath() + TEMPORARY_SUFFIX);
+    DataOutputStream output = null;
+    try {
+      CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)), new CRC32());
+      output = new DataOutputStream(checked);
+      output.writeInt(MAGIC);
+      output.writeInt(FORMAT_VERSION);
+      output.writeInt(generation);
+      output.writeInt(files.size());
+      for (FileRecord record : files.values()) {
+        output.writeInt(record.id);
+        output.writeUTF(record.project);
+        output.writeUTF(record.key);
+        output.writeUTF(record.contentHash);
+        output.writeInt(record.blockCount);
+      }
+      output.writeLong(checked.getChecksum().getValue());
+      output.close();
+      FileUtils.deleteQuietly(filesFile);
+      if (!temporaryFile.renameTo(filesFile)) {
+        throw new IOException("Unable to rename " + temporaryFile + " to " + filesFile);
+      }
+    } finally {
+      IOUtils.closeQuietly(output);
+      FileUtils.deleteQuietly(temporaryFile);
+    }
+  }
+
+  /**
+   * Generation of the hash table and published files by id.
+   */
+  private static final class FilesTable {
+    private final int generation;
+    private final Map<Integer, FileRecord> records = Maps.newHashMap();
+
+    private FilesTable(int generation) {
+      this.generation = generation;
+    }
+  }
+
+  /**
+   * Project, resource key and content hash of a published file.
+   */
+  private static final class FileRecord {
+    private final int id;
+    private final String project;
+    private final String key;
+    private final String contentHash;
+    private final int blockCount;
+
+    private FileRecord(int id, String project, String key, String contentHash, int blockCount) {
+      this.id = id;
+      this.project = project;
+      this.key = key;
+      this.contentHash = contentHash;
+      this.blockCount = blockCount;
+    }
+  }
+
+  /**
+   * Hash table mapped in memory, with linear probing.
+   */
+  private static final class Table {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+
+    private Table(RandomAccessFile file, MappedByteBuffer buffer) throws IOException {
+      this.file = file;
+      this.buffer = buffer;
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+        throw new IOException("Not a shared duplication index");
+      }
+      this.capacity = buffer.getInt(CAPACITY_OFFSET);
+      if (Integer.bitCount(capacity) != 1 || buffer.capacity() != HEADER_LENGTH + (long) capacity * SLOT_LENGTH) {
+        throw new IOException("Corrupted shared duplication index");
+      }
+      this.mask = capacity - 1;
+    }
+
+    private static Table open(File tableFile, boolean write) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(tableFile, write ? "rw" : "r");
+      try {
+        long length = file.length();
+        if (length < HEADER_LENGTH || length > HEADER_LENGTH + (long) MAX_CAPACITY * SLOT_LENGTH) {
+          throw new IOException("Corrupted shared duplication index");
+        }
+        return new Table(file, file.getChannel().map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, length));
+      } catch (IOException e) {
+        IOUtils.closeQuietly(file);
+        throw e;
+      }
+    }
+
+    private static Table create(File tableFile, int capacity, int minimumTokens) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(tableFile, "rw");
+      try {
+        long length = HEADER_LENGTH + (long) capacity * SLOT_LENGTH;
+        file.setLength(length);
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(MINIMUM_TOKENS_OFFSET, minimumTokens);
+        return new Table(file, buffer);
+      } catch (IOException e) {
+        IOUtils.closeQuietly(file);
+        throw e;
+      }
+    }
+
+    private int getMinimumTokens() {
+      return buffer.getInt(MINIMUM_TOKENS_OFFSET);
+    }
+
+    private long getEntryCount() {
+      return buffer.getLong(ENTRY_COUNT_OFFSET);
+    }
+
+    private int getNextFileId() {
+      return buffer.getInt(NEXT_FILE_ID_OFFSET);
+    }
+
+    private void setNextFileId(int fileId) {
+      buffer.putInt(NEXT_FILE_ID_OFFSET, fileId);
+    }
+
+    private int slot(long hash) {
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int nextSlot(int slot) {
+      return (slot + 1) & mask;
+    }
+
+    private static int offset(int slot) {
+      return HEADER_LENGTH + slot * SLOT_LENGTH;
+    }
+
+    private long getHash(int slot) {
+      return buffer.getLong(offset(slot));
+    }
+
+    private int getFileId(int slot) {
+      return buffer.getInt(offset(slot) + 8);
+    }
+
+    private int getBlock(int slot) {
+      return buffer.getInt(offset(slot) + 12);
+    }
+
+    private int getFirstLine(int slot) {
+      return buffer.getInt(offset(slot) + 16);
+    }
+
+    private int getLastLine(int slot) {
+      return buffer.getInt(offset(slot) + 20);
+    }
+
+    /**
+     * Writes the hash of the slot last, as it marks the slot as used.
+     */
+    private void insert(long hash, int fileId, int block, int firstLine, int lastLine) {
+      int slot = slot(hash);
+      while (getHash(slot) != EMPTY) {
+        slot = nextSlot(slot);
+      }
+      int offset = offset(slot);
+      buffer.putInt(offset + 8, fileId);
+      buffer.putInt(offset + 12, block);
+      buffer.putInt(offset + 16, firstLine);
+      buffer.putInt(offset + 20, lastLine);
+      buffer.putLong(offset, hash);
+      buffer.putLong(ENTRY_COUNT_OFFSET, getEntryCount() + 1);
+    }
+
+    private void force() {
+      buffer.force();
+    }
+
+    private void close() {
+      IOUtils.closeQuietly(file);
+    }
+  }
+}
@@ -19,21 +19,40 @@
  */
 package org.sonar.plugins.php.duplications.internal;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
+/**
+ * Queue of tokens stored in growable primitive arrays: the id of the value, interned in the queue, the line and the column of each
+ * token. The tokens before the cursor have been polled, and their slots are reused by {@link #pushForward(List)}. The
+ * {@link Token} objects are only created when they are peeked, polled or iterated.
+ */
 public class TokenQueue implements Iterable<Token> {
 
-  private final LinkedList<Token> tokenQueue;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final Map<String, Integer> valueIds = new HashMap<String, Integer>();
+  private String[] values = new String[INITIAL_CAPACITY];
+  private int valueCount;
+  private int[] tokenValues = new int[INITIAL_CAPACITY];
+  private int[] lines = new int[INITIAL_CAPACITY];
+  private int[] columns = new int[INITIAL_CAPACITY];
+  // Index of the next token, and index after the last one
+  private int cursor;
+  private int end;
 
   public TokenQueue(List<Token> tokenList) {
-    tokenQueue = new LinkedList<Token>(tokenList);
+    for (Token token : tokenList) {
+      add(token);
+    }
   }
 
   public TokenQueue() {
-    tokenQueue = new LinkedList<Token>();
+    // empty queue
   }
 
   /**
@@ -42,7 +61,7 @@ public class TokenQueue implements Iterable<Token> {
    * @return token from this queue, or <tt>null</tt> if this queue is empty.
    */
   public Token peek() {
-    return tokenQueue.peek();
+    return cursor == end ? null : get(cursor);
   }
 
   /**
@@ -51,35 +70,105 @@ public class TokenQueue implements Iterable<Token> {
    * @return token from this queue, or <tt>null</tt> if this queue is empty.
    */
   public Token poll() {
-    return tokenQueue.poll();
+    return cursor == end ? null : get(cursor++);
   }
 
   public int size() {
-    return tokenQueue.size();
+    return end - cursor;
   }
 
   public void add(Token token) {
-    tokenQueue.addLast(token);
+    add(token.getValue(), token.getLine(), token.getColumn());
+  }
+
+  /**
+   * Adds a token at the end of this queue, without creating a {@link Token}.
+   */
+  public void add(String value, int line, int column) {
+    if (end == tokenValues.length) {
+      grow(end + 1);
+    }
+    set(end++, value, line, column);
   }
 
   public boolean isNextTokenValue(String expectedValue) {
-    Token nextToken = tokenQueue.peek();
-    if (nextToken == null) {
+    if (cursor == end) {
       // queue is empty
       return false;
     }
-    return nextToken.getValue().equals(expectedValue);
+    return values[tokenValues[cursor]].equals(expectedValue);
   }
 
   public Iterator<Token> iterator() {
-    return tokenQueue.iterator();
+    return new Iterator<Token>() {
+      private int index = cursor;
+
+      public boolean hasNext() {
+        return index < end;
+      }
+
+      public Token next() {
+        if (index >= end) {
+          throw new NoSuchElementException();
+        }
+        return get(index++);
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
   }
 
   public void pushForward(List<Token> matchedTokenList) {
-    ListIterator<Token> iter = matchedTokenList.listIterator(matchedTokenList.size());
-    while (iter.hasPrevious()) {
-      tokenQueue.addFirst(iter.previous());
+    int count = matchedTokenList.size();
+    if (count > cursor) {
+      // Not enough polled slots: the remaining tokens are moved to make room
+      int shift = count - cursor;
+      if (end + shift > tokenValues.length) {
+        grow(end + shift);
+      }
+      System.arraycopy(tokenValues, cursor, tokenValues, count, end - cursor);
+      System.arraycopy(lines, cursor, lines, count, end - cursor);
+      System.arraycopy(columns, cursor, columns, count, end - cursor);
+      cursor = count;
+      end += shift;
     }
+    cursor -= count;
+    for (int i = 0; i < count; i++) {
+      Token token = matchedTokenList.get(i);
+      set(cursor + i, token.getValue(), token.getLine(), token.getColumn());
+    }
+  }
+
+  private Token get(int index) {
+    return new Token(values[tokenValues[index]], lines[index], columns[index]);
+  }
+
+  private void set(int index, String value, int line, int column) {
+    tokenValues[index] = valueId(value);
+    lines[index] = line;
+    columns[index] = column;
+  }
+
+  private int valueId(String value) {
+    Integer id = valueIds.get(value);
+    if (id == null) {
+      if (valueCount == values.length) {
+        values = Arrays.copyOf(values, valueCount * 2);
+      }
+      id = valueCount;
+      values[valueCount++] = value;
+      valueIds.put(value, id);
+    }
+    return id;
+  }
+
+  private void grow(int minCapacity) {
+    int capacity = Math.max(minCapacity, tokenValues.length * 2);
+    tokenValues = Arrays.copyOf(tokenValues, capacity);
+    lines = Arrays.copyOf(lines, capacity);
+    columns = Arrays.copyOf(columns, capacity);
   }
 
 }
@@ -25,6 +25,8 @@ import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.plugins.php.api.Php;
 import org.sonar.plugins.php.core.AbstractPhpConfiguration;
 
+import java.io.File;
+
 /**
  * The php-depend plugin configuration class.
  */
@@ -100,9 +102,20 @@ public class PhpDependConfiguration extends AbstractPhpConfiguration {
    * @return the report filecommand option
    */
   public String getReportFileCommandOption() {
+    return getReportFileCommandOption(getReportFile());
+  }
+
+  /**
+   * Gets the report file command option, writing the report to the given file.
+   * 
+   * @param reportFile
+   *          the report file
+   * @return the report file command option
+   */
+  public String getReportFileCommandOption(File reportFile) {
     String reportType = getReportType();
     if (reportType.equals(PDEPEND_REPORT_TYPE_PHPUNIT) || reportType.equals(PDEPEND_REPORT_TYPE_SUMMARY)) {
-      return "--" + reportType + "=" + getReportFile().getAbsolutePath();
+      return "--" + reportType + "=" + reportFile.getAbsolutePath();
     } else {
       throw new IllegalArgumentException("Invalid PHP Depend report type: " + reportType + ". Supported types: phpunit-xml, summary-xml");
     }
@@ -24,6 +24,7 @@ import org.apache.commons.lang.StringUtils;
 import org.sonar.plugins.php.api.Php;
 import org.sonar.plugins.php.core.AbstractPhpExecutor;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -61,8 +62,21 @@ public class PhpDependExecutor extends AbstractPhpExecutor {
    */
   @Override
   protected List<String> getCommandLineArguments() {
+    return getCommandLineArguments(StringUtils.join(configuration.getSourceDirectories(), PHPDEPEND_DIRECTORY_SEPARATOR),
+        configuration.getReportFile());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<String> getCommandLineArguments(List<File> files, File reportFile) {
+    return getCommandLineArguments(StringUtils.join(files, PHPDEPEND_DIRECTORY_SEPARATOR), reportFile);
+  }
+
+  private List<String> getCommandLineArguments(String inputPaths, File reportFile) {
     List<String> result = new ArrayList<String>();
-    result.add(configuration.getReportFileCommandOption());
+    result.add(configuration.getReportFileCommandOption(reportFile));
     result.add(configuration.getSuffixesCommandOption(getPhpLanguage()));
     if (configuration.getExcludePackages() != null) {
       result.add(PDEPEND_EXCLUDE_OPTION + configuration.getExcludePackages());
@@ -78,7 +92,7 @@ public class PhpDependExecutor extends AbstractPhpExecutor {
       result.addAll(Lists.newArrayList(StringUtils.split(configuration.getArgumentLine(), ' ')));
     }
     // SONARPLUGINS-547 PhpDependExecutor: wrong dirs params
-    result.add(StringUtils.join(configuration.getSourceDirectories(), PHPDEPEND_DIRECTORY_SEPARATOR));
+    result.add(inputPaths);
     return result;
   }
 
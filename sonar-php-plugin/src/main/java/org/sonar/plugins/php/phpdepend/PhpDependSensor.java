@@ -32,6 +32,7 @@ import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.api.PhpConstants;
 import org.sonar.plugins.php.core.PhpPluginExecutionException;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.io.File;
 
@@ -106,6 +107,7 @@ public class PhpDependSensor implements Sensor {
 
   private PhpDependConfiguration configuration;
   private PhpDependExecutor executor;
+  private PhpToolsScheduler scheduler;
   private PhpDependParserSelector parserSelector;
   private final ProjectFileSystem filesystem;
 
@@ -114,11 +116,12 @@ public class PhpDependSensor implements Sensor {
    * @param executor
    * @param parserSelector
    */
-  public PhpDependSensor(PhpDependConfiguration config, PhpDependExecutor executor,
+  public PhpDependSensor(PhpDependConfiguration config, PhpDependExecutor executor, PhpToolsScheduler scheduler,
                          PhpDependParserSelector parserSelector, ProjectFileSystem filesystem) {
     super();
     this.configuration = config;
     this.executor = executor;
+    this.scheduler = scheduler;
     this.parserSelector = parserSelector;
     this.filesystem = filesystem;
   }
@@ -131,7 +134,7 @@ public class PhpDependSensor implements Sensor {
     try {
       configuration.createWorkingDirectory();
       if (!configuration.isAnalyseOnly()) {
-        executor.execute();
+        scheduler.execute(executor);
       }
       File reportFile = configuration.getReportFile();
       parser.parse(reportFile);
@@ -128,6 +128,7 @@ public class PhpUnitConfiguration extends AbstractPhpConfiguration {
   public static final String PHPUNIT_GROUP_KEY = "sonar.phpUnit.group";
   public static final String PHPUNIT_ARGUMENT_LINE_KEY = "sonar.phpUnit.argumentLine";
   public static final String PHPUNIT_TIMEOUT_KEY = "sonar.phpUnit.timeout";
+  public static final String PHPUNIT_SHARDS_KEY = "sonar.phpUnit.shards";
 
   private File coverageReportFile;
 
@@ -373,6 +374,14 @@ public class PhpUnitConfiguration extends AbstractPhpConfiguration {
     return PHPUNIT_SKIP_KEY;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String getShardsKey() {
+    return PHPUNIT_SHARDS_KEY;
+  }
+
   /**
    * {@inheritDoc}
    */
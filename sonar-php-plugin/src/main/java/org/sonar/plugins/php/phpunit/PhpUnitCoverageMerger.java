@@ -0,0 +1,280 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.phpunit;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.utils.SonarException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the Clover coverage reports written by several PHPUnit processes, each one running a share of the tests.
+ * The hits of a same line are summed up, and the file metrics read by {@link PhpUnitCoverageResultParser} are computed
+ * again from the merged lines. Only the coverage data is kept in memory: the reports themselves are streamed.
+ */
+public class PhpUnitCoverageMerger {
+
+  private static final String ENCODING = "UTF-8";
+  private static final String FILE = "file";
+  private static final String LINE = "line";
+  private static final String METRICS = "metrics";
+  private static final String CLASS = "class";
+  private static final String NAME = "name";
+  private static final String STATEMENT = "stmt";
+  private static final String METHOD = "method";
+  private static final String CONDITIONAL = "cond";
+
+  private final XMLInputFactory inputFactory;
+  private final XMLOutputFactory outputFactory;
+
+  public PhpUnitCoverageMerger() {
+    inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    outputFactory = XMLOutputFactory.newInstance();
+  }
+
+  public void merge(List<File> reports, File target) {
+    if (reports.isEmpty()) {
+      throw new SonarException("No coverage report to merge into " + target);
+    }
+    Map<String, FileCoverage> files = Maps.newLinkedHashMap();
+    for (File report : reports) {
+      read(report, files);
+    }
+    write(files, target);
+  }
+
+  private void read(File report, Map<String, FileCoverage> files) {
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(report));
+      XMLStreamReader reader = inputFactory.createXMLStreamReader(input);
+      FileCoverage file = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String element = reader.getLocalName();
+          if (FILE.equals(element)) {
+            file = getFileCoverage(files, reader.getAttributeValue(null, NAME));
+          } else if (file != null && CLASS.equals(element)) {
+            skipElement(reader);
+          } else if (file != null && LINE.equals(element)) {
+            file.addLine(getInt(reader, "num"), reader.getAttributeValue(null, "type"), reader.getAttributeValue(null, NAME),
+              getInt(reader, "count"));
+          } else if (file != null && METRICS.equals(element)) {
+            file.loc = Math.max(file.loc, getInt(reader, "loc"));
+            file.ncloc = Math.max(file.ncloc, getInt(reader, "ncloc"));
+            file.classes = Math.max(file.classes, getInt(reader, "classes"));
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT && FILE.equals(reader.getLocalName())) {
+          file = null;
+        }
+      }
+      reader.close();
+    } catch (IOException e) {
+      throw new SonarException("Unable to read coverage report " + report, e);
+    } catch (XMLStreamException e) {
+      throw new SonarException("Unable to read coverage report " + report, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private static FileCoverage getFileCoverage(Map<String, FileCoverage> files, String name) {
+    FileCoverage file = files.get(name);
+    if (file == null) {
+      file = new FileCoverage();
+      files.put(name, file);
+    }
+    return file;
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static int getInt(XMLStreamReader reader, String attribute) {
+    String value = reader.getAttributeValue(null, attribute);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private void write(Map<String, FileCoverage> files, File target) {
+    OutputStream output = null;
+    try {
+      output = new BufferedOutputStream(new FileOutputStream(target));
+      XMLStreamWriter writer = outputFactory.createXMLStreamWriter(output, ENCODING);
+      String timestamp = Long.toString(System.currentTimeMillis() / 1000);
+      writer.writeStartDocument(ENCODING, "1.0");
+      writer.writeStartElement("coverage");
+      writer.writeAttribute("generated", timestamp);
+      writer.writeStartElement("project");
+      writer.writeAttribute("timestamp", timestamp);
+      FileCoverage total = new FileCoverage();
+      for (Map.Entry<String, FileCoverage> entry : files.entrySet()) {
+        writeFile(writer, entry.getKey(), entry.getValue());
+        total.add(entry.getValue());
+      }
+      writer.writeEmptyElement(METRICS);
+      writer.writeAttribute("files", Integer.toString(files.size()));
+      writeMetrics(writer, total);
+      writer.writeEndElement();
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.close();
+    } catch (IOException e) {
+      throw new SonarException("Unable to write coverage report " + target, e);
+    } catch (XMLStreamException e) {
+      throw new SonarException("Unable to write coverage report " + target, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  private static void writeFile(XMLStreamWriter writer, String name, FileCoverage file) throws XMLStreamException {
+    writer.writeStartElement(FILE);
+    writer.writeAttribute(NAME, name);
+    for (Map.Entry<Integer, LineCoverage> entry : file.lines.entrySet()) {
+      LineCoverage line = entry.getValue();
+      writer.writeEmptyElement(LINE);
+      writer.writeAttribute("num", entry.getKey().toString());
+      if (line.type != null) {
+        writer.writeAttribute("type", line.type);
+      }
+      if (line.name != null) {
+        writer.writeAttribute(NAME, line.name);
+      }
+      writer.writeAttribute("count", Integer.toString(line.count));
+    }
+    writer.writeEmptyElement(METRICS);
+    writeMetrics(writer, file);
+    writer.writeEndElement();
+  }
+
+  private static void writeMetrics(XMLStreamWriter writer, FileCoverage file) throws XMLStreamException {
+    writer.writeAttribute("loc", Integer.toString(file.loc));
+    writer.writeAttribute("ncloc", Integer.toString(file.ncloc));
+    writer.writeAttribute("classes", Integer.toString(file.classes));
+    writer.writeAttribute("methods", Integer.toString(file.methods));
+    writer.writeAttribute("coveredmethods", Integer.toString(file.coveredMethods));
+    writer.writeAttribute("conditionals", Integer.toString(file.conditionals));
+    writer.writeAttribute("coveredconditionals", Integer.toString(file.coveredConditionals));
+    writer.writeAttribute("statements", Integer.toString(file.statements));
+    writer.writeAttribute("coveredstatements", Integer.toString(file.coveredStatements));
+    writer.writeAttribute("elements", Integer.toString(file.methods + file.conditionals + file.statements));
+    writer.writeAttribute("coveredelements", Integer.toString(file.coveredMethods + file.coveredConditionals + file.coveredStatements));
+  }
+
+  private static final class LineCoverage {
+
+    private final String type;
+    private final String name;
+    private int count;
+
+    LineCoverage(String type, String name) {
+      this.type = type;
+      this.name = name;
+    }
+  }
+
+  private static final class FileCoverage {
+
+    private final Map<Integer, LineCoverage> lines = Maps.newTreeMap();
+    private int loc;
+    private int ncloc;
+    private int classes;
+    private int methods;
+    private int coveredMethods;
+    private int conditionals;
+    private int coveredConditionals;
+    private int statements;
+    private int coveredStatements;
+
+    void addLine(int num, String type, String name, int count) {
+      LineCoverage line = lines.get(num);
+      if (line == null) {
+        line = new LineCoverage(type, name);
+        lines.put(num, line);
+        count(type, 1, 0);
+      }
+      if (line.count == 0 && count > 0) {
+        count(line.type, 0, 1);
+      }
+      line.count += count;
+    }
+
+    private void count(String type, int total, int covered) {
+      if (STATEMENT.equals(type)) {
+        statements += total;
+        coveredStatements += covered;
+      } else if (METHOD.equals(type)) {
+        methods += total;
+        coveredMethods += covered;
+      } else if (CONDITIONAL.equals(type)) {
+        conditionals += total;
+        coveredConditionals += covered;
+      }
+    }
+
+    void add(FileCoverage other) {
+      loc += other.loc;
+      ncloc += other.ncloc;
+      classes += other.classes;
+      methods += other.methods;
+      coveredMethods += other.coveredMethods;
+      conditionals += other.conditionals;
+      coveredConditionals += other.coveredConditionals;
+      statements += other.statements;
+      coveredStatements += other.coveredStatements;
+    }
+  }
+}
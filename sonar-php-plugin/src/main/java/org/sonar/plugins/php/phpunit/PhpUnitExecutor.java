@@ -20,20 +20,39 @@
 package org.sonar.plugins.php.phpunit;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.resources.InputFileUtils;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.php.api.Php;
+import org.sonar.plugins.php.api.PhpConstants;
 import org.sonar.plugins.php.core.AbstractPhpExecutor;
+import org.sonar.plugins.php.core.FileShards;
+import org.sonar.plugins.php.core.XmlReportMerger;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_BOOTSTRAP_OPTION;
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_CONFIGURATION_KEY;
@@ -59,6 +78,28 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
 
   private static final String XML_SUFFIX = ".xml";
 
+  private static final String TEST_FILE_SUFFIX = "Test.php";
+
+  private static final String TESTSUITES = "testsuites";
+
+  private static final String TESTSUITE = "testsuite";
+
+  private static final String EXCLUDE = "exclude";
+
+  private static final String DIRECTORY = "directory";
+
+  private static final String FILE = "file";
+
+  private static final String LOGGING = "logging";
+
+  /** Elements of a PHPUnit configuration file whose text is a path, relative to the directory of the file. */
+  private static final Collection<String> PATH_ELEMENTS = Lists.newArrayList(DIRECTORY, FILE, EXCLUDE, "includePath");
+
+  /** Attributes of a PHPUnit configuration file whose value is a path, relative to the directory of the file. */
+  private static final Collection<String> PATH_ATTRIBUTES = Lists.newArrayList("bootstrap", "printerFile", "testSuiteLoaderFile", FILE);
+
+  private static final double MILLISECONDS = 1000d;
+
   /**
    * See https://github.com/sebastianbergmann/phpunit/blob/3.6/PHPUnit/TextUI/TestRunner.php <br/>
    * '1' means there are "test" failures (=> but the process has completed) <br/>
@@ -72,6 +113,9 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
   /** The project. */
   private final Project project;
 
+  /** The PHPUnit configuration files generated for lists of test files, such as the ones of the shards. */
+  private final List<File> filesConfigurations = Lists.newArrayList();
+
   /**
    * Instantiates a new php unit executor.
    * 
@@ -87,6 +131,14 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
     this.project = project;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isEnabled() {
+    return super.isEnabled() && configuration.isDynamicAnalysisEnabled();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -97,10 +149,10 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
 
     if (configuration.getSettings().hasKey(PHPUNIT_CONFIGURATION_KEY)) {
       result.add(PHPUNIT_CONFIGURATION_OPTION + configuration.getConfiguration());
-      addExtendedOptions(result);
+      addExtendedOptions(result, configuration.getReportFile(), configuration.getCoverageReportFile());
     }
     else {
-      addExtendedOptions(result);
+      addExtendedOptions(result, configuration.getReportFile(), configuration.getCoverageReportFile());
       LOG.warn("/!\\ Please use " + PhpUnitConfiguration.PHPUNIT_CONFIGURATION_KEY
         + " to configure PHPUnit with a phpunit.xml file. Other options are deprecated and will be removed soon.");
       boolean ignoreConfigFile = configuration.isIgnoreDefaultConfiguration();
@@ -124,9 +176,10 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
 
   /**
    * @param result
-   * @param c
+   * @param reportFile
+   * @param coverageReportFile
    */
-  private void addExtendedOptions(List<String> result) {
+  private void addExtendedOptions(List<String> result, File reportFile, File coverageReportFile) {
     if (configuration.getLoader() != null) {
       result.add(PHPUNIT_LOADER_OPTION + configuration.getLoader());
     }
@@ -136,9 +189,9 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
     if (configuration.getArgumentLine() != null) {
       result.addAll(Lists.newArrayList(StringUtils.split(configuration.getArgumentLine(), ' ')));
     }
-    result.add(PHPUNIT_LOG_JUNIT_OPTION + configuration.getReportFile());
+    result.add(PHPUNIT_LOG_JUNIT_OPTION + reportFile);
     if (!configuration.shouldSkipCoverage()) {
-      result.add(PHPUNIT_COVERAGE_CLOVER_OPTION + configuration.getCoverageReportFile());
+      result.add(PHPUNIT_COVERAGE_CLOVER_OPTION + coverageReportFile);
     }
   }
 
@@ -154,6 +207,325 @@ public class PhpUnitExecutor extends AbstractPhpExecutor {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isCoverageRun() {
+    return !configuration.shouldSkipCoverage();
+  }
+
+  /**
+   * Tests are split by test file, unless a single main test class is executed.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isShardable() {
+    return StringUtils.isBlank(configuration.getMainTestClass());
+  }
+
+  /**
+   * The test files are the ones of the test suites of the PHPUnit configuration file of the project, as PHPUnit finds them:
+   * the files of the <code>directory</code> elements starting with their <code>prefix</code> and ending with their
+   * <code>suffix</code>, <code>Test.php</code> by default, and the <code>file</code> elements. Without such test suites, they
+   * are the files of the test directories ending with <code>Test.php</code>.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<File> getShardableFiles() {
+    File projectConfiguration = getProjectConfigurationFile();
+    if (projectConfiguration != null) {
+      List<File> testFiles = getTestSuiteFiles(projectConfiguration);
+      if (!testFiles.isEmpty()) {
+        return testFiles;
+      }
+      LOG.warn("No test file found in the test suites of " + projectConfiguration + ": only the files ending with " + TEST_FILE_SUFFIX
+        + " in the test directories are run by the shards");
+    }
+    List<File> testFiles = Lists.newArrayList();
+    for (File file : InputFileUtils.toFiles(project.getFileSystem().testFiles(PhpConstants.LANGUAGE_KEY))) {
+      if (file.getName().endsWith(TEST_FILE_SUFFIX)) {
+        testFiles.add(file);
+      }
+    }
+    return testFiles;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<File> getTestSuiteFiles(File projectConfiguration) {
+    Element root;
+    try {
+      root = new SAXBuilder().build(projectConfiguration).getRootElement();
+    } catch (JDOMException e) {
+      throw new SonarException("Unable to read PHPUnit configuration file " + projectConfiguration, e);
+    } catch (IOException e) {
+      throw new SonarException("Unable to read PHPUnit configuration file " + projectConfiguration, e);
+    }
+    rebasePaths(root, projectConfiguration.getAbsoluteFile().getParentFile());
+    List<String> excludes = getExcludes(root);
+    Set<File> testFiles = Sets.newLinkedHashSet();
+    for (Element testSuite : getTestSuites(root)) {
+      for (Element child : (List<Element>) testSuite.getChildren()) {
+        String path = child.getTextTrim();
+        if (StringUtils.isBlank(path)) {
+          continue;
+        }
+        if (DIRECTORY.equals(child.getName())) {
+          addDirectoryFiles(new File(path), child.getAttributeValue("prefix", ""), child.getAttributeValue("suffix", TEST_FILE_SUFFIX),
+              excludes, testFiles);
+        } else if (FILE.equals(child.getName())) {
+          testFiles.add(new File(path));
+        }
+      }
+    }
+    return Lists.newArrayList(testFiles);
+  }
+
+  private static void addDirectoryFiles(File directory, String prefix, String suffix, List<String> excludes, Set<File> testFiles) {
+    if (!directory.isDirectory()) {
+      return;
+    }
+    List<File> files = Lists.newArrayList(FileUtils.listFiles(directory, null, true));
+    Collections.sort(files);
+    for (File file : files) {
+      if (file.getName().startsWith(prefix) && file.getName().endsWith(suffix) && !isExcluded(file, excludes)) {
+        testFiles.add(file);
+      }
+    }
+  }
+
+  /**
+   * Test files are weighed with their execution time in the previous JUnit report, if any. Test files which are not in
+   * this report are given the average time.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  protected FileShards.Weigher getShardWeigher() {
+    final Map<String, Double> times = readPreviousTimes();
+    if (times.isEmpty()) {
+      return null;
+    }
+    double totalTime = 0;
+    for (Double time : times.values()) {
+      totalTime += time;
+    }
+    final double averageTime = totalTime / times.size();
+    return new FileShards.Weigher() {
+      public long weigh(File file) {
+        Double time = times.get(file.getAbsolutePath());
+        return Math.round((time == null ? averageTime : time) * MILLISECONDS) + 1;
+      }
+    };
+  }
+
+  private Map<String, Double> readPreviousTimes() {
+    Map<String, Double> times = Maps.newHashMap();
+    File report = configuration.getReportFile();
+    if (report == null || !report.isFile()) {
+      return times;
+    }
+    try {
+      for (PhpUnitTestReport fileReport : PhpUnitResultParser.readSuites(PhpUnitResultParser.readTestSuites(report))) {
+        if (fileReport.getFile() != null) {
+          String path = new File(fileReport.getFile()).getAbsolutePath();
+          Double previousTime = times.get(path);
+          times.put(path, (previousTime == null ? 0d : previousTime) + fileReport.getTime());
+        }
+      }
+    } catch (RuntimeException e) {
+      // The previous report is only a hint: shards are balanced by file size when it can not be read
+      LOG.debug("Unable to read test times from previous PHPUnit report " + report, e);
+      times.clear();
+    }
+    return times;
+  }
+
+  /**
+   * Each shard runs its own configuration file listing its test files, and writes its own JUnit and Clover reports.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<String> getShardCommandLineArguments(List<File> files, int shard) {
+    return getCommandLineArguments(files, "shard" + shard, getShardFile(configuration.getReportFile(), shard),
+        getShardFile(configuration.getCoverageReportFile(), shard));
+  }
+
+  /**
+   * Runs the given test files with a configuration file of their own, writing the coverage report to its usual file.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<String> getCommandLineArguments(List<File> files, File reportFile) {
+    return getCommandLineArguments(files, "files", reportFile, configuration.getCoverageReportFile());
+  }
+
+  private List<String> getCommandLineArguments(List<File> files, String name, File reportFile, File coverageReportFile) {
+    List<String> result = new ArrayList<String>();
+    addBasicOptions(result);
+    result.add(PHPUNIT_CONFIGURATION_OPTION + createFilesConfigurationFile(files, name));
+    addExtendedOptions(result, reportFile, coverageReportFile);
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void mergeShardReports(int shardCount) {
+    new XmlReportMerger().merge(getShardFiles(configuration.getReportFile(), shardCount), configuration.getReportFile());
+    if (!configuration.shouldSkipCoverage()) {
+      new PhpUnitCoverageMerger().merge(getShardFiles(configuration.getCoverageReportFile(), shardCount), configuration.getCoverageReportFile());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void deleteShardFiles(int shardCount) {
+    super.deleteShardFiles(shardCount);
+    for (File file : getShardFiles(configuration.getCoverageReportFile(), shardCount)) {
+      FileUtils.deleteQuietly(file);
+    }
+    for (File file : filesConfigurations) {
+      FileUtils.deleteQuietly(file);
+    }
+    filesConfigurations.clear();
+  }
+
+  /**
+   * Copies the configuration file of the project, if any, into the working directory, replacing its test suites with the given
+   * test files. The relative paths of the copy are made absolute, the files excluded from its test suites are left out
+   * and its logging is dropped, as each shard writes the reports given on its command line. Otherwise a configuration file is
+   * generated from scratch.
+   */
+  private File createFilesConfigurationFile(List<File> testFiles, String name) {
+    File projectConfiguration = getProjectConfigurationFile();
+    if (projectConfiguration == null) {
+      File generated = createPhpunitConfigurationFile(testFiles);
+      if (generated == null) {
+        throw new SonarException("Unable to generate the PHPUnit configuration file of " + name);
+      }
+      filesConfigurations.add(generated);
+      return generated;
+    }
+    File filesConfiguration = new File(configuration.createWorkingDirectory(), PHPUNIT_PREFIX + "." + name + XML_SUFFIX);
+    filesConfigurations.add(filesConfiguration);
+    Writer writer = null;
+    try {
+      Document document = new SAXBuilder().build(projectConfiguration);
+      Element root = document.getRootElement();
+      rebasePaths(root, projectConfiguration.getAbsoluteFile().getParentFile());
+      List<String> excludes = getExcludes(root);
+      root.removeChildren(LOGGING);
+      root.removeChildren(TESTSUITES);
+      root.removeChildren(TESTSUITE);
+      Element testSuite = new Element(TESTSUITE).setAttribute("name", name);
+      for (File testFile : testFiles) {
+        if (!isExcluded(testFile, excludes)) {
+          testSuite.addContent(new Element(FILE).setText(testFile.getAbsolutePath()));
+        }
+      }
+      for (String exclude : excludes) {
+        testSuite.addContent(new Element(EXCLUDE).setText(exclude));
+      }
+      root.addContent(new Element(TESTSUITES).addContent(testSuite));
+      writer = new OutputStreamWriter(new FileOutputStream(filesConfiguration), "UTF-8");
+      new XMLOutputter(Format.getPrettyFormat()).output(document, writer);
+    } catch (JDOMException e) {
+      throw new SonarException("Unable to read PHPUnit configuration file " + projectConfiguration, e);
+    } catch (IOException e) {
+      throw new SonarException("Unable to write PHPUnit configuration file " + filesConfiguration, e);
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+    return filesConfiguration;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void rebasePaths(Element element, File baseDir) {
+    for (String attribute : PATH_ATTRIBUTES) {
+      String value = element.getAttributeValue(attribute);
+      if (value != null) {
+        element.setAttribute(attribute, rebasePath(value, baseDir));
+      }
+    }
+    List<Element> children = element.getChildren();
+    if (children.isEmpty()) {
+      if (PATH_ELEMENTS.contains(element.getName()) && StringUtils.isNotBlank(element.getTextTrim())) {
+        element.setText(rebasePath(element.getTextTrim(), baseDir));
+      }
+    } else {
+      for (Element child : children) {
+        rebasePaths(child, baseDir);
+      }
+    }
+  }
+
+  private static String rebasePath(String path, File baseDir) {
+    File file = new File(path);
+    return file.isAbsolute() ? path : new File(baseDir, path).getAbsolutePath();
+  }
+
+  /**
+   * @return the paths excluded from the test suites of the given configuration
+   */
+  @SuppressWarnings("unchecked")
+  private static List<String> getExcludes(Element root) {
+    List<String> excludes = Lists.newArrayList();
+    for (Element testSuite : getTestSuites(root)) {
+      for (Element exclude : (List<Element>) testSuite.getChildren(EXCLUDE)) {
+        if (StringUtils.isNotBlank(exclude.getTextTrim())) {
+          excludes.add(exclude.getTextTrim());
+        }
+      }
+    }
+    return excludes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Element> getTestSuites(Element root) {
+    List<Element> testSuites = Lists.newArrayList(root.getChildren(TESTSUITE));
+    for (Element testSuitesElement : (List<Element>) root.getChildren(TESTSUITES)) {
+      testSuites.addAll(testSuitesElement.getChildren(TESTSUITE));
+    }
+    return testSuites;
+  }
+
+  /**
+   * PHPUnit only applies the exclusions to the directories of a test suite, not to its files.
+   */
+  private static boolean isExcluded(File testFile, List<String> excludes) {
+    String path = testFile.getAbsolutePath();
+    for (String exclude : excludes) {
+      String excludedPath = new File(exclude).getAbsolutePath();
+      if (path.equals(excludedPath) || path.startsWith(excludedPath + File.separator)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private File getProjectConfigurationFile() {
+    if (configuration.isIgnoreDefaultConfiguration() && !configuration.getSettings().hasKey(PHPUNIT_CONFIGURATION_KEY)) {
+      return null;
+    }
+    String path = configuration.getConfiguration();
+    if (StringUtils.isBlank(path)) {
+      return null;
+    }
+    File file = new File(path);
+    if (!file.isAbsolute()) {
+      file = new File(project.getFileSystem().getBasedir(), path);
+    }
+    return file.isFile() ? file : null;
+  }
+
   /**
    * @param result
    * @return phpunit configuration option followed by the generated phpunit.xml launcher file. Or the test directory if only one.
@@ -85,11 +85,22 @@ public class PhpUnitResultParser implements BatchExtension {
    * @return the test suites
    */
   protected TestSuites getTestSuites(File report) {
+    return readTestSuites(report);
+  }
+
+  /**
+   * Reads the test suites of the given JUnit report.
+   *
+   * @param report
+   *          the report
+   * @return the test suites
+   */
+  static TestSuites readTestSuites(File report) {
     InputStream inputStream = null;
     try {
       XStream xstream = new XStream();
       // Sonar 2.2 migration
-      xstream.setClassLoader(getClass().getClassLoader());
+      xstream.setClassLoader(PhpUnitResultParser.class.getClassLoader());
       xstream.aliasSystemAttribute("fileName", "class");
       xstream.processAnnotations(TestSuites.class);
       xstream.processAnnotations(TestSuite.class);
@@ -168,7 +179,7 @@ public class PhpUnitResultParser implements BatchExtension {
    *          the test suites
    * @return List<PhpUnitTestReport> A list of all test reports
    */
-  private List<PhpUnitTestReport> readSuites(TestSuites testSuites) {
+  static List<PhpUnitTestReport> readSuites(TestSuites testSuites) {
     List<PhpUnitTestReport> result = new ArrayList<PhpUnitTestReport>();
     for (TestSuite testSuite : testSuites.getTestSuites()) {
       PhpTestSuiteReader reader = new PhpTestSuiteReader();
@@ -31,6 +31,7 @@ import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.api.utils.SonarException;
 import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import static org.sonar.plugins.php.core.AbstractPhpConfiguration.DEFAULT_TIMEOUT;
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_ANALYZE_ONLY_KEY;
@@ -54,6 +55,7 @@ import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_REPORT_
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_REPORT_FILE_RELATIVE_PATH_DEFVALUE;
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_REPORT_FILE_RELATIVE_PATH_KEY;
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_REPORT_PATH_KEY;
+import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_SHARDS_KEY;
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_SKIP_KEY;
 import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_TIMEOUT_KEY;
 
@@ -119,7 +121,12 @@ import static org.sonar.plugins.php.phpunit.PhpUnitConfiguration.PHPUNIT_TIMEOUT
   @Property(key = PHPUNIT_ARGUMENT_LINE_KEY, defaultValue = "", name = "Additional arguments", project = true, global = true,
     description = "Additionnal parameters that can be passed to PHPUnit.", category = PhpUnitSensor.CATEGORY_PHP_PHP_UNIT),
   @Property(key = PHPUNIT_TIMEOUT_KEY, defaultValue = "" + DEFAULT_TIMEOUT, name = "Timeout", project = true, global = true,
-    description = "Execution of PHPUnit will be stopped after this amount of time (in minutes).", category = PhpUnitSensor.CATEGORY_PHP_PHP_UNIT)
+    description = "Execution of PHPUnit will be stopped after this amount of time (in minutes).", category = PhpUnitSensor.CATEGORY_PHP_PHP_UNIT),
+  @Property(key = PHPUNIT_SHARDS_KEY, defaultValue = "1", name = "Shards", project = true, global = true,
+    description = "Number of PHPUnit processes executed in parallel, each one on a share of the test files balanced with the "
+      + "execution times of the previous run. Coverage and test reports of the processes are merged. The test files are the ones "
+      + "of the test suites of the PHPUnit configuration file, or else the files of the test directories ending with Test.php.",
+    category = PhpUnitSensor.CATEGORY_PHP_PHP_UNIT, type = PropertyType.INTEGER)
 })
 public class PhpUnitSensor implements Sensor {
 
@@ -127,6 +134,7 @@ public class PhpUnitSensor implements Sensor {
 
   private PhpUnitConfiguration configuration;
   private PhpUnitExecutor executor;
+  private PhpToolsScheduler scheduler;
   private PhpUnitResultParser parser;
   private PhpUnitCoverageResultParser coverageParser;
   private final ProjectFileSystem filesystem;
@@ -135,11 +143,12 @@ public class PhpUnitSensor implements Sensor {
    * @param executor
    * @param parser
    */
-  public PhpUnitSensor(PhpUnitConfiguration conf, PhpUnitExecutor executor, PhpUnitResultParser parser,
-      PhpUnitCoverageResultParser coverageParser, ProjectFileSystem filesystem) {
+  public PhpUnitSensor(PhpUnitConfiguration conf, PhpUnitExecutor executor, PhpToolsScheduler scheduler,
+      PhpUnitResultParser parser, PhpUnitCoverageResultParser coverageParser, ProjectFileSystem filesystem) {
     super();
     this.configuration = conf;
     this.executor = executor;
+    this.scheduler = scheduler;
     this.parser = parser;
     this.coverageParser = coverageParser;
     this.filesystem = filesystem;
@@ -153,7 +162,7 @@ public class PhpUnitSensor implements Sensor {
       configuration.createWorkingDirectory();
 
       if (!configuration.isAnalyseOnly()) {
-        executor.execute();
+        scheduler.execute(executor);
       }
       parser.parse(configuration.getReportFile());
       if (!configuration.shouldSkipCoverage()) {
@@ -73,6 +73,7 @@ public class PhpmdConfiguration extends AbstractPhpConfiguration {
   public static final String PHPMD_LEVEL_ARGUMENT_DEFVALUE = "2";
   public static final String PHPMD_ARGUMENT_LINE_KEY = "sonar.phpPmd.argumentLine";
   public static final String PHPMD_TIMEOUT_KEY = "sonar.phpPmd.timeout";
+  public static final String PHPMD_SHARDS_KEY = "sonar.phpPmd.shards";
 
   /**
    * since 1.2
@@ -168,6 +169,14 @@ public class PhpmdConfiguration extends AbstractPhpConfiguration {
     return PHPMD_SKIP_KEY;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String getShardsKey() {
+    return PHPMD_SHARDS_KEY;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -24,8 +24,10 @@ import org.apache.commons.lang.StringUtils;
 import org.sonar.api.profiles.RulesProfile;
 import org.sonar.plugins.php.api.Php;
 import org.sonar.plugins.php.core.AbstractPhpExecutor;
+import org.sonar.plugins.php.core.PipeableExecutor;
 
 import java.io.File;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -33,16 +35,18 @@ import java.util.List;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_EXTENSIONS_OPTION;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_REPORT_FILE_OPTION;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_REPORT_FORMAT;
+import static org.sonar.plugins.php.pmd.PhpmdRuleRepository.PHPMD_REPOSITORY_KEY;
 
 /**
  * The Class PhpCheckstyleExecutor.
  */
-public class PhpmdExecutor extends AbstractPhpExecutor {
+public class PhpmdExecutor extends AbstractPhpExecutor implements PipeableExecutor {
 
   private static final String PHPMD_PATH_SEPARATOR = ",";
   private PhpmdConfiguration configuration;
   private PhpmdProfileExporter exporter;
   private RulesProfile profile;
+  private volatile List<PhpmdViolation> pipedViolations;
 
   /**
    * https://github.com/manuelpichler/phpmd/blob/master/src/main/php/PHP/PMD/TextUI/Command.php <br/>
@@ -68,11 +72,70 @@ public class PhpmdExecutor extends AbstractPhpExecutor {
    * {@inheritDoc}
    */
   @Override
-  protected List<String> getCommandLineArguments() {
-    List<String> result = new ArrayList<String>();
+  public boolean isEnabled() {
+    return super.isEnabled() && !profile.getActiveRulesByRepository(PHPMD_REPOSITORY_KEY).isEmpty();
+  }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<String> getCommandLineArguments() {
     // SONARPLUGINS-546 PhpmdExecutor: wrong dirs params
-    result.add(StringUtils.join(configuration.getSourceDirectories(), PHPMD_PATH_SEPARATOR));
+    return getCommandLineArguments(StringUtils.join(configuration.getSourceDirectories(), PHPMD_PATH_SEPARATOR), configuration.getReportFile());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public List<String> getPipedCommandLineArguments() {
+    return getCommandLineArguments(StringUtils.join(configuration.getSourceDirectories(), PHPMD_PATH_SEPARATOR), null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void parsePipedReport(Reader report) {
+    pipedViolations = new PhpmdViolationsXmlParser(report).getViolations();
+  }
+
+  /**
+   * Gets the violations parsed while PHPMD was running with a piped report.
+   *
+   * @return the violations, or null if the report has been written to the report file
+   */
+  public List<PhpmdViolation> getPipedViolations() {
+    return pipedViolations;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean isShardable() {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<String> getCommandLineArguments(List<File> files, File reportFile) {
+    return getCommandLineArguments(StringUtils.join(files, PHPMD_PATH_SEPARATOR), reportFile);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String getAnalysisSettings() {
+    return StringUtils.join(new Object[] {getRulesetKey(profile, exporter), configuration.getRulesets(), configuration.getArgumentLine(),
+      StringUtils.join(getPhpLanguage().getFileSuffixes(), ",")}, '\n');
+  }
+
+  private List<String> getCommandLineArguments(String inputPaths, File reportFile) {
+    List<String> result = new ArrayList<String>();
+    result.add(inputPaths);
 
     result.add(PHPMD_REPORT_FORMAT);
     File ruleset = getRuleset(configuration, profile, exporter);
@@ -81,8 +144,11 @@ public class PhpmdExecutor extends AbstractPhpExecutor {
     } else {
       result.add(configuration.getRulesets());
     }
-    result.add(PHPMD_REPORT_FILE_OPTION);
-    result.add(configuration.getReportFile().getAbsolutePath());
+    // Without report file, the report is printed on the standard output
+    if (reportFile != null) {
+      result.add(PHPMD_REPORT_FILE_OPTION);
+      result.add(reportFile.getAbsolutePath());
+    }
 
     result.add(PHPMD_EXTENSIONS_OPTION);
     result.add(StringUtils.join(getPhpLanguage().getFileSuffixes(), ","));
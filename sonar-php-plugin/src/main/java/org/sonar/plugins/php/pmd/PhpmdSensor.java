@@ -35,6 +35,7 @@ import org.sonar.api.rules.Violation;
 import org.sonar.api.scan.filesystem.FileQuery;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -51,6 +52,7 @@ import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_REPORT_FILE_NAM
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_REPORT_FILE_RELATIVE_PATH_DEFVALUE;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_REPORT_FILE_RELATIVE_PATH_KEY;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_REPORT_PATH_KEY;
+import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_SHARDS_KEY;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_SKIP_KEY;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_TIMEOUT_KEY;
 import static org.sonar.plugins.php.pmd.PhpmdRuleRepository.PHPMD_REPOSITORY_KEY;
@@ -83,6 +85,9 @@ import static org.sonar.plugins.php.pmd.PhpmdRuleRepository.PHPMD_REPOSITORY_KEY
     description = "Additionnal parameters that can be passed to PHPMD.", category = PhpmdSensor.CATEGORY_PHP_PHPMD),
   @Property(key = PHPMD_TIMEOUT_KEY, defaultValue = "" + DEFAULT_TIMEOUT, name = "Timeout", project = true, global = true,
     description = "Execution of PHPMD will be stopped after this amount of time (in minutes).", category = PhpmdSensor.CATEGORY_PHP_PHPMD),
+  @Property(key = PHPMD_SHARDS_KEY, defaultValue = "1", name = "Shards", project = true, global = true,
+    description = "Number of PHPMD processes executed in parallel, each one on a share of the files of similar size.",
+    category = PhpmdSensor.CATEGORY_PHP_PHPMD, type = PropertyType.INTEGER),
   @Property(key = PHPMD_CUSTOM_RULES_PROP_KEY,
     defaultValue = "", name = "PHPMD custom rules",
     description = "XML description of PHPMD custom rules", type = PropertyType.TEXT,
@@ -104,6 +109,9 @@ public class PhpmdSensor implements Sensor {
   /** The plugin configuration. */
   private PhpmdExecutor executor;
 
+  /** Launches the external tools. */
+  private PhpToolsScheduler scheduler;
+
   /** The rule finder */
   private RuleFinder ruleFinder;
 
@@ -115,12 +123,13 @@ public class PhpmdSensor implements Sensor {
    * @param rulesManager
    *          the rules manager
    */
-  public PhpmdSensor(PhpmdConfiguration conf, PhpmdExecutor executor, RulesProfile profile, RuleFinder ruleFinder,
-                     ProjectFileSystem filesystem) {
+  public PhpmdSensor(PhpmdConfiguration conf, PhpmdExecutor executor, PhpToolsScheduler scheduler, RulesProfile profile,
+                     RuleFinder ruleFinder, ProjectFileSystem filesystem) {
     super();
     this.configuration = conf;
     this.profile = profile;
     this.executor = executor;
+    this.scheduler = scheduler;
     this.ruleFinder = ruleFinder;
     this.filesystem = filesystem;
   }
@@ -131,11 +140,14 @@ public class PhpmdSensor implements Sensor {
   public void analyse(Project project, SensorContext context) {
     if (!configuration.isAnalyseOnly()) {
       configuration.createWorkingDirectory();
-      executor.execute();
+      scheduler.execute(executor);
+    }
+    List<PhpmdViolation> violations = configuration.isAnalyseOnly() ? null : executor.getPipedViolations();
+    if (violations == null) {
+      File report = configuration.getReportFile();
+      PhpmdViolationsXmlParser reportParser = new PhpmdViolationsXmlParser(report);
+      violations = reportParser.getViolations();
     }
-    File report = configuration.getReportFile();
-    PhpmdViolationsXmlParser reportParser = new PhpmdViolationsXmlParser(report);
-    List<PhpmdViolation> violations = reportParser.getViolations();
     List<Violation> contextViolations = new ArrayList<Violation>();
     for (PhpmdViolation violation : violations) {
       Rule rule = ruleFinder.findByKey(PHPMD_REPOSITORY_KEY, violation.getRuleKey());
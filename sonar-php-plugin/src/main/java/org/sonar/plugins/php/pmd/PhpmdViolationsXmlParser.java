@@ -30,6 +30,7 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 
 import java.io.File;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -55,6 +56,8 @@ public class PhpmdViolationsXmlParser {
 
   private final File report;
 
+  private final Reader reportReader;
+
   /**
    * Instantiates a new pmd violations xml parser.
    * 
@@ -62,12 +65,23 @@ public class PhpmdViolationsXmlParser {
    */
   public PhpmdViolationsXmlParser(File report) {
     this.report = report;
+    this.reportReader = null;
     LOG.debug("Report file for Phpms is " + report);
     if (report == null) {
       throw new SonarException("URL associated to phpmd report file is null, check that report is existant");
     }
   }
 
+  /**
+   * Instantiates a parser reading the report as it comes, for instance while PHPMD is still printing it.
+   *
+   * @param reportReader
+   */
+  public PhpmdViolationsXmlParser(Reader reportReader) {
+    this.report = null;
+    this.reportReader = reportReader;
+  }
+
   /**
    * @return
    */
@@ -77,7 +91,7 @@ public class PhpmdViolationsXmlParser {
     try {
       SMInputFactory inputFactory = new SMInputFactory(XMLInputFactory.newInstance());
       // <pmd>
-      SMInputCursor rootNodeCursor = inputFactory.rootElementCursor(report).advance();
+      SMInputCursor rootNodeCursor = (report != null ? inputFactory.rootElementCursor(report) : inputFactory.rootElementCursor(reportReader)).advance();
       // <file>
       SMInputCursor fileNodeCursor = rootNodeCursor.childElementCursor(FILE_NODE_NAME).advance();
       while (fileNodeCursor.asEvent() != null) {
@@ -26,6 +26,7 @@ import org.sonar.api.utils.SonarException;
 import javax.xml.stream.XMLStreamException;
 
 import java.io.File;
+import java.io.StringReader;
 import java.net.URISyntaxException;
 import java.util.List;
 
@@ -44,6 +45,15 @@ public class PhpCodeSnifferViolationsXmlParserTest {
     assertEquals(violations.size(), 2);
   }
 
+  @Test
+  public void shouldReturnViolationsFromReader() throws Exception {
+    PhpCodeSnifferViolationsXmlParser parser = new PhpCodeSnifferViolationsXmlParser();
+    String reportFile = "/org/sonar/plugins/php/codesniffer/violations/parser/codesniffer-simple-result.xml";
+    String report = FileUtils.readFileToString(FileUtils.toFile(getClass().getResource(reportFile)), "UTF-8");
+    List<PhpCodeSnifferViolation> violations = parser.getViolations(new StringReader(report));
+    assertEquals(violations.size(), 2);
+  }
+
   @Test(expected = SonarException.class)
   public void shouldThrowExceptionOnNonExistingFile() throws URISyntaxException, XMLStreamException {
     PhpCodeSnifferViolationsXmlParser parser = new PhpCodeSnifferViolationsXmlParser();
@@ -32,6 +32,7 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.MockUtils;
 import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.util.ArrayList;
 
@@ -99,7 +100,7 @@ public class PhpCodesnifferSensorTest {
 
     when(filesystem.mainFiles(PhpConstants.LANGUAGE_KEY)).thenReturn(ImmutableList.<InputFile>of(mock(InputFile.class)));
 
-    return new PhpCodeSnifferSensor(conf, executor, profile, parser, ruleFinder, filesystem);
+    return new PhpCodeSnifferSensor(conf, executor, mock(PhpToolsScheduler.class), profile, parser, ruleFinder, filesystem);
   }
 
   protected RulesProfile createRulesProfile() {
@@ -0,0 +1,101 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sonar.plugins.php.duplications.PhpTokenProducer;
+import org.sonar.plugins.php.duplications.internal.Token;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CpdTokenListenerTest {
+
+  private static final String[] FIXTURES = {"/org/sonar/plugins/php/duplications/SmallFile.php",
+    "/org/sonar/plugins/php/duplications/BigFile.php", "/Mail.php", "/Math2.php", "/Math3.php", "/Math4.php"};
+
+  private final PhpSymbolTable symbols = new PhpSymbolTable();
+
+  @Test
+  public void shouldNormalizeFixturesAsTokenProducer() throws Exception {
+    for (String fixture : FIXTURES) {
+      String content = FileUtils.readFileToString(new File(getClass().getResource(fixture).toURI()), "UTF-8");
+
+      assertThat(listenerTokens(content)).as(fixture).isEqualTo(producerTokens(content));
+    }
+  }
+
+  @Test
+  public void shouldNormalizeLiteralsAndSigns() {
+    String code = "<?php\nuse Foo\\Bar;\n$a = -1 + - 2.5e3 + 'x' . \"y\\\"\" . <<<EOT\ntext\nEOT;\n$b = 0x1F-.5; /* c */ # d\n";
+
+    assertThat(listenerTokens(code)).isEqualTo(producerTokens(code));
+  }
+
+  @Test
+  public void shouldFollowPhpWhereTokenProducerDoesNot() {
+    // Single quoted strings may span several lines
+    assertThat(listenerTokens("$a = 'x\ny';")).isEqualTo("$:1 a:1 =:1 $CHARS:1 ;:2");
+    // Numeric literal separators and upper case binary prefixes
+    assertThat(listenerTokens("1_000 + 0B101")).isEqualTo("$NUMBER:1 +:1 $NUMBER:1");
+    // Names made of any character above ASCII
+    assertThat(listenerTokens("$\u00e9t\u00e9 = \u65e5\u672c;")).isEqualTo("$:1 \u00e9t\u00e9:1 =:1 \u65e5\u672c:1 ;:1");
+    // The closing tag ends one-line comments
+    assertThat(listenerTokens("// comment ?>text")).isEqualTo("?:1 >:1 text:1");
+    // The byte order mark is skipped
+    assertThat(listenerTokens("\uFEFFecho")).isEqualTo("echo:1");
+    // Heredoc strings end on a line holding nothing but their label
+    assertThat(listenerTokens("<<<EOT\nEOTX\nEOT;\n")).isEqualTo("$CHARS:1 ;:3");
+  }
+
+  private String listenerTokens(String code) {
+    final StringBuilder result = new StringBuilder();
+    CpdTokenListener listener = new CpdTokenListener(symbols);
+    PhpSource source = new PhpSource(new File("test.php"), code.toCharArray());
+    listener.startFile(source, new PhpCpdTokenVisitor() {
+      public void visitCpdToken(int symbol, int line) {
+        result.append(symbols.getSymbol(symbol)).append(':').append(line).append(' ');
+      }
+    });
+    new PhpTokenizer().tokenize(source, new PhpTokens(), listener);
+    listener.endFile();
+    return result.toString().trim();
+  }
+
+  /**
+   * Tokens of {@link PhpTokenProducer}, without the <code>use</code> directives as CPD used to skip them.
+   */
+  private static String producerTokens(String code) {
+    StringBuilder result = new StringBuilder();
+    boolean useDirective = false;
+    for (Token token : PhpTokenProducer.build().chunk(code)) {
+      if ("use".equalsIgnoreCase(token.getValue())) {
+        useDirective = true;
+      } else if (useDirective) {
+        useDirective = !";".equals(token.getValue());
+      } else {
+        result.append(token.getValue()).append(':').append(token.getLine()).append(' ');
+      }
+    }
+    return result.toString().trim();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FileManifestTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldDetectChangedFiles() throws Exception {
+    File unchanged = temp.newFile("a.php");
+    File changed = temp.newFile("b.php");
+    FileUtils.writeStringToFile(unchanged, "<?php echo 'a';");
+    FileUtils.writeStringToFile(changed, "<?php echo 'b';");
+    FileManifest manifest = new FileManifest(new File(temp.getRoot(), "manifest.properties"));
+    manifest.save("settings", FileManifest.digest(Arrays.asList(unchanged, changed)));
+
+    // Same size, and most likely same modification time
+    FileUtils.writeStringToFile(changed, "<?php echo 'c';");
+    Map<String, String> previous = manifest.load("settings");
+    Map<String, String> current = FileManifest.digest(Arrays.asList(unchanged, changed));
+
+    assertThat(previous).hasSize(2);
+    assertThat(current.get(unchanged.getAbsolutePath())).isEqualTo(previous.get(unchanged.getAbsolutePath()));
+    assertThat(current.get(changed.getAbsolutePath())).isNotEqualTo(previous.get(changed.getAbsolutePath()));
+  }
+
+  @Test
+  public void shouldIgnoreManifestOfOtherSettings() throws Exception {
+    File file = temp.newFile("a.php");
+    FileManifest manifest = new FileManifest(new File(temp.getRoot(), "manifest.properties"));
+    manifest.save("settings", FileManifest.digest(Arrays.asList(file)));
+
+    assertThat(manifest.load("other settings")).isNull();
+    manifest.delete();
+    assertThat(manifest.load("settings")).isNull();
+  }
+}
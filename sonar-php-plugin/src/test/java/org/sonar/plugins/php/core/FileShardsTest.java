@@ -0,0 +1,63 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FileShardsTest {
+
+  private static final FileShards.Weigher NAME_AS_WEIGHT = new FileShards.Weigher() {
+    public long weigh(File file) {
+      return Long.parseLong(file.getName());
+    }
+  };
+
+  @Test
+  public void shouldBalanceShardsByWeight() {
+    List<File> files = files("100", "5", "70", "30", "30", "1", "60");
+
+    List<List<File>> shards = FileShards.split(files, 3, NAME_AS_WEIGHT);
+
+    assertThat(shards).hasSize(3);
+    assertThat(shards.get(0)).containsExactly(new File("100"));
+    assertThat(shards.get(1)).containsExactly(new File("70"), new File("30"));
+    assertThat(shards.get(2)).containsExactly(new File("5"), new File("30"), new File("1"), new File("60"));
+  }
+
+  @Test
+  public void shouldNotCreateEmptyShards() {
+    assertThat(FileShards.split(files("1", "2"), 5, NAME_AS_WEIGHT)).hasSize(2);
+    assertThat(FileShards.split(files(), 5, NAME_AS_WEIGHT)).isEmpty();
+  }
+
+  private static List<File> files(String... names) {
+    File[] files = new File[names.length];
+    for (int i = 0; i < names.length; i++) {
+      files[i] = new File(names[i]);
+    }
+    return Arrays.asList(files);
+  }
+}
@@ -19,16 +19,16 @@
  */
 package org.sonar.plugins.php.core;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.checks.NoSonarFilter;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.*;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.api.PhpConstants;
-import org.sonar.squid.measures.Metric;
-import org.sonar.squid.text.Source;
 import org.sonar.test.TestUtils;
 
 import java.io.File;
@@ -44,13 +44,15 @@ import static org.mockito.Mockito.when;
 
 public class NoSonarAndCommentedOutLocSensorTest {
 
+  private final PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings());
+
   /*
   @Test
   public void testAnalyse() {
     NoSonarFilter noSonarFilter = new NoSonarFilter();
     ModuleFileSystem filesystem = mock(ModuleFileSystem.class);
 
-    NoSonarAndCommentedOutLocSensor sensor = new NoSonarAndCommentedOutLocSensor(filesystem, noSonarFilter);
+    NoSonarAndCommentedOutLocSensor sensor = new NoSonarAndCommentedOutLocSensor(filesystem, noSonarFilter, tokenPass);
     SensorContext context = mock(SensorContext.class);
     Project project = getMockProject();
     sensor.analyse(project, context);
@@ -66,7 +68,7 @@ public class NoSonarAndCommentedOutLocSensorTest {
     NoSonarFilter noSonarFilter = new NoSonarFilter();
     ModuleFileSystem filesystem = mock(ModuleFileSystem.class);
 
-    NoSonarAndCommentedOutLocSensor sensor = new NoSonarAndCommentedOutLocSensor(filesystem, noSonarFilter);
+    NoSonarAndCommentedOutLocSensor sensor = new NoSonarAndCommentedOutLocSensor(filesystem, noSonarFilter, tokenPass);
     SensorContext context = mock(SensorContext.class);
     Project project = getMockProject();
     when(project.getLanguageKey()).thenReturn("java");
@@ -80,7 +82,7 @@ public class NoSonarAndCommentedOutLocSensorTest {
     NoSonarFilter noSonarFilter = new NoSonarFilter();
     ModuleFileSystem filesystem = mock(ModuleFileSystem.class);
 
-    NoSonarAndCommentedOutLocSensor sensor = new NoSonarAndCommentedOutLocSensor(filesystem, noSonarFilter);
+    NoSonarAndCommentedOutLocSensor sensor = new NoSonarAndCommentedOutLocSensor(filesystem, noSonarFilter, tokenPass);
     SensorContext context = mock(SensorContext.class);
     Project project = getMockProject();
 
@@ -96,42 +98,42 @@ public class NoSonarAndCommentedOutLocSensorTest {
   }
 
   @Test
-  public void testAnalyseSourceCode() {
+  public void testAnalyseSourceCode() throws Exception {
     File file = new File(this.getClass().getResource("/Mail.php").getPath());
-    Source source = NoSonarAndCommentedOutLocSensor.analyseSourceCode(file);
-    assertEquals(1, source.getNoSonarTagLines().size());
-    assertEquals(17, (int) source.getNoSonarTagLines().iterator().next());
+    PhpFileMetrics metrics = tokenPass.get(file);
+    assertEquals(1, metrics.getNoSonarLines().size());
+    assertEquals(17, (int) metrics.getNoSonarLines().iterator().next());
 
-    assertEquals(9, source.getMeasure(Metric.COMMENTED_OUT_CODE_LINES));
+    assertEquals(9, metrics.getCommentedOutCodeLines());
   }
 
   @Test
-  public void testAnalyseSourceCodeWithRegions() {
+  public void testAnalyseSourceCodeWithRegions() throws Exception {
     File file = new File(this.getClass().getResource("/Math2.php").getPath());
-    Source source = NoSonarAndCommentedOutLocSensor.analyseSourceCode(file);
-    assertEquals(1, source.getNoSonarTagLines().size());
-    assertEquals(126, (int) source.getNoSonarTagLines().iterator().next());
+    PhpFileMetrics metrics = tokenPass.get(file);
+    assertEquals(1, metrics.getNoSonarLines().size());
+    assertEquals(126, (int) metrics.getNoSonarLines().iterator().next());
 
-    assertEquals(3, source.getMeasure(Metric.COMMENTED_OUT_CODE_LINES));
+    assertEquals(3, metrics.getCommentedOutCodeLines());
   }
 
   @Test
-  public void testAnalyseSourceCodeWithNoNoSonar() {
+  public void testAnalyseSourceCodeWithNoNoSonar() throws Exception {
     File file = new File(this.getClass().getResource("/Math3.php").getPath());
-    Source source = NoSonarAndCommentedOutLocSensor.analyseSourceCode(file);
-    assertEquals(0, source.getNoSonarTagLines().size());
-    assertEquals(5, source.getMeasure(Metric.COMMENTED_OUT_CODE_LINES));
+    PhpFileMetrics metrics = tokenPass.get(file);
+    assertEquals(0, metrics.getNoSonarLines().size());
+    assertEquals(5, metrics.getCommentedOutCodeLines());
   }
 
   // TEST for SONARPLUGINS-662
   @Test
-  public void testAnalyseSourceCodeWithMultiLineString() {
+  public void testAnalyseSourceCodeWithMultiLineString() throws Exception {
     File file = new File(this.getClass().getResource("/Math4.php").getPath());
-    Source source = NoSonarAndCommentedOutLocSensor.analyseSourceCode(file);
-    assertEquals(1, source.getNoSonarTagLines().size());
-    assertEquals(91, (int) source.getNoSonarTagLines().iterator().next());
+    PhpFileMetrics metrics = tokenPass.get(file);
+    assertEquals(1, metrics.getNoSonarLines().size());
+    assertEquals(91, (int) metrics.getNoSonarLines().iterator().next());
 
-    assertEquals(5, source.getMeasure(Metric.COMMENTED_OUT_CODE_LINES));
+    assertEquals(5, metrics.getCommentedOutCodeLines());
   }
 
   /**
@@ -0,0 +1,76 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PharCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File cacheDir;
+  private URL pharURL;
+
+  @Before
+  public void init() throws Exception {
+    cacheDir = temp.newFolder("cache");
+    File embedded = temp.newFile("tool.phar");
+    FileUtils.writeStringToFile(embedded, "<?php echo 'tool';");
+    pharURL = embedded.toURI().toURL();
+  }
+
+  @Test
+  public void shouldExtractOnceInContentAddressedDirectory() throws Exception {
+    PharCache cache = new PharCache(cacheDir);
+
+    File phar = cache.get(pharURL, "tool.phar");
+
+    assertThat(phar.getName()).isEqualTo("tool.phar");
+    assertThat(phar.getParentFile().getName()).hasSize(64);
+    assertThat(FileUtils.readFileToString(phar)).isEqualTo("<?php echo 'tool';");
+    assertThat(phar.getParentFile().list()).containsOnly("tool.phar");
+
+    long lastModified = phar.lastModified();
+    assertThat(new PharCache(cacheDir).get(pharURL, "tool.phar")).isEqualTo(phar);
+    assertThat(phar.lastModified()).isEqualTo(lastModified);
+  }
+
+  @Test
+  public void shouldExtractAgainCorruptedArchive() throws Exception {
+    PharCache cache = new PharCache(cacheDir);
+    File phar = cache.get(pharURL, "tool.phar");
+
+    FileUtils.writeStringToFile(phar, "corrupted");
+    phar.setLastModified(phar.lastModified() - 10000);
+
+    assertThat(cache.get(pharURL, "tool.phar")).isEqualTo(phar);
+    assertThat(FileUtils.readFileToString(phar)).isEqualTo("<?php echo 'tool';");
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.sonar.squid.recognizer.CodeRecognizer;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+public class PhpCodeRecognizerTest {
+
+  private static final double SENSITIVITY = 0.9;
+  private static final String[] FILES = {"/Mail.php", "/Math2.php", "/Math3.php", "/Math4.php",
+    "/org/sonar/plugins/php/duplications/BigFile.php"};
+
+  private final PhpCodeRecognizer recognizer = new PhpCodeRecognizer(SENSITIVITY);
+  private final CodeRecognizer squidRecognizer = new CodeRecognizer(SENSITIVITY, new PhpLanguageFootprint());
+
+  @Test
+  public void shouldRecognizeCode() {
+    assertThat(recognizer.isLineOfCode("$a = foo($b);")).isTrue();
+    assertThat(recognizer.isLineOfCode("for($i = 0; $i < 10; $i++)")).isTrue();
+    assertThat(recognizer.isLineOfCode("if ($a && $b) {")).isTrue();
+    assertThat(recognizer.isLineOfCode("This is a regular comment")).isFalse();
+    assertThat(recognizer.isLineOfCode("@param string $name the name")).isFalse();
+  }
+
+  @Test
+  public void shouldMatchSquidRecognizer() {
+    assertSameRecognition(Arrays.asList("", " ", "*/", "}", "  } */", "{ // }", "foo; /", "function foo() {", "return $a;",
+      "returns the value", "(return)", "return,", "$a||$b", "$a || $b", "a&&b && c", "+++", "++ ++", "$i++; $j++;", "for ( $i",
+      "for(for(", "else { try {", "} catch ($e)", "fooBar", "FooBar", "foo_bar", "été", "éÉ", "use Foo\\Bar;", "final final",
+      "class Foo extends Bar implements Baz", "// if(true) echo 'NOSONAR';", "\t\tnew\tFoo()", "switch($a){"));
+  }
+
+  @Test
+  public void shouldMatchSquidRecognizerOnSources() throws Exception {
+    for (String file : FILES) {
+      assertSameRecognition(FileUtils.readLines(new File(getClass().getResource(file).toURI()), "UTF-8"));
+    }
+  }
+
+  private void assertSameRecognition(List<String> lines) {
+    for (String line : lines) {
+      assertThat(recognizer.recognition(line)).as(line).isEqualTo(squidRecognizer.recognition(line), delta(1e-9));
+      assertThat(recognizer.isLineOfCode(line)).as(line).isEqualTo(squidRecognizer.isLineOfCode(line));
+    }
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpDigestTest {
+
+  @Test
+  public void testToHex() {
+    assertThat(PhpDigest.toHex(new byte[] {0, 15, (byte) 0xAB, (byte) 0xFF})).isEqualTo("000fabff");
+  }
+
+  @Test
+  public void shouldDigestStringsAndStreamsAlike() throws Exception {
+    String expected = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    assertThat(PhpDigest.sha256Hex("abc")).isEqualTo(expected);
+    assertThat(PhpDigest.sha256Hex(new ByteArrayInputStream("abc".getBytes("UTF-8")))).isEqualTo(expected);
+  }
+}
@@ -20,48 +20,137 @@
 package org.sonar.plugins.php.core;
 
 import com.google.common.base.Charsets;
-import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.FileLinesContext;
 import org.sonar.api.measures.FileLinesContextFactory;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.InputFileUtils;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.resources.Resource;
+import org.sonar.plugins.php.api.PhpConstants;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class PhpLexerSensorTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private final PhpParserConfiguration conf = PhpParserConfiguration.builder()
       .setCharset(Charsets.UTF_8)
       .build();
 
   @Test
-  public void computeLinesMetricsOnRealFile() throws URISyntaxException {
-    PhpLexerSensor sensor = new PhpLexerSensor(mock(FileLinesContextFactory.class));
-    final Set<Integer> linesOfCode = Sets.newHashSet();
-    final Set<Integer> linesOfComments = Sets.newHashSet();
-    sensor.computePerLineMetrics(new File(this.getClass().getResource("/Math2.php").toURI()), Charsets.UTF_8, 212, mock(FileLinesContext.class), linesOfCode, linesOfComments);
+  public void computeLinesMetricsOnRealFile() throws URISyntaxException, IOException {
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings());
+    PhpFileMetrics metrics = tokenPass.get(new File(this.getClass().getResource("/Math2.php").toURI()));
+    assertThat(metrics.getLineCount()).isEqualTo(211);
+    BitSet linesOfCode = metrics.getLinesOfCode();
+    BitSet linesOfComments = metrics.getLinesOfComments();
 
-    assertThat(linesOfCode).contains(1);
-    assertThat(linesOfComments).excludes(1);
+    assertThat(linesOfCode.get(1)).isTrue();
+    assertThat(linesOfComments.get(1)).isFalse();
 
-    assertThat(linesOfCode).excludes(2);
-    assertThat(linesOfComments).contains(2);
+    assertThat(linesOfCode.get(2)).isFalse();
+    assertThat(linesOfComments.get(2)).isTrue();
 
-    assertThat(linesOfCode).excludes(3);
-    assertThat(linesOfComments).contains(3);
+    assertThat(linesOfCode.get(3)).isFalse();
+    assertThat(linesOfComments.get(3)).isTrue();
 
     // Last line of comment
-    assertThat(linesOfCode).excludes(43);
-    assertThat(linesOfComments).contains(43);
+    assertThat(linesOfCode.get(43)).isFalse();
+    assertThat(linesOfComments.get(43)).isTrue();
 
     // Blank line
-    assertThat(linesOfCode).excludes(44);
-    assertThat(linesOfComments).excludes(44);
+    assertThat(linesOfCode.get(44)).isFalse();
+    assertThat(linesOfComments.get(44)).isFalse();
+
+  }
+
+  @Test
+  public void computeCommentLinesWithAnyLineTerminator() throws IOException {
+    File file = temp.newFile("comments.php");
+    FileUtils.writeStringToFile(file, "<?php /* a\r\nb\rc\nd */\n\n$a = 1; // e\n", "UTF-8");
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024), new Settings());
+    PhpFileMetrics metrics = tokenPass.get(file);
+
+    assertThat(metrics.getLinesOfComments().toString()).isEqualTo("{1, 2, 3, 4}");
+    assertThat(metrics.getLinesOfCode().toString()).isEqualTo("{1, 6}");
+  }
+
+  @Test
+  public void saveSameMetricsWithSeveralThreads() throws Exception {
+    File dir = new File(this.getClass().getResource("/Math2.php").toURI()).getParentFile();
+    List<File> files = Arrays.asList(new File(dir, "Mail.php"), new File(dir, "Math2.php"), new File(dir, "Math3.php"), new File(dir, "Math4.php"));
+    Project project = mock(Project.class);
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(project.getFileSystem()).thenReturn(fileSystem);
+    when(fileSystem.getSourceDirs()).thenReturn(Arrays.asList(dir));
+    when(fileSystem.mainFiles(PhpConstants.LANGUAGE_KEY)).thenReturn(InputFileUtils.create(dir, files));
+
+    SensorContext sequential = analyse(project, 1);
+    SensorContext parallel = analyse(project, 3);
+
+    for (File file : files) {
+      org.sonar.api.resources.File resource = org.sonar.api.resources.File.fromIOFile(file, project);
+      for (Metric metric : Arrays.asList(CoreMetrics.LINES, CoreMetrics.NCLOC, CoreMetrics.COMMENT_LINES)) {
+        ArgumentCaptor<Double> expected = ArgumentCaptor.forClass(Double.class);
+        verify(sequential).saveMeasure(eq(resource), eq(metric), expected.capture());
+        verify(parallel).saveMeasure(resource, metric, expected.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void saveApproximatedFiles() throws Exception {
+    File file = temp.newFile("minified.php");
+    StringBuilder source = new StringBuilder("<?php $a = 1;");
+    for (int i = 0; i < 3000; i++) {
+      source.append("'\"/*");
+    }
+    FileUtils.writeStringToFile(file, source.toString(), "UTF-8");
+    Project project = mock(Project.class);
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(project.getFileSystem()).thenReturn(fileSystem);
+    when(fileSystem.getSourceDirs()).thenReturn(Arrays.asList(temp.getRoot()));
+    when(fileSystem.mainFiles(PhpConstants.LANGUAGE_KEY)).thenReturn(InputFileUtils.create(temp.getRoot(), Arrays.asList(file)));
+
+    SensorContext context = analyse(project, 1);
+
+    org.sonar.api.resources.File resource = org.sonar.api.resources.File.fromIOFile(file, project);
+    verify(context).saveMeasure(resource, PhpToolsMetrics.APPROXIMATED_FILES, 1.0);
+    verify(context).saveMeasure(resource, CoreMetrics.NCLOC, 1.0);
+  }
 
+  private SensorContext analyse(Project project, int threads) {
+    Settings settings = new Settings();
+    settings.setProperty(PhpTokenPass.THREADS_KEY, threads);
+    FileLinesContextFactory fileLinesContextFactory = mock(FileLinesContextFactory.class);
+    when(fileLinesContextFactory.createFor(any(Resource.class))).thenReturn(mock(FileLinesContext.class));
+    SensorContext context = mock(SensorContext.class);
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), settings);
+    new PhpLexerSensor(fileLinesContextFactory, tokenPass).analyse(project, context);
+    return context;
   }
 
 }
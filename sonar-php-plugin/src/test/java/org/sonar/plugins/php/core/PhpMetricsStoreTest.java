@@ -0,0 +1,100 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpMetricsStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private PhpFileMetrics newMetrics(File file) {
+    PhpFileMetrics metrics = new PhpFileMetrics(file, 12);
+    metrics.getLinesOfCode().set(1, 4);
+    metrics.getLinesOfCode().set(7);
+    metrics.getLinesOfComments().set(5, 12);
+    metrics.addNoSonarLine(7);
+    metrics.addCommentedOutCodeLine();
+    metrics.addCommentedOutCodeLine();
+    return metrics;
+  }
+
+  @Test
+  public void shouldRestoreSavedMetrics() throws Exception {
+    File file = new File("a.php");
+    new PhpMetricsStore(temp.getRoot(), "1.0").save(ImmutableMap.of("hash", newMetrics(file)));
+
+    PhpMetricsStore store = new PhpMetricsStore(temp.getRoot(), "1.0");
+    PhpFileMetrics metrics = store.get(file, "hash");
+
+    assertThat(metrics.getFile()).isEqualTo(file);
+    assertThat(metrics.getLineCount()).isEqualTo(12);
+    assertThat(metrics.getLinesOfCode().toString()).isEqualTo("{1, 2, 3, 7}");
+    assertThat(metrics.getLinesOfComments().toString()).isEqualTo("{5, 6, 7, 8, 9, 10, 11}");
+    assertThat(metrics.getNoSonarLines()).containsOnly(7);
+    assertThat(metrics.getCommentedOutCodeLines()).isEqualTo(2);
+    assertThat(metrics.isTokenized()).isFalse();
+    assertThat(store.get(file, "other")).isNull();
+    store.close();
+  }
+
+  @Test
+  public void shouldIgnoreStoreOfOtherVersion() throws Exception {
+    new PhpMetricsStore(temp.getRoot(), "1.0").save(ImmutableMap.of("hash", newMetrics(new File("a.php"))));
+
+    assertThat(new PhpMetricsStore(temp.getRoot(), "1.1").get(new File("a.php"), "hash")).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreCorruptedIndex() throws Exception {
+    new PhpMetricsStore(temp.getRoot(), "1.0").save(ImmutableMap.of("hash", newMetrics(new File("a.php"))));
+    File index = new File(temp.getRoot(), PhpMetricsStore.INDEX_FILE_NAME);
+    byte[] bytes = FileUtils.readFileToByteArray(index);
+    // Offset of the record, before its length, its checksum and the checksum of the index
+    bytes[bytes.length - 21] ^= 1;
+    FileUtils.writeByteArrayToFile(index, bytes);
+
+    assertThat(new PhpMetricsStore(temp.getRoot(), "1.0").get(new File("a.php"), "hash")).isNull();
+  }
+
+  @Test
+  public void shouldIgnoreCorruptedRecord() throws Exception {
+    new PhpMetricsStore(temp.getRoot(), "1.0").save(ImmutableMap.of("hash", newMetrics(new File("a.php"))));
+    RandomAccessFile data = new RandomAccessFile(new File(temp.getRoot(), PhpMetricsStore.DATA_FILE_NAME), "rw");
+    try {
+      data.seek(3);
+      data.write(42);
+    } finally {
+      data.close();
+    }
+
+    assertThat(new PhpMetricsStore(temp.getRoot(), "1.0").get(new File("a.php"), "hash")).isNull();
+  }
+}
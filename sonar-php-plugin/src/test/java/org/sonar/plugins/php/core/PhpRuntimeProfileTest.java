@@ -0,0 +1,69 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpRuntimeProfileTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldReadPhpInterpreter() throws Exception {
+    File env = temp.newFile("phpmd");
+    FileUtils.writeStringToFile(env, "#!/usr/bin/env php\n<?php\n");
+    File direct = temp.newFile("phpcs");
+    FileUtils.writeStringToFile(direct, "#!/usr/local/bin/php5 -q\n<?php\n");
+
+    assertThat(PhpRuntimeProfile.readInterpreter(env)).containsExactly("php");
+    assertThat(PhpRuntimeProfile.readInterpreter(direct)).containsExactly("/usr/local/bin/php5", "-q");
+  }
+
+  @Test
+  public void shouldNotReadOtherInterpreters() throws Exception {
+    File shell = temp.newFile("phpunit");
+    FileUtils.writeStringToFile(shell, "#!/bin/sh\nexec php phpunit.phar \"$@\"\n");
+    File batch = temp.newFile("phpunit.bat");
+    FileUtils.writeStringToFile(batch, "@echo off\r\n");
+
+    assertThat(PhpRuntimeProfile.readInterpreter(shell)).isNull();
+    assertThat(PhpRuntimeProfile.readInterpreter(batch)).isNull();
+  }
+
+  @Test
+  public void shouldResolveScriptOnPath() throws Exception {
+    File bin = temp.newFolder("bin");
+    File script = new File(bin, "phpmd");
+    FileUtils.writeStringToFile(script, "#!/usr/bin/env php\n");
+    String path = temp.newFolder("empty").getAbsolutePath() + File.pathSeparator + bin.getAbsolutePath();
+
+    assertThat(PhpRuntimeProfile.resolve("phpmd", path)).isEqualTo(script);
+    assertThat(PhpRuntimeProfile.resolve("phpcs", path)).isNull();
+    assertThat(PhpRuntimeProfile.resolve(script.getAbsolutePath(), null)).isEqualTo(script);
+  }
+}
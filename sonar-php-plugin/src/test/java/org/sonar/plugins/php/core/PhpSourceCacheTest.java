@@ -0,0 +1,83 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpSourceCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldIndexLinesAsReadLines() throws Exception {
+    File file = temp.newFile("lines.php");
+    FileUtils.writeStringToFile(file, "<?php\r\necho 'é';\r\n\n// end\n", "UTF-8");
+
+    PhpSource source = new PhpSourceCache(Charsets.UTF_8, 1024).get(file);
+
+    assertThat(source.getLineCount()).isEqualTo(FileUtils.readLines(file, "UTF-8").size());
+    assertThat(source.getLine(2)).isEqualTo("echo 'é';");
+    assertThat(source.getLine(3)).isEmpty();
+    assertThat(source.getLineStart(4)).isEqualTo(source.toString().indexOf("// end"));
+  }
+
+  @Test
+  public void shouldKeepFirstSourcesAcrossSweeps() throws Exception {
+    File first = temp.newFile("first.php");
+    File second = temp.newFile("second.php");
+    File third = temp.newFile("third.php");
+    FileUtils.writeStringToFile(first, "<?php echo 1;\n");
+    FileUtils.writeStringToFile(second, "<?php echo 2;\n");
+    FileUtils.writeStringToFile(third, "<?php echo 3;\n");
+    PhpSourceCache cache = new PhpSourceCache(Charsets.UTF_8, 70);
+
+    PhpSource firstSource = cache.get(first);
+    PhpSource secondSource = cache.get(second);
+    PhpSource thirdSource = cache.get(third);
+
+    assertThat(cache.getSize()).isLessThanOrEqualTo(70);
+    assertThat(cache.get(first)).isSameAs(firstSource);
+    assertThat(cache.get(second)).isSameAs(secondSource);
+    assertThat(cache.get(third)).isNotSameAs(thirdSource);
+  }
+
+  @Test
+  public void shouldNotKeepContentCopies() throws Exception {
+    File file = temp.newFile("content.php");
+    FileUtils.writeStringToFile(file, "<?php echo 1;\n");
+    PhpSourceCache cache = new PhpSourceCache(Charsets.UTF_8, 1024);
+    PhpSource source = cache.get(file);
+    long size = cache.getSize();
+
+    assertThat(source.toString()).isEqualTo("<?php echo 1;\n");
+    assertThat(source.toString()).isNotSameAs(source.toString());
+    assertThat(cache.getSize()).isEqualTo(size);
+    assertThat(source.getFootprint()).isEqualTo(size);
+  }
+}
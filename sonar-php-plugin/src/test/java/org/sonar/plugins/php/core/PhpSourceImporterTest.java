@@ -19,6 +19,7 @@
  */
 package org.sonar.plugins.php.core;
 
+import com.google.common.base.Charsets;
 import org.junit.Test;
 import org.sonar.api.resources.Language;
 import org.sonar.plugins.php.api.Php;
@@ -37,7 +38,7 @@ public class PhpSourceImporterTest {
   @Test
   public void testCreateImporter() throws Exception {
     Php php = new Php();
-    PhpSourceImporter importer = new PhpSourceImporter(php);
+    PhpSourceImporter importer = new PhpSourceImporter(php, new PhpSourceCache(Charsets.UTF_8, 0));
     assertThat(importer.getLanguage(), is((Language) php));
   }
 
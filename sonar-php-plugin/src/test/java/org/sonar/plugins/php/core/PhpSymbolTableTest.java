@@ -0,0 +1,73 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpSymbolTableTest {
+
+  private final PhpSymbolTable symbols = new PhpSymbolTable();
+
+  @Test
+  public void shouldSeedNormalizedLiterals() {
+    assertThat(symbols.getSymbol(PhpSymbolTable.CHARACTER_LITERAL)).isEqualTo("$CHARS");
+    assertThat(symbols.getSymbol(PhpSymbolTable.NUMERIC_LITERAL)).isEqualTo("$NUMBER");
+    assertThat(symbols.intern("$NUMBER")).isEqualTo(PhpSymbolTable.NUMERIC_LITERAL);
+    int size = symbols.size();
+
+    symbols.intern("function");
+    symbols.intern(";");
+
+    assertThat(symbols.size()).isEqualTo(size);
+  }
+
+  @Test
+  public void shouldInternSameValueOnce() {
+    int id = symbols.intern("echo $myVariable;", 6, 16);
+
+    assertThat(symbols.getSymbol(id)).isEqualTo("myVariable");
+    assertThat(symbols.intern("myVariable")).isEqualTo(id);
+    assertThat(symbols.getSymbol(symbols.intern(new StringBuilder("$myVariable"), 1, 11))).isSameAs(symbols.getSymbol(id));
+  }
+
+  @Test
+  public void shouldKeepIdsWhenGrowing() {
+    int first = symbols.intern("name0");
+    for (int i = 1; i < 10000; i++) {
+      symbols.intern("name" + i);
+    }
+
+    assertThat(symbols.intern("name0")).isEqualTo(first);
+    assertThat(symbols.getSymbol(symbols.intern("name9999"))).isEqualTo("name9999");
+  }
+
+  @Test
+  public void shouldLookUpThroughCache() {
+    PhpSymbolTable.Cache cache = new PhpSymbolTable.Cache(symbols);
+
+    int id = cache.intern("$a = $b;", 1, 2);
+
+    assertThat(id).isEqualTo(symbols.intern("a"));
+    assertThat(cache.intern("a", 0, 1)).isEqualTo(id);
+    assertThat(cache.intern("$b", 1, 2)).isEqualTo(symbols.intern("b"));
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpTokenPassTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings());
+
+  @Test
+  public void shouldComputeAllMetricsInOnePass() throws Exception {
+    File file = temp.newFile("pass.php");
+    FileUtils.writeStringToFile(file, "<?php\nuse Foo\\Bar;\n$a = -1 + 'x' . \"y\"; # $b = 2;\necho 1; // NOSONAR\n", "UTF-8");
+
+    PhpFileMetrics metrics = tokenPass.get(file);
+
+    assertThat(metrics.getLineCount()).isEqualTo(4);
+    assertThat(metrics.getLinesOfCode().toString()).isEqualTo("{1, 2, 3, 4}");
+    assertThat(metrics.getLinesOfComments().toString()).isEqualTo("{3}");
+    assertThat(metrics.getNoSonarLines()).containsOnly(4);
+    assertThat(metrics.getCommentedOutCodeLines()).isEqualTo(1);
+
+    StringBuilder cpdTokens = new StringBuilder();
+    for (int i = 0; i < metrics.getCpdTokenCount(); i++) {
+      cpdTokens.append(tokenPass.getSymbols().getSymbol(metrics.getCpdSymbol(i))).append(' ');
+    }
+    assertThat(cpdTokens.toString()).isEqualTo("< ? php $ a = $NUMBER + $CHARS . $CHARS ; echo $NUMBER ; ");
+    assertThat(metrics.getCpdLine(3)).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldTokenizeFilesOnce() throws Exception {
+    File file = temp.newFile("once.php");
+    FileUtils.writeStringToFile(file, "<?php echo 1;", "UTF-8");
+
+    PhpFileMetrics metrics = tokenPass.get(file);
+    tokenPass.analyse(Arrays.asList(file));
+
+    assertThat(tokenPass.get(file)).isSameAs(metrics);
+  }
+
+  @Test
+  public void shouldComputeSameMetricsWithSeveralThreads() throws Exception {
+    File dir = new File(getClass().getResource("/Mail.php").toURI()).getParentFile();
+    File[] files = {new File(dir, "Mail.php"), new File(dir, "Math2.php"), new File(dir, "Math3.php"), new File(dir, "Math4.php")};
+    Settings settings = new Settings();
+    settings.setProperty(PhpTokenPass.THREADS_KEY, 3);
+    PhpTokenPass parallelPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), settings);
+
+    parallelPass.analyse(Arrays.asList(files));
+
+    for (File file : files) {
+      PhpFileMetrics expected = tokenPass.get(file);
+      PhpFileMetrics actual = parallelPass.get(file);
+      assertThat(actual.getLinesOfCode()).isEqualTo(expected.getLinesOfCode());
+      assertThat(actual.getLinesOfComments()).isEqualTo(expected.getLinesOfComments());
+      assertThat(actual.getNoSonarLines()).isEqualTo(expected.getNoSonarLines());
+      assertThat(actual.getCommentedOutCodeLines()).isEqualTo(expected.getCommentedOutCodeLines());
+      assertThat(actual.getCpdTokenCount()).isEqualTo(expected.getCpdTokenCount());
+    }
+  }
+
+  @Test
+  public void shouldRestoreMetricsOfUnchangedFiles() throws Exception {
+    File unchanged = temp.newFile("unchanged.php");
+    File changed = temp.newFile("changed.php");
+    FileUtils.writeStringToFile(unchanged, "<?php\n// NOSONAR\necho 1;\n", "UTF-8");
+    FileUtils.writeStringToFile(changed, "<?php\necho 1;\n", "UTF-8");
+    File storeDirectory = temp.newFolder("work");
+    new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings(), storeDirectory).analyse(Arrays.asList(unchanged, changed));
+
+    FileUtils.writeStringToFile(changed, "<?php\n\necho 1; // NOSONAR\n", "UTF-8");
+    PhpTokenPass nextPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings(), storeDirectory);
+    nextPass.analyse(Arrays.asList(unchanged, changed));
+
+    PhpFileMetrics restored = nextPass.get(unchanged);
+    assertThat(restored.isTokenized()).isFalse();
+    assertThat(restored.getLinesOfCode().toString()).isEqualTo("{1, 3}");
+    assertThat(restored.getLinesOfComments().toString()).isEqualTo("{2}");
+    assertThat(restored.getNoSonarLines()).containsOnly(2);
+    assertThat(nextPass.get(changed).isTokenized()).isTrue();
+    assertThat(nextPass.get(changed).getNoSonarLines()).containsOnly(3);
+
+    assertThat(cpdTokens(nextPass, unchanged)).isEqualTo(cpdTokens(tokenPass, unchanged));
+  }
+
+  @Test
+  public void shouldPrepareCpdTokensOfRestoredFilesInParallel() throws Exception {
+    File dir = new File(getClass().getResource("/Mail.php").toURI()).getParentFile();
+    List<File> files = Arrays.asList(new File(dir, "Mail.php"), new File(dir, "Math2.php"), new File(dir, "Math3.php"), new File(dir, "Math4.php"));
+    File storeDirectory = temp.newFolder("work");
+    new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings(), storeDirectory).analyse(files);
+    Settings settings = new Settings();
+    settings.setProperty(PhpTokenPass.THREADS_KEY, 3);
+    PhpTokenPass nextPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), settings, storeDirectory);
+
+    nextPass.prepareCpdTokens(files);
+
+    for (File file : files) {
+      assertThat(nextPass.get(file).isTokenized()).isTrue();
+      assertThat(cpdTokens(nextPass, file)).isEqualTo(cpdTokens(tokenPass, file));
+    }
+  }
+
+  @Test
+  public void shouldApproximateSourcesBeyondBudget() throws Exception {
+    File file = temp.newFile("minified.php");
+    StringBuilder source = new StringBuilder("<?php\n$a = 1; // NOSONAR\n\n# comment\nx");
+    for (int i = 0; i < 3000; i++) {
+      source.append(" /*");
+    }
+    FileUtils.writeStringToFile(file, source.append('\n').toString(), "UTF-8");
+
+    PhpFileMetrics metrics = tokenPass.get(file);
+
+    assertThat(metrics.isApproximated()).isTrue();
+    assertThat(metrics.getLineCount()).isEqualTo(5);
+    assertThat(metrics.getLinesOfCode().toString()).isEqualTo("{1, 2, 5}");
+    assertThat(metrics.getLinesOfComments().toString()).isEqualTo("{2, 4, 5}");
+    assertThat(metrics.getNoSonarLines()).containsOnly(2);
+    assertThat(metrics.getCommentedOutCodeLines()).isEqualTo(0);
+    assertThat(cpdTokens(tokenPass, file)).isEmpty();
+  }
+
+  @Test
+  public void shouldStreamCpdTokensOfLargeSources() throws Exception {
+    File file = temp.newFile("generated.php");
+    StringBuilder source = new StringBuilder("<?php\n");
+    int lines = PhpTokenPass.MAX_CPD_RETAINED_LENGTH / 10 + 1;
+    for (int i = 0; i < lines; i++) {
+      source.append("$a = 1; #\n");
+    }
+    FileUtils.writeStringToFile(file, source.toString(), "UTF-8");
+
+    PhpFileMetrics metrics = tokenPass.get(file);
+
+    assertThat(metrics.isTokenized()).isFalse();
+    assertThat(metrics.getCpdTokenCount()).isEqualTo(0);
+    assertThat(metrics.getLinesOfCode().cardinality()).isEqualTo(lines + 1);
+    assertThat(metrics.getLinesOfComments().cardinality()).isEqualTo(lines - 1);
+    final int[] count = new int[1];
+    tokenPass.visitCpdTokens(file, new PhpCpdTokenVisitor() {
+      public void visitCpdToken(int symbol, int line) {
+        count[0]++;
+      }
+    });
+    assertThat(count[0]).isEqualTo(3 + 5 * lines);
+  }
+
+  @Test
+  public void shouldHandOverResultsOfMoreFilesThanTokenizedAhead() throws Exception {
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < 40; i++) {
+      File file = temp.newFile("file" + i + ".php");
+      FileUtils.writeStringToFile(file, "<?php\n$a = " + i + ";\n", "UTF-8");
+      files.add(file);
+    }
+    Settings settings = new Settings();
+    settings.setProperty(PhpTokenPass.THREADS_KEY, 2);
+    PhpTokenPass pass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), settings, temp.newFolder("work"));
+
+    pass.prepareCpdTokens(files);
+
+    for (File file : files) {
+      assertThat(pass.get(file).isTokenized()).isTrue();
+      assertThat(cpdTokens(pass, file)).isEqualTo(cpdTokens(tokenPass, file));
+    }
+  }
+
+  @Test
+  public void shouldForgetMetricsOnceVisited() throws Exception {
+    File file = new File(getClass().getResource("/Mail.php").toURI());
+    PhpFileMetrics metrics = tokenPass.get(file);
+
+    String tokens = cpdTokens(tokenPass, file);
+
+    assertThat(tokenPass.get(file)).isNotSameAs(metrics);
+    assertThat(cpdTokens(tokenPass, file)).isEqualTo(tokens);
+  }
+
+  @Test
+  public void shouldKeepStoredMetricsOfVisitedFiles() throws Exception {
+    File visited = temp.newFile("visited.php");
+    File added = temp.newFile("added.php");
+    FileUtils.writeStringToFile(visited, "<?php\n// NOSONAR\necho 1;\n", "UTF-8");
+    FileUtils.writeStringToFile(added, "<?php\necho 1;\n", "UTF-8");
+    File storeDirectory = temp.newFolder("work");
+    PhpTokenPass pass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings(), storeDirectory);
+    pass.analyse(Arrays.asList(visited));
+    cpdTokens(pass, visited);
+    pass.analyse(Arrays.asList(added));
+
+    PhpTokenPass nextPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings(), storeDirectory);
+    nextPass.analyse(Arrays.asList(visited, added));
+
+    assertThat(nextPass.get(visited).isTokenized()).isFalse();
+    assertThat(nextPass.get(visited).getNoSonarLines()).containsOnly(2);
+    assertThat(nextPass.get(added).isTokenized()).isFalse();
+  }
+
+  private static String cpdTokens(final PhpTokenPass pass, File file) throws Exception {
+    final StringBuilder result = new StringBuilder();
+    pass.visitCpdTokens(file, new PhpCpdTokenVisitor() {
+      public void visitCpdToken(int symbol, int line) {
+        result.append(pass.getSymbols().getSymbol(symbol)).append(' ');
+      }
+    });
+    return result.toString();
+  }
+}
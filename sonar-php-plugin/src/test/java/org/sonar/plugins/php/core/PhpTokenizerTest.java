@@ -0,0 +1,186 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.base.Charsets;
+import com.sonar.sslr.api.Token;
+import com.sonar.sslr.api.Trivia;
+import com.sonar.sslr.impl.Lexer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class PhpTokenizerTest {
+
+  private static final String[] FILES = {"/Mail.php", "/Math2.php", "/Math3.php", "/Math4.php",
+    "/org/sonar/plugins/php/duplications/SmallFile.php", "/org/sonar/plugins/php/duplications/BigFile.php"};
+
+  private final Lexer lexer = PhpLexer.create(PhpParserConfiguration.builder().setCharset(Charsets.UTF_8).build());
+  private final PhpTokenizer tokenizer = new PhpTokenizer();
+  private final PhpTokens tokens = new PhpTokens();
+
+  @Test
+  public void shouldProduceTheTokensOfTheLexerOnFiles() throws Exception {
+    for (String file : FILES) {
+      assertSameTokens(read(file));
+    }
+  }
+
+  @Test
+  public void shouldProduceTheTokensOfTheLexerOnSnippets() {
+    String[] snippets = {"", " ", "\r \n \t", "#foo?>bar", "//foo\r\nbar", "/**/", "/*foo?>bar*/", "/*test/* /**/", "/*unterminated",
+      "'foo\\'bar'", "\"foo\\\\bar\"", "'unterminated", "'\\", "<<<F\nF", "<<<'FOO'\nFOO;\r", "<<<FOO\n FOO\nFOO bar\nFOO\n",
+      "<<<FOO BAR\nFOO", "<<<<FOO\nFOO", "$a=<<<\"\u00e9\u0301\"\r\n \u00e9\u0301\r\n\u00e9\u0301;", "\uFEFF<?php echo $a?->b ?? 1.5e3;",
+      "$x <=> $y; $s .= 'a'; # x\n$i++ /* y */;", "a\rb\r\nc\n\u00e9\uD83D\uDE00d"};
+    for (String snippet : snippets) {
+      assertSameTokens(snippet);
+    }
+  }
+
+  @Test
+  public void shouldClassifyTokens() {
+    tokenizer.tokenize("<?php\n/** doc */\nfunction foo($bar) { return __LINE__ >= 0x1F; } ?>", tokens);
+
+    assertThat(tokens.getKind(0)).isEqualTo(PhpTokenKind.T_OPEN_TAG);
+    assertThat(tokens.getKind(1)).isEqualTo(PhpTokenKind.T_DOC_COMMENT);
+    assertThat(tokens.getLine(1)).isEqualTo(2);
+    assertThat(tokens.getKind(2)).isEqualTo(PhpTokenKind.T_FUNCTION);
+    assertThat(tokens.getKind(3)).isEqualTo(PhpTokenKind.T_STRING);
+    assertThat(tokens.getKind(5)).isEqualTo(PhpTokenKind.T_VARIABLE);
+    assertThat(tokens.getKind(8)).isEqualTo(PhpTokenKind.T_RETURN);
+    assertThat(tokens.getKind(9)).isEqualTo(PhpTokenKind.T_LINE);
+    assertThat(tokens.getKind(10)).isEqualTo(PhpTokenKind.T_IS_GREATER_OR_EQUAL);
+    assertThat(tokens.getKind(11)).isEqualTo(PhpTokenKind.T_LNUMBER);
+    assertThat(tokens.getKind(14)).isEqualTo(PhpTokenKind.T_CLOSE_TAG);
+    assertThat(tokens.size()).isEqualTo(15);
+    assertThat(tokens.getEndLine()).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldReuseTokens() {
+    tokenizer.tokenize("<?php echo 1;", tokens);
+    tokenizer.tokenize("$a", tokens);
+
+    assertThat(tokens.size()).isEqualTo(1);
+    assertThat(tokens.getKind(0)).isEqualTo(PhpTokenKind.T_VARIABLE);
+    assertThat(tokens.getLength(0)).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldTokenizeRegularSourcesWithinBudget() throws Exception {
+    PhpTokenizer unbounded = new PhpTokenizer();
+    PhpTokens expected = new PhpTokens();
+    tokenizer.setBudget(PhpTokenPass.STEPS_PER_CHARACTER, 0);
+    for (String file : FILES) {
+      String source = read(file);
+      unbounded.tokenize(source, expected);
+      tokenizer.tokenize(source, tokens);
+
+      assertThat(tokens.size()).isEqualTo(expected.size());
+    }
+  }
+
+  @Test
+  public void shouldPushSameTokensToVisitor() throws Exception {
+    for (String file : FILES) {
+      String source = read(file);
+      final PhpTokens expected = new PhpTokens();
+      new PhpTokenizer().tokenize(source, expected);
+      final int[] count = new int[1];
+
+      tokenizer.tokenize(source, tokens, new PhpTokenVisitor() {
+        public void visitToken(PhpTokens window, int index) {
+          assertThat(window.getKind(index)).isEqualTo(expected.getKind(count[0]));
+          assertThat(window.getOffset(index)).isEqualTo(expected.getOffset(count[0]));
+          assertThat(window.getLine(index)).isEqualTo(expected.getLine(count[0]));
+          count[0]++;
+        }
+      });
+
+      assertThat(count[0]).isEqualTo(expected.size());
+      assertThat(tokens.size()).isLessThanOrEqualTo(PhpTokenizer.WINDOW_SIZE);
+      assertThat(tokens.getEndLine()).isEqualTo(expected.getEndLine());
+    }
+  }
+
+  @Test(expected = LexingBudgetExceededException.class)
+  public void shouldGiveUpBeyondStepBudget() {
+    StringBuilder source = new StringBuilder("<?php ");
+    for (int i = 0; i < 5000; i++) {
+      source.append(" /*");
+    }
+    tokenizer.setBudget(PhpTokenPass.STEPS_PER_CHARACTER, 0);
+    tokenizer.tokenize(source, tokens);
+  }
+
+  @Test
+  public void shouldNotReportStepBudgetAsTimeout() {
+    StringBuilder source = new StringBuilder("<?php ");
+    for (int i = 0; i < 5000; i++) {
+      source.append(" /*");
+    }
+    tokenizer.setBudget(PhpTokenPass.STEPS_PER_CHARACTER, 0);
+    try {
+      tokenizer.tokenize(source, tokens);
+      fail();
+    } catch (LexingBudgetExceededException e) {
+      assertThat(e.isTimeout()).isFalse();
+    }
+  }
+
+  /**
+   * Not a benchmark, only a sanity check of the gap between both tokenizers.
+   */
+  private String read(String resource) throws Exception {
+    return FileUtils.readFileToString(new File(getClass().getResource(resource).toURI()), "UTF-8");
+  }
+
+  private void assertSameTokens(String source) {
+    List<Token> expected = lexer.lex(source);
+    tokenizer.tokenize(source, tokens);
+    List<Token> actual = PhpTokenAdapter.toSslrTokens(source, tokens, URI.create("tests://unittest"));
+
+    assertThat(actual.size()).as(source).isEqualTo(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSameToken(actual.get(i), expected.get(i));
+      List<Trivia> expectedTrivia = expected.get(i).getTrivia();
+      List<Trivia> actualTrivia = actual.get(i).getTrivia();
+      assertThat(actualTrivia.size()).as(source).isEqualTo(expectedTrivia.size());
+      for (int j = 0; j < expectedTrivia.size(); j++) {
+        assertThat(actualTrivia.get(j).isComment()).isTrue();
+        assertSameToken(actualTrivia.get(j).getToken(), expectedTrivia.get(j).getToken());
+      }
+    }
+  }
+
+  private static void assertSameToken(Token actual, Token expected) {
+    String description = expected.toString() + " at " + expected.getLine() + ":" + expected.getColumn();
+    assertThat(actual.getType()).as(description).isEqualTo(expected.getType());
+    assertThat(actual.getValue()).as(description).isEqualTo(expected.getValue());
+    assertThat(actual.getLine()).as(description).isEqualTo(expected.getLine());
+    assertThat(actual.getColumn()).as(description).isEqualTo(expected.getColumn());
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.utils.SonarException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PhpToolsSchedulerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Settings settings;
+  private ProjectFileSystem filesystem;
+
+  @Before
+  public void init() throws Exception {
+    settings = Settings.createForComponent(new PhpToolsScheduler(null, null, null));
+    filesystem = mock(ProjectFileSystem.class);
+    when(filesystem.getSonarWorkingDirectory()).thenReturn(temp.newFolder("sonar"));
+    when(filesystem.mainFiles("php")).thenReturn(ImmutableList.<InputFile>of(mock(InputFile.class)));
+  }
+
+  @Test
+  public void shouldRunEnabledToolsOnlyOnce() {
+    AbstractPhpExecutor first = mockExecutor("first", true);
+    AbstractPhpExecutor second = mockExecutor("second", true);
+    PhpToolsScheduler scheduler = new PhpToolsScheduler(new AbstractPhpExecutor[] {first, second}, settings, filesystem);
+
+    scheduler.analyse(null, null);
+    scheduler.execute(first);
+    scheduler.execute(second);
+
+    verify(first, times(1)).execute();
+    verify(second, times(1)).execute();
+    assertThat(scheduler.getDurationsFile()).exists();
+  }
+
+  @Test
+  public void shouldRunToolsInParallel() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(2);
+    Answer<Void> waitForOtherTool = new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        latch.countDown();
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Tools have not been executed concurrently");
+        }
+        return null;
+      }
+    };
+    AbstractPhpExecutor first = mockExecutor("first", true);
+    AbstractPhpExecutor second = mockExecutor("second", true);
+    doAnswer(waitForOtherTool).when(first).execute();
+    doAnswer(waitForOtherTool).when(second).execute();
+    PhpToolsScheduler scheduler = new PhpToolsScheduler(new AbstractPhpExecutor[] {first, second}, settings, filesystem);
+
+    scheduler.execute(first);
+    scheduler.execute(second);
+  }
+
+  @Test
+  public void shouldStartLongestToolFirst() throws Exception {
+    FileUtils.writeStringToFile(new File(filesystem.getSonarWorkingDirectory(), "php-tools-durations.properties"), "fast=10\nslow=1000\n");
+    settings.setProperty(PhpToolsScheduler.PARALLELISM_KEY, "1");
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    AbstractPhpExecutor fast = mockExecutor("fast", true);
+    AbstractPhpExecutor slow = mockExecutor("slow", true);
+    doAnswer(record(order, "fast")).when(fast).execute();
+    doAnswer(record(order, "slow")).when(slow).execute();
+    PhpToolsScheduler scheduler = new PhpToolsScheduler(new AbstractPhpExecutor[] {fast, slow}, settings, filesystem);
+
+    scheduler.execute(fast);
+    scheduler.execute(slow);
+
+    assertThat(order).containsExactly("slow", "fast");
+  }
+
+  @Test
+  public void shouldRunDisabledToolInCallingThread() {
+    AbstractPhpExecutor disabled = mockExecutor("disabled", false);
+    PhpToolsScheduler scheduler = new PhpToolsScheduler(new AbstractPhpExecutor[] {disabled}, settings, filesystem);
+
+    scheduler.analyse(null, null);
+    verify(disabled, never()).execute();
+
+    scheduler.execute(disabled);
+    verify(disabled, times(1)).execute();
+  }
+
+  @Test
+  public void shouldCancelOtherToolsOnFailure() {
+    settings.setProperty(PhpToolsScheduler.PARALLELISM_KEY, "1");
+    AbstractPhpExecutor failing = mockExecutor("failing", true);
+    AbstractPhpExecutor other = mockExecutor("other", true);
+    doThrow(new SonarException("boom")).when(failing).execute();
+    PhpToolsScheduler scheduler = new PhpToolsScheduler(new AbstractPhpExecutor[] {failing, other}, settings, filesystem);
+
+    try {
+      scheduler.execute(failing);
+      fail();
+    } catch (SonarException e) {
+      assertThat(e.getMessage()).isEqualTo("boom");
+    }
+    try {
+      scheduler.execute(other);
+      fail();
+    } catch (SonarException e) {
+      assertThat(e.getMessage()).contains("cancelled");
+    }
+    verify(other, never()).execute();
+  }
+
+  @Test
+  public void shouldWaitForRunningToolsOnFailure() {
+    final CountDownLatch otherStarted = new CountDownLatch(1);
+    final CountDownLatch failed = new CountDownLatch(1);
+    AbstractPhpExecutor failing = mockExecutor("failing", true);
+    AbstractPhpExecutor other = mockExecutor("other", true);
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        otherStarted.await(10, TimeUnit.SECONDS);
+        throw new SonarException("boom");
+      }
+    }).when(failing).execute();
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        otherStarted.countDown();
+        failed.await(10, TimeUnit.SECONDS);
+        return null;
+      }
+    }).when(other).execute();
+    PhpToolsScheduler scheduler = new PhpToolsScheduler(new AbstractPhpExecutor[] {failing, other}, settings, filesystem);
+
+    try {
+      scheduler.execute(failing);
+      fail();
+    } catch (SonarException e) {
+      assertThat(e.getMessage()).isEqualTo("boom");
+    }
+    failed.countDown();
+    scheduler.execute(other);
+
+    verify(other, times(1)).execute();
+  }
+
+  private static AbstractPhpExecutor mockExecutor(String name, boolean enabled) {
+    AbstractPhpExecutor executor = mock(AbstractPhpExecutor.class);
+    when(executor.getExecutedTool()).thenReturn(name);
+    when(executor.isEnabled()).thenReturn(enabled);
+    return executor;
+  }
+
+  private static Answer<Void> record(final List<String> order, final String name) {
+    return new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        order.add(name);
+        return null;
+      }
+    };
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpToolsTelemetrySensorTest {
+
+  @Test
+  public void shouldAggregateProcessesOfExecution() {
+    ToolExecution execution = new ToolExecution("PHPMD");
+    execution.addInvocation(new ToolExecution.Invocation(1000, 0, 600, 100, 20000));
+    execution.addInvocation(new ToolExecution.Invocation(1200, 2, 700, -1, 30000));
+    execution.finish(true, "1.4.1", true, 1300, 512);
+
+    assertThat(execution.getCpuUserTime()).isEqualTo(1300);
+    assertThat(execution.getCpuSystemTime()).isEqualTo(100);
+    assertThat(execution.getPeakRss()).isEqualTo(30000);
+  }
+
+  @Test
+  public void shouldWriteUnknownValuesAsNull() {
+    ToolExecution execution = new ToolExecution("PHP\"Depend");
+    execution.addInvocation(new ToolExecution.Invocation(1000, 0, -1, -1, -1));
+    execution.finish(false, null, false, 1000, -1);
+
+    String json = PhpToolsTelemetrySensor.toJson(Arrays.asList(execution));
+
+    assertThat(json).contains("\"tool\": \"PHP\\\"Depend\"");
+    assertThat(json).contains("\"version\": null");
+    assertThat(json).contains("\"cpuUserMs\": null");
+    assertThat(json).contains("\"reportSizeBytes\": null");
+    assertThat(json).contains("\"processes\": [{\"wallTimeMs\": 1000, \"exitCode\": 0, ");
+  }
+}
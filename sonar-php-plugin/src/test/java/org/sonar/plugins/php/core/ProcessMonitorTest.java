@@ -0,0 +1,107 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.lang.SystemUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ProcessMonitorTest {
+
+  @Test
+  public void shouldMatchCommandLineBehindInterpreter() {
+    List<String> commandLine = Arrays.asList("/usr/local/bin/phpmd", "src", "xml");
+
+    assertThat(ProcessMonitor.matches(commandLine, Arrays.asList("/usr/bin/php", "/usr/bin/phpmd", "src", "xml"))).isTrue();
+    assertThat(ProcessMonitor.matches(commandLine, Arrays.asList("phpmd", "src", "xml"))).isTrue();
+    assertThat(ProcessMonitor.matches(commandLine, Arrays.asList("/usr/bin/phpcs", "src", "xml"))).isFalse();
+    assertThat(ProcessMonitor.matches(commandLine, Arrays.asList("/usr/bin/phpmd", "src", "text"))).isFalse();
+    assertThat(ProcessMonitor.matches(commandLine, Arrays.asList("src", "xml"))).isFalse();
+    assertThat(ProcessMonitor.matches(commandLine, null)).isFalse();
+  }
+
+  @Test
+  public void shouldParseStatWithParenthesesInName() {
+    String[] fields = ProcessMonitor.parseStat("1234 (php (cli) x) S 42 1234 1234 0 -1 4194304 100 0 0 0 250 30 7 3 20 0 1 0");
+
+    assertThat(fields[0]).isEqualTo("S");
+    assertThat(fields[1]).isEqualTo("42");
+    assertThat(fields[11]).isEqualTo("250");
+    assertThat(fields[12]).isEqualTo("30");
+    assertThat(fields[13]).isEqualTo("7");
+    assertThat(fields[14]).isEqualTo("3");
+    assertThat(ProcessMonitor.parseStat("1234 (php) S 42")).isNull();
+    assertThat(ProcessMonitor.parseStat(null)).isNull();
+  }
+
+  @Test
+  public void shouldParsePeakRss() {
+    assertThat(ProcessMonitor.parsePeakRss("Name:\tphp\nVmPeak:\t  200000 kB\nVmHWM:\t   51234 kB\nVmRSS:\t   40000 kB\n")).isEqualTo(51234L);
+    assertThat(ProcessMonitor.parsePeakRss("Name:\tphp\nState:\tZ (zombie)\n")).isEqualTo(-1L);
+    assertThat(ProcessMonitor.parsePeakRss(null)).isEqualTo(-1L);
+  }
+
+  @Test
+  public void shouldMeasureNothingWhenProcessIsNotFound() {
+    ProcessMonitor monitor = ProcessMonitor.start(Arrays.asList("never-launched-tool", "--version"));
+
+    monitor.stop();
+
+    assertThat(monitor.getCpuUserTime()).isEqualTo(-1L);
+    assertThat(monitor.getCpuSystemTime()).isEqualTo(-1L);
+    assertThat(monitor.getPeakRss()).isEqualTo(-1L);
+  }
+
+  @Test
+  public void shouldMeasureChildProcess() throws Exception {
+    if (!SystemUtils.IS_OS_LINUX) {
+      return;
+    }
+    List<String> commandLine = Arrays.asList("sleep", "0.5");
+    ProcessMonitor monitor = ProcessMonitor.start(commandLine);
+
+    Process process = new ProcessBuilder(commandLine).start();
+    process.waitFor();
+    monitor.stop();
+
+    assertThat(monitor.getCpuUserTime()).isGreaterThanOrEqualTo(0L);
+    assertThat(monitor.getCpuSystemTime()).isGreaterThanOrEqualTo(0L);
+    assertThat(monitor.getPeakRss()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void shouldMeasureCpuTimeUpToExit() throws Exception {
+    if (!SystemUtils.IS_OS_LINUX) {
+      return;
+    }
+    List<String> commandLine = Arrays.asList("sh", "-c", "i=0; while [ $i -lt 300000 ]; do i=$((i+1)); done");
+    ProcessMonitor monitor = ProcessMonitor.start(commandLine);
+
+    Process process = new ProcessBuilder(commandLine).start();
+    process.waitFor();
+    monitor.stop();
+
+    assertThat(monitor.getCpuUserTime() + monitor.getCpuSystemTime()).isGreaterThan(0L);
+  }
+}
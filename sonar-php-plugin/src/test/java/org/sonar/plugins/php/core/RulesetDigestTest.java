@@ -0,0 +1,67 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.junit.Test;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.plugins.php.pmd.PhpmdProfileExporter;
+import org.sonar.plugins.php.pmd.PhpmdRuleRepository;
+import org.sonar.plugins.php.pmd.PmdRulePriorityMapper;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RulesetDigestTest {
+
+  private PhpmdProfileExporter exporter = new PhpmdProfileExporter(new PmdRulePriorityMapper());
+
+  @Test
+  public void shouldNotDependOnRuleOrder() {
+    RulesProfile profile = RulesProfile.create("Sonar way", "php");
+    profile.activateRule(createRule("CyclomaticComplexity"), RulePriority.MAJOR);
+    profile.activateRule(createRule("NPathComplexity"), RulePriority.MINOR);
+    RulesProfile reversed = RulesProfile.create("Sonar way", "php");
+    reversed.activateRule(createRule("NPathComplexity"), RulePriority.MINOR);
+    reversed.activateRule(createRule("CyclomaticComplexity"), RulePriority.MAJOR);
+
+    assertThat(RulesetDigest.digest(profile, exporter)).isEqualTo(RulesetDigest.digest(reversed, exporter));
+  }
+
+  @Test
+  public void shouldChangeWithRulesOfExporter() {
+    RulesProfile profile = RulesProfile.create("Sonar way", "php");
+    profile.activateRule(createRule("CyclomaticComplexity"), RulePriority.MAJOR).setParameter("reportLevel", "10");
+    String digest = RulesetDigest.digest(profile, exporter);
+
+    // Rules of other tools are not exported
+    profile.activateRule(Rule.create("php_codesniffer_rules", "Generic.Files.LineLength", "Line length"), RulePriority.MAJOR);
+    assertThat(RulesetDigest.digest(profile, exporter)).isEqualTo(digest);
+
+    profile.getActiveRule(PhpmdRuleRepository.PHPMD_REPOSITORY_KEY, "CyclomaticComplexity").setParameter("reportLevel", "20");
+    assertThat(RulesetDigest.digest(profile, exporter)).isNotEqualTo(digest);
+  }
+
+  private static Rule createRule(String key) {
+    Rule rule = Rule.create(PhpmdRuleRepository.PHPMD_REPOSITORY_KEY, key, key).setConfigKey("rulesets/codesize.xml/" + key);
+    rule.createParameter("reportLevel");
+    return rule;
+  }
+}
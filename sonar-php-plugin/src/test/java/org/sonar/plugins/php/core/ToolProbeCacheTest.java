@@ -0,0 +1,91 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ToolProbeCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldNotComputeKeyOfUnknownExecutable() throws Exception {
+    File bin = temp.newFolder("bin");
+    assertThat(ToolProbeCache.getKey("PHPMD", "phpmd", bin, bin.getAbsolutePath())).isNull();
+    assertThat(ToolProbeCache.getKey("PHPMD", new File(bin, "phpmd").getAbsolutePath(), bin, null)).isNull();
+  }
+
+  @Test
+  public void shouldResolveExecutableFromPath() throws Exception {
+    File bin = temp.newFolder("bin");
+    File phpmd = new File(bin, "phpmd");
+    FileUtils.touch(phpmd);
+    String path = temp.newFolder("other").getAbsolutePath() + File.pathSeparator + bin.getAbsolutePath();
+
+    assertThat(ToolProbeCache.resolveExecutable("phpmd", temp.getRoot(), path)).isEqualTo(phpmd.getAbsoluteFile());
+    assertThat(ToolProbeCache.resolveExecutable("bin/phpmd", temp.getRoot(), null)).isEqualTo(phpmd.getAbsoluteFile());
+  }
+
+  @Test
+  public void keyShouldChangeWithExecutableAndPath() throws Exception {
+    File bin = temp.newFolder("bin");
+    File phpmd = new File(bin, "phpmd");
+    FileUtils.touch(phpmd);
+    String path = bin.getAbsolutePath();
+
+    String key = ToolProbeCache.getKey("PHPMD", "phpmd", bin, path);
+    assertThat(key).isNotNull();
+    assertThat(ToolProbeCache.getKey("PHPMD", "phpmd", bin, path)).isEqualTo(key);
+    assertThat(ToolProbeCache.getKey("PHPMD", "phpmd", bin, path + File.pathSeparator + "/usr/bin")).isNotEqualTo(key);
+
+    phpmd.setLastModified(phpmd.lastModified() - 10000);
+    assertThat(ToolProbeCache.getKey("PHPMD", "phpmd", bin, path)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void shouldPersistProbes() throws Exception {
+    File file = new File(temp.getRoot(), "probes/tools.properties");
+    new ToolProbeCache(file).put("persisted-key", new ToolProbeCache.Probe(true, "1.4.1"));
+
+    assertThat(file).exists();
+    assertThat(FileUtils.readFileToString(file)).contains("persisted-key=true|1.4.1");
+  }
+
+  @Test
+  public void shouldReadProbesFromDisk() throws Exception {
+    File file = temp.newFile("tools.properties");
+    FileUtils.writeStringToFile(file, "disk-key=true|3.7.20\nunknown-version-key=true|\n");
+    ToolProbeCache cache = new ToolProbeCache(file);
+
+    ToolProbeCache.Probe probe = cache.get("disk-key");
+    assertThat(probe.isAvailable()).isTrue();
+    assertThat(probe.getVersion()).isEqualTo("3.7.20");
+    assertThat(cache.get("unknown-version-key").getVersion()).isNull();
+    assertThat(cache.get("missing-key")).isNull();
+  }
+}
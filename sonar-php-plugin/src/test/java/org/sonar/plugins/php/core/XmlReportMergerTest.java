@@ -0,0 +1,83 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.core;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.SonarException;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class XmlReportMergerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldMergeChildrenOfRootElements() throws Exception {
+    File first = report("<checkstyle version=\"1.5.0\">\n  <file name=\"a.php\">\n    <error line=\"1\" message=\"A &amp; B\"/>\n  </file>\n</checkstyle>");
+    File empty = report("<checkstyle version=\"1.5.0\"/>");
+    File second = report("<checkstyle version=\"1.5.0\">\n  <file name=\"b.php\">\n    <error line=\"2\" message=\"C\"/>\n  </file>\n</checkstyle>");
+    File merged = new File(temp.getRoot(), "merged.xml");
+
+    new XmlReportMerger().merge(Arrays.asList(first, empty, second), merged);
+
+    String content = FileUtils.readFileToString(merged, "UTF-8");
+    assertThat(content).startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?><checkstyle version=\"1.5.0\">");
+    assertThat(content).contains("<file name=\"a.php\">").contains("A &amp; B").contains("<file name=\"b.php\">");
+    assertThat(content.indexOf("a.php")).isLessThan(content.indexOf("b.php"));
+    assertThat(content.trim()).endsWith("</checkstyle>");
+    assertThat(content.split("<checkstyle").length).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldLeaveOutFilteredFiles() throws Exception {
+    File previous = report("<pmd version=\"1.4.1\">\n  <file name=\"/src/a.php\">\n    <violation beginline=\"1\"/>\n  </file>\n"
+      + "  <file name=\"/src/b.php\">\n    <violation beginline=\"2\"/>\n  </file>\n  <error filename=\"/src/c.php\" msg=\"parse error\"/>\n</pmd>");
+    File changes = report("<pmd version=\"1.4.1\">\n  <file name=\"/src/b.php\">\n    <violation beginline=\"3\"/>\n  </file>\n</pmd>");
+    File merged = new File(temp.getRoot(), "merged.xml");
+    Set<String> keptFiles = Collections.singleton("/src/a.php");
+
+    new XmlReportMerger().merge(Arrays.asList(previous, changes), merged, previous, keptFiles);
+
+    String content = FileUtils.readFileToString(merged, "UTF-8");
+    assertThat(content).contains("<file name=\"/src/a.php\">").contains("beginline=\"1\"").contains("beginline=\"3\"");
+    assertThat(content).excludes("beginline=\"2\"").excludes("c.php");
+    assertThat(content.split("/src/b.php").length).isEqualTo(2);
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldFailWithoutReport() {
+    new XmlReportMerger().merge(Collections.<File>emptyList(), new File(temp.getRoot(), "merged.xml"));
+  }
+
+  private File report(String content) throws Exception {
+    File report = temp.newFile();
+    FileUtils.writeStringToFile(report, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + content, "UTF-8");
+    return report;
+  }
+}
@@ -24,39 +24,48 @@ import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.cpd.Tokens;
 import org.junit.Before;
 import org.junit.Test;
-import org.sonar.api.resources.Project;
-import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.php.core.PhpSourceCache;
+import org.sonar.plugins.php.core.PhpTokenPass;
 import org.sonar.test.TestUtils;
 
 import java.nio.charset.Charset;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 public class PHPCPDMappingTest {
 
+  private Settings settings;
   private Tokenizer tokenizer;
 
   @Before
   public void test() throws Exception {
-    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
-    when(fileSystem.getSourceCharset()).thenReturn(Charset.forName("UTF-8"));
-    Project project = mock(Project.class);
-    when(project.getFileSystem()).thenReturn(fileSystem);
-    PhpCPDMapping phpcpdMapping = new PhpCPDMapping(null, project);
+    settings = new Settings();
+    PhpCPDMapping phpcpdMapping = new PhpCPDMapping(null, new PhpTokenPass(new PhpSourceCache(Charset.forName("UTF-8"), 1024 * 1024), settings),
+        settings);
     tokenizer = phpcpdMapping.getTokenizer();
   }
 
   @Test
   public void testTokenize() throws Exception {
+    assertThat(tokenize().size(), is(33));
+  }
+
+  @Test
+  public void shouldNotTokenizeWhenThePluginEngineComputesTheDuplications() throws Exception {
+    settings.setProperty(PhpDuplicationsSensor.ENGINE_KEY, PhpDuplicationsSensor.PHP_ENGINE);
+
+    // Only the end of file
+    assertThat(tokenize().size(), is(1));
+  }
+
+  private Tokens tokenize() {
     SourceCode source = new SourceCode(new SourceCode.FileCodeLoader(
         TestUtils.getResource("org/sonar/plugins/php/duplications/SmallFile.php"), Charset.defaultCharset().displayName()));
     Tokens tokens = new Tokens();
     tokenizer.tokenize(source, tokens);
-
-    assertThat(tokens.size(), is(33));
+    return tokens;
   }
 
 }
@@ -0,0 +1,136 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.php.core.PhpCpdTokenVisitor;
+import org.sonar.plugins.php.core.PhpSourceCache;
+import org.sonar.plugins.php.core.PhpTokenPass;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+public class PhpCloneDetectorTest {
+
+  private static final int MINIMUM_TOKENS = 10;
+  private static final String DUPLICATED_CODE = "$a = foo($b, $c);\n$d = bar($e);\n";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File first;
+  private File second;
+  private File indexDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    first = temp.newFile("a.php");
+    second = temp.newFile("b.php");
+    indexDirectory = temp.newFolder("work");
+    FileUtils.writeStringToFile(first, "<?php\n" + DUPLICATED_CODE, "UTF-8");
+    FileUtils.writeStringToFile(second, "<?php\necho 1;\n" + DUPLICATED_CODE, "UTF-8");
+  }
+
+  @Test
+  public void shouldDetectDuplicatedLines() throws Exception {
+    List<PhpClone> clones = detect(newTokenPass(), "1");
+
+    assertThat(clones).containsOnly(new PhpClone(first.getAbsolutePath(), 2, 3, second.getAbsolutePath(), 3, 4));
+  }
+
+  @Test
+  public void shouldDetectDuplicatedLinesOfSameFile() throws Exception {
+    FileUtils.writeStringToFile(first, "<?php\n" + DUPLICATED_CODE + "echo 1;\n" + DUPLICATED_CODE, "UTF-8");
+
+    List<PhpClone> clones = detect(newTokenPass(), "1");
+
+    assertThat(clones).contains(new PhpClone(first.getAbsolutePath(), 2, 3, first.getAbsolutePath(), 5, 6));
+  }
+
+  @Test
+  public void shouldNotMatchRepeatedTokensWithThemselves() throws Exception {
+    FileUtils.writeStringToFile(first, "<?php\n$a = array(\n" + StringUtils.repeat("0,\n", 10000) + ");\nfunction f() {}\n"
+      + DUPLICATED_CODE, "UTF-8");
+    FileUtils.writeStringToFile(second, "<?php\n" + DUPLICATED_CODE, "UTF-8");
+
+    List<PhpClone> clones = detect(newTokenPass(), "1");
+
+    assertThat(clones).containsOnly(new PhpClone(first.getAbsolutePath(), 10005, 10006, second.getAbsolutePath(), 2, 3));
+  }
+
+  @Test
+  public void shouldNotHashUnchangedFilesAgain() throws Exception {
+    detect(newTokenPass(), "1");
+    FileUtils.writeStringToFile(first, "<?php\n\n" + DUPLICATED_CODE, "UTF-8");
+    PhpTokenPass tokenPass = newTokenPass();
+
+    List<PhpClone> clones = detect(tokenPass, "1");
+
+    assertThat(clones).containsOnly(new PhpClone(first.getAbsolutePath(), 3, 4, second.getAbsolutePath(), 3, 4));
+    verify(tokenPass).visitCpdTokens(eq(first.getAbsoluteFile()), any(PhpCpdTokenVisitor.class));
+    verify(tokenPass, never()).visitCpdTokens(eq(second.getAbsoluteFile()), any(PhpCpdTokenVisitor.class));
+  }
+
+  @Test
+  public void shouldKeepDuplicationsOfUnchangedFiles() throws Exception {
+    List<PhpClone> expected = detect(newTokenPass(), "1");
+    PhpTokenPass tokenPass = newTokenPass();
+
+    List<PhpClone> clones = detect(tokenPass, "1");
+
+    assertThat(clones).isEqualTo(expected);
+    verify(tokenPass, never()).visitCpdTokens(any(File.class), any(PhpCpdTokenVisitor.class));
+  }
+
+  @Test
+  public void shouldHashAllFilesAgainWithAnotherVersion() throws Exception {
+    detect(newTokenPass(), "1");
+    PhpTokenPass tokenPass = newTokenPass();
+
+    List<PhpClone> clones = detect(tokenPass, "2");
+
+    assertThat(clones).hasSize(1);
+    verify(tokenPass).visitCpdTokens(eq(second.getAbsoluteFile()), any(PhpCpdTokenVisitor.class));
+  }
+
+  private List<PhpClone> detect(PhpTokenPass tokenPass, String version) {
+    PhpCloneIndex index = new PhpCloneIndex(indexDirectory, version);
+    return new PhpCloneDetector(tokenPass, MINIMUM_TOKENS).detect(Arrays.asList(first.getAbsoluteFile(), second.getAbsoluteFile()), index);
+  }
+
+  private static PhpTokenPass newTokenPass() {
+    return spy(new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings()));
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.resources.InputFileUtils;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.ProjectFileSystem;
+import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PhpSourceCache;
+import org.sonar.plugins.php.core.PhpTokenPass;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PhpDuplicationsSensorTest {
+
+  private static final String DUPLICATED_CODE = "$a = foo($b, $c);\n$d = bar($e);\n";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Settings settings = new Settings();
+  private Project project;
+  private File first;
+  private File second;
+
+  @Before
+  public void setUp() throws Exception {
+    first = temp.newFile("a.php");
+    second = temp.newFile("b.php");
+    FileUtils.writeStringToFile(first, "<?php\n" + DUPLICATED_CODE, "UTF-8");
+    FileUtils.writeStringToFile(second, "<?php\necho 1;\n" + DUPLICATED_CODE, "UTF-8");
+    project = mock(Project.class);
+    ProjectFileSystem fileSystem = mock(ProjectFileSystem.class);
+    when(project.getFileSystem()).thenReturn(fileSystem);
+    when(fileSystem.getSourceDirs()).thenReturn(Arrays.asList(temp.getRoot()));
+    when(fileSystem.mainFiles(PhpConstants.LANGUAGE_KEY)).thenReturn(InputFileUtils.create(temp.getRoot(), Arrays.asList(first, second)));
+    when(fileSystem.getSonarWorkingDirectory()).thenReturn(temp.newFolder("work"));
+    when(fileSystem.getSourceCharset()).thenReturn(Charsets.UTF_8);
+  }
+
+  @Test
+  public void shouldOnlyExecuteWithThePluginEngine() {
+    PhpDuplicationsSensor sensor = new PhpDuplicationsSensor(settings, null);
+    assertThat(sensor.shouldExecuteOnProject(project)).isFalse();
+
+    settings.setProperty(PhpDuplicationsSensor.ENGINE_KEY, PhpDuplicationsSensor.PHP_ENGINE);
+    assertThat(sensor.shouldExecuteOnProject(project)).isTrue();
+
+    settings.setProperty(PhpDuplicationsSensor.SKIP_KEY, true);
+    assertThat(sensor.shouldExecuteOnProject(project)).isFalse();
+  }
+
+  @Test
+  public void shouldUseMinimumTokensOfPhp() {
+    PhpDuplicationsSensor sensor = new PhpDuplicationsSensor(settings, null);
+    assertThat(sensor.getMinimumTokens()).isEqualTo(PhpDuplicationsSensor.DEFAULT_MINIMUM_TOKENS);
+
+    settings.setProperty(PhpDuplicationsSensor.DEFAULT_MINIMUM_TOKENS_KEY, 50);
+    assertThat(sensor.getMinimumTokens()).isEqualTo(50);
+
+    settings.setProperty(PhpDuplicationsSensor.MINIMUM_TOKENS_KEY, 20);
+    assertThat(sensor.getMinimumTokens()).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldSaveDuplicationsMeasures() {
+    settings.setProperty(PhpDuplicationsSensor.MINIMUM_TOKENS_KEY, 10);
+    SensorContext context = mock(SensorContext.class);
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), settings);
+
+    new PhpDuplicationsSensor(settings, tokenPass).analyse(project, context);
+
+    org.sonar.api.resources.File firstResource = org.sonar.api.resources.File.fromIOFile(first, project);
+    org.sonar.api.resources.File secondResource = org.sonar.api.resources.File.fromIOFile(second, project);
+    verify(context).saveMeasure(firstResource, CoreMetrics.DUPLICATED_FILES, 1.0);
+    verify(context).saveMeasure(firstResource, CoreMetrics.DUPLICATED_LINES, 2.0);
+    verify(context).saveMeasure(firstResource, CoreMetrics.DUPLICATED_BLOCKS, 1.0);
+    verify(context).saveMeasure(secondResource, CoreMetrics.DUPLICATED_LINES, 2.0);
+  }
+
+  @Test
+  public void shouldCountBlocksOncePerGroup() throws Exception {
+    File third = temp.newFile("c.php");
+    FileUtils.writeStringToFile(third, "<?php\nif ($x) {}\n" + DUPLICATED_CODE, "UTF-8");
+    when(project.getFileSystem().mainFiles(PhpConstants.LANGUAGE_KEY)).thenReturn(
+      InputFileUtils.create(temp.getRoot(), Arrays.asList(first, second, third)));
+    settings.setProperty(PhpDuplicationsSensor.MINIMUM_TOKENS_KEY, 10);
+    SensorContext context = mock(SensorContext.class);
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), settings);
+
+    new PhpDuplicationsSensor(settings, tokenPass).analyse(project, context);
+
+    org.sonar.api.resources.File firstResource = org.sonar.api.resources.File.fromIOFile(first, project);
+    org.sonar.api.resources.File thirdResource = org.sonar.api.resources.File.fromIOFile(third, project);
+    verify(context).saveMeasure(firstResource, CoreMetrics.DUPLICATED_BLOCKS, 1.0);
+    verify(context).saveMeasure(thirdResource, CoreMetrics.DUPLICATED_BLOCKS, 1.0);
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.duplications;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.plugins.php.core.PhpSourceCache;
+import org.sonar.plugins.php.core.PhpTokenPass;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpSharedCloneIndexTest {
+
+  private static final int MINIMUM_TOKENS = 10;
+  private static final String DUPLICATED_CODE = "$a = foo($b, $c);\n$d = bar($e);\n";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldFindDuplicationsWithOtherProjects() throws Exception {
+    File sharedIndex = new File(temp.getRoot(), "shared/php-clones.idx");
+    File first = newFile("first", "a.php", "<?php\n" + DUPLICATED_CODE);
+    File second = newFile("second", "b.php", "<?php\necho 1;\n" + DUPLICATED_CODE);
+
+    assertThat(update(sharedIndex, "first", first, MINIMUM_TOKENS)).isEmpty();
+    assertThat(update(sharedIndex, "second", second, MINIMUM_TOKENS)).containsOnly(
+        new PhpClone(second.getAbsolutePath(), 3, 4, "first:a.php", 2, 3));
+    assertThat(update(sharedIndex, "first", first, MINIMUM_TOKENS)).containsOnly(
+        new PhpClone(first.getAbsolutePath(), 2, 3, "second:b.php", 3, 4));
+  }
+
+  @Test
+  public void shouldReplaceBlocksOfChangedFiles() throws Exception {
+    File sharedIndex = new File(temp.getRoot(), "shared/php-clones.idx");
+    File first = newFile("first", "a.php", "<?php\n" + DUPLICATED_CODE);
+    File second = newFile("second", "b.php", "<?php\necho 1;\n" + DUPLICATED_CODE);
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+
+    FileUtils.writeStringToFile(first, "<?php\necho 2;\n", "UTF-8");
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+
+    assertThat(update(sharedIndex, "second", second, MINIMUM_TOKENS)).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreIndexOfOtherMinimumTokens() throws Exception {
+    File sharedIndex = new File(temp.getRoot(), "shared/php-clones.idx");
+    File first = newFile("first", "a.php", "<?php\n" + DUPLICATED_CODE);
+    File second = newFile("second", "b.php", "<?php\necho 1;\n" + DUPLICATED_CODE);
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+
+    assertThat(update(sharedIndex, "second", second, MINIMUM_TOKENS + 1)).isEmpty();
+  }
+
+  @Test
+  public void shouldRebuildInNewGeneration() throws Exception {
+    File sharedIndex = new File(temp.getRoot(), "shared/php-clones.idx");
+    File first = newFile("first", "a.php", "<?php\n" + DUPLICATED_CODE);
+    File second = newFile("second", "b.php", "<?php\necho 1;\n" + DUPLICATED_CODE);
+    PhpSharedCloneIndex index = new PhpSharedCloneIndex(sharedIndex, MINIMUM_TOKENS);
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+    assertThat(index.getTableFile(1).isFile()).isTrue();
+
+    FileUtils.writeStringToFile(index.getTableFile(1), "corrupted");
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+
+    assertThat(index.getTableFile(1).exists()).isFalse();
+    assertThat(index.getTableFile(2).isFile()).isTrue();
+    assertThat(update(sharedIndex, "second", second, MINIMUM_TOKENS)).containsOnly(
+        new PhpClone(second.getAbsolutePath(), 3, 4, "first:a.php", 2, 3));
+  }
+
+  @Test
+  public void shouldIgnoreGarbageOfInterruptedWriter() throws Exception {
+    File sharedIndex = new File(temp.getRoot(), "shared/php-clones.idx");
+    File first = newFile("first", "a.php", "<?php\necho 2;\n");
+    File second = newFile("second", "b.php", "<?php\necho 1;\n" + DUPLICATED_CODE);
+    PhpSharedCloneIndex index = new PhpSharedCloneIndex(sharedIndex, MINIMUM_TOKENS);
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+    byte[] filesTable = FileUtils.readFileToByteArray(sharedIndex);
+
+    // The blocks are inserted, but neither the files table nor the generation it is rebuilding are written
+    FileUtils.writeStringToFile(first, "<?php\n" + DUPLICATED_CODE, "UTF-8");
+    update(sharedIndex, "first", first, MINIMUM_TOKENS);
+    FileUtils.writeByteArrayToFile(sharedIndex, filesTable);
+    FileUtils.writeStringToFile(index.getTableFile(2), "interrupted");
+
+    assertThat(update(sharedIndex, "second", second, MINIMUM_TOKENS)).isEmpty();
+    assertThat(index.getTableFile(2).exists()).isFalse();
+    assertThat(update(sharedIndex, "first", first, MINIMUM_TOKENS)).containsOnly(
+        new PhpClone(first.getAbsolutePath(), 2, 3, "second:b.php", 3, 4));
+  }
+
+  @Test
+  public void shouldServeConcurrentReadersWhileOneProjectChanges() throws Exception {
+    final File sharedIndex = new File(temp.getRoot(), "shared/php-clones.idx");
+    update(sharedIndex, "first", newFile("first", "a.php", "<?php\n" + DUPLICATED_CODE), MINIMUM_TOKENS);
+    final File written = newFile("writer", "w.php", "<?php\n");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      futures.add(pool.submit(new Callable<Void>() {
+        public Void call() throws IOException {
+          for (int i = 0; i < 10; i++) {
+            FileUtils.writeStringToFile(written, "<?php\necho " + i + ";\n" + (i % 2 == 0 ? DUPLICATED_CODE : ""), "UTF-8");
+            update(sharedIndex, "writer", written, MINIMUM_TOKENS);
+          }
+          return null;
+        }
+      }));
+      for (int reader = 0; reader < 3; reader++) {
+        final String project = "reader" + reader;
+        final File read = newFile(project, "r.php", "<?php\necho 1;\n" + DUPLICATED_CODE);
+        futures.add(pool.submit(new Callable<Void>() {
+          public Void call() {
+            for (int i = 0; i < 10; i++) {
+              assertThat(update(sharedIndex, project, read, MINIMUM_TOKENS)).contains(
+                  new PhpClone(read.getAbsolutePath(), 3, 4, "first:a.php", 2, 3));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private File newFile(String project, String name, String content) throws IOException {
+    File file = new File(temp.getRoot(), project + "/" + name);
+    FileUtils.writeStringToFile(file, content, "UTF-8");
+    return file;
+  }
+
+  private static List<PhpClone> update(File sharedIndex, String project, File file, int minimumTokens) {
+    PhpTokenPass tokenPass = new PhpTokenPass(new PhpSourceCache(Charsets.UTF_8, 1024 * 1024), new Settings());
+    PhpCloneIndex index = new PhpCloneIndex(new File(file.getParentFile(), "work"), "1");
+    new PhpCloneDetector(tokenPass, minimumTokens).detect(Arrays.asList(file.getAbsoluteFile()), index);
+    index.load();
+    return new PhpSharedCloneIndex(sharedIndex, minimumTokens).update(project, index,
+        ImmutableMap.of(file.getAbsolutePath(), project + ":" + file.getName()));
+  }
+}
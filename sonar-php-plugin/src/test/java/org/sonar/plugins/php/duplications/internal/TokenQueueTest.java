@@ -19,10 +19,12 @@
  */
 package org.sonar.plugins.php.duplications.internal;
 
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.Matchers.is;
@@ -65,4 +67,30 @@ public class TokenQueueTest {
     assertThat(tokenQueue.size(), is(4));
   }
 
+  @Test
+  public void shouldPushPolledTokensBack() {
+    Token first = tokenQueue.poll();
+    Token second = tokenQueue.poll();
+    tokenQueue.pushForward(Arrays.asList(first, second));
+    assertThat(tokenQueue.size(), is(3));
+    assertThat(Lists.newArrayList(tokenQueue), is(Arrays.asList(new Token("a", 1, 0), new Token("bc", 1, 2), new Token("def", 1, 5))));
+  }
+
+  @Test
+  public void shouldGrowWithManyTokens() {
+    for (int i = 0; i < 1000; i++) {
+      tokenQueue.add("x" + (i % 10), i, 0);
+    }
+    tokenQueue.pushForward(Arrays.asList(new Token("p", 0, 0), new Token("q", 0, 1)));
+    assertThat(tokenQueue.size(), is(1005));
+    assertThat(tokenQueue.poll(), is(new Token("p", 0, 0)));
+    assertThat(tokenQueue.poll(), is(new Token("q", 0, 1)));
+    assertThat(tokenQueue.isNextTokenValue("a"), is(true));
+    Token last = null;
+    for (Token token : tokenQueue) {
+      last = token;
+    }
+    assertThat(last, is(new Token("x9", 999, 0)));
+  }
+
 }
@@ -31,6 +31,7 @@ import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.MockUtils;
 import org.sonar.plugins.php.core.PhpPluginExecutionException;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.io.File;
 
@@ -52,6 +53,9 @@ public class PhpDependSensorTest {
   @Mock
   private PhpDependExecutor executor;
 
+  @Mock
+  private PhpToolsScheduler scheduler;
+
   @Mock
   private PhpDependParserSelector parserSelector;
 
@@ -76,7 +80,7 @@ public class PhpDependSensorTest {
     when(project.getLanguageKey()).thenReturn("php");
     when(parserSelector.select()).thenReturn(parser);
 
-    sensor = new PhpDependSensor(phpConfig, executor, parserSelector, filesystem);
+    sensor = new PhpDependSensor(phpConfig, executor, scheduler, parserSelector, filesystem);
   }
 
   @Test
@@ -115,7 +119,7 @@ public class PhpDependSensorTest {
 
     sensor.analyse(project, context);
 
-    verify(executor, times(1)).execute();
+    verify(scheduler, times(1)).execute(executor);
     verify(parser, times(1)).parse(report);
   }
 
@@ -127,13 +131,13 @@ public class PhpDependSensorTest {
 
     sensor.analyse(project, context);
 
-    verify(executor, never()).execute();
+    verify(scheduler, never()).execute(executor);
     verify(parser, times(1)).parse(report);
   }
 
   @Test
   public void testAnalyzeExitsGracefullyOnError() {
-    doThrow(new PhpPluginExecutionException()).when(executor).execute();
+    doThrow(new PhpPluginExecutionException()).when(scheduler).execute(executor);
 
     sensor.analyse(project, context);
 
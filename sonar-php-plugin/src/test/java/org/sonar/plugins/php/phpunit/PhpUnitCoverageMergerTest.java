@@ -0,0 +1,76 @@
+/*
+ * Sonar PHP Plugin
+ * Copyright (C) 2010 Codehaus Sonar Plugins
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.php.phpunit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.SonarException;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PhpUnitCoverageMergerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldSumHitsOfSameLines() throws Exception {
+    File first = report("<project timestamp=\"1\"><package name=\"p\"><file name=\"/src/A.php\">"
+      + "<class name=\"A\"><metrics methods=\"1\"/></class>"
+      + "<line num=\"3\" type=\"method\" name=\"foo\" count=\"1\"/><line num=\"4\" type=\"stmt\" count=\"1\"/><line num=\"5\" type=\"stmt\" count=\"0\"/>"
+      + "<metrics loc=\"10\" ncloc=\"8\" classes=\"1\" statements=\"2\" coveredstatements=\"1\"/></file></package></project>");
+    File second = report("<project timestamp=\"1\"><file name=\"/src/A.php\">"
+      + "<line num=\"3\" type=\"method\" name=\"foo\" count=\"2\"/><line num=\"4\" type=\"stmt\" count=\"0\"/><line num=\"5\" type=\"stmt\" count=\"3\"/>"
+      + "<metrics loc=\"10\" ncloc=\"8\" classes=\"1\" statements=\"2\" coveredstatements=\"1\"/></file>"
+      + "<file name=\"/src/B.php\"><line num=\"1\" type=\"stmt\" count=\"0\"/><metrics loc=\"2\" ncloc=\"2\" statements=\"1\" coveredstatements=\"0\"/></file>"
+      + "</project>");
+    File merged = new File(temp.getRoot(), "merged.xml");
+
+    new PhpUnitCoverageMerger().merge(Arrays.asList(first, second), merged);
+
+    String content = FileUtils.readFileToString(merged, "UTF-8");
+    assertThat(content).contains("<line num=\"3\" type=\"method\" name=\"foo\" count=\"3\"/>");
+    assertThat(content).contains("<line num=\"4\" type=\"stmt\" count=\"1\"/>");
+    assertThat(content).contains("<line num=\"5\" type=\"stmt\" count=\"3\"/>");
+    assertThat(content).contains("loc=\"10\" ncloc=\"8\" classes=\"1\" methods=\"1\" coveredmethods=\"1\" conditionals=\"0\" coveredconditionals=\"0\" "
+      + "statements=\"2\" coveredstatements=\"2\"");
+    assertThat(content).contains("<file name=\"/src/B.php\"><line num=\"1\" type=\"stmt\" count=\"0\"/>");
+    assertThat(content).contains("statements=\"1\" coveredstatements=\"0\"");
+    assertThat(content).excludes("<class");
+    assertThat(content.split("<file ").length).isEqualTo(3);
+  }
+
+  @Test(expected = SonarException.class)
+  public void shouldFailWithoutReport() {
+    new PhpUnitCoverageMerger().merge(Collections.<File>emptyList(), new File(temp.getRoot(), "merged.xml"));
+  }
+
+  private File report(String project) throws Exception {
+    File report = temp.newFile();
+    FileUtils.writeStringToFile(report, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<coverage generated=\"1\">" + project + "</coverage>", "UTF-8");
+    return report;
+  }
+}
@@ -29,6 +29,8 @@ import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.utils.command.Command;
 import org.sonar.plugins.php.MockUtils;
 import org.sonar.plugins.php.api.Php;
+import org.sonar.plugins.php.core.PhpRuntimeProfile;
+import org.sonar.plugins.php.core.PhpUserCache;
 
 import java.io.File;
 import java.net.URL;
@@ -39,7 +41,6 @@ import static org.fest.assertions.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -64,13 +65,13 @@ public class PhpUnitExecutorTest {
 
   @Before
   public void init() throws Exception {
-    settings = Settings.createForComponent(new PhpUnitSensor(null, null, null, null, null));
+    settings = Settings.createForComponent(new PhpUnitSensor(null, null, null, null, null, null));
     project = MockUtils.createMockProject();
     PhpUnitConfiguration configuration = new PhpUnitConfiguration(settings, project.getFileSystem());
     executor = new PhpUnitExecutor(new Php(), configuration, project);
     executor = spy(executor);
     // Disable real Phar extraction
-    doNothing().when(executor).extractPhar(any(URL.class), any(File.class));
+    doReturn(new File("target/phpunit.phar")).when(executor).getPharFile(any(URL.class));
   }
 
   @Test
@@ -82,37 +83,78 @@ public class PhpUnitExecutorTest {
   public void testSimplestCommandLineWithEmbedded() {
     // Given
     settings.setProperty(PHPUNIT_COVERAGE_SKIP_KEY, "true");
+    settings.setProperty(PhpRuntimeProfile.TUNING_KEY, "false");
 
-    // First execution is for testing external tool presence
-    doReturn(1).doReturn(0).when(executor).doExecute(any(Command.class));
+    // External tool is not available
+    doReturn(false).when(executor).verifyExternalTool();
+    doReturn(0).when(executor).doExecute(any(Command.class));
 
     executor.execute();
 
     // Verify
     ArgumentCaptor<Command> argument = ArgumentCaptor.forClass(Command.class);
-    verify(executor, times(2)).doExecute(argument.capture());
+    verify(executor, times(1)).doExecute(argument.capture());
     List<String> commandLine = argument.getValue().getArguments();
     assertThat(commandLine.size()).isEqualTo(3);
 
     assertThat(executor.isEmbeddedMode()).isTrue();
+    assertThat(executor.getToolVersion()).isEqualTo("3.7.20");
     assertThat(commandLine.get(0)).endsWith(".phar");
     assertThat(commandLine.get(1)).isEqualTo("--log-junit=" + new File("target/MockProject/target/sonar/phpunit.xml").getAbsolutePath());
     assertThat(commandLine.get(2)).isEqualTo("--configuration=phpunit.xml.dist");
   }
 
+  @Test
+  public void shouldCreateWorkingDirectoryBeforeExecution() throws Exception {
+    File workingDirectory = new File("target/MockProject/target/logs");
+    FileUtils.deleteDirectory(workingDirectory);
+    doReturn(false).when(executor).verifyExternalTool();
+    doReturn(0).when(executor).doExecute(any(Command.class));
+
+    executor.execute();
+
+    assertThat(workingDirectory.isDirectory()).isTrue();
+  }
+
+  @Test
+  public void shouldTuneRuntimeOfEmbeddedTool() {
+    // Given
+    settings.setProperty(PhpUserCache.CACHE_PATH_KEY, "target/cache");
+    settings.setProperty(PhpRuntimeProfile.MEMORY_LIMIT_KEY, "1G");
+
+    // External tool is not available
+    doReturn(false).when(executor).verifyExternalTool();
+    doReturn(0).when(executor).doExecute(any(Command.class));
+
+    executor.execute();
+
+    // Verify
+    ArgumentCaptor<Command> argument = ArgumentCaptor.forClass(Command.class);
+    verify(executor, times(1)).doExecute(argument.capture());
+    List<String> commandLine = argument.getValue().getArguments();
+
+    // Coverage is collected, so Xdebug is kept
+    assertThat(commandLine).contains("xdebug.mode=coverage", "opcache.enable_cli=1", "memory_limit=1G",
+        "opcache.file_cache=" + new File("target/cache/opcache").getAbsolutePath());
+    assertThat(commandLine).excludes("xdebug.mode=off");
+    int phar = commandLine.indexOf(new File("target/phpunit.phar").getAbsolutePath());
+    assertThat(phar).isGreaterThan(commandLine.indexOf("memory_limit=1G"));
+  }
+
   @Test
   public void testSimplestCommandLineWithExternalTool() {
     // Given
     settings.setProperty(PHPUNIT_COVERAGE_SKIP_KEY, "true");
 
-    // First execution is for testing external tool presence
-    doReturn(0).doReturn(0).when(executor).doExecute(any(Command.class));
+    // External tool is available
+    doReturn(true).when(executor).verifyExternalTool();
+    doReturn(0).when(executor).doExecute(any(Command.class));
 
     executor.execute();
 
     // Verify
     ArgumentCaptor<Command> argument = ArgumentCaptor.forClass(Command.class);
-    verify(executor, times(2)).doExecute(argument.capture());
+    verify(executor, times(1)).doExecute(argument.capture());
     List<String> commandLine = argument.getValue().getArguments();
     assertThat(commandLine.size()).isEqualTo(2);
 
@@ -197,6 +239,56 @@ public class PhpUnitExecutorTest {
     mainClass.delete();
   }
 
+  @Test
+  public void shouldWriteShardConfigurationInWorkingDirectory() throws Exception {
+    File projectDir = new File("target/MockProject").getAbsoluteFile();
+    File projectConfiguration = new File(projectDir, "phpunit-shards.xml");
+    FileUtils.writeStringToFile(projectConfiguration, "<phpunit bootstrap=\"test/bootstrap.php\">"
+      + "<testsuites><testsuite name=\"All\"><directory>test</directory><exclude>test/Legacy</exclude></testsuite></testsuites>"
+      + "<logging><log type=\"junit\" target=\"build/junit.xml\"/></logging></phpunit>");
+    settings.setProperty(PHPUNIT_CONFIGURATION_KEY, projectConfiguration.getAbsolutePath());
+    File test = new File(projectDir, "test/FooTest.php");
+    File legacyTest = new File(projectDir, "test/Legacy/BarTest.php");
+
+    List<String> commandLine = executor.getShardCommandLineArguments(Arrays.asList(test, legacyTest), 1);
+
+    File shardConfiguration = new File(projectDir, "target/logs/phpunit.shard1.xml");
+    assertThat(commandLine).contains("--configuration=" + shardConfiguration);
+    String xml = FileUtils.readFileToString(shardConfiguration);
+    assertThat(xml).contains("bootstrap=\"" + new File(projectDir, "test/bootstrap.php").getAbsolutePath() + "\"");
+    assertThat(xml).contains("<file>" + test.getAbsolutePath() + "</file>");
+    assertThat(xml).contains("<exclude>" + new File(projectDir, "test/Legacy").getAbsolutePath() + "</exclude>");
+    assertThat(xml).excludes("BarTest.php");
+    assertThat(xml).excludes("<logging>");
+
+    executor.deleteShardFiles(1);
+    assertThat(shardConfiguration).doesNotExist();
+    projectConfiguration.delete();
+  }
+
+  @Test
+  public void shouldShardTestFilesOfConfigurationTestSuites() throws Exception {
+    File projectDir = new File("target/MockProject").getAbsoluteFile();
+    File projectConfiguration = new File(projectDir, "phpunit-suites.xml");
+    FileUtils.writeStringToFile(projectConfiguration, "<phpunit><testsuites>"
+      + "<testsuite name=\"Unit\"><directory>suites/unit</directory><exclude>suites/unit/Legacy</exclude></testsuite>"
+      + "<testsuite name=\"Functional\"><directory prefix=\"login\" suffix=\".phpt\">suites/functional</directory>"
+      + "<file>suites/Smoke.php</file></testsuite></testsuites></phpunit>");
+    settings.setProperty(PHPUNIT_CONFIGURATION_KEY, projectConfiguration.getAbsolutePath());
+    File unitTest = touch(projectDir, "suites/unit/FooTest.php");
+    touch(projectDir, "suites/unit/Helper.php");
+    touch(projectDir, "suites/unit/Legacy/BarTest.php");
+    File functionalTest = touch(projectDir, "suites/functional/login.phpt");
+    touch(projectDir, "suites/functional/logout.phpt");
+    touch(projectDir, "suites/functional/LoginTest.php");
+    File smokeTest = touch(projectDir, "suites/Smoke.php");
+
+    assertThat(executor.getShardableFiles()).containsOnly(unitTest, functionalTest, smokeTest);
+
+    FileUtils.deleteDirectory(new File(projectDir, "suites"));
+    projectConfiguration.delete();
+  }
+
   @Test
   public void testTestCommand() throws Exception {
     List<String> commandLine = executor.getTestCommandLine();
@@ -208,4 +300,10 @@ public class PhpUnitExecutorTest {
   public void testPHAREmbeddedURL() throws Exception {
     assertThat(executor.getPHAREmbeddedURL()).isNotNull();
   }
+
+  private static File touch(File directory, String path) throws Exception {
+    File file = new File(directory, path);
+    FileUtils.touch(file);
+    return file;
+  }
 }
@@ -28,6 +28,7 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.resources.ProjectFileSystem;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.MockUtils;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.io.File;
 
@@ -45,6 +46,9 @@ public class PhpUnitSensorTest {
   @Mock
   private PhpUnitExecutor executor;
 
+  @Mock
+  private PhpToolsScheduler scheduler;
+
   @Mock
   private PhpUnitResultParser parser;
 
@@ -69,7 +73,7 @@ public class PhpUnitSensorTest {
     when(project.getLanguageKey()).thenReturn("php");
     when(phpConfig.isDynamicAnalysisEnabled()).thenReturn(true);
 
-    sensor = new PhpUnitSensor(phpConfig, executor, parser, coverageParser, filesystem);
+    sensor = new PhpUnitSensor(phpConfig, executor, scheduler, parser, coverageParser, filesystem);
   }
 
   @Test
@@ -128,7 +132,7 @@ public class PhpUnitSensorTest {
 
     sensor.analyse(project, context);
 
-    verify(executor, times(1)).execute();
+    verify(scheduler, times(1)).execute(executor);
     verify(parser, times(1)).parse(report);
     verify(coverageParser, times(1)).parse(coverageReport, false);
   }
@@ -141,7 +145,7 @@ public class PhpUnitSensorTest {
 
     sensor.analyse(project, context);
 
-    verify(executor, times(1)).execute();
+    verify(scheduler, times(1)).execute(executor);
     verify(parser, times(1)).parse(report);
     verify(coverageParser, never()).parse(report, false);
   }
@@ -156,7 +160,7 @@ public class PhpUnitSensorTest {
 
     sensor.analyse(project, context);
 
-    verify(executor, never()).execute();
+    verify(scheduler, never()).execute(executor);
     verify(parser, times(1)).parse(report);
     verify(coverageParser, times(1)).parse(coverageReport, false);
   }
@@ -19,23 +19,40 @@
  */
 package org.sonar.plugins.php.pmd;
 
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sonar.api.config.Settings;
 import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.resources.InputFile;
+import org.sonar.api.resources.InputFileUtils;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.command.Command;
 import org.sonar.plugins.php.MockUtils;
 import org.sonar.plugins.php.api.Php;
+import org.sonar.plugins.php.api.PhpConstants;
+import org.sonar.plugins.php.core.PipeableExecutor;
 
 import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_ARGUMENT_LINE_KEY;
+import static org.sonar.plugins.php.pmd.PhpmdConfiguration.PHPMD_SHARDS_KEY;
 
 public class PhpmdExecutorTest {
 
@@ -46,14 +63,15 @@ public class PhpmdExecutorTest {
   private RulesProfile profile;
 
   private Settings settings;
+  private Project project;
   private PhpmdExecutor executor;
 
   @Before
   public void init() throws Exception {
     MockitoAnnotations.initMocks(this);
 
-    settings = Settings.createForComponent(new PhpmdSensor(null, null, null, null, null));
-    Project project = MockUtils.createMockProject();
+    settings = Settings.createForComponent(new PhpmdSensor(null, null, null, null, null, null));
+    project = MockUtils.createMockProject();
     PhpmdConfiguration configuration = new PhpmdConfiguration(settings, project.getFileSystem());
     executor = new PhpmdExecutor(new Php(), configuration, exporter, profile);
   }
@@ -78,6 +96,61 @@ public class PhpmdExecutorTest {
     assertThat(commandLine.get(6)).isEqualTo("php,php3,php4,php5,phtml,inc");
   }
 
+  @Test
+  public void testShardCommandLine() {
+    File first = new File("target/MockProject/src/a.php");
+    File second = new File("target/MockProject/src/b.php");
+    File report = new File("target/MockProject/target/sonar/phpmd.shard0.xml");
+
+    List<String> commandLine = executor.getCommandLineArguments(Arrays.asList(first, second), report);
+    assertThat(executor.isShardable()).isTrue();
+    assertThat(commandLine.get(0)).isEqualTo(first.getPath() + "," + second.getPath());
+    assertThat(commandLine.get(4)).isEqualTo(report.getAbsolutePath());
+  }
+
+  @Test
+  public void testPipedCommandLine() {
+    List<String> commandLine = executor.getPipedCommandLineArguments();
+    assertThat(executor).isInstanceOf(PipeableExecutor.class);
+    assertThat(commandLine.get(0)).isEqualTo(new File("target/MockProject/src").getAbsolutePath());
+    assertThat(commandLine).excludes("--reportfile");
+  }
+
+  @Test
+  public void shouldAnalyseSourceDirectoriesWhenShardsDoNotFitOnCommandLine() throws Exception {
+    List<InputFile> files = Lists.newArrayList();
+    for (int i = 0; i < 2000; i++) {
+      files.add(InputFileUtils.create(new File("target/MockProject"), "/src/some/deeply/nested/package/of/the/project/File" + i + ".php"));
+    }
+    when(project.getFileSystem().mainFiles(PhpConstants.LANGUAGE_KEY)).thenReturn(files);
+    settings.setProperty(PHPMD_SHARDS_KEY, 2);
+    executor = spy(executor);
+    doReturn(new File("target/phpmd.phar")).when(executor).getPharFile(any(URL.class));
+    doReturn(false).when(executor).verifyExternalTool();
+    doReturn(0).when(executor).doExecute(any(Command.class));
+
+    executor.execute();
+
+    ArgumentCaptor<Command> argument = ArgumentCaptor.forClass(Command.class);
+    verify(executor, times(1)).doExecute(argument.capture());
+    assertThat(argument.getValue().getArguments()).contains(new File("target/MockProject/src").getAbsolutePath());
+  }
+
+  @Test
+  public void shouldNotMeasureReportOfPreviousAnalysis() throws Exception {
+    File report = new File("target/MockProject/target/sonar/phpmd.xml");
+    FileUtils.writeStringToFile(report, "<pmd/>");
+    report.setLastModified(report.lastModified() - 60000L);
+    executor = spy(executor);
+    doReturn(new File("target/phpmd.phar")).when(executor).getPharFile(any(URL.class));
+    doReturn(false).when(executor).verifyExternalTool();
+    doReturn(0).when(executor).doExecute(any(Command.class));
+
+    executor.execute();
+
+    assertThat(executor.getExecutions().get(0).getReportSize()).isEqualTo(-1L);
+  }
+
   @Test
   public void testCommandLineWithSeveralParameters() {
     // Given
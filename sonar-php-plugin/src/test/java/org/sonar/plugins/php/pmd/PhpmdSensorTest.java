@@ -31,6 +31,7 @@ import org.sonar.api.rules.ActiveRule;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import org.sonar.plugins.php.MockUtils;
+import org.sonar.plugins.php.core.PhpToolsScheduler;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -99,7 +100,7 @@ public class PhpmdSensorTest {
 
     when(filesystem.mainFiles("php")).thenReturn(ImmutableList.<InputFile>of(mock(InputFile.class)));
 
-    return new PhpmdSensor(conf, executor, profile, ruleFinder, filesystem);
+    return new PhpmdSensor(conf, executor, mock(PhpToolsScheduler.class), profile, ruleFinder, filesystem);
   }
 
   protected RulesProfile createRulesProfile() {
@@ -19,7 +19,9 @@
  */
 package org.sonar.plugins.php.pmd;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
+import org.sonar.plugins.php.core.ReportPipe;
 import org.sonar.test.TestUtils;
 
 import java.io.File;
@@ -44,4 +46,27 @@ public class PhpmdViolationsXmlParserTest {
     assertThat(violations).hasSize(30);
   }
 
+  /**
+   * Should get violations from a report printed by another thread.
+   */
+  @Test
+  public void pipedParserTest() throws Exception {
+    final List<String> lines = FileUtils.readLines(TestUtils.getResource("/org/sonar/plugins/php/pmd/php-pmd-result.xml"), "UTF-8");
+    final ReportPipe pipe = new ReportPipe();
+    Thread tool = new Thread() {
+      @Override
+      public void run() {
+        for (String line : lines) {
+          pipe.consumeLine(line);
+        }
+        pipe.finish();
+      }
+    };
+    tool.start();
+
+    List<PhpmdViolation> violations = new PhpmdViolationsXmlParser(pipe).getViolations();
+    tool.join();
+    assertThat(violations).hasSize(30);
+  }
+
 }